@@ -0,0 +1,19 @@
+package gov.fda.nctr.dbmd.benchmarks;
+
+import gov.fda.nctr.dbmd.synthetic.SyntheticCatalog;
+
+
+/// The synthetic catalogs used by the benchmarks, which have the same shape for all relation counts.
+final class BenchmarkCatalogs
+{
+    static final String SCHEMA = "BENCH";
+
+    static final int COLUMNS_PER_RELATION = 10;
+
+    private BenchmarkCatalogs() {}
+
+    static SyntheticCatalog catalog(int relCount)
+    {
+        return SyntheticCatalog.generate(SCHEMA, relCount, COLUMNS_PER_RELATION, 1.5, 0.25, 0.1, 1234L);
+    }
+}
@@ -0,0 +1,218 @@
+package gov.fda.nctr.dbmd.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import gov.fda.nctr.dbmd.*;
+
+
+/// Benchmarks of DBMD construction and of the DBMD query methods used when generating queries, over synthetic
+/// schemas of various sizes. Queried relations and foreign keys are drawn from a fixed pseudo-random sample.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DBMDQueryBenchmarks
+{
+    private static final int SAMPLE_SIZE = 1024; // power of 2 for cheap cycling through samples
+
+    @Param({"100", "10000", "100000"})
+    public int relCount;
+
+    private DBMD dbmd;
+
+    private List<RelMetadata> shuffledRelMds;
+
+    private List<ForeignKey> shuffledFks;
+
+    private RelId[] relIds;
+
+    private RelId[] fkChildRelIds;
+
+    private RelId[] fkParentRelIds;
+
+    private Optional<Set<String>>[] fkFieldNames;
+
+    private String[] qualifiedRelNames;
+
+    private String[] identifiers;
+
+    private RelMetadata[] sampleRelMds;
+
+    private String[] fieldNames;
+
+    private ForeignKeyGraph fkGraph;
+
+    private RelId[] pathFromRelIds;
+
+    private RelId[] pathToRelIds;
+
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        int ix;
+
+        int next() { return ix++ & (SAMPLE_SIZE - 1); }
+    }
+
+    @Setup
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setup()
+    {
+        dbmd = BenchmarkCatalogs.catalog(relCount).toDBMD();
+
+        Random random = new Random(1234);
+
+        shuffledRelMds = new ArrayList<>(dbmd.getRelationMetadatas());
+        Collections.shuffle(shuffledRelMds, random);
+        shuffledFks = new ArrayList<>(dbmd.getForeignKeys());
+        Collections.shuffle(shuffledFks, random);
+
+        relIds = new RelId[SAMPLE_SIZE];
+        fkChildRelIds = new RelId[SAMPLE_SIZE];
+        fkParentRelIds = new RelId[SAMPLE_SIZE];
+        fkFieldNames = new Optional[SAMPLE_SIZE];
+        qualifiedRelNames = new String[SAMPLE_SIZE];
+        identifiers = new String[SAMPLE_SIZE];
+        sampleRelMds = new RelMetadata[SAMPLE_SIZE];
+        fieldNames = new String[SAMPLE_SIZE];
+
+        for ( int i = 0; i < SAMPLE_SIZE; ++i )
+        {
+            RelMetadata relMd = shuffledRelMds.get(i % shuffledRelMds.size());
+            RelId relId = relMd.getRelationId();
+            relIds[i] = relId;
+            sampleRelMds[i] = relMd;
+            fieldNames[i] = relMd.getFields().get(random.nextInt(relMd.getFields().size())).getName();
+
+            ForeignKey fk = shuffledFks.get(i % shuffledFks.size());
+            fkChildRelIds[i] = fk.getSourceRelationId();
+            fkParentRelIds[i] = fk.getTargetRelationId();
+            fkFieldNames[i] = Optional.of(new HashSet<>(fk.getSourceFieldNames()));
+
+            // Mix lower case, upper case and quoted forms as they would appear in user supplied names.
+            switch ( i % 3 )
+            {
+                case 0: qualifiedRelNames[i] = relId.getIdString().toLowerCase(); break;
+                case 1: qualifiedRelNames[i] = relId.getIdString(); break;
+                default: qualifiedRelNames[i] = "\"" + relId.getSchema().get() + "\".\"" + relId.getName() + "\"";
+            }
+            identifiers[i] = i % 2 == 0 ? relId.getName().toLowerCase() : "\"" + relId.getName() + "\"";
+        }
+
+        fkGraph = dbmd.getForeignKeyGraph();
+        List<RelId> graphRelIds = fkGraph.getRelationIds();
+
+        pathFromRelIds = new RelId[SAMPLE_SIZE];
+        pathToRelIds = new RelId[SAMPLE_SIZE];
+
+        for ( int i = 0; i < SAMPLE_SIZE; ++i )
+        {
+            pathFromRelIds[i] = graphRelIds.get(random.nextInt(graphRelIds.size()));
+            pathToRelIds[i] = graphRelIds.get(random.nextInt(graphRelIds.size()));
+        }
+    }
+
+    @Benchmark
+    public DBMD construct()
+    {
+        return
+            new DBMD(
+                dbmd.getSchemaName(),
+                shuffledRelMds,
+                shuffledFks,
+                dbmd.getCaseSensitivity(),
+                dbmd.getDbmsName(),
+                dbmd.getDbmsVersion(),
+                dbmd.getDbmsMajorVersion(),
+                dbmd.getDbmsMinorVersion()
+            );
+    }
+
+    @Benchmark
+    public Optional<RelMetadata> getRelationMetadata(Cursor cursor)
+    {
+        return dbmd.getRelationMetadata(relIds[cursor.next()]);
+    }
+
+    @Benchmark
+    public Optional<RelMetadata> getRelationMetadataByName(Cursor cursor)
+    {
+        return dbmd.getRelationMetadata(qualifiedRelNames[cursor.next()]);
+    }
+
+    @Benchmark
+    public Optional<Field> getField(Cursor cursor)
+    {
+        int i = cursor.next();
+        return sampleRelMds[i].getField(fieldNames[i]);
+    }
+
+    @Benchmark
+    public List<String> getPrimaryKeyFieldNames(Cursor cursor)
+    {
+        return sampleRelMds[cursor.next()].getPrimaryKeyFieldNames();
+    }
+
+    @Benchmark
+    public List<ForeignKey> getForeignKeysFromTo(Cursor cursor)
+    {
+        int i = cursor.next();
+        return dbmd.getForeignKeysFromTo(Optional.of(fkChildRelIds[i]), Optional.of(fkParentRelIds[i]));
+    }
+
+    @Benchmark
+    public List<ForeignKey> getForeignKeysToParentsFrom(Cursor cursor)
+    {
+        return dbmd.getForeignKeysToParentsFrom(relIds[cursor.next()]);
+    }
+
+    @Benchmark
+    public Optional<ForeignKey> getForeignKeyFromTo(Cursor cursor)
+    {
+        int i = cursor.next();
+        return
+            dbmd.getForeignKeyFromTo(
+                fkChildRelIds[i],
+                fkParentRelIds[i],
+                fkFieldNames[i],
+                DBMD.ForeignKeyScope.REGISTERED_TABLES_ONLY
+            );
+    }
+
+    @Benchmark
+    public Optional<ForeignKeyGraph.JoinPath> getShortestJoinPath(Cursor cursor)
+    {
+        int i = cursor.next();
+        return fkGraph.getShortestPath(pathFromRelIds[i], pathToRelIds[i]);
+    }
+
+    @Benchmark
+    public List<ForeignKeyGraph.JoinPath> getJoinPathsWithin4Steps(Cursor cursor)
+    {
+        int i = cursor.next();
+        return fkGraph.getPaths(pathFromRelIds[i], pathToRelIds[i], 4);
+    }
+
+    @Benchmark
+    public RelId makeRelId(Cursor cursor)
+    {
+        return dbmd.makeRelId(qualifiedRelNames[cursor.next()]);
+    }
+
+    @Benchmark
+    public String normalizeName(Cursor cursor)
+    {
+        return dbmd.normalizeName(identifiers[cursor.next()]);
+    }
+
+    @Benchmark
+    public String quoteIfNeeded(Cursor cursor)
+    {
+        return dbmd.quoteIfNeeded(relIds[cursor.next()].getName());
+    }
+}
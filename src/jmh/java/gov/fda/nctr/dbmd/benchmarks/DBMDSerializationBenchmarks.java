@@ -0,0 +1,106 @@
+package gov.fda.nctr.dbmd.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import org.openjdk.jmh.annotations.*;
+
+import gov.fda.nctr.dbmd.*;
+
+
+/// Benchmarks of writing and loading a DBMD in the JSON and YAML text formats and in the binary snapshot format,
+/// over synthetic schemas of various sizes. The load benchmarks compare full deserialization of text, full decoding
+/// of a binary snapshot, and opening a lazily decoded view of a snapshot followed by a single relation lookup.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DBMDSerializationBenchmarks
+{
+    @Param({"100", "10000", "100000"})
+    public int relCount;
+
+    private DBMD dbmd;
+
+    private byte[] binary;
+
+    private ByteBuffer binaryBuffer;
+
+    private RelId lookupRelId;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        dbmd = BenchmarkCatalogs.catalog(relCount).toDBMD();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        dbmd.writeBinary(bos);
+        binary = bos.toByteArray();
+        binaryBuffer = ByteBuffer.allocateDirect(binary.length);
+        binaryBuffer.put(binary).flip();
+
+        lookupRelId = dbmd.getRelationMetadatas().get(relCount / 2).getRelationId();
+    }
+
+    /// Text format state, kept separate so the binary benchmarks are not repeated for each text format.
+    @State(Scope.Benchmark)
+    public static class Text
+    {
+        @Param({"json", "yaml"})
+        public String textFormat;
+
+        ObjectMapper mapper;
+
+        byte[] text;
+
+        @Setup
+        public void setup(DBMDSerializationBenchmarks benchmarks) throws IOException
+        {
+            mapper = textFormat.equals("yaml") ? new ObjectMapper(new YAMLFactory()) : new ObjectMapper();
+            mapper.registerModule(new Jdk8Module());
+
+            text = mapper.writeValueAsBytes(benchmarks.dbmd);
+        }
+    }
+
+    @Benchmark
+    public byte[] writeText(Text t) throws IOException
+    {
+        return t.mapper.writeValueAsBytes(dbmd);
+    }
+
+    @Benchmark
+    public DBMD readText(Text t) throws IOException
+    {
+        return t.mapper.readValue(t.text, DBMD.class);
+    }
+
+    @Benchmark
+    public int writeBinary() throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(binary.length);
+        dbmd.writeBinary(bos);
+        return bos.size();
+    }
+
+    @Benchmark
+    public DBMD readBinary() throws IOException
+    {
+        return DBMD.readBinary(new ByteArrayInputStream(binary));
+    }
+
+    @Benchmark
+    public Optional<RelMetadata> mapBinaryAndLookup() throws IOException
+    {
+        return MappedDBMD.map(binaryBuffer).getRelationMetadata(lookupRelId);
+    }
+}
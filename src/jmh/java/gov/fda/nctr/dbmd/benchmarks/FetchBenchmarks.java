@@ -0,0 +1,89 @@
+package gov.fda.nctr.dbmd.benchmarks;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import gov.fda.nctr.dbmd.*;
+
+
+/// Benchmarks of fetching metadata from an embedded in-memory H2 database holding a synthetic schema. The serial
+/// fetch uses the catalog reader chosen for the database, and the parallel fetch uses the standard JDBC catalog
+/// methods on several connections.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FetchBenchmarks
+{
+    @Param({"100", "1000", "10000"})
+    public int relCount;
+
+    @Param({"4"})
+    public int parallelism;
+
+    private JdbcDataSource dataSource;
+
+    // Keeps the in-memory database open for the duration of the trial.
+    private Connection conn;
+
+    @Setup
+    public void setup() throws SQLException
+    {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:dbmd_bench_" + relCount);
+
+        conn = dataSource.getConnection();
+
+        try ( Statement stmt = conn.createStatement() )
+        {
+            for ( String ddl : BenchmarkCatalogs.catalog(relCount).ddl() )
+                stmt.execute(ddl);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException
+    {
+        conn.close();
+    }
+
+    @Benchmark
+    public DBMD fetchSerial() throws SQLException
+    {
+        try ( Connection conn = dataSource.getConnection() )
+        {
+            DatabaseMetadataFetcher fetcher =
+                new DatabaseMetadataFetcher(
+                    DatabaseMetadataFetcher.DateMapping.DATES_AS_DRIVER_REPORTED,
+                    CatalogReader.forDatabase(conn.getMetaData())
+                );
+
+            return fetcher.fetchMetadata(conn, Optional.of(BenchmarkCatalogs.SCHEMA), true, true, true, Optional.empty());
+        }
+    }
+
+    @Benchmark
+    public DBMD fetchParallel() throws SQLException
+    {
+        DatabaseMetadataFetcher fetcher = new DatabaseMetadataFetcher();
+
+        return
+            fetcher.fetchMetadata(
+                dataSource,
+                parallelism,
+                Optional.of(BenchmarkCatalogs.SCHEMA),
+                true,
+                true,
+                true,
+                Optional.empty()
+            );
+    }
+}
@@ -0,0 +1,68 @@
+package gov.fda.nctr.dbmd.benchmarks;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import gov.fda.nctr.dbmd.*;
+import gov.fda.nctr.dbmd.synthetic.SyntheticCatalog;
+import gov.fda.nctr.dbmd.synthetic.SyntheticDatabaseMetaData;
+
+
+/// Benchmarks of fetching metadata through the standard JDBC catalog reader from an in-memory DatabaseMetaData
+/// stand-in, with a simulated latency per catalog call, so the effect of the number of round trips can be seen at
+/// scale. The total number of catalog calls made in each iteration is reported as a secondary result.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StandInFetchBenchmarks
+{
+    @Param({"1000", "10000"})
+    public int relCount;
+
+    @Param({"0", "500"})
+    public int latencyMicros;
+
+    private SyntheticDatabaseMetaData standIn;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class CatalogCalls
+    {
+        public long catalogCalls;
+    }
+
+    @Setup
+    public void setup()
+    {
+        SyntheticCatalog catalog = BenchmarkCatalogs.catalog(relCount);
+
+        standIn = SyntheticDatabaseMetaData.of(catalog, Duration.ofNanos(latencyMicros * 1000L));
+    }
+
+    @Benchmark
+    public DBMD fetch(CatalogCalls calls) throws SQLException
+    {
+        DatabaseMetadataFetcher fetcher = new DatabaseMetadataFetcher();
+
+        DBMD dbmd =
+            fetcher.fetchMetadata(
+                standIn.getDatabaseMetaData(),
+                Optional.of(BenchmarkCatalogs.SCHEMA),
+                true,
+                true,
+                true,
+                Optional.empty()
+            );
+
+        calls.catalogCalls += fetcher.getCatalogCallCount();
+
+        return dbmd;
+    }
+}
@@ -0,0 +1,377 @@
+package gov.fda.nctr.dbmd.synthetic;
+
+import java.sql.Types;
+import java.util.*;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Optional.empty;
+
+import gov.fda.nctr.dbmd.*;
+import gov.fda.nctr.dbmd.RelMetadata.RelType;
+
+
+/// Pseudo-randomly generated catalog of a single schema, for load testing and benchmarking metadata fetching and
+/// processing without a production database. The catalog can be served through a DatabaseMetaData stand-in (see
+/// SyntheticDatabaseMetaData), created in a real database via its DDL statements, or converted directly to the DBMD
+/// that fetching it should produce. Generation is deterministic for a given seed.
+///
+/// Each table has a one part primary key ID, or with probability compositeKeyRatio a two part key (ID, SEQ). Foreign
+/// keys from a table reference all primary key fields of randomly chosen earlier tables, with fkFanOut foreign keys
+/// per table on average. A relation after the first is a view over an earlier table with probability viewRatio.
+/// Data columns of varied types are added to bring tables up to columnsPerRelation columns.
+public final class SyntheticCatalog
+{
+    private final String schema;
+
+    private final List<Relation> relations;
+
+    private final List<ForeignKeyDef> foreignKeys;
+
+    private SyntheticCatalog(String schema, List<Relation> relations, List<ForeignKeyDef> foreignKeys)
+    {
+        this.schema = schema;
+        this.relations = unmodifiableList(relations);
+        this.foreignKeys = unmodifiableList(foreignKeys);
+    }
+
+    public static SyntheticCatalog generate
+        (
+            String schema,
+            int relationCount,
+            int columnsPerRelation,
+            double fkFanOut,
+            double compositeKeyRatio,
+            double viewRatio,
+            long seed
+        )
+    {
+        if ( relationCount < 0 || columnsPerRelation < 1 || fkFanOut < 0 )
+            throw new IllegalArgumentException("Invalid synthetic catalog dimensions.");
+        if ( compositeKeyRatio < 0 || compositeKeyRatio > 1 || viewRatio < 0 || viewRatio > 1 )
+            throw new IllegalArgumentException("Ratios must be between 0 and 1.");
+
+        Random random = new Random(seed);
+
+        List<Relation> rels = new ArrayList<>(relationCount);
+        List<Relation> tables = new ArrayList<>(relationCount);
+        List<ForeignKeyDef> fks = new ArrayList<>();
+
+        for ( int i = 0; i < relationCount; ++i )
+        {
+            String relName = String.format("REL_%06d", i);
+
+            if ( !tables.isEmpty() && random.nextDouble() < viewRatio )
+            {
+                Relation baseTable = tables.get(random.nextInt(tables.size()));
+
+                List<Column> cols = new ArrayList<>(baseTable.columns.size());
+                for ( Column c : baseTable.columns )
+                    cols.add(new Column(c.name, c.typeCode, c.typeName, c.size, c.decimalDigits, true, empty()));
+
+                rels.add(new Relation(relName, true, empty(), cols, Collections.emptyList(), Optional.of(baseTable)));
+            }
+            else
+            {
+                List<Column> cols = new ArrayList<>(columnsPerRelation);
+
+                List<String> pkColNames =
+                    random.nextDouble() < compositeKeyRatio ? Arrays.asList("ID", "SEQ") : Collections.singletonList("ID");
+                for ( String pkColName : pkColNames )
+                    cols.add(new Column(pkColName, Types.INTEGER, "INTEGER", 32, Optional.of(0), false, empty()));
+
+                // Choose the number of foreign keys so the mean is fkFanOut.
+                int fkCount = (int)fkFanOut + (random.nextDouble() < fkFanOut - (int)fkFanOut ? 1 : 0);
+                for ( int fkNum = 1; fkNum <= fkCount && !tables.isEmpty(); ++fkNum )
+                {
+                    Relation parent = tables.get(random.nextInt(tables.size()));
+
+                    List<ForeignKey.Component> comps = new ArrayList<>(parent.primaryKeyColumnNames.size());
+                    for ( String parentPkColName : parent.primaryKeyColumnNames )
+                    {
+                        String fkColName = "FK" + fkNum + "_" + parentPkColName;
+                        cols.add(new Column(fkColName, Types.INTEGER, "INTEGER", 32, Optional.of(0), true, empty()));
+                        comps.add(new ForeignKey.Component(fkColName, parentPkColName));
+                    }
+
+                    fks.add(new ForeignKeyDef(relName, parent.name, comps));
+                }
+
+                for ( int colNum = cols.size() + 1; colNum <= columnsPerRelation; ++colNum )
+                    cols.add(dataColumn(colNum, random));
+
+                Relation table =
+                    new Relation(relName, false, Optional.of("Synthetic table " + i), cols, pkColNames, empty());
+
+                rels.add(table);
+                tables.add(table);
+            }
+        }
+
+        return new SyntheticCatalog(schema, rels, fks);
+    }
+
+    private static Column dataColumn(int colNum, Random random)
+    {
+        String name = "C" + colNum;
+        boolean nullable = random.nextBoolean();
+        Optional<String> remarks = colNum % 5 == 0 ? Optional.of("Column " + colNum) : empty();
+
+        switch ( random.nextInt(5) )
+        {
+            case 0: return new Column(name, Types.VARCHAR, "CHARACTER VARYING", 50 + random.nextInt(200), empty(), nullable, remarks);
+            case 1: return new Column(name, Types.NUMERIC, "NUMERIC", 12, Optional.of(2), nullable, remarks);
+            case 2: return new Column(name, Types.TIMESTAMP, "TIMESTAMP", 26, Optional.of(6), nullable, remarks);
+            case 3: return new Column(name, Types.DATE, "DATE", 10, Optional.of(0), nullable, remarks);
+            default: return new Column(name, Types.BIGINT, "BIGINT", 64, Optional.of(0), nullable, remarks);
+        }
+    }
+
+    public String getSchema() { return schema; }
+
+    public List<Relation> getRelations() { return relations; }
+
+    public List<ForeignKeyDef> getForeignKeys() { return foreignKeys; }
+
+    public int getColumnCount()
+    {
+        int count = 0;
+        for ( Relation rel : relations )
+            count += rel.columns.size();
+        return count;
+    }
+
+    /// Make the DBMD that fetching this catalog should produce, with dates as reported by the driver. As with a fetch,
+    /// each relation is represented by a single RelId.
+    public DBMD toDBMD()
+    {
+        List<RelMetadata> relMds = new ArrayList<>(relations.size());
+        Map<String, RelId> relIds = new HashMap<>();
+
+        for ( Relation rel : relations )
+        {
+            List<Field> fields = new ArrayList<>(rel.columns.size());
+
+            for ( Column c : rel.columns )
+            {
+                boolean numeric = Field.isJdbcTypeNumeric(c.typeCode);
+                int pkIx = rel.primaryKeyColumnNames.indexOf(c.name);
+
+                fields.add(
+                    new Field(
+                        c.name,
+                        c.typeCode,
+                        c.typeName,
+                        Field.isJdbcTypeChar(c.typeCode) ? Optional.of(c.size) : empty(),
+                        numeric ? Optional.of(c.size) : empty(),
+                        numeric ? c.decimalDigits : empty(),
+                        c.radix(),
+                        Optional.of(c.nullable),
+                        pkIx != -1 ? Optional.of(pkIx + 1) : empty(),
+                        c.remarks
+                    )
+                );
+            }
+
+            relMds.add(new RelMetadata(relIds.computeIfAbsent(rel.name, this::relId), rel.view ? RelType.View : RelType.Table, rel.remarks, fields));
+        }
+
+        List<ForeignKey> fks = new ArrayList<>(foreignKeys.size());
+        for ( ForeignKeyDef fk : foreignKeys )
+            fks.add(
+                new ForeignKey(
+                    relIds.computeIfAbsent(fk.childRelationName, this::relId),
+                    relIds.computeIfAbsent(fk.parentRelationName, this::relId),
+                    fk.components
+                )
+            );
+
+        return
+            new DBMD(
+                Optional.of(schema),
+                relMds,
+                fks,
+                CaseSensitivity.INSENSITIVE_STORED_UPPER,
+                SyntheticDatabaseMetaData.PRODUCT_NAME,
+                SyntheticDatabaseMetaData.PRODUCT_VERSION,
+                SyntheticDatabaseMetaData.MAJOR_VERSION,
+                SyntheticDatabaseMetaData.MINOR_VERSION
+            );
+    }
+
+    /// DDL statements creating the schema with its tables, foreign keys, views and comments, in executable order.
+    /// The statements use standard SQL types and comment syntax, as accepted by H2 and PostgreSQL.
+    public List<String> ddl()
+    {
+        List<String> stmts = new ArrayList<>();
+        stmts.add("create schema " + schema);
+
+        for ( Relation rel : relations )
+        {
+            String qName = schema + "." + rel.name;
+
+            if ( rel.view )
+            {
+                List<String> colNames = new ArrayList<>();
+                for ( Column c : rel.columns )
+                    colNames.add(c.name);
+
+                stmts.add(
+                    "create view " + qName + " as select " + String.join(", ", colNames) + " from " +
+                    schema + "." + rel.baseTable.get().name
+                );
+            }
+            else
+            {
+                StringBuilder sb = new StringBuilder("create table " + qName + " (");
+                for ( Column c : rel.columns )
+                {
+                    sb.append(c.name).append(' ').append(c.typeName);
+                    if ( c.typeCode == Types.VARCHAR )
+                        sb.append('(').append(c.size).append(')');
+                    else if ( c.typeCode == Types.NUMERIC )
+                        sb.append('(').append(c.size).append(',').append(c.decimalDigits.get()).append(')');
+                    if ( !c.nullable )
+                        sb.append(" not null");
+                    sb.append(", ");
+                }
+                sb.append("primary key (").append(String.join(", ", rel.primaryKeyColumnNames)).append("))");
+                stmts.add(sb.toString());
+            }
+
+            rel.remarks.ifPresent(r -> stmts.add("comment on table " + qName + " is '" + r + "'"));
+            for ( Column c : rel.columns )
+                c.remarks.ifPresent(r -> stmts.add("comment on column " + qName + "." + c.name + " is '" + r + "'"));
+        }
+
+        for ( ForeignKeyDef fk : foreignKeys )
+        {
+            List<String> fkColNames = new ArrayList<>();
+            List<String> pkColNames = new ArrayList<>();
+            for ( ForeignKey.Component comp : fk.components )
+            {
+                fkColNames.add(comp.getForeignKeyFieldName());
+                pkColNames.add(comp.getPrimaryKeyFieldName());
+            }
+
+            stmts.add(
+                "alter table " + schema + "." + fk.childRelationName + " add foreign key (" +
+                String.join(", ", fkColNames) + ") references " + schema + "." + fk.parentRelationName +
+                " (" + String.join(", ", pkColNames) + ")"
+            );
+        }
+
+        return stmts;
+    }
+
+    private RelId relId(String relName)
+    {
+        return new RelId(Optional.of(schema), relName);
+    }
+
+    public static final class Relation
+    {
+        final String name;
+
+        final boolean view;
+
+        final Optional<String> remarks;
+
+        final List<Column> columns;
+
+        final List<String> primaryKeyColumnNames;
+
+        final Optional<Relation> baseTable;
+
+        Relation
+            (
+                String name,
+                boolean view,
+                Optional<String> remarks,
+                List<Column> columns,
+                List<String> primaryKeyColumnNames,
+                Optional<Relation> baseTable
+            )
+        {
+            this.name = name;
+            this.view = view;
+            this.remarks = remarks;
+            this.columns = unmodifiableList(columns);
+            this.primaryKeyColumnNames = primaryKeyColumnNames;
+            this.baseTable = baseTable;
+        }
+
+        public String getName() { return name; }
+
+        public boolean isView() { return view; }
+
+        public List<Column> getColumns() { return columns; }
+
+        public List<String> getPrimaryKeyColumnNames() { return primaryKeyColumnNames; }
+    }
+
+    public static final class Column
+    {
+        final String name;
+
+        final int typeCode;
+
+        final String typeName;
+
+        final int size;
+
+        final Optional<Integer> decimalDigits;
+
+        final boolean nullable;
+
+        final Optional<String> remarks;
+
+        Column
+            (
+                String name,
+                int typeCode,
+                String typeName,
+                int size,
+                Optional<Integer> decimalDigits,
+                boolean nullable,
+                Optional<String> remarks
+            )
+        {
+            this.name = name;
+            this.typeCode = typeCode;
+            this.typeName = typeName;
+            this.size = size;
+            this.decimalDigits = decimalDigits;
+            this.nullable = nullable;
+            this.remarks = remarks;
+        }
+
+        public String getName() { return name; }
+
+        /// Radix of the column's precision, for numeric columns.
+        Optional<Integer> radix()
+        {
+            return Field.isJdbcTypeNumeric(typeCode) ? Optional.of(typeCode == Types.NUMERIC ? 10 : 2) : empty();
+        }
+    }
+
+    public static final class ForeignKeyDef
+    {
+        final String childRelationName;
+
+        final String parentRelationName;
+
+        final List<ForeignKey.Component> components;
+
+        ForeignKeyDef(String childRelationName, String parentRelationName, List<ForeignKey.Component> components)
+        {
+            this.childRelationName = childRelationName;
+            this.parentRelationName = parentRelationName;
+            this.components = unmodifiableList(components);
+        }
+
+        public String getChildRelationName() { return childRelationName; }
+
+        public String getParentRelationName() { return parentRelationName; }
+
+        public List<ForeignKey.Component> getComponents() { return components; }
+    }
+}
@@ -0,0 +1,424 @@
+package gov.fda.nctr.dbmd.synthetic;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import gov.fda.nctr.dbmd.ForeignKey;
+
+
+/// In-memory stand-in for a driver's DatabaseMetaData, serving getTables, getColumns, getPrimaryKeys and
+/// getImportedKeys from a synthetic catalog, for use with DatabaseMetadataFetcher.fetchMetadata(DatabaseMetaData,
+/// ...) and the standard JDBC catalog reader. An optional latency is applied to each of these catalog calls to
+/// simulate database round trips. Like several drivers, getPrimaryKeys and getImportedKeys accept a null table name
+/// to return the keys of all tables of the schema. Other catalog methods are not supported.
+public final class SyntheticDatabaseMetaData
+{
+    public static final String PRODUCT_NAME = "Synthetic";
+
+    public static final String PRODUCT_VERSION = "1.0";
+
+    public static final int MAJOR_VERSION = 1;
+
+    public static final int MINOR_VERSION = 0;
+
+    private static final String SEARCH_STRING_ESCAPE = "\\";
+
+    private static final String[] TABLES_COLUMNS = {
+        "TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME", "TABLE_TYPE", "REMARKS"
+    };
+
+    private static final String[] COLUMNS_COLUMNS = {
+        "TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME", "DATA_TYPE", "TYPE_NAME", "COLUMN_SIZE",
+        "DECIMAL_DIGITS", "NUM_PREC_RADIX", "NULLABLE", "REMARKS", "ORDINAL_POSITION", "IS_NULLABLE"
+    };
+
+    private static final String[] PRIMARY_KEYS_COLUMNS = {
+        "TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME", "COLUMN_NAME", "KEY_SEQ", "PK_NAME"
+    };
+
+    private static final String[] IMPORTED_KEYS_COLUMNS = {
+        "PKTABLE_CAT", "PKTABLE_SCHEM", "PKTABLE_NAME", "PKCOLUMN_NAME",
+        "FKTABLE_CAT", "FKTABLE_SCHEM", "FKTABLE_NAME", "FKCOLUMN_NAME",
+        "KEY_SEQ", "UPDATE_RULE", "DELETE_RULE", "FK_NAME", "PK_NAME", "DEFERRABILITY"
+    };
+
+    private final SyntheticCatalog catalog;
+
+    private final Duration latency;
+
+    private final AtomicLong catalogCallCount = new AtomicLong();
+
+    private final Map<String, SyntheticCatalog.Relation> relationsByName = new HashMap<>();
+
+    private final Map<String, List<SyntheticCatalog.ForeignKeyDef>> fksByChildName = new HashMap<>();
+
+    private final DatabaseMetaData proxy;
+
+    private SyntheticDatabaseMetaData(SyntheticCatalog catalog, Duration latency)
+    {
+        this.catalog = catalog;
+        this.latency = latency;
+
+        for ( SyntheticCatalog.Relation rel : catalog.getRelations() )
+            relationsByName.put(rel.name, rel);
+        for ( SyntheticCatalog.ForeignKeyDef fk : catalog.getForeignKeys() )
+            fksByChildName.computeIfAbsent(fk.childRelationName, k -> new ArrayList<>()).add(fk);
+
+        this.proxy = (DatabaseMetaData)Proxy.newProxyInstance(
+            DatabaseMetaData.class.getClassLoader(),
+            new Class<?>[]{DatabaseMetaData.class},
+            new MetaDataHandler()
+        );
+    }
+
+    public static SyntheticDatabaseMetaData of(SyntheticCatalog catalog)
+    {
+        return new SyntheticDatabaseMetaData(catalog, Duration.ZERO);
+    }
+
+    /// Create a stand-in which waits for the given latency on each catalog call before returning its result.
+    public static SyntheticDatabaseMetaData of(SyntheticCatalog catalog, Duration latency)
+    {
+        return new SyntheticDatabaseMetaData(catalog, latency);
+    }
+
+    /// The stand-in itself, usable wherever driver metadata is expected.
+    public DatabaseMetaData getDatabaseMetaData() { return proxy; }
+
+    /// The number of catalog calls (getTables, getColumns, getPrimaryKeys, getImportedKeys) served so far.
+    public long getCatalogCallCount() { return catalogCallCount.get(); }
+
+    private ResultSet getTables(String schemaPattern, String tableNamePattern, String[] types)
+    {
+        Set<String> relTypes = types != null ? new HashSet<>(Arrays.asList(types)) : null;
+        List<Object[]> rows = new ArrayList<>();
+
+        if ( matcher(schemaPattern).test(catalog.getSchema()) )
+        {
+            for ( SyntheticCatalog.Relation rel : relationsMatching(tableNamePattern) )
+            {
+                String relType = rel.view ? "VIEW" : "TABLE";
+                if ( relTypes == null || relTypes.contains(relType) )
+                    rows.add(new Object[]{null, catalog.getSchema(), rel.name, relType, rel.remarks.orElse(null)});
+            }
+        }
+
+        // Ordered by TABLE_TYPE, then by name, as specified for getTables.
+        rows.sort(Comparator.comparing((Object[] row) -> (String)row[3]).thenComparing(row -> (String)row[2]));
+
+        return resultSet(TABLES_COLUMNS, rows);
+    }
+
+    private ResultSet getColumns(String schemaPattern, String tableNamePattern, String columnNamePattern)
+    {
+        List<Object[]> rows = new ArrayList<>();
+
+        if ( matcher(schemaPattern).test(catalog.getSchema()) )
+        {
+            Predicate<String> columnNameMatcher = matcher(columnNamePattern);
+
+            for ( SyntheticCatalog.Relation rel : relationsMatching(tableNamePattern) )
+            {
+                int ordinal = 0;
+                for ( SyntheticCatalog.Column c : rel.columns )
+                {
+                    ++ordinal;
+                    if ( columnNameMatcher.test(c.name) )
+                        rows.add(new Object[]{
+                            null, catalog.getSchema(), rel.name, c.name, c.typeCode, c.typeName, c.size,
+                            c.decimalDigits.orElse(null), c.radix().orElse(null),
+                            c.nullable ? DatabaseMetaData.columnNullable : DatabaseMetaData.columnNoNulls,
+                            c.remarks.orElse(null), ordinal, c.nullable ? "YES" : "NO"
+                        });
+                }
+            }
+        }
+
+        return resultSet(COLUMNS_COLUMNS, rows);
+    }
+
+    private ResultSet getPrimaryKeys(String schema, String table)
+    {
+        List<Object[]> rows = new ArrayList<>();
+
+        for ( SyntheticCatalog.Relation rel : relationsFor(schema, table) )
+        {
+            int keySeq = 0;
+            for ( String pkColName : rel.primaryKeyColumnNames )
+                rows.add(new Object[]{null, catalog.getSchema(), rel.name, pkColName, ++keySeq, "PK_" + rel.name});
+        }
+
+        return resultSet(PRIMARY_KEYS_COLUMNS, rows);
+    }
+
+    private ResultSet getImportedKeys(String schema, String table)
+    {
+        List<Object[]> rows = new ArrayList<>();
+
+        for ( SyntheticCatalog.Relation rel : relationsFor(schema, table) )
+        {
+            int fkNum = 0;
+            for ( SyntheticCatalog.ForeignKeyDef fk : fksByChildName.getOrDefault(rel.name, Collections.emptyList()) )
+            {
+                ++fkNum;
+                int keySeq = 0;
+                for ( ForeignKey.Component comp : fk.components )
+                    rows.add(new Object[]{
+                        null, catalog.getSchema(), fk.parentRelationName, comp.getPrimaryKeyFieldName(),
+                        null, catalog.getSchema(), fk.childRelationName, comp.getForeignKeyFieldName(),
+                        ++keySeq, DatabaseMetaData.importedKeyNoAction, DatabaseMetaData.importedKeyNoAction,
+                        "FK_" + rel.name + "_" + fkNum, "PK_" + fk.parentRelationName,
+                        DatabaseMetaData.importedKeyNotDeferrable
+                    });
+            }
+        }
+
+        return resultSet(IMPORTED_KEYS_COLUMNS, rows);
+    }
+
+    // Relations of the catalog having the given schema and name (not patterns), with null matching any.
+    private List<SyntheticCatalog.Relation> relationsFor(String schema, String table)
+    {
+        if ( schema != null && !schema.equals(catalog.getSchema()) )
+            return Collections.emptyList();
+        else if ( table == null )
+            return catalog.getRelations();
+        else
+        {
+            SyntheticCatalog.Relation rel = relationsByName.get(table);
+            return rel != null ? Collections.singletonList(rel) : Collections.emptyList();
+        }
+    }
+
+    private void simulateLatency() throws SQLException
+    {
+        catalogCallCount.incrementAndGet();
+
+        if ( !latency.isZero() )
+        {
+            try
+            {
+                Thread.sleep(latency.toMillis(), latency.getNano() % 1_000_000);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted during simulated catalog call latency.", ie);
+            }
+        }
+    }
+
+    // Relations whose names match the given search pattern, looked up directly when the pattern has no wildcards.
+    private List<SyntheticCatalog.Relation> relationsMatching(String tableNamePattern)
+    {
+        Optional<String> literal = literalValue(tableNamePattern);
+
+        if ( literal.isPresent() )
+        {
+            SyntheticCatalog.Relation rel = relationsByName.get(literal.get());
+            return rel != null ? Collections.singletonList(rel) : Collections.emptyList();
+        }
+
+        Predicate<String> nameMatcher = matcher(tableNamePattern);
+        List<SyntheticCatalog.Relation> rels = new ArrayList<>();
+        for ( SyntheticCatalog.Relation rel : catalog.getRelations() )
+        {
+            if ( nameMatcher.test(rel.name) )
+                rels.add(rel);
+        }
+        return rels;
+    }
+
+    // The value matched by a search pattern having no unescaped wildcards, if it has none.
+    private static Optional<String> literalValue(String pattern)
+    {
+        if ( pattern == null )
+            return Optional.empty();
+
+        StringBuilder sb = new StringBuilder(pattern.length());
+        for ( int i = 0; i < pattern.length(); ++i )
+        {
+            char c = pattern.charAt(i);
+            if ( c == SEARCH_STRING_ESCAPE.charAt(0) && i + 1 < pattern.length() )
+                sb.append(pattern.charAt(++i));
+            else if ( c == '%' || c == '_' )
+                return Optional.empty();
+            else
+                sb.append(c);
+        }
+
+        return Optional.of(sb.toString());
+    }
+
+    // Make a matcher for a JDBC search pattern, in which '%' and '_' are wildcards unless escaped. A null pattern
+    // matches any value.
+    private static Predicate<String> matcher(String pattern)
+    {
+        if ( pattern == null )
+            return value -> true;
+
+        StringBuilder regex = new StringBuilder();
+        for ( int i = 0; i < pattern.length(); ++i )
+        {
+            char c = pattern.charAt(i);
+            if ( c == SEARCH_STRING_ESCAPE.charAt(0) && i + 1 < pattern.length() )
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            else if ( c == '%' )
+                regex.append(".*");
+            else if ( c == '_' )
+                regex.append('.');
+            else
+                regex.append(Pattern.quote(String.valueOf(c)));
+        }
+
+        Pattern compiled = Pattern.compile(regex.toString());
+        return value -> compiled.matcher(value).matches();
+    }
+
+    private static ResultSet resultSet(String[] columnLabels, List<Object[]> rows)
+    {
+        return (ResultSet)Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(),
+            new Class<?>[]{ResultSet.class},
+            new RowsHandler(columnLabels, rows)
+        );
+    }
+
+    private class MetaDataHandler implements InvocationHandler
+    {
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch ( method.getName() )
+            {
+                case "getTables":
+                    simulateLatency();
+                    return getTables((String)args[1], (String)args[2], (String[])args[3]);
+                case "getColumns":
+                    simulateLatency();
+                    return getColumns((String)args[1], (String)args[2], (String)args[3]);
+                case "getPrimaryKeys":
+                    simulateLatency();
+                    return getPrimaryKeys((String)args[1], (String)args[2]);
+                case "getImportedKeys":
+                    simulateLatency();
+                    return getImportedKeys((String)args[1], (String)args[2]);
+                case "getSearchStringEscape": return SEARCH_STRING_ESCAPE;
+                case "getDatabaseProductName": return PRODUCT_NAME;
+                case "getDatabaseProductVersion": return PRODUCT_VERSION;
+                case "getDatabaseMajorVersion": return MAJOR_VERSION;
+                case "getDatabaseMinorVersion": return MINOR_VERSION;
+                case "getDriverName": return PRODUCT_NAME;
+                case "getURL": return "jdbc:synthetic:" + catalog.getSchema();
+                case "storesUpperCaseIdentifiers": return true;
+                case "storesLowerCaseIdentifiers":
+                case "storesMixedCaseIdentifiers":
+                    return false;
+                case "isWrapperFor": return false;
+                case "toString": return "SyntheticDatabaseMetaData[" + catalog.getSchema() + "]";
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                default:
+                    throw new SQLFeatureNotSupportedException(method.getName() + " is not supported by the stand-in.");
+            }
+        }
+    }
+
+    // Forward-only result set over in-memory rows, supporting the column accessors used for catalog results.
+    private static class RowsHandler implements InvocationHandler
+    {
+        private final Map<String, Integer> columnIndexesByLabel = new HashMap<>();
+
+        private final List<Object[]> rows;
+
+        private int rowIx = -1;
+
+        private boolean lastWasNull;
+
+        private boolean closed;
+
+        RowsHandler(String[] columnLabels, List<Object[]> rows)
+        {
+            for ( int i = 0; i < columnLabels.length; ++i )
+                columnIndexesByLabel.put(columnLabels[i], i);
+            this.rows = rows;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch ( method.getName() )
+            {
+                case "next":
+                    checkOpen();
+                    return ++rowIx < rows.size();
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed": return closed;
+                case "wasNull": return lastWasNull;
+                case "findColumn": return columnIndex(args[0]) + 1;
+                case "getObject": return value(args[0]);
+                case "getString":
+                {
+                    Object v = value(args[0]);
+                    return v != null ? v.toString() : null;
+                }
+                case "getInt":
+                {
+                    Object v = value(args[0]);
+                    return v != null ? ((Number)v).intValue() : 0;
+                }
+                case "getShort":
+                {
+                    Object v = value(args[0]);
+                    return v != null ? ((Number)v).shortValue() : (short)0;
+                }
+                case "getLong":
+                {
+                    Object v = value(args[0]);
+                    return v != null ? ((Number)v).longValue() : 0L;
+                }
+                case "isWrapperFor": return false;
+                case "toString": return "SyntheticResultSet";
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                default:
+                    throw new SQLFeatureNotSupportedException(method.getName() + " is not supported by the stand-in.");
+            }
+        }
+
+        private Object value(Object column) throws SQLException
+        {
+            checkOpen();
+            if ( rowIx < 0 || rowIx >= rows.size() )
+                throw new SQLException("Result set is not positioned on a row.");
+
+            Object v = rows.get(rowIx)[columnIndex(column)];
+            lastWasNull = v == null;
+            return v;
+        }
+
+        private int columnIndex(Object column) throws SQLException
+        {
+            if ( column instanceof Integer )
+                return (Integer)column - 1;
+
+            Integer ix = columnIndexesByLabel.get(((String)column).toUpperCase());
+            if ( ix == null )
+                throw new SQLException("No column labeled " + column + " in result set.");
+            return ix;
+        }
+
+        private void checkOpen() throws SQLException
+        {
+            if ( closed )
+                throw new SQLException("Result set is closed.");
+        }
+    }
+}
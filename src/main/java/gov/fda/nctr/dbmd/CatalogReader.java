@@ -0,0 +1,156 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Optional;
+
+
+/// Source of the catalog result sets read by DatabaseMetadataFetcher. Result sets returned by a reader must provide
+/// the columns used by the fetcher, labeled as in the corresponding DatabaseMetaData methods, and must be ordered as
+/// described for each method below. Closing a returned result set must release any statement used to produce it.
+/// Schema and relation names are passed as exact names, not search patterns.
+public interface CatalogReader
+{
+    /// Return relations of the given types ("TABLE", "VIEW") in the schema, or in all schemas if no schema is given.
+    /// Columns: TABLE_SCHEM, TABLE_NAME, TABLE_TYPE, REMARKS.
+    ResultSet getRelations
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            String[] relTypes
+        )
+        throws SQLException;
+
+    /// Return the columns of the given relation, or of all relations in the schema if no relation name is given.
+    /// Columns: TABLE_SCHEM, TABLE_NAME, COLUMN_NAME, DATA_TYPE, TYPE_NAME, COLUMN_SIZE, DECIMAL_DIGITS,
+    /// NUM_PREC_RADIX, NULLABLE, REMARKS, ordered by schema, relation name and column position.
+    ResultSet getColumns
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException;
+
+    /// Whether getPrimaryKeys() can be called without a relation name to return the primary keys of all relations
+    /// in the schema in a single query.
+    boolean supportsSchemaPrimaryKeysQuery();
+
+    /// Return primary key columns of the given relation, or of all relations in the schema if no relation name is
+    /// given and schema queries are supported.
+    /// Columns: TABLE_SCHEM, TABLE_NAME, COLUMN_NAME, KEY_SEQ.
+    ResultSet getPrimaryKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException;
+
+    /// Whether getImportedKeys() can be called without a relation name for the given database, to return the foreign
+    /// keys of all relations in the schema in a single query. If not, the fetcher queries the imported keys of each
+    /// table.
+    default boolean supportsSchemaImportedKeysQuery(DatabaseMetaData dbmd) throws SQLException { return true; }
+
+    /// Return foreign key components from the given child relation, or from all relations in the schema if no
+    /// relation name is given and schema queries are supported. The components of each foreign key must be
+    /// contiguous and ordered by KEY_SEQ.
+    /// Columns: PKTABLE_SCHEM, PKTABLE_NAME, PKCOLUMN_NAME, FKTABLE_SCHEM, FKTABLE_NAME, FKCOLUMN_NAME, KEY_SEQ.
+    ResultSet getImportedKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException;
+
+    /// Whether getColumns(), getPrimaryKeys() and getImportedKeys() can be called with a list of relation names, to
+    /// return the catalog rows for several relations of a schema in a single query. Lists passed by the fetcher are
+    /// kept short enough for the limits of common databases on the number of values in an "in" list.
+    default boolean supportsRelationListQueries() { return false; }
+
+    /// Return the columns of the named relations, with columns and ordering as for getColumns() for a single
+    /// relation.
+    default ResultSet getColumns
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Relation list queries are not supported by this catalog reader.");
+    }
+
+    /// Return primary key columns of the named relations, with columns as for getPrimaryKeys() for a single relation.
+    default ResultSet getPrimaryKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Relation list queries are not supported by this catalog reader.");
+    }
+
+    /// Return foreign key components from the named child relations, with columns and ordering as for
+    /// getImportedKeys() for a single relation.
+    default ResultSet getImportedKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Relation list queries are not supported by this catalog reader.");
+    }
+
+    /// Return the schemas of the database.
+    /// Columns: TABLE_SCHEM.
+    default ResultSet getSchemas(DatabaseMetaData dbmd) throws SQLException
+    {
+        return dbmd.getSchemas();
+    }
+
+    /// Whether getRelationChangeMarkers() is supported.
+    default boolean supportsRelationChangeMarkers() { return false; }
+
+    /// Return a change marker for each relation in the schema, or in all schemas if no schema is given. A change
+    /// marker is an opaque value which changes whenever the definition of the relation changes, though it may also
+    /// change without any change in definition. Markers are used to re-fetch only the relations which have changed
+    /// since a previous fetch, so they must be much cheaper to read than the relation metadata.
+    /// Columns: TABLE_SCHEM, TABLE_NAME, CHANGE_MARKER.
+    default ResultSet getRelationChangeMarkers
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema
+        )
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Relation change markers are not supported by this catalog reader.");
+    }
+
+
+    /// Return the reader best suited to the database, or the JDBC DatabaseMetaData based reader if the database has
+    /// no specialized reader.
+    static CatalogReader forDatabase(DatabaseMetaData dbmd) throws SQLException
+    {
+        String dbmsName = dbmd.getDatabaseProductName();
+
+        if ( "Oracle".equals(dbmsName) )
+            return new OracleCatalogReader();
+        else if ( "PostgreSQL".equals(dbmsName) )
+            return new PostgresCatalogReader();
+        else if ( "H2".equals(dbmsName) && dbmd.getDatabaseMajorVersion() >= 2 )
+            return new H2CatalogReader();
+        else if ( "HSQL Database Engine".equals(dbmsName) )
+            return new InformationSchemaCatalogReader();
+        else
+            return new JdbcCatalogReader();
+    }
+}
@@ -0,0 +1,197 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.*;
+import static java.util.Objects.requireNonNull;
+
+
+/// An immutable list of the fields of a relation stored in columnar form, with one primitive array per field
+/// attribute instead of a Field object holding Optional wrappers around boxed values for each field. Absent values
+/// are recorded in a flags byte per field, and database type names are shared between fields and, when compacted
+/// via DBMD.withCompactFields(), between relations.
+///
+/// The elements are Field views created on access, whose getters read from the arrays, so a relation metadata
+/// holding compact fields behaves and serializes as one holding ordinary Field objects. Views are not retained, so
+/// code which needs Field identity across calls should not rely on it here.
+public final class CompactFields extends AbstractList<Field> implements RandomAccess
+{
+    // Bits of the per-field flags.
+    private static final int HAS_LENGTH = 1;
+    private static final int HAS_PRECISION = 2;
+    private static final int HAS_FRACTIONAL_DIGITS = 4;
+    private static final int HAS_RADIX = 8;
+    private static final int HAS_NULLABLE = 16;
+    private static final int NULLABLE = 32;
+    private static final int HAS_PRIMARY_KEY_PART_NUMBER = 64;
+
+    private final String[] names;
+
+    private final int[] jdbcTypeCodes;
+
+    private final String[] databaseTypes;
+
+    private final int[] lengths;
+
+    private final int[] precisions;
+
+    private final int[] fractionalDigits;
+
+    private final int[] radixes;
+
+    private final int[] primaryKeyPartNumbers;
+
+    private final byte[] flags;
+
+    // Null when no field has a comment, which is the usual case.
+    private final String[] comments;
+
+    private CompactFields(List<Field> fields, Map<String, String> databaseTypeNames)
+    {
+        int count = fields.size();
+        names = new String[count];
+        jdbcTypeCodes = new int[count];
+        databaseTypes = new String[count];
+        lengths = new int[count];
+        precisions = new int[count];
+        fractionalDigits = new int[count];
+        radixes = new int[count];
+        primaryKeyPartNumbers = new int[count];
+        flags = new byte[count];
+
+        String[] comments = null;
+
+        for ( int i = 0; i < count; ++i )
+        {
+            Field f = requireNonNull(fields.get(i));
+
+            names[i] = f.getName();
+            jdbcTypeCodes[i] = f.getJdbcTypeCode();
+            databaseTypes[i] = databaseTypeNames.computeIfAbsent(f.getDatabaseType(), t -> t);
+
+            int fieldFlags = 0;
+            if ( f.getLength().isPresent() )
+            {
+                lengths[i] = f.getLength().get();
+                fieldFlags |= HAS_LENGTH;
+            }
+            if ( f.getPrecision().isPresent() )
+            {
+                precisions[i] = f.getPrecision().get();
+                fieldFlags |= HAS_PRECISION;
+            }
+            if ( f.getFractionalDigits().isPresent() )
+            {
+                fractionalDigits[i] = f.getFractionalDigits().get();
+                fieldFlags |= HAS_FRACTIONAL_DIGITS;
+            }
+            if ( f.getRadix().isPresent() )
+            {
+                radixes[i] = f.getRadix().get();
+                fieldFlags |= HAS_RADIX;
+            }
+            if ( f.getNullable().isPresent() )
+                fieldFlags |= f.getNullable().get() ? HAS_NULLABLE | NULLABLE : HAS_NULLABLE;
+            if ( f.getPrimaryKeyPartNumber().isPresent() )
+            {
+                primaryKeyPartNumbers[i] = f.getPrimaryKeyPartNumber().get();
+                fieldFlags |= HAS_PRIMARY_KEY_PART_NUMBER;
+            }
+            flags[i] = (byte)fieldFlags;
+
+            if ( f.getComment().isPresent() )
+            {
+                if ( comments == null )
+                    comments = new String[count];
+                comments[i] = f.getComment().get();
+            }
+        }
+
+        this.comments = comments;
+    }
+
+    /// Return the given fields in compact form, or the fields themselves if they are already compact.
+    public static CompactFields of(List<Field> fields)
+    {
+        return of(fields, new HashMap<>());
+    }
+
+    /// Return the given fields in compact form, taking database type names from and adding them to the given map of
+    /// canonical names, which may be shared between relations.
+    static CompactFields of(List<Field> fields, Map<String, String> databaseTypeNames)
+    {
+        return fields instanceof CompactFields ? (CompactFields)fields : new CompactFields(fields, databaseTypeNames);
+    }
+
+    @Override
+    public Field get(int index)
+    {
+        if ( index < 0 || index >= names.length )
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + names.length);
+
+        return new FieldView(this, index);
+    }
+
+    @Override
+    public int size() { return names.length; }
+
+    private Optional<Integer> intIfFlagged(int[] values, int index, int flag)
+    {
+        return (flags[index] & flag) != 0 ? Optional.of(values[index]) : Optional.empty();
+    }
+
+    /// A field whose attributes are read from the arrays of its compact fields list.
+    private static final class FieldView extends Field
+    {
+        private final CompactFields fields;
+
+        private final int index;
+
+        FieldView(CompactFields fields, int index)
+        {
+            this.fields = fields;
+            this.index = index;
+        }
+
+        @Override
+        public String getName() { return fields.names[index]; }
+
+        @Override
+        public int getJdbcTypeCode() { return fields.jdbcTypeCodes[index]; }
+
+        @Override
+        public String getDatabaseType() { return fields.databaseTypes[index]; }
+
+        @Override
+        public Optional<Integer> getLength() { return fields.intIfFlagged(fields.lengths, index, HAS_LENGTH); }
+
+        @Override
+        public Optional<Integer> getFractionalDigits()
+        {
+            return fields.intIfFlagged(fields.fractionalDigits, index, HAS_FRACTIONAL_DIGITS);
+        }
+
+        @Override
+        public Optional<Integer> getRadix() { return fields.intIfFlagged(fields.radixes, index, HAS_RADIX); }
+
+        @Override
+        public Optional<Integer> getPrecision() { return fields.intIfFlagged(fields.precisions, index, HAS_PRECISION); }
+
+        @Override
+        public Optional<Boolean> getNullable()
+        {
+            int fieldFlags = fields.flags[index];
+            return (fieldFlags & HAS_NULLABLE) != 0 ? Optional.of((fieldFlags & NULLABLE) != 0) : Optional.empty();
+        }
+
+        @Override
+        public Optional<Integer> getPrimaryKeyPartNumber()
+        {
+            return fields.intIfFlagged(fields.primaryKeyPartNumbers, index, HAS_PRIMARY_KEY_PART_NUMBER);
+        }
+
+        @Override
+        public Optional<String> getComment()
+        {
+            return fields.comments != null ? Optional.ofNullable(fields.comments[index]) : Optional.empty();
+        }
+    }
+}
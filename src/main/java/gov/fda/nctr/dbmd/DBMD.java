@@ -1,13 +1,17 @@
 package gov.fda.nctr.dbmd;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.empty;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 import static gov.fda.nctr.dbmd.CaseSensitivity.INSENSITIVE_STORED_LOWER;
@@ -36,16 +40,15 @@ public class DBMD
 
     private int dbmsMinorVersion;
 
-    private static final Predicate<String> lc_ = Pattern.compile("^[a-z_]+$").asPredicate();
-    private static final Predicate<String> uc_ = Pattern.compile("^[A-Z_]+$").asPredicate();
-
     // derived data
-    // Access these only via methods of the same name, which make sure these fields are initialized.
-    private Map<RelId, RelMetadata> relMDsByRelId;
+    // These immutable indexes are built by the public constructor, or else on first access for instances that are
+    // deserialized or whose data is provided by a subclass. Access them only via the methods of the same name,
+    // which make sure they are initialized and safely published.
+    private volatile Map<RelId, RelMetadata> relMDsByRelId;
 
-    private Map<RelId, List<ForeignKey>> fksByParentRelId;
+    private volatile ForeignKeyIndexes fkIndexes;
 
-    private Map<RelId, List<ForeignKey>> fksByChildRelId;
+    private volatile NameMemos nameMemos;
 
     public enum ForeignKeyScope
     {
@@ -73,6 +76,28 @@ public class DBMD
         this.dbmsVersion = requireNonNull(dbmsVersion);
         this.dbmsMajorVersion = dbmsMajorVersion;
         this.dbmsMinorVersion = dbmsMinorVersion;
+        this.relMDsByRelId = makeRelMDsByRelId(this.relationMetadatas);
+        this.fkIndexes = new ForeignKeyIndexes(this.foreignKeys, this.relMDsByRelId::containsKey);
+    }
+
+    /// Construct with header information only, for subclasses which provide the relation metadatas and foreign keys
+    /// by overriding their accessor methods.
+    protected DBMD
+    (
+        Optional<String> schemaName,
+        CaseSensitivity caseSensitivity,
+        String dbmsName,
+        String dbmsVersion,
+        int dbmsMajorVersion,
+        int dbmsMinorVersion
+    )
+    {
+        this.schemaName = requireNonNull(schemaName);
+        this.caseSensitivity = requireNonNull(caseSensitivity);
+        this.dbmsName = requireNonNull(dbmsName);
+        this.dbmsVersion = requireNonNull(dbmsVersion);
+        this.dbmsMajorVersion = dbmsMajorVersion;
+        this.dbmsMinorVersion = dbmsMinorVersion;
     }
 
     protected DBMD() {}
@@ -81,6 +106,13 @@ public class DBMD
 
     public List<RelMetadata> getRelationMetadatas() { return relationMetadatas; }
 
+    /// Return the ids of all relations, in the sorted order of the relation metadatas.
+    @JsonIgnore
+    public List<RelId> getRelationIds()
+    {
+        return getRelationMetadatas().stream().map(RelMetadata::getRelationId).collect(toList());
+    }
+
     public List<ForeignKey> getForeignKeys() { return foreignKeys; }
 
     public CaseSensitivity getCaseSensitivity() { return caseSensitivity; }
@@ -94,6 +126,103 @@ public class DBMD
     public int getDbmsMinorVersion() { return dbmsMinorVersion; }
 
 
+    /// Write this metadata in the compact binary snapshot format, which can be read back via readBinary().
+    public void writeBinary(OutputStream os) throws IOException
+    {
+        DBMDBinaryFormat.write(this, os);
+    }
+
+    /// Read metadata written in the binary snapshot format by writeBinary().
+    public static DBMD readBinary(InputStream is) throws IOException
+    {
+        return DBMDBinaryFormat.read(is);
+    }
+
+    /// Merge metadata fetched separately for several schemas of one database into a single DBMD. Foreign keys
+    /// between the schemas are resolved in the result: each relation is represented by one relation id, which the
+    /// foreign keys referencing it share, and foreign keys to relations of any of the merged schemas are within the
+    /// registered tables scope. The result's schema name is that of the merged metadatas if they all have the same
+    /// one, and empty otherwise. IllegalArgumentException is thrown if the metadatas are from different databases
+    /// or have relations in common.
+    public static DBMD merge(List<DBMD> dbmds)
+    {
+        if ( dbmds.isEmpty() )
+            throw new IllegalArgumentException("At least one DBMD is required to merge.");
+
+        DBMD first = dbmds.get(0);
+
+        List<RelMetadata> relMds = new ArrayList<>();
+        for ( DBMD dbmd : dbmds )
+        {
+            if ( dbmd.getCaseSensitivity() != first.getCaseSensitivity() ||
+                 !dbmd.getDbmsName().equals(first.getDbmsName()) ||
+                 !dbmd.getDbmsVersion().equals(first.getDbmsVersion()) )
+                throw new IllegalArgumentException("Metadatas to be merged must be from the same database.");
+
+            relMds.addAll(dbmd.getRelationMetadatas());
+        }
+
+        RelIdInterner relIds = new RelIdInterner();
+        for ( RelMetadata relMd : relMds )
+        {
+            if ( relIds.intern(relMd.getRelationId()) != relMd.getRelationId() )
+                throw new IllegalArgumentException("Relation " + relMd.getRelationId() + " is in more than one metadata.");
+        }
+
+        List<ForeignKey> fks = new ArrayList<>();
+        for ( DBMD dbmd : dbmds )
+        {
+            for ( ForeignKey fk : dbmd.getForeignKeys() )
+            {
+                RelId srcRelId = relIds.intern(fk.getSourceRelationId());
+                RelId tgtRelId = relIds.intern(fk.getTargetRelationId());
+
+                if ( srcRelId == fk.getSourceRelationId() && tgtRelId == fk.getTargetRelationId() )
+                    fks.add(fk);
+                else
+                    fks.add(new ForeignKey(srcRelId, tgtRelId, fk.getForeignKeyComponents()));
+            }
+        }
+
+        boolean sameSchema = dbmds.stream().allMatch(dbmd -> dbmd.getSchemaName().equals(first.getSchemaName()));
+
+        return
+            new DBMD(
+                sameSchema ? first.getSchemaName() : Optional.empty(),
+                relMds,
+                fks,
+                first.getCaseSensitivity(),
+                first.getDbmsName(),
+                first.getDbmsVersion(),
+                first.getDbmsMajorVersion(),
+                first.getDbmsMinorVersion()
+            );
+    }
+
+    /// Return a copy of this metadata with the fields of each relation stored in compact columnar form, sharing
+    /// database type names between relations, for holding large metadata in memory. See CompactFields.
+    public DBMD withCompactFields()
+    {
+        Map<String, String> databaseTypeNames = new HashMap<>();
+
+        List<RelMetadata> relMds = new ArrayList<>(getRelationMetadatas().size());
+        for ( RelMetadata relMd : getRelationMetadatas() )
+            relMds.add(relMd.withCompactFields(databaseTypeNames));
+
+        return
+            new DBMD(
+                getSchemaName(),
+                relMds,
+                getForeignKeys(),
+                getCaseSensitivity(),
+                getDbmsName(),
+                getDbmsVersion(),
+                getDbmsMajorVersion(),
+                getDbmsMinorVersion()
+            );
+    }
+
+
     public Optional<RelMetadata> getRelationMetadata(RelId relId)
     {
         return Optional.ofNullable(relMDsByRelId().get(relId));
@@ -108,6 +237,24 @@ public class DBMD
         return getRelationMetadata(makeRelId(schema, relName));
     }
 
+    /// Return the metadata for a relation given its name as written in SQL, optionally schema qualified and in any
+    /// form that normalizes to the relation's name, with unqualified names taken to be in this DBMD's schema (see
+    /// makeRelId(String)). Results are memoized by the name as given, so a repeated lookup takes a single probe.
+    public Optional<RelMetadata> getRelationMetadata(String possiblySchemaQualifiedRelName)
+    {
+        NameMemo<Optional<RelMetadata>> memo = nameMemos().relationMetadatas;
+
+        Optional<RelMetadata> res = memo.get(possiblySchemaQualifiedRelName);
+
+        if ( res == null )
+        {
+            res = getRelationMetadata(makeRelId(possiblySchemaQualifiedRelName));
+            memo.put(possiblySchemaQualifiedRelName, res);
+        }
+
+        return res;
+    }
+
     public List<String> getFieldNames
     (
         RelId relId,
@@ -148,6 +295,20 @@ public class DBMD
         return getFieldNames(makeRelId(schema, relName), alias);
     }
 
+    /// Return the field of the given relation having the given name, which is normalized as by normalizeName().
+    public Optional<Field> getField
+    (
+        RelId relId,
+        String fieldName
+    )
+    {
+        RelMetadata relMd = getRelationMetadata(relId).orElseThrow(() ->
+            new IllegalArgumentException("Relation " + relId + " not found.")
+        );
+
+        return relMd.getField(normalizeName(fieldName));
+    }
+
     public List<String> getPrimaryKeyFieldNames
     (
         RelId relId,
@@ -234,32 +395,16 @@ public class DBMD
         ForeignKeyScope fkScope
     )
     {
-        List<ForeignKey> res = new ArrayList<>();
-
-        if ( !childRelId.isPresent() && !parentRelId.isPresent() )
-        {
-            res.addAll(foreignKeys);
-        }
-        else if ( childRelId.isPresent()  && parentRelId.isPresent() )
-        {
-            res.addAll(fksByChildRelId(childRelId.get()));
-            res.retainAll(fksByParentRelId(parentRelId.get()));
-        }
-        else
-            res.addAll(childRelId.map(this::fksByChildRelId).orElseGet(() -> fksByParentRelId(parentRelId.get())));
-
-        if ( fkScope == ForeignKeyScope.REGISTERED_TABLES_ONLY )
-        {
-            return
-                res.stream()
-                .filter(fk ->
-                    getRelationMetadata(fk.getSourceRelationId()).isPresent() &&
-                    getRelationMetadata(fk.getTargetRelationId()).isPresent()
-                )
-                .collect(toList());
-        }
+        ScopedForeignKeys fks = fkIndexes().forScope(fkScope);
+
+        if ( childRelId.isPresent() && parentRelId.isPresent() )
+            return fks.fromTo(childRelId.get(), parentRelId.get());
+        else if ( childRelId.isPresent() )
+            return fks.from(childRelId.get());
+        else if ( parentRelId.isPresent() )
+            return fks.to(parentRelId.get());
         else
-            return res;
+            return fks.all;
     }
 
     public List<ForeignKey> getForeignKeysFromTo
@@ -288,14 +433,11 @@ public class DBMD
         ForeignKeyScope fkScope
     )
     {
-        Optional<RelId> fromRel = Optional.of(fromRelId);
-        Optional<RelId> toRel = Optional.of(toRelId);
-
         Optional<Set<String>> normdFkFieldNames = fieldNames.map(this::normalizeNames);
 
         ForeignKey soughtFk = null;
 
-        for ( ForeignKey fk : getForeignKeysFromTo(fromRel, toRel, fkScope) )
+        for ( ForeignKey fk : fkIndexes().forScope(fkScope).fromTo(fromRelId, toRelId) )
         {
             if ( !normdFkFieldNames.isPresent() ||
                  fk.sourceFieldNamesSetEqualsNormalizedNamesSet(normdFkFieldNames.get()) )
@@ -315,6 +457,33 @@ public class DBMD
         return Optional.ofNullable(soughtFk);
     }
 
+    /// Return the graph of the foreign keys in the given scope, for finding join paths between relations. The graph
+    /// is built on first request for the scope and shared thereafter.
+    public ForeignKeyGraph getForeignKeyGraph(ForeignKeyScope fkScope)
+    {
+        return fkIndexes().forScope(fkScope).graph();
+    }
+
+    @JsonIgnore
+    public ForeignKeyGraph getForeignKeyGraph()
+    {
+        return getForeignKeyGraph(ForeignKeyScope.REGISTERED_TABLES_ONLY);
+    }
+
+    /// Return the dependencies between relations established by the foreign keys in the given scope, ordering the
+    /// relations for loading and unloading data. The ordering is computed on first request for the scope and shared
+    /// thereafter.
+    public RelationDependencies getRelationDependencies(ForeignKeyScope fkScope)
+    {
+        return fkIndexes().forScope(fkScope).dependencies(this::getRelationIds);
+    }
+
+    @JsonIgnore
+    public RelationDependencies getRelationDependencies()
+    {
+        return getRelationDependencies(ForeignKeyScope.REGISTERED_TABLES_ONLY);
+    }
+
     /** Return the field names in the passed table involved in foreign keys (to parents). */
     public Set<String> getForeignKeyFieldNames
     (
@@ -374,11 +543,50 @@ public class DBMD
     /////////////////////////////////////////////////////////
     // Sorting for deterministic output
 
+    /// Order of the relation metadatas of a DBMD, by relation id string.
+    static final Comparator<RelMetadata> RELATION_METADATA_ORDER =
+        (rmd1, rmd2) -> compareIdStrings(rmd1.getRelationId(), rmd2.getRelationId());
+
+    /// Order of the foreign keys of a DBMD, by source and target relation names and source and target field names.
+    static final Comparator<ForeignKey> FOREIGN_KEY_ORDER = (fk1, fk2) -> {
+        int srcRelComp = compareIdStrings(fk1.getSourceRelationId(), fk2.getSourceRelationId());
+        if (srcRelComp != 0)
+            return srcRelComp;
+
+        int tgtRelComp = compareIdStrings(fk1.getTargetRelationId(), fk2.getTargetRelationId());
+        if (tgtRelComp != 0)
+            return tgtRelComp;
+
+        List<ForeignKey.Component> comps1 = fk1.getForeignKeyComponents();
+        List<ForeignKey.Component> comps2 = fk2.getForeignKeyComponents();
+        int commonCount = Math.min(comps1.size(), comps2.size());
+
+        for (int i = 0; i < commonCount; ++i)
+        {
+            int comp = comps1.get(i).getForeignKeyFieldName().compareTo(comps2.get(i).getForeignKeyFieldName());
+            if (comp != 0)
+                return comp;
+        }
+
+        int srcFieldsCountComp = Integer.compare(comps1.size(), comps2.size());
+        if (srcFieldsCountComp != 0)
+            return srcFieldsCountComp;
+
+        for (int i = 0; i < commonCount; ++i)
+        {
+            int comp = comps1.get(i).getPrimaryKeyFieldName().compareTo(comps2.get(i).getPrimaryKeyFieldName());
+            if (comp != 0)
+                return comp;
+        }
+
+        return 0;
+    };
+
     private static List<RelMetadata> sortedMds(List<RelMetadata> relMds)
     {
         List<RelMetadata> rmds = new ArrayList<>(relMds);
 
-        rmds.sort(Comparator.comparing(rmd -> rmd.getRelationId().getIdString()));
+        rmds.sort(RELATION_METADATA_ORDER);
 
         return Collections.unmodifiableList(rmds);
     }
@@ -390,42 +598,15 @@ public class DBMD
     {
         List<ForeignKey> fks = new ArrayList<>(foreignKeys);
 
-        fks.sort((fk1, fk2) -> {
-            int srcRelComp = fk1.getSourceRelationId().getIdString().compareTo(fk2.getSourceRelationId().getIdString());
-            if (srcRelComp != 0)
-                return srcRelComp;
-
-            int tgtRelComp = fk1.getTargetRelationId().getIdString().compareTo(fk2.getTargetRelationId().getIdString());
-            if (tgtRelComp != 0)
-                return tgtRelComp;
-
-            int srcFieldsComp = compareStringListsLexicographically(fk1.getSourceFieldNames(), fk2.getSourceFieldNames());
-
-            if (srcFieldsComp != 0)
-                return srcFieldsComp;
-            else
-                return compareStringListsLexicographically(fk1.getTargetFieldNames(), fk2.getTargetFieldNames());
-        });
+        fks.sort(FOREIGN_KEY_ORDER);
 
         return Collections.unmodifiableList(fks);
     }
 
-    private static int compareStringListsLexicographically
-    (
-        List<String> strs1,
-        List<String> strs2
-    )
+    /// Compare the id strings of the given relation ids, which each relation id computes only once.
+    private static int compareIdStrings(RelId relId1, RelId relId2)
     {
-        int commonCount = Math.min(strs1.size(), strs2.size());
-
-        for (int i = 0; i < commonCount; ++i)
-        {
-            int comp = strs1.get(i).compareTo(strs2.get(i));
-            if (comp != 0)
-                return comp;
-        }
-
-        return Integer.compare(strs1.size(), strs2.size());
+        return relId1 == relId2 ? 0 : relId1.getIdString().compareTo(relId2.getIdString());
     }
 
     // Sorting for deterministic output
@@ -437,49 +618,262 @@ public class DBMD
 
     private Map<RelId, RelMetadata> relMDsByRelId()
     {
-        if ( relMDsByRelId == null )
-            initDerivedData();
+        Map<RelId, RelMetadata> res = relMDsByRelId;
 
-        return relMDsByRelId;
+        if ( res == null )
+        {
+            synchronized (this)
+            {
+                res = relMDsByRelId;
+                if ( res == null )
+                    relMDsByRelId = res = makeRelMDsByRelId(getRelationMetadatas());
+            }
+        }
+
+        return res;
     }
 
-    private List<ForeignKey> fksByParentRelId(RelId relId)
+    private ForeignKeyIndexes fkIndexes()
     {
-        if ( fksByParentRelId == null )
-            initDerivedData();
+        ForeignKeyIndexes res = fkIndexes;
+
+        if ( res == null )
+        {
+            synchronized (this)
+            {
+                res = fkIndexes;
+                if ( res == null )
+                    fkIndexes = res = new ForeignKeyIndexes(getForeignKeys(), this::hasRelationMetadata);
+            }
+        }
 
-        List<ForeignKey> fks = fksByParentRelId.get(relId);
-        return fks != null ? fks : Collections.emptyList();
+        return res;
     }
 
-    private List<ForeignKey> fksByChildRelId(RelId relId)
+    private NameMemos nameMemos()
     {
-        if ( fksByChildRelId == null )
-            initDerivedData();
+        NameMemos res = nameMemos;
+
+        if ( res == null )
+        {
+            synchronized (this)
+            {
+                res = nameMemos;
+                if ( res == null )
+                    nameMemos = res = new NameMemos();
+            }
+        }
+
+        return res;
+    }
 
-        List<ForeignKey> fks = fksByChildRelId.get(relId);
-        return fks != null ? fks : Collections.emptyList();
+    /// Whether metadata for the given relation is registered in this DBMD. Subclasses may override this to avoid
+    /// materializing relation metadatas.
+    protected boolean hasRelationMetadata(RelId relId)
+    {
+        return relMDsByRelId().containsKey(relId);
     }
 
-    private void initDerivedData()
+    private static Map<RelId, RelMetadata> makeRelMDsByRelId(List<RelMetadata> relMds)
     {
-        relMDsByRelId = new HashMap<>();
-        fksByParentRelId = new HashMap<>();
-        fksByChildRelId = new HashMap<>();
+        Map<RelId, RelMetadata> relMDsByRelId = new HashMap<>(hashCapacity(relMds.size()));
 
-        for ( RelMetadata relMd : relationMetadatas)
+        for ( RelMetadata relMd : relMds )
             relMDsByRelId.put(relMd.getRelationId(), relMd);
 
-        for (ForeignKey fk : foreignKeys)
+        return Collections.unmodifiableMap(relMDsByRelId);
+    }
+
+    // Return a hash map initial capacity sufficient to hold the given number of entries without rehashing.
+    private static int hashCapacity(int entries)
+    {
+        return (int)(entries / 0.75f) + 1;
+    }
+
+    /// Memoized results of the name manipulation methods, which depend only on the name and this DBMD's contents.
+    private static final class NameMemos
+    {
+        final NameMemo<String> normalizedNames = new NameMemo<>(1024);
+
+        final NameMemo<String> quotedNames = new NameMemo<>(1024);
+
+        final NameMemo<Optional<RelMetadata>> relationMetadatas = new NameMemo<>(4096);
+    }
+
+    /// A bounded memo of values by name, safe for concurrent use without locking. It is direct-mapped: each name has
+    /// a single slot, where a newly memoized value replaces any other. Entries are immutable, so a reader sees either
+    /// a complete entry or none, and a lost update only costs recomputing a value.
+    private static final class NameMemo<V>
+    {
+        private final Entry<V>[] slots;
+
+        @SuppressWarnings("unchecked")
+        NameMemo(int capacity) // a power of two
+        {
+            slots = (Entry<V>[])new Entry<?>[capacity];
+        }
+
+        /// Return the value memoized for the name, or null if none is.
+        V get(String name)
+        {
+            Entry<V> e = slots[slot(name)];
+            return e != null && e.name.equals(name) ? e.value : null;
+        }
+
+        void put(String name, V value)
+        {
+            slots[slot(name)] = new Entry<>(name, value);
+        }
+
+        private int slot(String name)
+        {
+            int h = name.hashCode();
+            return (h ^ (h >>> 16)) & (slots.length - 1);
+        }
+
+        private static final class Entry<V>
+        {
+            final String name;
+            final V value;
+
+            Entry(String name, V value)
+            {
+                this.name = name;
+                this.value = value;
+            }
+        }
+    }
+
+    /// Immutable foreign key indexes for each foreign key scope, safe to share between threads once published.
+    private static final class ForeignKeyIndexes
+    {
+        final ScopedForeignKeys allTables;
+
+        final ScopedForeignKeys registeredTables;
+
+        ForeignKeyIndexes
+        (
+            List<ForeignKey> foreignKeys,
+            Predicate<RelId> isRegisteredRelation
+        )
+        {
+            List<ForeignKey> registeredFks = new ArrayList<>(foreignKeys.size());
+            for ( ForeignKey fk : foreignKeys )
+            {
+                if ( isRegisteredRelation.test(fk.getSourceRelationId()) &&
+                     isRegisteredRelation.test(fk.getTargetRelationId()) )
+                    registeredFks.add(fk);
+            }
+
+            this.allTables = new ScopedForeignKeys(foreignKeys);
+            this.registeredTables =
+                registeredFks.size() == foreignKeys.size() ? allTables : new ScopedForeignKeys(registeredFks);
+        }
+
+        ScopedForeignKeys forScope(ForeignKeyScope fkScope)
+        {
+            return fkScope == ForeignKeyScope.REGISTERED_TABLES_ONLY ? registeredTables : allTables;
+        }
+    }
+
+    /// Foreign keys within a scope, indexed by child, by parent, and by child and parent together. All lists are
+    /// immutable and in the sorted order of the foreign keys.
+    private static final class ScopedForeignKeys
+    {
+        final List<ForeignKey> all;
+
+        private final Map<RelId, List<ForeignKey>> byChild;
+
+        private final Map<RelId, List<ForeignKey>> byParent;
+
+        private final Map<RelId, Map<RelId, List<ForeignKey>>> byChildThenParent;
+
+        private volatile ForeignKeyGraph graph;
+
+        private volatile RelationDependencies dependencies;
+
+        ScopedForeignKeys(List<ForeignKey> fks)
+        {
+            Map<RelId, List<ForeignKey>> byChild = new HashMap<>(hashCapacity(fks.size()));
+            Map<RelId, List<ForeignKey>> byParent = new HashMap<>(hashCapacity(fks.size()));
+            Map<RelId, Map<RelId, List<ForeignKey>>> byChildThenParent = new HashMap<>(hashCapacity(fks.size()));
+
+            for ( ForeignKey fk : fks )
+            {
+                RelId srcRelId = fk.getSourceRelationId();
+                RelId tgtRelId = fk.getTargetRelationId();
+
+                byChild.computeIfAbsent(srcRelId, k -> new ArrayList<>(2)).add(fk);
+                byParent.computeIfAbsent(tgtRelId, k -> new ArrayList<>(2)).add(fk);
+                byChildThenParent.computeIfAbsent(srcRelId, k -> new HashMap<>(4))
+                    .computeIfAbsent(tgtRelId, k -> new ArrayList<>(1)).add(fk);
+            }
+
+            byChildThenParent.replaceAll((child, fksByParent) -> immutableListsMap(fksByParent));
+
+            this.all = Collections.unmodifiableList(fks);
+            this.byChild = immutableListsMap(byChild);
+            this.byParent = immutableListsMap(byParent);
+            this.byChildThenParent = Collections.unmodifiableMap(byChildThenParent);
+        }
+
+        List<ForeignKey> from(RelId childRelId)
+        {
+            List<ForeignKey> fks = byChild.get(childRelId);
+            return fks != null ? fks : Collections.emptyList();
+        }
+
+        List<ForeignKey> to(RelId parentRelId)
+        {
+            List<ForeignKey> fks = byParent.get(parentRelId);
+            return fks != null ? fks : Collections.emptyList();
+        }
+
+        List<ForeignKey> fromTo(RelId childRelId, RelId parentRelId)
+        {
+            Map<RelId, List<ForeignKey>> fksByParent = byChildThenParent.get(childRelId);
+            List<ForeignKey> fks = fksByParent != null ? fksByParent.get(parentRelId) : null;
+            return fks != null ? fks : Collections.emptyList();
+        }
+
+        ForeignKeyGraph graph()
+        {
+            ForeignKeyGraph res = graph;
+
+            if ( res == null )
+            {
+                synchronized (this)
+                {
+                    res = graph;
+                    if ( res == null )
+                        graph = res = new ForeignKeyGraph(all);
+                }
+            }
+
+            return res;
+        }
+
+        RelationDependencies dependencies(Supplier<List<RelId>> relIds)
         {
-            RelId srcRelId = fk.getSourceRelationId();
-            RelId tgtRelId = fk.getTargetRelationId();
+            RelationDependencies res = dependencies;
+
+            if ( res == null )
+            {
+                synchronized (this)
+                {
+                    res = dependencies;
+                    if ( res == null )
+                        dependencies = res = new RelationDependencies(relIds.get(), all);
+                }
+            }
 
-            List<ForeignKey> fksFromChild = fksByChildRelId.computeIfAbsent(srcRelId, k -> new ArrayList<>());
-            fksFromChild.add(fk);
+            return res;
+        }
 
-            List<ForeignKey> fksToParent = fksByParentRelId.computeIfAbsent(tgtRelId, k -> new ArrayList<>());
-            fksToParent.add(fk);
+        private static <V> Map<RelId, List<V>> immutableListsMap(Map<RelId, List<V>> m)
+        {
+            m.replaceAll((relId, vs) -> Collections.unmodifiableList(vs));
+            return Collections.unmodifiableMap(m);
         }
     }
 
@@ -492,37 +886,83 @@ public class DBMD
     /// Quote a database identifier only if it would be interpreted differently if quoted.
     public String quoteIfNeeded(String id)
     {
-        if ( id.startsWith("\"") && id.endsWith("\"") )
-            return id;
-        if ( caseSensitivity == INSENSITIVE_STORED_LOWER && lc_.test(id) )
+        if ( isQuoted(id) || isStoredForm(id, 0, id.length()) )
             return id;
-        if ( caseSensitivity == INSENSITIVE_STORED_UPPER && uc_.test(id) )
-            return id;
-        return "\"" + id + "\"";
+
+        NameMemo<String> memo = nameMemos().quotedNames;
+
+        String res = memo.get(id);
+
+        if ( res == null )
+        {
+            res = "\"" + id + "\"";
+            memo.put(id, res);
+        }
+
+        return res;
     }
 
     // Normalize a database object name.
     public String normalizeName(String id)
     {
-        if ( id.startsWith("\"") && id.endsWith("\"") )
+        if ( isQuoted(id) )
         {
             // If the quotes can be removed without changing the final identifier
             // as  interpreted by the database, then return the unquoted form.
-            String unquotedId = id.substring(1, id.length()-1);
-            if ( caseSensitivity == INSENSITIVE_STORED_LOWER && lc_.test(unquotedId) )
-                return unquotedId;
-            if ( caseSensitivity == INSENSITIVE_STORED_UPPER && uc_.test(unquotedId) )
-                return unquotedId;
+            if ( isStoredForm(id, 1, id.length() - 1) )
+                return memoizedNormalizedName(id, () -> id.substring(1, id.length() - 1));
             return id;
         }
         else if ( caseSensitivity == INSENSITIVE_STORED_LOWER )
-            return id.toLowerCase();
+            return isStoredForm(id, 0, id.length()) ? id : memoizedNormalizedName(id, id::toLowerCase);
         else if ( caseSensitivity == INSENSITIVE_STORED_UPPER )
-            return id.toUpperCase();
+            return isStoredForm(id, 0, id.length()) ? id : memoizedNormalizedName(id, id::toUpperCase);
         else
             return id;
     }
 
+    private String memoizedNormalizedName(String id, Supplier<String> normalize)
+    {
+        NameMemo<String> memo = nameMemos().normalizedNames;
+
+        String res = memo.get(id);
+
+        if ( res == null )
+        {
+            res = normalize.get();
+            memo.put(id, res);
+        }
+
+        return res;
+    }
+
+    private static boolean isQuoted(String id)
+    {
+        return !id.isEmpty() && id.charAt(0) == '"' && id.charAt(id.length() - 1) == '"';
+    }
+
+    /// Whether the characters of the identifier in the given range are nonempty and consist only of underscores and
+    /// letters in the case in which the database stores unquoted identifiers, so that quoting them has no effect.
+    private boolean isStoredForm(String id, int from, int to)
+    {
+        char lo, hi;
+        if ( caseSensitivity == INSENSITIVE_STORED_LOWER ) { lo = 'a'; hi = 'z'; }
+        else if ( caseSensitivity == INSENSITIVE_STORED_UPPER ) { lo = 'A'; hi = 'Z'; }
+        else return false;
+
+        if ( from >= to )
+            return false;
+
+        for ( int i = from; i < to; ++i )
+        {
+            char c = id.charAt(i);
+            if ( (c < lo || c > hi) && c != '_' )
+                return false;
+        }
+
+        return true;
+    }
+
     private Set<String> normalizeNames(Set<String> names)
     {
         return names.stream().map(this::normalizeName).collect(toSet());
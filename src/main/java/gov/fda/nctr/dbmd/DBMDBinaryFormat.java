@@ -0,0 +1,467 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import gov.fda.nctr.dbmd.RelMetadata.RelType;
+
+
+/// Compact binary serialization of DBMD instances.
+///
+/// Layout (all integers are unsigned LEB128 varints, signed values zigzag encoded):
+///   magic "DBMD", format version byte
+///   string table: count, then for each string its UTF-8 byte length and bytes
+///   header: schema name, case sensitivity ordinal, dbms name, dbms version, dbms major and minor versions
+///   relation count, then an index entry for each relation: schema, name, byte length of the relation's record
+///   relation records: relation type ordinal, comment, field count, fields
+///   foreign key count, foreign keys: source schema and name, target schema and name, component count, components
+///
+/// Strings are written as indexes into the string table, so repeated names are stored once. Optional and nullable
+/// values are written as 0 when absent and as the value (or string index) plus one when present. The index
+/// entries and record lengths allow the relation records to be located without decoding them.
+final class DBMDBinaryFormat
+{
+    static final byte[] MAGIC = { 'D', 'B', 'M', 'D' };
+
+    static final int FORMAT_VERSION = 1;
+
+    private DBMDBinaryFormat() {}
+
+    static void write(DBMD dbmd, OutputStream os) throws IOException
+    {
+        StringTable strings = new StringTable();
+
+        // Encode the relation records and foreign keys first to build the string table.
+        List<byte[]> relRecords = new ArrayList<>(dbmd.getRelationMetadatas().size());
+        Encoder recEnc = new Encoder(strings);
+        for ( RelMetadata relMd : dbmd.getRelationMetadatas() )
+        {
+            recEnc.reset();
+            writeRelationRecord(relMd, recEnc);
+            relRecords.add(recEnc.toByteArray());
+        }
+
+        Encoder fksEnc = new Encoder(strings);
+        fksEnc.writeVarint(dbmd.getForeignKeys().size());
+        for ( ForeignKey fk : dbmd.getForeignKeys() )
+            writeForeignKey(fk, fksEnc);
+
+        Encoder headEnc = new Encoder(strings);
+        headEnc.writeOptString(dbmd.getSchemaName());
+        headEnc.writeVarint(dbmd.getCaseSensitivity().ordinal());
+        headEnc.writeString(dbmd.getDbmsName());
+        headEnc.writeString(dbmd.getDbmsVersion());
+        headEnc.writeSignedVarint(dbmd.getDbmsMajorVersion());
+        headEnc.writeSignedVarint(dbmd.getDbmsMinorVersion());
+        headEnc.writeVarint(relRecords.size());
+        for ( int i = 0; i < relRecords.size(); ++i )
+        {
+            RelId relId = dbmd.getRelationMetadatas().get(i).getRelationId();
+            headEnc.writeOptString(relId.getSchema());
+            headEnc.writeString(relId.getName());
+            headEnc.writeVarint(relRecords.get(i).length);
+        }
+
+        Encoder stringsEnc = new Encoder(strings);
+        stringsEnc.writeVarint(strings.size());
+        for ( String s : strings.strings() )
+        {
+            byte[] bytes = s.getBytes(UTF_8);
+            stringsEnc.writeVarint(bytes.length);
+            stringsEnc.write(bytes);
+        }
+
+        os.write(MAGIC);
+        os.write(FORMAT_VERSION);
+        stringsEnc.writeTo(os);
+        headEnc.writeTo(os);
+        for ( byte[] relRecord : relRecords )
+            os.write(relRecord);
+        fksEnc.writeTo(os);
+        os.flush();
+    }
+
+    static DBMD read(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1 << 16);
+        byte[] buf = new byte[1 << 16];
+        int n;
+        while ( (n = is.read(buf)) != -1 )
+            baos.write(buf, 0, n);
+
+        return read(ByteBuffer.wrap(baos.toByteArray()));
+    }
+
+    static DBMD read(ByteBuffer buf) throws IOException
+    {
+        try
+        {
+            Contents contents = readContents(buf);
+
+            List<RelMetadata> relMds = new ArrayList<>(contents.relIds.size());
+            for ( RelId relId : contents.relIds )
+                relMds.add(readRelationRecord(relId, contents.decoder));
+
+            List<ForeignKey> fks = readForeignKeys(contents.decoder, contents.relIds);
+
+            return
+                new DBMD(
+                    contents.schemaName,
+                    relMds,
+                    fks,
+                    contents.caseSensitivity,
+                    contents.dbmsName,
+                    contents.dbmsVersion,
+                    contents.dbmsMajorVersion,
+                    contents.dbmsMinorVersion
+                );
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e)
+        {
+            throw new IOException("Invalid or truncated DBMD binary data.", e);
+        }
+    }
+
+    /// Read the magic number, the locations of the strings in the string table, the header and the relation index,
+    /// leaving the decoder positioned at the start of the relation records.
+    static Contents readContents(ByteBuffer buf) throws IOException
+    {
+        for ( byte b : MAGIC )
+        {
+            if ( buf.remaining() == 0 || buf.get() != b )
+                throw new IOException("Data is not in DBMD binary format.");
+        }
+
+        int version = buf.get();
+        if ( version != FORMAT_VERSION )
+            throw new IOException("Unsupported DBMD binary format version " + version + ".");
+
+        // Only the locations of the strings are read here, the strings being decoded on first use.
+        int stringCount = readCount(buf);
+        int[] offsets = new int[stringCount];
+        int[] lengths = new int[stringCount];
+        for ( int i = 0; i < stringCount; ++i )
+        {
+            lengths[i] = readCount(buf);
+            offsets[i] = buf.position();
+            buf.position(offsets[i] + lengths[i]);
+        }
+
+        Strings strings = new Strings(buf, offsets, lengths);
+
+        Decoder dec = new Decoder(buf, strings);
+
+        Contents contents = new Contents();
+        contents.decoder = dec;
+        contents.schemaName = dec.readOptString();
+        contents.caseSensitivity = CaseSensitivity.values()[dec.readVarint()];
+        contents.dbmsName = dec.readString();
+        contents.dbmsVersion = dec.readString();
+        contents.dbmsMajorVersion = dec.readSignedVarint();
+        contents.dbmsMinorVersion = dec.readSignedVarint();
+
+        int relCount = readCount(dec.buf);
+        contents.relIds = new ArrayList<>(relCount);
+        contents.relRecordLengths = new int[relCount];
+        for ( int i = 0; i < relCount; ++i )
+        {
+            contents.relIds.add(new RelId(dec.readOptString(), dec.readString()));
+            contents.relRecordLengths[i] = dec.readVarint();
+        }
+
+        return contents;
+    }
+
+    // Read a count of items or bytes which each take at least one byte of the remaining data, so that a corrupt
+    // count cannot cause a negative or oversized allocation.
+    private static int readCount(ByteBuffer buf) throws IOException
+    {
+        int count = readVarint(buf);
+        if ( count < 0 || count > buf.remaining() )
+            throw new IOException("Invalid or truncated DBMD binary data.");
+        return count;
+    }
+
+    static RelMetadata readRelationRecord(RelId relId, Decoder dec)
+    {
+        RelType relType = RelType.values()[dec.readVarint()];
+        Optional<String> comment = dec.readOptString();
+
+        int fieldCount = dec.readCount();
+        List<Field> fields = new ArrayList<>(fieldCount);
+        for ( int i = 0; i < fieldCount; ++i )
+        {
+            String name = dec.readString();
+            int jdbcTypeCode = dec.readSignedVarint();
+            String databaseType = dec.readString();
+            Optional<Integer> length = dec.readOptInt();
+            Optional<Integer> precision = dec.readOptInt();
+            Optional<Integer> fractionalDigits = dec.readOptInt();
+            Optional<Integer> radix = dec.readOptInt();
+            Optional<Boolean> nullable = dec.readOptBoolean();
+            Optional<Integer> pkPartNum = dec.readOptInt();
+            Optional<String> fieldComment = dec.readOptString();
+
+            fields.add(
+                new Field(name, jdbcTypeCode, databaseType, length, precision, fractionalDigits, radix, nullable,
+                          pkPartNum, fieldComment)
+            );
+        }
+
+        return new RelMetadata(relId, relType, comment, fields);
+    }
+
+    /// Read the foreign keys, sharing the given relation ids where they are referenced.
+    static List<ForeignKey> readForeignKeys(Decoder dec, List<RelId> relIds)
+    {
+        RelIdInterner interner = new RelIdInterner(relIds);
+
+        int fkCount = dec.readCount();
+        List<ForeignKey> fks = new ArrayList<>(fkCount);
+        for ( int i = 0; i < fkCount; ++i )
+        {
+            RelId srcRelId = interner.intern(dec.readOptString().orElse(null), dec.readString());
+            RelId tgtRelId = interner.intern(dec.readOptString().orElse(null), dec.readString());
+
+            int compCount = dec.readCount();
+            List<ForeignKey.Component> comps = new ArrayList<>(compCount);
+            for ( int j = 0; j < compCount; ++j )
+                comps.add(new ForeignKey.Component(dec.readNullableString(), dec.readNullableString()));
+
+            fks.add(new ForeignKey(srcRelId, tgtRelId, comps));
+        }
+        return fks;
+    }
+
+    private static void writeRelationRecord(RelMetadata relMd, Encoder enc)
+    {
+        enc.writeVarint(relMd.getRelationType().ordinal());
+        enc.writeOptString(relMd.getRelationComment());
+
+        enc.writeVarint(relMd.getFields().size());
+        for ( Field f : relMd.getFields() )
+        {
+            enc.writeString(f.getName());
+            enc.writeSignedVarint(f.getJdbcTypeCode());
+            enc.writeString(f.getDatabaseType());
+            enc.writeOptInt(f.getLength());
+            enc.writeOptInt(f.getPrecision());
+            enc.writeOptInt(f.getFractionalDigits());
+            enc.writeOptInt(f.getRadix());
+            enc.writeVarint(f.getNullable().map(b -> b ? 2 : 1).orElse(0));
+            enc.writeOptInt(f.getPrimaryKeyPartNumber());
+            enc.writeOptString(f.getComment());
+        }
+    }
+
+    private static void writeForeignKey(ForeignKey fk, Encoder enc)
+    {
+        enc.writeOptString(fk.getSourceRelationId().getSchema());
+        enc.writeString(fk.getSourceRelationId().getName());
+        enc.writeOptString(fk.getTargetRelationId().getSchema());
+        enc.writeString(fk.getTargetRelationId().getName());
+
+        enc.writeVarint(fk.getForeignKeyComponents().size());
+        for ( ForeignKey.Component comp : fk.getForeignKeyComponents() )
+        {
+            enc.writeNullableString(comp.getForeignKeyFieldName());
+            enc.writeNullableString(comp.getPrimaryKeyFieldName());
+        }
+    }
+
+    static int readVarint(ByteBuffer buf)
+    {
+        int value = 0;
+        for ( int shift = 0; shift < 35; shift += 7 )
+        {
+            byte b = buf.get();
+            value |= (b & 0x7f) << shift;
+            if ( (b & 0x80) == 0 )
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+
+
+    /// Header information and relation index read from the start of the data.
+    static final class Contents
+    {
+        Decoder decoder;
+        Optional<String> schemaName;
+        CaseSensitivity caseSensitivity;
+        String dbmsName;
+        String dbmsVersion;
+        int dbmsMajorVersion;
+        int dbmsMinorVersion;
+        List<RelId> relIds;
+        int[] relRecordLengths;
+    }
+
+    private static final class StringTable
+    {
+        private final Map<String,Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int indexOf(String s)
+        {
+            Integer ix = indexes.get(s);
+            if ( ix == null )
+            {
+                ix = strings.size();
+                indexes.put(s, ix);
+                strings.add(s);
+            }
+            return ix;
+        }
+
+        int size() { return strings.size(); }
+
+        List<String> strings() { return strings; }
+    }
+
+    private static final class Encoder extends ByteArrayOutputStream
+    {
+        private final StringTable strings;
+
+        Encoder(StringTable strings)
+        {
+            super(256);
+            this.strings = strings;
+        }
+
+        void writeVarint(int value)
+        {
+            while ( (value & ~0x7f) != 0 )
+            {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeSignedVarint(int value) { writeVarint((value << 1) ^ (value >> 31)); }
+
+        void writeOptInt(Optional<Integer> value)
+        {
+            // Zigzag value plus one, with zero reserved for absence.
+            writeVarint(value.map(v -> ((v << 1) ^ (v >> 31)) + 1).orElse(0));
+        }
+
+        void writeString(String s) { writeVarint(strings.indexOf(s)); }
+
+        void writeNullableString(String s) { writeVarint(s == null ? 0 : strings.indexOf(s) + 1); }
+
+        void writeOptString(Optional<String> s) { writeNullableString(s.orElse(null)); }
+    }
+
+    /// The string table of binary data, whose strings are decoded when first read. Each decoded string is retained
+    /// in its slot, so that all reads of a string table entry share one instance.
+    static final class Strings
+    {
+        private final ByteBuffer buf;
+
+        private final int[] offsets;
+
+        private final int[] lengths;
+
+        // Slots are filled without synchronization, which may cause a string to be decoded more than once by racing
+        // threads, but strings are immutable and so are safely published through the array.
+        private final String[] decoded;
+
+        Strings(ByteBuffer buf, int[] offsets, int[] lengths)
+        {
+            this.buf = buf;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.decoded = new String[offsets.length];
+        }
+
+        String get(int ix)
+        {
+            String s = decoded[ix];
+
+            if ( s == null )
+                decoded[ix] = s = decode(ix);
+
+            return s;
+        }
+
+        private String decode(int ix)
+        {
+            if ( buf.hasArray() )
+                return new String(buf.array(), buf.arrayOffset() + offsets[ix], lengths[ix], UTF_8);
+
+            ByteBuffer dup = buf.duplicate();
+            dup.position(offsets[ix]);
+            byte[] bytes = new byte[lengths[ix]];
+            dup.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+
+    static final class Decoder
+    {
+        final ByteBuffer buf;
+        private final Strings strings;
+
+        Decoder(ByteBuffer buf, Strings strings)
+        {
+            this.buf = buf;
+            this.strings = strings;
+        }
+
+        /// Return a new decoder sharing this decoder's data and string table, positioned independently at the
+        /// given position.
+        Decoder at(int position)
+        {
+            ByteBuffer dup = buf.duplicate();
+            dup.position(position);
+            return new Decoder(dup, strings);
+        }
+
+        int readVarint() { return DBMDBinaryFormat.readVarint(buf); }
+
+        /// Read a count of items which each take at least one byte of the remaining data.
+        int readCount()
+        {
+            int count = readVarint();
+            if ( count < 0 || count > buf.remaining() )
+                throw new IllegalArgumentException("Invalid item count " + count + ".");
+            return count;
+        }
+
+        int readSignedVarint()
+        {
+            int v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        Optional<Integer> readOptInt()
+        {
+            int v = readVarint();
+            if ( v == 0 )
+                return Optional.empty();
+            v -= 1;
+            return Optional.of((v >>> 1) ^ -(v & 1));
+        }
+
+        Optional<Boolean> readOptBoolean()
+        {
+            int v = readVarint();
+            return v == 0 ? Optional.empty() : Optional.of(v == 2);
+        }
+
+        String readString() { return strings.get(readVarint()); }
+
+        String readNullableString()
+        {
+            int v = readVarint();
+            return v == 0 ? null : strings.get(v - 1);
+        }
+
+        Optional<String> readOptString() { return Optional.ofNullable(readNullableString()); }
+    }
+}
@@ -0,0 +1,400 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import static java.util.Objects.requireNonNull;
+
+
+/// An in-process cache of metadata shared by the threads of an application, holding one DBMD for each data source,
+/// schema, include options and exclusion pattern requested. Data sources are distinguished by identity.
+///
+/// Concurrent requests for metadata which is not yet cached are served by a single fetch. Once metadata is cached,
+/// requests for it return immediately: when the metadata is older than the refresh age, a request starts a refresh
+/// in the background and is answered with the current metadata, which is replaced when the refresh completes. Refreshes
+/// are incremental where the fetcher's catalog reader supports relation change markers. A failed refresh leaves the
+/// current metadata in place, to be refreshed again after the refresh age, and is reported to the refresh failure
+/// listener if one is set. The cache holds at most a given number of entries, evicting the least recently used entry
+/// when full.
+public class DBMDCache implements AutoCloseable
+{
+    private final DatabaseMetadataFetcher fetcher;
+
+    private final long refreshAfterNanos;
+
+    private final Executor executor;
+
+    // Executor created by this cache, to be shut down when the cache is closed.
+    private final Optional<ExecutorService> ownedExecutor;
+
+    // Entries in access order, guarded by the map's lock, which is never held while fetching.
+    private final LinkedHashMap<Key, CacheEntry> entries;
+
+    private volatile RefreshFailureListener refreshFailureListener;
+
+    /// Receiver of the failures of background refreshes, which are otherwise not visible to requesters.
+    @FunctionalInterface
+    public interface RefreshFailureListener
+    {
+        /// Called on the refreshing thread with the data source and schema of the entry whose refresh failed.
+        void refreshFailed(DataSource dataSource, Optional<String> schema, Exception failure);
+    }
+
+    /// Create a cache which fetches metadata on daemon threads of its own, shut down when the cache is closed.
+    public DBMDCache
+        (
+            DatabaseMetadataFetcher fetcher,
+            Duration refreshAfter,
+            int maxEntries
+        )
+    {
+        this(fetcher, refreshAfter, maxEntries, Executors.newCachedThreadPool(daemonThreadFactory()), true);
+    }
+
+    /// Create a cache which fetches metadata on the given executor.
+    public DBMDCache
+        (
+            DatabaseMetadataFetcher fetcher,
+            Duration refreshAfter,
+            int maxEntries,
+            Executor executor
+        )
+    {
+        this(fetcher, refreshAfter, maxEntries, executor, false);
+    }
+
+    private DBMDCache
+        (
+            DatabaseMetadataFetcher fetcher,
+            Duration refreshAfter,
+            int maxEntries,
+            Executor executor,
+            boolean ownsExecutor
+        )
+    {
+        if ( maxEntries < 1 )
+            throw new IllegalArgumentException("Maximum entries must be at least 1.");
+
+        this.fetcher = requireNonNull(fetcher);
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.executor = requireNonNull(executor);
+        this.ownedExecutor = ownsExecutor ? Optional.of((ExecutorService)executor) : Optional.empty();
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) { return size() > maxEntries; }
+        };
+    }
+
+    /// Return the cached metadata for the given data source and fetch options, waiting for it to be fetched if it is
+    /// not yet cached.
+    public DBMD getMetadata
+        (
+            DataSource dataSource,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat
+        )
+        throws SQLException
+    {
+        CompletableFuture<DBMD> metadata =
+            getMetadataAsync(dataSource, schema, includeTables, includeViews, includeFks, excludeRelsPat);
+
+        try
+        {
+            return metadata.get();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while fetching metadata.", ie);
+        }
+        catch (ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+            if ( cause instanceof SQLException )
+                throw (SQLException)cause;
+            else if ( cause instanceof RuntimeException )
+                throw (RuntimeException)cause;
+            else
+                throw new RuntimeException(cause);
+        }
+    }
+
+    /// Return the cached metadata for the given data source and fetch options, as an already completed future if the
+    /// metadata is cached, else as a future completed when the single fetch of the metadata completes. If the fetch
+    /// fails, the future completes exceptionally and the next request starts a new fetch.
+    public CompletableFuture<DBMD> getMetadataAsync
+        (
+            DataSource dataSource,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat
+        )
+    {
+        Key key = new Key(dataSource, schema, includeTables, includeViews, includeFks, excludeRelsPat);
+
+        CacheEntry entry;
+        boolean created = false;
+
+        synchronized (entries)
+        {
+            entry = entries.get(key);
+            if ( entry == null )
+            {
+                entry = new CacheEntry();
+                entries.put(key, entry);
+                created = true;
+            }
+        }
+
+        if ( created )
+            startInitialFetch(key, entry);
+
+        Fetched fetched = entry.fetched;
+
+        if ( fetched == null )
+            return entry.initialFetch.thenApply(f -> f.metadata);
+
+        if ( System.nanoTime() - entry.nextRefreshNanos >= 0 && entry.refreshing.compareAndSet(false, true) )
+            startRefresh(key, entry);
+
+        return CompletableFuture.completedFuture(fetched.metadata);
+    }
+
+    public Optional<RefreshFailureListener> getRefreshFailureListener()
+    {
+        return Optional.ofNullable(refreshFailureListener);
+    }
+
+    /// Set a listener to be told of each failed background refresh, or remove the listener if null.
+    public void setRefreshFailureListener(RefreshFailureListener listener)
+    {
+        this.refreshFailureListener = listener;
+    }
+
+    /// Remove all entries, so the next request for any metadata fetches it again. Fetches in progress are not
+    /// interrupted.
+    public void invalidateAll()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+
+    /// Shut down the fetching threads if created by this cache.
+    public void close()
+    {
+        ownedExecutor.ifPresent(ExecutorService::shutdownNow);
+    }
+
+    private void startInitialFetch(Key key, CacheEntry entry)
+    {
+        try
+        {
+            executor.execute(() -> {
+                try
+                {
+                    Fetched fetched = fetch(key, Optional.empty());
+                    entry.nextRefreshNanos = System.nanoTime() + refreshAfterNanos;
+                    entry.fetched = fetched;
+                    entry.initialFetch.complete(fetched);
+                }
+                catch (Throwable t)
+                {
+                    removeEntry(key, entry);
+                    entry.initialFetch.completeExceptionally(t);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            removeEntry(key, entry);
+            entry.initialFetch.completeExceptionally(e);
+        }
+    }
+
+    private void startRefresh(Key key, CacheEntry entry)
+    {
+        try
+        {
+            executor.execute(() -> {
+                try
+                {
+                    entry.fetched = fetch(key, Optional.of(entry.fetched));
+                }
+                catch (Exception e)
+                {
+                    // The current metadata is kept, and refreshed again after the refresh age.
+                    RefreshFailureListener listener = refreshFailureListener;
+                    if ( listener != null )
+                        listener.refreshFailed(key.dataSource, key.schema, e);
+                }
+                finally
+                {
+                    entry.nextRefreshNanos = System.nanoTime() + refreshAfterNanos;
+                    entry.refreshing.set(false);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private Fetched fetch(Key key, Optional<Fetched> previous) throws SQLException
+    {
+        try ( Connection conn = key.dataSource.getConnection() )
+        {
+            DatabaseMetaData dbmd = conn.getMetaData();
+
+            if ( previous.isPresent() )
+            {
+                MetadataRefresh refresh =
+                    fetcher.refresh(
+                        previous.get().metadata,
+                        previous.get().changeMarkers,
+                        dbmd,
+                        key.includeTables,
+                        key.includeViews,
+                        key.includeFks,
+                        key.excludeRelsPat
+                    );
+
+                return new Fetched(refresh.getMetadata(), refresh.getChangeMarkers());
+            }
+
+            // Markers are read before the metadata so any change made during the fetch will be seen by the refresh.
+            CaseSensitivity caseSens = fetcher.getDatabaseCaseSensitivity(dbmd);
+            Optional<String> nSchema = key.schema.map(s -> fetcher.normalizeDatabaseIdentifier(s, caseSens));
+            Optional<Map<RelId,String>> changeMarkers = fetcher.fetchRelationChangeMarkers(dbmd, nSchema);
+
+            DBMD metadata =
+                fetcher.fetchMetadata(
+                    dbmd,
+                    key.schema,
+                    key.includeTables,
+                    key.includeViews,
+                    key.includeFks,
+                    key.excludeRelsPat
+                );
+
+            return new Fetched(metadata, changeMarkers);
+        }
+    }
+
+    private void removeEntry(Key key, CacheEntry entry)
+    {
+        synchronized (entries)
+        {
+            entries.remove(key, entry);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory()
+    {
+        return runnable -> {
+            Thread t = Executors.defaultThreadFactory().newThread(runnable);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+
+    private static final class Key
+    {
+        final DataSource dataSource;
+        final Optional<String> schema;
+        final boolean includeTables;
+        final boolean includeViews;
+        final boolean includeFks;
+        final Optional<Pattern> excludeRelsPat;
+
+        Key
+            (
+                DataSource dataSource,
+                Optional<String> schema,
+                boolean includeTables,
+                boolean includeViews,
+                boolean includeFks,
+                Optional<Pattern> excludeRelsPat
+            )
+        {
+            this.dataSource = requireNonNull(dataSource);
+            this.schema = requireNonNull(schema);
+            this.includeTables = includeTables;
+            this.includeViews = includeViews;
+            this.includeFks = includeFks;
+            this.excludeRelsPat = requireNonNull(excludeRelsPat);
+        }
+
+        public boolean equals(Object other)
+        {
+            if ( !(other instanceof Key) )
+                return false;
+            else
+            {
+                Key o = (Key)other;
+                return
+                    dataSource == o.dataSource &&
+                    schema.equals(o.schema) &&
+                    includeTables == o.includeTables &&
+                    includeViews == o.includeViews &&
+                    includeFks == o.includeFks &&
+                    samePattern(excludeRelsPat, o.excludeRelsPat);
+            }
+        }
+
+        public int hashCode()
+        {
+            return
+                System.identityHashCode(dataSource) + 7 * schema.hashCode() +
+                31 * Boolean.hashCode(includeTables) + 127 * Boolean.hashCode(includeViews) +
+                257 * Boolean.hashCode(includeFks) + 509 * excludeRelsPat.map(Pattern::pattern).hashCode();
+        }
+
+        // Patterns do not override equals(), so are compared by their expressions and flags.
+        private static boolean samePattern(Optional<Pattern> p1, Optional<Pattern> p2)
+        {
+            if ( !p1.isPresent() || !p2.isPresent() )
+                return p1.isPresent() == p2.isPresent();
+            else
+                return p1.get().pattern().equals(p2.get().pattern()) && p1.get().flags() == p2.get().flags();
+        }
+    }
+
+    private static final class CacheEntry
+    {
+        // Completed when the first fetch for the entry completes.
+        final CompletableFuture<Fetched> initialFetch = new CompletableFuture<>();
+
+        // The most recently fetched metadata, or null until the first fetch completes.
+        volatile Fetched fetched;
+
+        volatile long nextRefreshNanos;
+
+        final AtomicBoolean refreshing = new AtomicBoolean();
+    }
+
+    private static final class Fetched
+    {
+        final DBMD metadata;
+        final Optional<Map<RelId,String>> changeMarkers;
+
+        Fetched(DBMD metadata, Optional<Map<RelId,String>> changeMarkers)
+        {
+            this.metadata = metadata;
+            this.changeMarkers = changeMarkers;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.RelMetadata.RelType;
+
+
+/// Structural differences between two DBMDs: the relations added, removed and changed, and the foreign keys added
+/// and removed. A foreign key has no identity apart from its relations and fields, so a changed foreign key appears
+/// as one removed and one added. The differences are found by merge-joining the relation metadatas and foreign keys
+/// of the DBMDs, which are kept sorted, so the cost is linear in the sizes of the DBMDs. Serialized with Jackson, a
+/// diff is a compact JSON document of the changes only.
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonPropertyOrder({
+  "addedRelations", "removedRelations", "changedRelations", "addedForeignKeys", "removedForeignKeys"
+})
+public class DBMDDiff
+{
+    private final List<RelMetadata> addedRelations;
+
+    private final List<RelId> removedRelations;
+
+    private final List<RelationChange> changedRelations;
+
+    private final List<ForeignKey> addedForeignKeys;
+
+    private final List<ForeignKey> removedForeignKeys;
+
+    private DBMDDiff
+        (
+            List<RelMetadata> addedRelations,
+            List<RelId> removedRelations,
+            List<RelationChange> changedRelations,
+            List<ForeignKey> addedForeignKeys,
+            List<ForeignKey> removedForeignKeys
+        )
+    {
+        this.addedRelations = unmodifiableList(addedRelations);
+        this.removedRelations = unmodifiableList(removedRelations);
+        this.changedRelations = unmodifiableList(changedRelations);
+        this.addedForeignKeys = unmodifiableList(addedForeignKeys);
+        this.removedForeignKeys = unmodifiableList(removedForeignKeys);
+    }
+
+    /// Compute the differences from the first DBMD to the second.
+    public static DBMDDiff between(DBMD from, DBMD to)
+    {
+        List<RelMetadata> addedRels = new ArrayList<>();
+        List<RelId> removedRels = new ArrayList<>();
+        List<RelationChange> changedRels = new ArrayList<>();
+
+        List<RelMetadata> fromRelMds = inOrder(from.getRelationMetadatas(), DBMD.RELATION_METADATA_ORDER);
+        List<RelMetadata> toRelMds = inOrder(to.getRelationMetadatas(), DBMD.RELATION_METADATA_ORDER);
+
+        int i = 0, j = 0;
+        while ( i < fromRelMds.size() || j < toRelMds.size() )
+        {
+            RelMetadata fromRelMd = i < fromRelMds.size() ? fromRelMds.get(i) : null;
+            RelMetadata toRelMd = j < toRelMds.size() ? toRelMds.get(j) : null;
+
+            int comp = fromRelMd == null ? 1 : toRelMd == null ? -1
+                : DBMD.RELATION_METADATA_ORDER.compare(fromRelMd, toRelMd);
+
+            if ( comp < 0 )
+            {
+                removedRels.add(fromRelMd.getRelationId());
+                ++i;
+            }
+            else if ( comp > 0 )
+            {
+                addedRels.add(toRelMd);
+                ++j;
+            }
+            else
+            {
+                if ( !MetadataEquality.sameRelationMetadata(fromRelMd, toRelMd) )
+                    changedRels.add(RelationChange.between(fromRelMd, toRelMd));
+                ++i;
+                ++j;
+            }
+        }
+
+        List<ForeignKey> addedFks = new ArrayList<>();
+        List<ForeignKey> removedFks = new ArrayList<>();
+
+        List<ForeignKey> fromFks = inOrder(from.getForeignKeys(), DBMD.FOREIGN_KEY_ORDER);
+        List<ForeignKey> toFks = inOrder(to.getForeignKeys(), DBMD.FOREIGN_KEY_ORDER);
+
+        i = 0; j = 0;
+        while ( i < fromFks.size() || j < toFks.size() )
+        {
+            ForeignKey fromFk = i < fromFks.size() ? fromFks.get(i) : null;
+            ForeignKey toFk = j < toFks.size() ? toFks.get(j) : null;
+
+            // Foreign keys comparing equal in this order have the same relations and components.
+            int comp = fromFk == null ? 1 : toFk == null ? -1
+                : fromFk == toFk ? 0
+                : DBMD.FOREIGN_KEY_ORDER.compare(fromFk, toFk);
+
+            if ( comp < 0 )
+            {
+                removedFks.add(fromFk);
+                ++i;
+            }
+            else if ( comp > 0 )
+            {
+                addedFks.add(toFk);
+                ++j;
+            }
+            else
+            {
+                ++i;
+                ++j;
+            }
+        }
+
+        return new DBMDDiff(addedRels, removedRels, changedRels, addedFks, removedFks);
+    }
+
+    // Return the items if already in the given order, as when they are from a DBMD, or else a sorted copy.
+    private static <T> List<T> inOrder(List<T> items, Comparator<T> order)
+    {
+        for ( int i = 1; i < items.size(); ++i )
+        {
+            if ( order.compare(items.get(i - 1), items.get(i)) > 0 )
+            {
+                List<T> sorted = new ArrayList<>(items);
+                sorted.sort(order);
+                return sorted;
+            }
+        }
+
+        return items;
+    }
+
+    public List<RelMetadata> getAddedRelations() { return addedRelations; }
+
+    public List<RelId> getRemovedRelations() { return removedRelations; }
+
+    public List<RelationChange> getChangedRelations() { return changedRelations; }
+
+    public List<ForeignKey> getAddedForeignKeys() { return addedForeignKeys; }
+
+    public List<ForeignKey> getRemovedForeignKeys() { return removedForeignKeys; }
+
+    @JsonIgnore
+    public boolean isEmpty()
+    {
+        return
+            addedRelations.isEmpty() && removedRelations.isEmpty() && changedRelations.isEmpty() &&
+            addedForeignKeys.isEmpty() && removedForeignKeys.isEmpty();
+    }
+
+
+    /// Changes to a relation present in both DBMDs. Fields are matched by name.
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonPropertyOrder({
+      "relationId", "relationType", "relationComment", "addedFields", "removedFields", "changedFields",
+      "fieldOrderChanged"
+    })
+    public static class RelationChange
+    {
+        private final RelId relationId;
+
+        private final Optional<ValueChange<RelType>> relationType;
+
+        private final Optional<ValueChange<Optional<String>>> relationComment;
+
+        private final List<Field> addedFields;
+
+        private final List<String> removedFields;
+
+        private final List<ValueChange<Field>> changedFields;
+
+        private final boolean fieldOrderChanged;
+
+        private RelationChange
+            (
+                RelId relationId,
+                Optional<ValueChange<RelType>> relationType,
+                Optional<ValueChange<Optional<String>>> relationComment,
+                List<Field> addedFields,
+                List<String> removedFields,
+                List<ValueChange<Field>> changedFields,
+                boolean fieldOrderChanged
+            )
+        {
+            this.relationId = requireNonNull(relationId);
+            this.relationType = requireNonNull(relationType);
+            this.relationComment = requireNonNull(relationComment);
+            this.addedFields = unmodifiableList(addedFields);
+            this.removedFields = unmodifiableList(removedFields);
+            this.changedFields = unmodifiableList(changedFields);
+            this.fieldOrderChanged = fieldOrderChanged;
+        }
+
+        static RelationChange between(RelMetadata from, RelMetadata to)
+        {
+            Map<String, Field> fromFieldsByName = new HashMap<>();
+            for ( Field f : from.getFields() )
+                fromFieldsByName.put(f.getName(), f);
+
+            Set<String> toFieldNames = new HashSet<>();
+            List<Field> addedFields = new ArrayList<>();
+            List<ValueChange<Field>> changedFields = new ArrayList<>();
+            List<String> commonFieldNamesInToOrder = new ArrayList<>();
+
+            for ( Field toField : to.getFields() )
+            {
+                toFieldNames.add(toField.getName());
+
+                Field fromField = fromFieldsByName.get(toField.getName());
+                if ( fromField == null )
+                    addedFields.add(toField);
+                else
+                {
+                    commonFieldNamesInToOrder.add(toField.getName());
+                    if ( !MetadataEquality.sameField(fromField, toField) )
+                        changedFields.add(new ValueChange<>(fromField, toField));
+                }
+            }
+
+            List<String> removedFields = new ArrayList<>();
+            List<String> commonFieldNamesInFromOrder = new ArrayList<>();
+            for ( Field fromField : from.getFields() )
+            {
+                if ( toFieldNames.contains(fromField.getName()) )
+                    commonFieldNamesInFromOrder.add(fromField.getName());
+                else
+                    removedFields.add(fromField.getName());
+            }
+
+            return
+                new RelationChange(
+                    to.getRelationId(),
+                    ValueChange.of(from.getRelationType(), to.getRelationType()),
+                    ValueChange.of(from.getRelationComment(), to.getRelationComment()),
+                    addedFields,
+                    removedFields,
+                    changedFields,
+                    !commonFieldNamesInFromOrder.equals(commonFieldNamesInToOrder)
+                );
+        }
+
+        public RelId getRelationId() { return relationId; }
+
+        public Optional<ValueChange<RelType>> getRelationType() { return relationType; }
+
+        public Optional<ValueChange<Optional<String>>> getRelationComment() { return relationComment; }
+
+        public List<Field> getAddedFields() { return addedFields; }
+
+        public List<String> getRemovedFields() { return removedFields; }
+
+        public List<ValueChange<Field>> getChangedFields() { return changedFields; }
+
+        /// Whether the fields present in both versions of the relation are in a different order.
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        public boolean isFieldOrderChanged() { return fieldOrderChanged; }
+    }
+
+    @JsonPropertyOrder({"from", "to"})
+    public static class ValueChange<T>
+    {
+        private final T from;
+
+        private final T to;
+
+        ValueChange(T from, T to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        static <T> Optional<ValueChange<T>> of(T from, T to)
+        {
+            return from.equals(to) ? Optional.empty() : Optional.of(new ValueChange<>(from, to));
+        }
+
+        public T getFrom() { return from; }
+
+        public T getTo() { return to; }
+    }
+
+
+    /////////////////////////////////////////////////////////
+    // Command line interface
+
+    /// Read a DBMD from a file in binary snapshot format, or else in YAML format if the file name ends in ".yaml" or
+    /// ".yml", or in JSON format otherwise.
+    public static DBMD readDBMD(Path file) throws IOException
+    {
+        try ( InputStream is = new BufferedInputStream(Files.newInputStream(file), 1 << 16) )
+        {
+            is.mark(DBMDBinaryFormat.MAGIC.length);
+            byte[] head = new byte[DBMDBinaryFormat.MAGIC.length];
+            int headLen = is.read(head);
+            is.reset();
+
+            if ( headLen == head.length && Arrays.equals(head, DBMDBinaryFormat.MAGIC) )
+                return DBMD.readBinary(is);
+
+            String fileName = file.getFileName().toString();
+            boolean yaml = fileName.endsWith(".yaml") || fileName.endsWith(".yml");
+
+            ObjectMapper mapper = yaml ? new ObjectMapper(new YAMLFactory()) : new ObjectMapper();
+            mapper.registerModule(new Jdk8Module());
+            mapper.registerModule(new StringPool().jacksonModule());
+
+            return mapper.readValue(is, DBMD.class);
+        }
+    }
+
+    private static OutputStream outputStream(String pathOrDash, PrintStream stdout) throws IOException
+    {
+        if ( "-".equals(pathOrDash) )
+            return stdout;
+        else
+            return new BufferedOutputStream(Files.newOutputStream(Paths.get(pathOrDash)), 1 << 16);
+    }
+
+    private static void printUsage(PrintStream ps)
+    {
+        ps.println("Expected arguments: from-dbmd-file to-dbmd-file [output-file|-]");
+        ps.println(
+            "DBMD files may be in json, yaml (.yaml or .yml) or binary format. The differences are written in json\n" +
+            "format to the output file or to standard output. The exit status is 0 if there are no differences, 1 if\n" +
+            "there are differences, and 2 on error."
+        );
+    }
+
+    public static void main(String[] args)
+    {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /// Run the command line interface with the given standard output and error streams, returning the exit status.
+    static int run(String[] args, PrintStream stdout, PrintStream stderr)
+    {
+        if ( args.length == 1 && (args[0].equals("-h") || args[0].equals("--help")) )
+        {
+            printUsage(stdout);
+            return 0;
+        }
+        else if ( args.length < 2 || args.length > 3 )
+        {
+            printUsage(stderr);
+            return 2;
+        }
+
+        try
+        {
+            DBMD from = readDBMD(Paths.get(args[0]));
+            DBMD to = readDBMD(Paths.get(args[1]));
+
+            DBMDDiff diff = between(from, to);
+
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.registerModule(new Jdk8Module());
+
+            String outputFilePath = args.length == 3 ? args[2] : "-";
+
+            try ( OutputStream os = outputStream(outputFilePath, stdout) )
+            {
+                mapper.writeValue(os, diff);
+            }
+
+            return diff.isEmpty() ? 0 : 1;
+        }
+        catch (Exception e)
+        {
+            stderr.println("Error: " + e);
+            return 2;
+        }
+    }
+
+    // Command line interface
+    /////////////////////////////////////////////////////////
+}
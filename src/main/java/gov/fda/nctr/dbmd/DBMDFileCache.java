@@ -0,0 +1,440 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+
+/// A cache of fetched metadata stored as files in a local directory, so metadata fetched for a schema can be reused
+/// across processes. Entries are keyed by JDBC URL, user, schema, include options, exclusion pattern and the date
+/// mapping of the fetcher, and hold the metadata in the binary snapshot format.
+///
+/// An entry is reused until its time to live has passed since it was fetched. If validation is enabled, an entry is
+/// also checked before reuse against the database product version and, if supported by the fetcher's catalog
+/// reader, against the relation change markers read with the metadata, which costs a single catalog query. An entry
+/// with changed markers is refreshed incrementally rather than fetched again in full.
+///
+/// Entries are written to temporary files which then replace the entry files atomically, so concurrent readers in
+/// this or other processes never see a partially written entry. When the total size of the entries exceeds the
+/// cache's maximum size, the least recently used entries are removed.
+public class DBMDFileCache
+{
+    private static final byte[] ENTRY_MAGIC = { 'D', 'B', 'M', 'C' };
+
+    private static final int ENTRY_FORMAT_VERSION = 1;
+
+    private static final String ENTRY_FILE_SUFFIX = ".dbmd";
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // Bound on the length of strings read from entry files, so a damaged length is not used as an allocation size.
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    // Age after which temporary files are assumed to be left over from an interrupted write.
+    private static final Duration ABANDONED_TEMP_FILE_AGE = Duration.ofHours(1);
+
+    private final Path directory;
+
+    private final Duration timeToLive;
+
+    private final long maxSizeBytes;
+
+    private final boolean validate;
+
+    public DBMDFileCache
+        (
+            Path directory,
+            Duration timeToLive,
+            long maxSizeBytes,
+            boolean validate
+        )
+        throws IOException
+    {
+        this.directory = Files.createDirectories(requireNonNull(directory));
+        this.timeToLive = requireNonNull(timeToLive);
+        this.maxSizeBytes = maxSizeBytes;
+        this.validate = validate;
+    }
+
+    public Path getDirectory() { return directory; }
+
+    public Duration getTimeToLive() { return timeToLive; }
+
+    public long getMaxSizeBytes() { return maxSizeBytes; }
+
+    public boolean isValidate() { return validate; }
+
+    public DBMD fetchMetadata
+        (
+            DatabaseMetadataFetcher fetcher,
+            Connection conn,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPattern
+        )
+        throws SQLException, IOException
+    {
+        return
+            fetchMetadata(
+                fetcher,
+                conn.getMetaData(),
+                schema,
+                includeTables,
+                includeViews,
+                includeFks,
+                excludeRelsPattern
+            );
+    }
+
+    /// Return the cached metadata for the given fetch options if present and valid, else fetch the metadata with the
+    /// passed fetcher and store it in the cache.
+    public DBMD fetchMetadata
+        (
+            DatabaseMetadataFetcher fetcher,
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat
+        )
+        throws SQLException, IOException
+    {
+        String key =
+            entryKey(dbmd.getURL(), dbmd.getUserName(), schema, includeTables, includeViews, includeFks,
+                     excludeRelsPat, fetcher.getDateMapping());
+
+        Path entryFile = directory.resolve(entryFileName(key));
+
+        Optional<Entry> cached = readEntry(entryFile, key);
+
+        long now = System.currentTimeMillis();
+
+        if ( cached.isPresent() && now - cached.get().fetchedMillis < timeToLive.toMillis() )
+        {
+            Entry entry = cached.get();
+
+            if ( !validate )
+                return reused(entryFile, entry.metadata);
+
+            if ( dbmd.getDatabaseProductVersion().equals(entry.metadata.getDbmsVersion()) )
+            {
+                Optional<String> nSchema = entry.metadata.getSchemaName();
+                Optional<Map<RelId,String>> markers = fetcher.fetchRelationChangeMarkers(dbmd, nSchema);
+
+                if ( !markers.isPresent() )
+                    return reused(entryFile, entry.metadata);
+
+                if ( entry.changeMarkers.isPresent() )
+                {
+                    if ( markers.get().equals(entry.changeMarkers.get()) )
+                        return reused(entryFile, entry.metadata);
+
+                    MetadataRefresh refresh =
+                        fetcher.refresh(
+                            entry.metadata,
+                            entry.changeMarkers,
+                            dbmd,
+                            includeTables,
+                            includeViews,
+                            includeFks,
+                            excludeRelsPat
+                        );
+
+                    store(entryFile, new Entry(key, now, refresh.getChangeMarkers(), refresh.getMetadata()));
+
+                    return refresh.getMetadata();
+                }
+            }
+        }
+
+        // Markers are read before the metadata so any change made during the fetch will fail the next validation.
+        Optional<Map<RelId,String>> markers = Optional.empty();
+        if ( validate )
+        {
+            CaseSensitivity caseSens = fetcher.getDatabaseCaseSensitivity(dbmd);
+            Optional<String> nSchema = schema.map(s -> fetcher.normalizeDatabaseIdentifier(s, caseSens));
+            markers = fetcher.fetchRelationChangeMarkers(dbmd, nSchema);
+        }
+
+        DBMD fetched = fetcher.fetchMetadata(dbmd, schema, includeTables, includeViews, includeFks, excludeRelsPat);
+
+        store(entryFile, new Entry(key, now, markers, fetched));
+
+        return fetched;
+    }
+
+    /// Remove all entries from the cache.
+    public void clear() throws IOException
+    {
+        for ( Path file : listFiles(ENTRY_FILE_SUFFIX) )
+            Files.deleteIfExists(file);
+    }
+
+    private static String entryKey
+        (
+            String jdbcUrl,
+            String user,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat,
+            DatabaseMetadataFetcher.DateMapping dateMapping
+        )
+    {
+        return
+            "url=" + jdbcUrl + "\n" +
+            "user=" + user + "\n" +
+            "schema=" + schema.orElse("*any-owners*") + "\n" +
+            "tables=" + includeTables + "\n" +
+            "views=" + includeViews + "\n" +
+            "fks=" + includeFks + "\n" +
+            "exclude=" + excludeRelsPat.map(p -> p.flags() + "/" + p.pattern()).orElse("") + "\n" +
+            "dates=" + dateMapping;
+    }
+
+    private static String entryFileName(String key)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(UTF_8));
+
+            StringBuilder sb = new StringBuilder(digest.length * 2 + ENTRY_FILE_SUFFIX.length());
+            for ( byte b : digest )
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+            return sb.append(ENTRY_FILE_SUFFIX).toString();
+        }
+        catch (NoSuchAlgorithmException e) { throw new RuntimeException(e); }
+    }
+
+    private static DBMD reused(Path entryFile, DBMD metadata)
+    {
+        // The modification time of an entry file records its last use, for eviction.
+        try { Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis())); }
+        catch (IOException e) { /* The entry may have been evicted or replaced by another process. */ }
+
+        return metadata;
+    }
+
+
+    /////////////////////////////////////////////////////////
+    // Entry files
+
+    private static class Entry
+    {
+        final String key;
+        final long fetchedMillis;
+        final Optional<Map<RelId,String>> changeMarkers;
+        final DBMD metadata;
+
+        Entry(String key, long fetchedMillis, Optional<Map<RelId,String>> changeMarkers, DBMD metadata)
+        {
+            this.key = key;
+            this.fetchedMillis = fetchedMillis;
+            this.changeMarkers = changeMarkers;
+            this.metadata = metadata;
+        }
+    }
+
+    /// Read the entry from the given file if it exists, is readable, and has the given key. Entries which are
+    /// incomplete or in an unrecognized format are treated as missing, to be replaced.
+    private static Optional<Entry> readEntry(Path entryFile, String key)
+    {
+        try ( DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile), 1 << 16)) )
+        {
+            byte[] magic = new byte[ENTRY_MAGIC.length];
+            is.readFully(magic);
+            if ( !Arrays.equals(magic, ENTRY_MAGIC) || is.readUnsignedByte() != ENTRY_FORMAT_VERSION )
+                return Optional.empty();
+
+            if ( !readString(is).equals(key) )
+                return Optional.empty();
+
+            long fetchedMillis = is.readLong();
+
+            Optional<Map<RelId,String>> changeMarkers = Optional.empty();
+            if ( is.readBoolean() )
+            {
+                int markerCount = is.readInt();
+                if ( markerCount < 0 )
+                    return Optional.empty();
+                Map<RelId,String> markers = new HashMap<>(markerCount * 4 / 3 + 1);
+                for ( int i = 0; i < markerCount; ++i )
+                {
+                    Optional<String> schema = is.readBoolean() ? Optional.of(is.readUTF()) : Optional.empty();
+                    String name = is.readUTF();
+                    markers.put(new RelId(schema, name), is.readUTF());
+                }
+                changeMarkers = Optional.of(markers);
+            }
+
+            DBMD metadata = DBMD.readBinary(is);
+
+            return Optional.of(new Entry(key, fetchedMillis, changeMarkers, metadata));
+        }
+        catch (IOException e) { return Optional.empty(); }
+    }
+
+    /// Write the entry to a temporary file, then move it into place as the entry file, and evict least recently used
+    /// entries if the cache has grown beyond its maximum size.
+    private void store(Path entryFile, Entry entry) throws IOException
+    {
+        Path tempFile = Files.createTempFile(directory, entryFile.getFileName().toString(), TEMP_FILE_SUFFIX);
+
+        try
+        {
+            try ( DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16)) )
+            {
+                os.write(ENTRY_MAGIC);
+                os.writeByte(ENTRY_FORMAT_VERSION);
+                writeString(entry.key, os);
+                os.writeLong(entry.fetchedMillis);
+
+                os.writeBoolean(entry.changeMarkers.isPresent());
+                if ( entry.changeMarkers.isPresent() )
+                {
+                    Map<RelId,String> markers = entry.changeMarkers.get();
+                    os.writeInt(markers.size());
+                    for ( Map.Entry<RelId,String> marker : markers.entrySet() )
+                    {
+                        RelId relId = marker.getKey();
+                        os.writeBoolean(relId.getSchema().isPresent());
+                        if ( relId.getSchema().isPresent() )
+                            os.writeUTF(relId.getSchema().get());
+                        os.writeUTF(relId.getName());
+                        os.writeUTF(marker.getValue());
+                    }
+                }
+
+                entry.metadata.writeBinary(os);
+            }
+
+            try
+            {
+                Files.move(tempFile, entryFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tempFile);
+        }
+
+        evictLeastRecentlyUsed(entryFile);
+    }
+
+    /// Remove entries other than the one just stored, least recently used first, until the total size of the entries
+    /// is within the maximum size. Temporary files abandoned by interrupted writes are also removed.
+    private void evictLeastRecentlyUsed(Path storedEntryFile) throws IOException
+    {
+        long now = System.currentTimeMillis();
+
+        for ( Path tempFile : listFiles(TEMP_FILE_SUFFIX) )
+        {
+            Optional<FileAttrs> attrs = FileAttrs.of(tempFile);
+            if ( attrs.isPresent() && now - attrs.get().lastModifiedMillis > ABANDONED_TEMP_FILE_AGE.toMillis() )
+                Files.deleteIfExists(tempFile);
+        }
+
+        List<FileAttrs> entryFiles = new ArrayList<>();
+        long totalSize = 0;
+        for ( Path file : listFiles(ENTRY_FILE_SUFFIX) )
+        {
+            Optional<FileAttrs> attrs = FileAttrs.of(file);
+            if ( attrs.isPresent() )
+            {
+                entryFiles.add(attrs.get());
+                totalSize += attrs.get().size;
+            }
+        }
+
+        if ( totalSize <= maxSizeBytes )
+            return;
+
+        entryFiles.sort(Comparator.comparingLong(attrs -> attrs.lastModifiedMillis));
+
+        for ( FileAttrs attrs : entryFiles )
+        {
+            if ( totalSize <= maxSizeBytes )
+                break;
+
+            if ( !attrs.file.equals(storedEntryFile) )
+            {
+                Files.deleteIfExists(attrs.file);
+                totalSize -= attrs.size;
+            }
+        }
+    }
+
+    private List<Path> listFiles(String suffix) throws IOException
+    {
+        try ( Stream<Path> files = Files.list(directory) )
+        {
+            return files.filter(f -> f.getFileName().toString().endsWith(suffix)).collect(toList());
+        }
+    }
+
+    private static class FileAttrs
+    {
+        final Path file;
+        final long size;
+        final long lastModifiedMillis;
+
+        private FileAttrs(Path file, long size, long lastModifiedMillis)
+        {
+            this.file = file;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+        }
+
+        // Files may be removed by other processes while being listed, in which case the result is empty.
+        static Optional<FileAttrs> of(Path file)
+        {
+            try
+            {
+                return Optional.of(new FileAttrs(file, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+            }
+            catch (IOException e) { return Optional.empty(); }
+        }
+    }
+
+    private static void writeString(String s, DataOutputStream os) throws IOException
+    {
+        byte[] bytes = s.getBytes(UTF_8);
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private static String readString(DataInputStream is) throws IOException
+    {
+        int len = is.readInt();
+        if ( len < 0 || len > MAX_STRING_BYTES )
+            throw new IOException("Invalid string length in cache entry.");
+
+        byte[] bytes = new byte[len];
+        is.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // Entry files
+    /////////////////////////////////////////////////////////
+}
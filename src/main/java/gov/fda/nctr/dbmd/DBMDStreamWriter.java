@@ -0,0 +1,156 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+
+/// Metadata handler which writes the metadata incrementally as a serialized DBMD, in the format of the passed object
+/// mapper's factory (JSON or YAML), without building the DBMD in memory. Each relation metadata and foreign key is
+/// written as it is received, with the same property layouts as when serializing a DBMD, but in the order received.
+public class DBMDStreamWriter implements MetadataHandler, Closeable
+{
+    private final JsonGenerator gen;
+
+    private final ObjectWriter writer;
+
+    private boolean writingRelations;
+
+    private boolean writingForeignKeys;
+
+    public DBMDStreamWriter
+        (
+            ObjectMapper mapper, // should have the Jdk8Module registered
+            OutputStream os
+        )
+        throws IOException
+    {
+        this.gen = mapper.getFactory().createGenerator(os);
+        if ( mapper.isEnabled(SerializationFeature.INDENT_OUTPUT) )
+            gen.useDefaultPrettyPrinter();
+        this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /// Create a writer for the given file, written through a buffered NIO channel stream.
+    public static DBMDStreamWriter toFile
+        (
+            ObjectMapper mapper,
+            Path file
+        )
+        throws IOException
+    {
+        return new DBMDStreamWriter(mapper, new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    public void startMetadata
+        (
+            Optional<String> schemaName,
+            CaseSensitivity caseSensitivity,
+            String dbmsName,
+            String dbmsVersion,
+            int dbmsMajorVersion,
+            int dbmsMinorVersion
+        )
+    {
+        try
+        {
+            // Properties are written in the order declared for DBMD.
+            gen.writeStartObject();
+            gen.writeFieldName("schemaName");
+            writer.writeValue(gen, schemaName);
+            gen.writeStringField("dbmsName", dbmsName);
+            gen.writeStringField("dbmsVersion", dbmsVersion);
+            gen.writeNumberField("dbmsMajorVersion", dbmsMajorVersion);
+            gen.writeNumberField("dbmsMinorVersion", dbmsMinorVersion);
+            gen.writeFieldName("caseSensitivity");
+            writer.writeValue(gen, caseSensitivity);
+            gen.writeArrayFieldStart("relationMetadatas");
+            writingRelations = true;
+        }
+        catch (IOException ioe) { throw new UncheckedIOException(ioe); }
+    }
+
+    public void relationMetadata(RelMetadata relMd)
+    {
+        if ( !writingRelations )
+            throw new IllegalStateException("Relation metadatas must follow the start of metadata and precede foreign keys.");
+
+        try
+        {
+            writer.writeValue(gen, relMd);
+        }
+        catch (IOException ioe) { throw new UncheckedIOException(ioe); }
+    }
+
+    public void foreignKey(ForeignKey fk)
+    {
+        try
+        {
+            if ( !writingForeignKeys )
+                startForeignKeys();
+
+            writer.writeValue(gen, fk);
+        }
+        catch (IOException ioe) { throw new UncheckedIOException(ioe); }
+    }
+
+    public void endMetadata()
+    {
+        try
+        {
+            if ( !writingForeignKeys )
+                startForeignKeys();
+
+            gen.writeEndArray();
+            writingForeignKeys = false;
+
+            gen.writeEndObject();
+            gen.flush();
+        }
+        catch (IOException ioe) { throw new UncheckedIOException(ioe); }
+    }
+
+    /// Write a complete DBMD, in its own (sorted) order.
+    public void write(DBMD dbmd)
+    {
+        startMetadata(
+            dbmd.getSchemaName(),
+            dbmd.getCaseSensitivity(),
+            dbmd.getDbmsName(),
+            dbmd.getDbmsVersion(),
+            dbmd.getDbmsMajorVersion(),
+            dbmd.getDbmsMinorVersion()
+        );
+
+        for ( RelMetadata relMd : dbmd.getRelationMetadatas() )
+            relationMetadata(relMd);
+
+        for ( ForeignKey fk : dbmd.getForeignKeys() )
+            foreignKey(fk);
+
+        endMetadata();
+    }
+
+    public void close() throws IOException
+    {
+        gen.close();
+    }
+
+    private void startForeignKeys() throws IOException
+    {
+        if ( !writingRelations )
+            throw new IllegalStateException("Foreign keys must follow the start of metadata.");
+
+        gen.writeEndArray();
+        writingRelations = false;
+
+        gen.writeArrayFieldStart("foreignKeys");
+        writingForeignKeys = true;
+    }
+}
@@ -1,13 +1,27 @@
 package gov.fda.nctr.dbmd;
 
 import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import javax.sql.DataSource;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.Objects.requireNonNull;
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -15,6 +29,15 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 
+import gov.fda.nctr.dbmd.FetchListener.Phase;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.BUILD;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.CHANGE_MARKERS;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.COLUMNS;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.FOREIGN_KEYS;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.PRIMARY_KEYS;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.RELATIONS;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.SCHEMAS;
+import static gov.fda.nctr.dbmd.FetchListener.Phase.WRITE;
 import gov.fda.nctr.dbmd.RelMetadata.RelType;
 import static gov.fda.nctr.dbmd.RelMetadata.RelType.Table;
 import static gov.fda.nctr.dbmd.RelMetadata.RelType.View;
@@ -25,8 +48,36 @@ public class DatabaseMetadataFetcher
 
     public enum DateMapping { DATES_AS_DRIVER_REPORTED, DATES_AS_TIMESTAMPS, DATES_AS_DATES }
 
+    /// How the columns, primary keys and foreign keys of the relations selected by a RelationFilter are queried:
+    /// by schema-wide queries filtered on the client, by queries restricted to lists of relation names if the
+    /// catalog reader supports them, or by one query per relation. AUTO chooses by estimated cost.
+    public enum RelationFetchStrategy { AUTO, SCHEMA_WIDE, RELATION_LISTS, PER_RELATION }
+
+    // Maximum number of relation names passed in a single relation list query.
+    static final int MAX_RELATION_LIST_LENGTH = 500;
+
+    // Estimated cost of a catalog query round trip, and the estimated number of catalog rows per relation, in units
+    // of the cost of reading one catalog row. Used to choose the relation fetch strategy.
+    private static final long CATALOG_QUERY_COST = 100;
+    private static final long CATALOG_ROWS_PER_RELATION = 10;
+
     private DateMapping dateMapping;
 
+    private CatalogReader catalogReader;
+
+    private RelationFetchStrategy relationFetchStrategy = RelationFetchStrategy.AUTO;
+
+    private boolean compactFields;
+
+    // Deduplicates the names read from catalog queries. Bounded, and shared by all fetches made by this fetcher.
+    private final StringPool strings = new StringPool();
+
+    // Number of catalog queries (DatabaseMetaData result set requests) issued by this fetcher.
+    private final AtomicLong catalogCallCount = new AtomicLong();
+
+    // Receiver of catalog query and build measurements, or null.
+    private FetchListener fetchListener;
+
 
     public DatabaseMetadataFetcher()
     {
@@ -34,15 +85,60 @@ public class DatabaseMetadataFetcher
     }
 
     public DatabaseMetadataFetcher(DateMapping mapping)
+    {
+        this(mapping, new JdbcCatalogReader());
+    }
+
+    public DatabaseMetadataFetcher(DateMapping mapping, CatalogReader catalogReader)
     {
         this.dateMapping = mapping;
+        this.catalogReader = requireNonNull(catalogReader);
     }
 
+    public DateMapping getDateMapping() { return dateMapping; }
+
     public void setDateMapping(DateMapping mapping)
     {
         this.dateMapping = mapping;
     }
 
+    public void setCatalogReader(CatalogReader catalogReader)
+    {
+        this.catalogReader = requireNonNull(catalogReader);
+    }
+
+    public RelationFetchStrategy getRelationFetchStrategy() { return relationFetchStrategy; }
+
+    /// Set how relations selected by a RelationFilter are fetched, AUTO by default. RELATION_LISTS falls back to
+    /// PER_RELATION if the catalog reader does not support relation list queries.
+    public void setRelationFetchStrategy(RelationFetchStrategy strategy)
+    {
+        this.relationFetchStrategy = requireNonNull(strategy);
+    }
+
+    public boolean getCompactFields() { return compactFields; }
+
+    /// Set whether fetched relation metadatas store their fields in compact columnar form (see CompactFields), which
+    /// reduces memory use for large schemas at the cost of creating field views on access.
+    public void setCompactFields(boolean compactFields)
+    {
+        this.compactFields = compactFields;
+    }
+
+    /// Return the number of catalog queries issued by this fetcher since construction or the last reset.
+    public long getCatalogCallCount() { return catalogCallCount.get(); }
+
+    public void resetCatalogCallCount() { catalogCallCount.set(0); }
+
+    public Optional<FetchListener> getFetchListener() { return Optional.ofNullable(fetchListener); }
+
+    /// Set a listener to receive the elapsed time and rows read of each catalog query and the time taken to build
+    /// each fetched DBMD, or remove the listener if null. Without a listener, no measurements are made.
+    public void setFetchListener(FetchListener listener)
+    {
+        this.fetchListener = listener;
+    }
+
     public DBMD fetchMetadata
         (
             Connection conn,
@@ -75,33 +171,137 @@ public class DatabaseMetadataFetcher
             Optional<Pattern> excludeRelsPat
         )
         throws SQLException
+    {
+        return
+            fetchMetadata(
+                dbmd,
+                schema,
+                includeTables,
+                includeViews,
+                includeFks,
+                RelationFilter.excluding(excludeRelsPat)
+            );
+    }
+
+    /// Fetch metadata for the relations selected by the filter. Foreign keys are included if their child relation
+    /// is a selected table and their parent relation is not excluded. The selection is pushed down to the catalog
+    /// queries according to the relation fetch strategy.
+    public DBMD fetchMetadata
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            RelationFilter relFilter
+        )
+        throws SQLException
     {
         CaseSensitivity caseSens = getDatabaseCaseSensitivity(dbmd);
 
         Optional<String> nSchema = schema.map(s -> normalizeDatabaseIdentifier(s, caseSens));
 
-        List<RelDescr> relDescrs = fetchRelationDescriptions(dbmd, nSchema, includeTables, includeViews, excludeRelsPat);
+        List<RelMetadata> relMds = new ArrayList<>();
+        List<ForeignKey> fks = new ArrayList<>();
 
-        List<RelMetadata> relMds = fetchRelationMetadatas(relDescrs, nSchema, dbmd);
+        fetchSelectedMetadata(dbmd, nSchema, includeTables, includeViews, includeFks, relFilter, relMds::add, fks::add);
 
-        List<ForeignKey> fks = includeFks ? fetchForeignKeys(nSchema, dbmd, excludeRelsPat) : emptyList();
+        return buildDBMD(nSchema, relMds, fks, caseSens, dbmd);
+    }
 
-        String dbmsName = dbmd.getDatabaseProductName();
-        String dbmsVer = dbmd.getDatabaseProductVersion();
-        int dbmsMajorVer = dbmd.getDatabaseMajorVersion();
-        int dbmsMinorVer = dbmd.getDatabaseMinorVersion();
+    /// Fetch metadata as with the fetchMetadata methods above, but pass the metadata to the handler as it is read
+    /// instead of collecting it into a DBMD. Relation metadatas are passed as soon as all of their fields have been
+    /// read, so memory use does not grow with the number of relations beyond the relation descriptions and primary
+    /// key information which are fetched up front.
+    public void fetchMetadata
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat,
+            MetadataHandler handler
+        )
+        throws SQLException
+    {
+        fetchMetadata(
+            dbmd,
+            schema,
+            includeTables,
+            includeViews,
+            includeFks,
+            RelationFilter.excluding(excludeRelsPat),
+            handler
+        );
+    }
 
-        return
-            new DBMD(
-                nSchema,
-                relMds,
-                fks,
-                caseSens,
-                dbmsName,
-                dbmsVer,
-                dbmsMajorVer,
-                dbmsMinorVer
-            );
+    public void fetchMetadata
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            RelationFilter relFilter,
+            MetadataHandler handler
+        )
+        throws SQLException
+    {
+        CaseSensitivity caseSens = getDatabaseCaseSensitivity(dbmd);
+
+        Optional<String> nSchema = schema.map(s -> normalizeDatabaseIdentifier(s, caseSens));
+
+        handler.startMetadata(
+            nSchema,
+            caseSens,
+            dbmd.getDatabaseProductName(),
+            dbmd.getDatabaseProductVersion(),
+            dbmd.getDatabaseMajorVersion(),
+            dbmd.getDatabaseMinorVersion()
+        );
+
+        fetchSelectedMetadata(
+            dbmd,
+            nSchema,
+            includeTables,
+            includeViews,
+            includeFks,
+            relFilter,
+            handler::relationMetadata,
+            handler::foreignKey
+        );
+
+        handler.endMetadata();
+    }
+
+    public void fetchMetadata
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat,
+            Consumer<RelMetadata> relMdConsumer,
+            Consumer<ForeignKey> fkConsumer
+        )
+        throws SQLException
+    {
+        fetchMetadata(
+            dbmd,
+            schema,
+            includeTables,
+            includeViews,
+            includeFks,
+            excludeRelsPat,
+            new MetadataHandler()
+            {
+                public void relationMetadata(RelMetadata relMd) { relMdConsumer.accept(relMd); }
+
+                public void foreignKey(ForeignKey fk) { fkConsumer.accept(fk); }
+            }
+        );
     }
 
 
@@ -143,146 +343,1113 @@ public class DatabaseMetadataFetcher
         if ( includeViews )
             relTypes.add("VIEW");
 
-        ResultSet rs = dbmd.getTables(null, schema.orElse(null), null, relTypes.toArray(new String[0]));
+        try ( ResultSet rs = catalogQuery(RELATIONS, () ->
+                  catalogReader.getRelations(dbmd, schema, relTypes.toArray(new String[0]))) )
+        {
+            Optional<String> relSchema = Optional.empty();
+
+            while ( rs.next() )
+            {
+                String relSchemaName = strings.pool(rs.getString("TABLE_SCHEM"));
+                if ( relSchemaName != relSchema.orElse(null) )
+                    relSchema = optn(relSchemaName); // Shared by consecutive relations of the same schema.
+                String relName = rs.getString("TABLE_NAME");
+
+                RelId relId = new RelId(relSchema, relName);
+
+                if ( !matches(excludeRelsPattern, relId.getIdString()) )
+                {
+                    String tableType = rs.getString("TABLE_TYPE").toLowerCase();
+                    RelType relType = tableType.equals("table") || tableType.equals("base table") ? Table : View;
+
+                    relDescrs.add(new RelDescr(relId, relType, optn(rs.getString("REMARKS"))));
+                }
+            }
+        }
+
+        return relDescrs;
+    }
+
+    public List<RelMetadata> fetchRelationMetadatas
+        (
+            List<RelDescr> relDescrs, // descriptions of relations to include
+            Optional<String> schema,
+            Connection conn
+        )
+        throws SQLException
+    {
+        return fetchRelationMetadatas(relDescrs, schema, conn.getMetaData());
+    }
+
+    public List<RelMetadata> fetchRelationMetadatas
+        (
+            List<RelDescr> relDescrs, // descriptions of relations to include
+            Optional<String> schema,
+            DatabaseMetaData dbmd
+        )
+        throws SQLException
+    {
+        List<RelMetadata> relMds = new ArrayList<>();
+
+        fetchRelationMetadatas(relDescrs, schema, dbmd, relMds::add);
+
+        return relMds;
+    }
+
+    /// Fetch relation metadatas as above, passing each to the consumer as soon as all of its fields have been read.
+    public void fetchRelationMetadatas
+        (
+            List<RelDescr> relDescrs, // descriptions of relations to include
+            Optional<String> schema,
+            DatabaseMetaData dbmd,
+            Consumer<RelMetadata> relMdConsumer
+        )
+        throws SQLException
+    {
+        Map<RelId,RelDescr> relDescrsByRelId = relDescrs.stream().collect(toMap(RelDescr::getRelationId, identity()));
+
+        Map<RelId,Map<String,Integer>> pkPartNumsByRelId = fetchPrimaryKeyPartNumbers(relDescrs, schema, dbmd);
+
+        try ( ResultSet colsRS = catalogQuery(COLUMNS, () -> catalogReader.getColumns(dbmd, schema, Optional.empty())) )
+        {
+            readRelationMetadatas(colsRS, relDescrsByRelId, pkPartNumsByRelId, relMdConsumer);
+        }
+    }
+
+    /// Fetch the metadata for a single relation, with catalog queries restricted to the relation. The result is
+    /// empty if no columns are found for the relation.
+    public Optional<RelMetadata> fetchRelationMetadata
+        (
+            RelDescr relDescr,
+            DatabaseMetaData dbmd
+        )
+        throws SQLException
+    {
+        RelId relId = relDescr.getRelationId();
+
+        Map<RelId,Map<String,Integer>> pkPartNumsByRelId =
+            fetchPrimaryKeyPartNumbers(singletonList(relDescr), relId.getSchema(), dbmd);
+
+        try ( ResultSet colsRS = catalogQuery(COLUMNS, () ->
+                  catalogReader.getColumns(dbmd, relId.getSchema(), Optional.of(relId.getName()))) )
+        {
+            List<RelMetadata> relMds = new ArrayList<>(1);
+
+            readRelationMetadatas(colsRS, singletonMap(relId, relDescr), pkPartNumsByRelId, relMds::add);
+
+            return relMds.isEmpty() ? Optional.empty() : Optional.of(relMds.get(0));
+        }
+    }
+
+    // Read relation metadatas for the included relations from a column metadata result set which is ordered by
+    // relation, passing each to the consumer when its last field has been read.
+    private void readRelationMetadatas
+        (
+            ResultSet colsRS,
+            Map<RelId,RelDescr> relDescrsByRelId, // descriptions of relations to include
+            Map<RelId,Map<String,Integer>> pkPartNumsByRelId,
+            Consumer<RelMetadata> relMdConsumer
+        )
+        throws SQLException
+    {
+        RelMetadataBuilder rmdBldr = null;
+
+        // Rows are matched to the included relations' own ids, which are shared by the relation metadatas.
+        RelIdInterner relIds = new RelIdInterner(relDescrsByRelId.keySet());
+
+        // Canonical database type names, shared between relations when storing fields compactly.
+        Map<String, String> databaseTypeNames = compactFields ? new HashMap<>() : null;
+
+        while ( colsRS.next() )
+        {
+            RelId relId = relIds.find(colsRS.getString("TABLE_SCHEM"), colsRS.getString("TABLE_NAME"));
+
+            RelDescr relDescr = relId != null ? relDescrsByRelId.get(relId) : null;
+            if ( relDescr != null ) // Include this relation?
+            {
+                Field f = makeField(colsRS, pkPartNumsByRelId.getOrDefault(relId, emptyMap()));
+
+                // Relation changed ?
+                if ( rmdBldr == null || relId != rmdBldr.relId )
+                {
+                    // finalize previous if any
+                    if ( rmdBldr != null )
+                        relMdConsumer.accept(rmdBldr.build());
+
+                    rmdBldr = new RelMetadataBuilder(relId, relDescr.getRelationType(), relDescr.getRelationComment(),
+                                                     databaseTypeNames);
+                }
+
+                rmdBldr.addField(f);
+            }
+        }
+
+        if ( rmdBldr != null )
+            relMdConsumer.accept(rmdBldr.build());
+    }
+
+    /// Fetch the primary key field names and their part numbers for each of the given relations of the schema. A
+    /// single catalog query is made for the schema if supported by the catalog reader, otherwise one query is made
+    /// per relation.
+    public Map<RelId,Map<String,Integer>> fetchPrimaryKeyPartNumbers
+        (
+            List<RelDescr> relDescrs,
+            Optional<String> schema,
+            DatabaseMetaData dbmd
+        )
+        throws SQLException
+    {
+        Map<RelId,Map<String,Integer>> pkPartNumsByRelId = new HashMap<>();
+
+        if ( relDescrs.size() > 1 && catalogReader.supportsSchemaPrimaryKeysQuery() )
+        {
+            RelIdInterner relIds = relIdInterner(relDescrs);
+
+            try ( ResultSet pkRS = catalogQuery(PRIMARY_KEYS, () ->
+                      catalogReader.getPrimaryKeys(dbmd, schema, Optional.empty())) )
+            {
+                while ( pkRS.next() )
+                {
+                    RelId relId = relIds.find(pkRS.getString("TABLE_SCHEM"), pkRS.getString("TABLE_NAME"));
+
+                    if ( relId != null )
+                        pkPartNumsByRelId.computeIfAbsent(relId, k -> new HashMap<>())
+                            .put(pkRS.getString("COLUMN_NAME"), pkRS.getInt("KEY_SEQ"));
+                }
+            }
+        }
+        else
+        {
+            for ( RelDescr relDescr : relDescrs )
+            {
+                RelId relId = relDescr.getRelationId();
+
+                try ( ResultSet pkRS = catalogQuery(PRIMARY_KEYS, () ->
+                          catalogReader.getPrimaryKeys(dbmd, relId.getSchema(), Optional.of(relId.getName()))) )
+                {
+                    Map<String,Integer> pkPartNumsByName = new HashMap<>();
+
+                    while ( pkRS.next() )
+                        pkPartNumsByName.put(pkRS.getString("COLUMN_NAME"), pkRS.getInt("KEY_SEQ"));
+
+                    if ( !pkPartNumsByName.isEmpty() )
+                        pkPartNumsByRelId.put(relId, pkPartNumsByName);
+                }
+            }
+        }
+
+        return pkPartNumsByRelId;
+    }
+
+    public List<ForeignKey> fetchForeignKeys
+        (
+            Optional<String> schema,
+            Connection conn,
+            Optional<Pattern> excludeRelsPattern
+        )
+        throws SQLException
+    {
+        return fetchForeignKeys(schema, conn.getMetaData(), excludeRelsPattern);
+    }
+
+    public List<ForeignKey> fetchForeignKeys
+        (
+            Optional<String> schema,
+            DatabaseMetaData dbmd,
+            Optional<Pattern> excludeRelsPattern
+        )
+        throws SQLException
+    {
+        List<ForeignKey> fks = new ArrayList<>();
+
+        fetchForeignKeys(schema, dbmd, excludeRelsPattern, fks::add);
+
+        return fks;
+    }
+
+    /// Fetch foreign keys as above, passing each to the consumer as soon as all of its components have been read.
+    public void fetchForeignKeys
+        (
+            Optional<String> schema,
+            DatabaseMetaData dbmd,
+            Optional<Pattern> excludeRelsPattern,
+            Consumer<ForeignKey> fkConsumer
+        )
+        throws SQLException
+    {
+        fetchForeignKeys(schema, dbmd, RelationFilter.excluding(excludeRelsPattern), new RelIdInterner(), fkConsumer);
+    }
+
+    private void fetchForeignKeys
+        (
+            Optional<String> schema,
+            DatabaseMetaData dbmd,
+            RelationFilter relFilter,
+            RelIdInterner relIds,
+            Consumer<ForeignKey> fkConsumer
+        )
+        throws SQLException
+    {
+        if ( !catalogReader.supportsSchemaImportedKeysQuery(dbmd) )
+        {
+            // Query the imported keys of each of the schema's tables individually.
+            for ( RelDescr relDescr : fetchRelationDescriptions(dbmd, schema, true, false, Optional.empty()) )
+            {
+                if ( relFilter.matches(relDescr.getRelationId()) )
+                    fetchForeignKeysFrom(relDescr.getRelationId(), dbmd, relFilter, relIds).forEach(fkConsumer);
+            }
+            return;
+        }
+
+        try ( ResultSet rs = catalogQuery(FOREIGN_KEYS, () ->
+                  catalogReader.getImportedKeys(dbmd, schema, Optional.empty())) )
+        {
+            readForeignKeys(rs, relFilter, relIds, fkConsumer);
+        }
+    }
+
+    /// Fetch the foreign keys from the given child relation to its parents, with a catalog query restricted to
+    /// the child relation.
+    public List<ForeignKey> fetchForeignKeysFrom
+        (
+            RelId childRelId,
+            DatabaseMetaData dbmd,
+            Optional<Pattern> excludeRelsPattern
+        )
+        throws SQLException
+    {
+        return
+            fetchForeignKeysFrom(
+                childRelId,
+                dbmd,
+                RelationFilter.excluding(excludeRelsPattern),
+                new RelIdInterner(singletonList(childRelId))
+            );
+    }
+
+    private List<ForeignKey> fetchForeignKeysFrom
+        (
+            RelId childRelId,
+            DatabaseMetaData dbmd,
+            RelationFilter relFilter,
+            RelIdInterner relIds
+        )
+        throws SQLException
+    {
+        List<ForeignKey> fks = new ArrayList<>();
+
+        try ( ResultSet rs = catalogQuery(FOREIGN_KEYS, () ->
+                  catalogReader.getImportedKeys(dbmd, childRelId.getSchema(), Optional.of(childRelId.getName()))) )
+        {
+            readForeignKeys(rs, relFilter, relIds, fks::add);
+        }
+
+        return fks;
+    }
+
+    // Read foreign keys from an imported keys result set, passing each to the consumer when its last component
+    // has been read and omitting those whose child relation is not selected by the filter or whose parent relation
+    // is excluded by it. Relation ids are taken from the interner.
+    private void readForeignKeys
+        (
+            ResultSet rs,
+            RelationFilter relFilter,
+            RelIdInterner relIds,
+            Consumer<ForeignKey> fkConsumer
+        )
+        throws SQLException
+    {
+        FkBuilder fkBldr = null;
+
+        while ( rs.next() )
+        {
+            short compNum = rs.getShort("KEY_SEQ");
+
+            if ( compNum == 1 ) // starting new fk
+            {
+                // Finalize previous fk if any.
+                if ( fkBldr != null && fkBldr.isSelectedBy(relFilter) )
+                    fkConsumer.accept(fkBldr.build());
+
+                fkBldr = new FkBuilder(
+                    relIds.intern(rs.getString("FKTABLE_SCHEM"), rs.getString("FKTABLE_NAME")),
+                    relIds.intern(rs.getString("PKTABLE_SCHEM"), rs.getString("PKTABLE_NAME"))
+                );
+                fkBldr.addComponent(
+                    new ForeignKey.Component(strings.pool(rs.getString("FKCOLUMN_NAME")),
+                                             strings.pool(rs.getString("PKCOLUMN_NAME")))
+                );
+            }
+            else // adding another fk component
+            {
+                requireNonNull(fkBldr); // because we should have seen a component # 1 before entering here
+                fkBldr.addComponent(
+                    new ForeignKey.Component(strings.pool(rs.getString("FKCOLUMN_NAME")),
+                                             strings.pool(rs.getString("PKCOLUMN_NAME")))
+                );
+            }
+        }
+
+        if ( fkBldr != null && fkBldr.isSelectedBy(relFilter) )
+            fkConsumer.accept(fkBldr.build());
+    }
+
+
+    /////////////////////////////////////////////////////////
+    // Filtered fetching
+
+    // Fetch the metadata of the relations selected by the filter in the (normalized) schema. The schema's relations
+    // are always listed in full, which is cheap and gives the number of relations a schema-wide query would read.
+    private void fetchSelectedMetadata
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> nSchema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            RelationFilter relFilter,
+            Consumer<RelMetadata> relMdConsumer,
+            Consumer<ForeignKey> fkConsumer
+        )
+        throws SQLException
+    {
+        List<RelDescr> schemaRelDescrs =
+            fetchRelationDescriptions(dbmd, nSchema, includeTables || includeFks, includeViews, Optional.empty());
+
+        List<RelDescr> relDescrs = new ArrayList<>();
+        // Foreign keys are fetched for all selected tables whether or not tables are included, as for a schema-wide
+        // foreign keys query.
+        List<RelDescr> fkRelDescrs = new ArrayList<>();
+
+        for ( RelDescr relDescr : schemaRelDescrs )
+        {
+            if ( relFilter.matches(relDescr.getRelationId()) )
+            {
+                boolean isTable = relDescr.getRelationType() == Table;
+
+                if ( isTable ? includeTables : includeViews )
+                    relDescrs.add(relDescr);
+                if ( isTable )
+                    fkRelDescrs.add(relDescr);
+            }
+        }
+
+        int schemaRelCount = schemaRelDescrs.size();
+
+        // A schema-wide fetch queries primary keys per relation if the reader has no schema primary keys query.
+        long schemaWideRelMdQueries = catalogReader.supportsSchemaPrimaryKeysQuery() ? 2 : 1 + relDescrs.size();
+        switch ( fetchStrategy(relDescrs.size(), schemaRelCount, 2, schemaWideRelMdQueries) )
+        {
+            case RELATION_LISTS:
+                for ( List<RelDescr> relDescrsList : relationLists(relDescrs) )
+                    fetchRelationMetadatasByList(relDescrsList, dbmd, relMdConsumer);
+                break;
+            case PER_RELATION:
+                for ( RelDescr relDescr : relDescrs )
+                    fetchRelationMetadata(relDescr, dbmd).ifPresent(relMdConsumer);
+                break;
+            default:
+                fetchRelationMetadatas(relDescrs, nSchema, dbmd, relMdConsumer);
+        }
+
+        if ( !includeFks )
+            return;
+
+        RelIdInterner relIds = relIdInterner(schemaRelDescrs);
+
+        RelationFetchStrategy fkStrategy = fetchStrategy(fkRelDescrs.size(), schemaRelCount, 1, 1);
+
+        // Without a schema-wide imported keys query, the selected tables are queried individually.
+        if ( fkStrategy == RelationFetchStrategy.SCHEMA_WIDE && !catalogReader.supportsSchemaImportedKeysQuery(dbmd) )
+            fkStrategy = RelationFetchStrategy.PER_RELATION;
+
+        switch ( fkStrategy )
+        {
+            case RELATION_LISTS:
+                for ( List<RelDescr> relDescrsList : relationLists(fkRelDescrs) )
+                {
+                    Optional<String> listSchema = relDescrsList.get(0).getRelationId().getSchema();
+
+                    try ( ResultSet rs = catalogQuery(FOREIGN_KEYS, () ->
+                              catalogReader.getImportedKeys(dbmd, listSchema, relationNames(relDescrsList))) )
+                    {
+                        readForeignKeys(rs, relFilter, relIds, fkConsumer);
+                    }
+                }
+                break;
+            case PER_RELATION:
+                for ( RelDescr relDescr : fkRelDescrs )
+                    fetchForeignKeysFrom(relDescr.getRelationId(), dbmd, relFilter, relIds).forEach(fkConsumer);
+                break;
+            default:
+                fetchForeignKeys(nSchema, dbmd, relFilter, relIds, fkConsumer);
+        }
+    }
+
+    // Choose how to fetch the given number of selected relations out of the number of relations in the schema,
+    // given the number of catalog queries needed per relation list or relation and for a schema-wide fetch. The
+    // estimated cost of each strategy is its number of queries times the query cost plus the number of catalog
+    // rows read, which for a schema-wide fetch includes the rows of relations that are not selected.
+    private RelationFetchStrategy fetchStrategy
+        (
+            int selectedRelCount,
+            int schemaRelCount,
+            int queriesPerRequest,
+            long schemaWideQueries
+        )
+    {
+        boolean listQueries = catalogReader.supportsRelationListQueries();
+
+        if ( relationFetchStrategy != RelationFetchStrategy.AUTO )
+        {
+            return relationFetchStrategy == RelationFetchStrategy.RELATION_LISTS && !listQueries ?
+                RelationFetchStrategy.PER_RELATION
+                : relationFetchStrategy;
+        }
+
+        long requests = listQueries ?
+            (selectedRelCount + MAX_RELATION_LIST_LENGTH - 1) / MAX_RELATION_LIST_LENGTH
+            : selectedRelCount;
+
+        long selectedCost = requests * queriesPerRequest * CATALOG_QUERY_COST
+            + selectedRelCount * CATALOG_ROWS_PER_RELATION;
+        long schemaWideCost = schemaWideQueries * CATALOG_QUERY_COST + schemaRelCount * CATALOG_ROWS_PER_RELATION;
+
+        if ( selectedCost >= schemaWideCost )
+            return RelationFetchStrategy.SCHEMA_WIDE;
+
+        return listQueries ? RelationFetchStrategy.RELATION_LISTS : RelationFetchStrategy.PER_RELATION;
+    }
+
+    // Fetch the metadatas of the described relations, which are all of one schema, with primary keys and columns
+    // queries restricted to the relations' names.
+    private void fetchRelationMetadatasByList
+        (
+            List<RelDescr> relDescrs,
+            DatabaseMetaData dbmd,
+            Consumer<RelMetadata> relMdConsumer
+        )
+        throws SQLException
+    {
+        Optional<String> schema = relDescrs.get(0).getRelationId().getSchema();
+        List<String> relNames = relationNames(relDescrs);
+
+        Map<RelId,RelDescr> relDescrsByRelId = relDescrs.stream().collect(toMap(RelDescr::getRelationId, identity()));
+
+        RelIdInterner relIds = relIdInterner(relDescrs);
+        Map<RelId,Map<String,Integer>> pkPartNumsByRelId = new HashMap<>();
+
+        try ( ResultSet pkRS = catalogQuery(PRIMARY_KEYS, () -> catalogReader.getPrimaryKeys(dbmd, schema, relNames)) )
+        {
+            while ( pkRS.next() )
+            {
+                RelId relId = relIds.find(pkRS.getString("TABLE_SCHEM"), pkRS.getString("TABLE_NAME"));
+
+                if ( relId != null )
+                    pkPartNumsByRelId.computeIfAbsent(relId, k -> new HashMap<>())
+                        .put(pkRS.getString("COLUMN_NAME"), pkRS.getInt("KEY_SEQ"));
+            }
+        }
+
+        try ( ResultSet colsRS = catalogQuery(COLUMNS, () -> catalogReader.getColumns(dbmd, schema, relNames)) )
+        {
+            readRelationMetadatas(colsRS, relDescrsByRelId, pkPartNumsByRelId, relMdConsumer);
+        }
+    }
+
+    // Split the relation descriptions into lists for relation list queries, each within one schema and of at most
+    // the maximum list length.
+    private static List<List<RelDescr>> relationLists(List<RelDescr> relDescrs)
+    {
+        Map<Optional<String>, List<RelDescr>> relDescrsBySchema = new LinkedHashMap<>();
+        for ( RelDescr relDescr : relDescrs )
+            relDescrsBySchema.computeIfAbsent(relDescr.getRelationId().getSchema(), s -> new ArrayList<>()).add(relDescr);
+
+        List<List<RelDescr>> lists = new ArrayList<>();
+        for ( List<RelDescr> schemaRelDescrs : relDescrsBySchema.values() )
+            for ( int i = 0; i < schemaRelDescrs.size(); i += MAX_RELATION_LIST_LENGTH )
+                lists.add(schemaRelDescrs.subList(i, Math.min(i + MAX_RELATION_LIST_LENGTH, schemaRelDescrs.size())));
+
+        return lists;
+    }
+
+    private static List<String> relationNames(List<RelDescr> relDescrs)
+    {
+        return relDescrs.stream().map(relDescr -> relDescr.getRelationId().getName()).collect(toList());
+    }
+
+    // Filtered fetching
+    /////////////////////////////////////////////////////////
+
+
+    /////////////////////////////////////////////////////////
+    // Parallel fetching
+
+    /// Fetch metadata as with the fetchMetadata methods above, but with the columns, primary keys and foreign keys
+    /// of the relations fetched concurrently on up to parallelism connections obtained from the data source. The
+    /// relations are divided among the connections and queried individually. The result is the same as for the
+    /// serial fetch.
+    public DBMD fetchMetadata
+        (
+            DataSource dataSource,
+            int parallelism,
+            Optional<String> schema,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat
+        )
+        throws SQLException
+    {
+        if ( parallelism < 1 )
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+
+        try ( Connection conn = dataSource.getConnection() )
+        {
+            DatabaseMetaData dbmd = conn.getMetaData();
+
+            CaseSensitivity caseSens = getDatabaseCaseSensitivity(dbmd);
+
+            Optional<String> nSchema = schema.map(s -> normalizeDatabaseIdentifier(s, caseSens));
+
+            List<RelDescr> relDescrs = fetchRelationDescriptions(dbmd, nSchema, includeTables, includeViews, excludeRelsPat);
+
+            // Foreign keys are fetched for all tables whether or not tables are included, as in the serial fetch.
+            List<RelDescr> fkRelDescrs =
+                !includeFks ? emptyList()
+                : includeTables ? relDescrs.stream().filter(rd -> rd.getRelationType() == Table).collect(toList())
+                : fetchRelationDescriptions(dbmd, nSchema, true, false, excludeRelsPat);
+
+            List<List<RelDescr>> relDescrChunks = chunks(relDescrs, parallelism);
+            List<List<RelDescr>> fkRelDescrChunks = chunks(fkRelDescrs, parallelism);
+
+            List<RelMetadata> relMds = new ArrayList<>(relDescrs.size());
+            List<ForeignKey> fks = new ArrayList<>();
+
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism, daemonThreadFactory());
+            try
+            {
+                List<Future<FetchedRelations>> futures = new ArrayList<>();
+
+                for ( int i = 0; i < parallelism; ++i )
+                {
+                    List<RelDescr> relDescrChunk = relDescrChunks.get(i);
+                    List<RelDescr> fkRelDescrChunk = fkRelDescrChunks.get(i);
+
+                    if ( !relDescrChunk.isEmpty() || !fkRelDescrChunk.isEmpty() )
+                        futures.add(executor.submit(() ->
+                            fetchRelationsIndividually(dataSource, relDescrChunk, fkRelDescrChunk, relDescrs, excludeRelsPat)
+                        ));
+                }
+
+                for ( Future<FetchedRelations> future : futures )
+                {
+                    FetchedRelations fetched = getFetchResult(future);
+                    relMds.addAll(fetched.relMds);
+                    fks.addAll(fetched.fks);
+                }
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+
+            return buildDBMD(nSchema, relMds, fks, caseSens, dbmd);
+        }
+    }
+
+    private FetchedRelations fetchRelationsIndividually
+        (
+            DataSource dataSource,
+            List<RelDescr> relDescrs,
+            List<RelDescr> fkRelDescrs,
+            List<RelDescr> allRelDescrs,
+            Optional<Pattern> excludeRelsPat
+        )
+        throws SQLException
+    {
+        try ( Connection conn = dataSource.getConnection() )
+        {
+            DatabaseMetaData dbmd = conn.getMetaData();
+
+            FetchedRelations fetched = new FetchedRelations();
+
+            for ( RelDescr relDescr : relDescrs )
+                fetchRelationMetadata(relDescr, dbmd).ifPresent(fetched.relMds::add);
+
+            RelIdInterner relIds = relIdInterner(allRelDescrs);
+            RelationFilter relFilter = RelationFilter.excluding(excludeRelsPat);
+
+            for ( RelDescr relDescr : fkRelDescrs )
+                fetched.fks.addAll(fetchForeignKeysFrom(relDescr.getRelationId(), dbmd, relFilter, relIds));
+
+            return fetched;
+        }
+    }
+
+    private static class FetchedRelations
+    {
+        final List<RelMetadata> relMds = new ArrayList<>();
+        final List<ForeignKey> fks = new ArrayList<>();
+    }
+
+    private static <T> T getFetchResult(Future<T> future) throws SQLException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while fetching metadata.", ie);
+        }
+        catch (ExecutionException ee)
+        {
+            Throwable cause = ee.getCause();
+            if ( cause instanceof SQLException )
+                throw (SQLException)cause;
+            else if ( cause instanceof RuntimeException )
+                throw (RuntimeException)cause;
+            else
+                throw new RuntimeException(cause);
+        }
+    }
+
+    // Distribute the items round-robin into the given number of chunks, so the chunks are of nearly equal size.
+    private static <T> List<List<T>> chunks(List<T> items, int numChunks)
+    {
+        List<List<T>> chunks = new ArrayList<>(numChunks);
+
+        for ( int i = 0; i < numChunks; ++i )
+            chunks.add(new ArrayList<>(items.size() / numChunks + 1));
+
+        for ( int i = 0; i < items.size(); ++i )
+            chunks.get(i % numChunks).add(items.get(i));
+
+        return chunks;
+    }
+
+    private static ThreadFactory daemonThreadFactory()
+    {
+        return runnable -> {
+            Thread t = Executors.defaultThreadFactory().newThread(runnable);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Parallel fetching
+    /////////////////////////////////////////////////////////
+
+
+    /////////////////////////////////////////////////////////
+    // Multi-schema fetching
+
+    /// Return the names of the schemas of the database, restricted to those fully matching the pattern if one is
+    /// given, in sorted order.
+    public List<String> fetchSchemaNames
+        (
+            DatabaseMetaData dbmd,
+            Optional<Pattern> schemaPattern
+        )
+        throws SQLException
+    {
+        List<String> schemas = new ArrayList<>();
+
+        try ( ResultSet rs = catalogQuery(SCHEMAS, () -> catalogReader.getSchemas(dbmd)) )
+        {
+            while ( rs.next() )
+            {
+                String schema = rs.getString("TABLE_SCHEM");
+                if ( !schemaPattern.isPresent() || matches(schemaPattern, schema) )
+                    schemas.add(schema);
+            }
+        }
+
+        Collections.sort(schemas);
+
+        return schemas;
+    }
+
+    /// Fetch metadata for the given schemas into a single DBMD, as DBMD.merge() would combine the metadatas of the
+    /// schemas fetched separately. Each catalog query is made once for all schemas, with the results restricted to
+    /// the given schemas as they are read, so fetching many schemas costs about as many queries as fetching one. The
+    /// queries read the catalog of the entire database, however, so for a few schemas out of many it may be cheaper
+    /// to fetch the schemas separately.
+    public DBMD fetchMetadata
+        (
+            DatabaseMetaData dbmd,
+            List<String> schemas,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat
+        )
+        throws SQLException
+    {
+        CaseSensitivity caseSens = getDatabaseCaseSensitivity(dbmd);
+
+        Set<String> nSchemas = new HashSet<>();
+        for ( String schema : schemas )
+            nSchemas.add(normalizeDatabaseIdentifier(schema, caseSens));
+
+        List<RelDescr> relDescrs =
+            fetchRelationDescriptions(dbmd, Optional.empty(), includeTables, includeViews, excludeRelsPat).stream()
+            .filter(rd -> rd.getRelationId().getSchema().map(nSchemas::contains).orElse(false))
+            .collect(toList());
+
+        List<RelMetadata> relMds = fetchRelationMetadatas(relDescrs, Optional.empty(), dbmd);
+
+        RelationFilter relFilter = RelationFilter.excluding(excludeRelsPat);
+
+        List<ForeignKey> fks = new ArrayList<>();
+        if ( includeFks )
+            fetchForeignKeys(Optional.empty(), dbmd, relFilter, relIdInterner(relDescrs), fk -> {
+                if ( fk.getSourceRelationId().getSchema().map(nSchemas::contains).orElse(false) )
+                    fks.add(fk);
+            });
+
+        Optional<String> schema = nSchemas.size() == 1 ? Optional.of(nSchemas.iterator().next()) : Optional.empty();
+
+        return buildDBMD(schema, relMds, fks, caseSens, dbmd);
+    }
+
+    /// Fetch metadata for each of the given schemas, with schemas fetched concurrently on up to parallelism
+    /// connections obtained from the data source. Each connection is used for all of the schemas assigned to it, and
+    /// each schema is fetched with schema-wide catalog queries as by the serial fetch. The result maps each given
+    /// schema name to its metadata, in the order given. The metadatas can be combined with DBMD.merge(), which
+    /// resolves the foreign keys between the schemas.
+    public Map<String, DBMD> fetchMetadatas
+        (
+            DataSource dataSource,
+            int parallelism,
+            List<String> schemas,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat
+        )
+        throws SQLException
+    {
+        if ( parallelism < 1 )
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+
+        if ( schemas.isEmpty() )
+            return new LinkedHashMap<>();
+
+        List<List<String>> schemaChunks = chunks(schemas, Math.min(parallelism, schemas.size()));
+
+        Map<String, DBMD> dbmdsBySchema = new HashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(schemaChunks.size(), daemonThreadFactory());
+        try
+        {
+            List<Future<Map<String, DBMD>>> futures = new ArrayList<>();
+
+            for ( List<String> schemaChunk : schemaChunks )
+            {
+                futures.add(executor.submit(() -> {
+                    Map<String, DBMD> fetched = new HashMap<>();
+                    try ( Connection conn = dataSource.getConnection() )
+                    {
+                        DatabaseMetaData dbmd = conn.getMetaData();
+                        for ( String schema : schemaChunk )
+                        {
+                            DBMD schemaDbmd =
+                                fetchMetadata(dbmd, Optional.of(schema), includeTables, includeViews, includeFks,
+                                              excludeRelsPat);
+                            fetched.put(schema, schemaDbmd);
+                        }
+                    }
+                    return fetched;
+                }));
+            }
+
+            for ( Future<Map<String, DBMD>> future : futures )
+                dbmdsBySchema.putAll(getFetchResult(future));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        Map<String, DBMD> res = new LinkedHashMap<>();
+        for ( String schema : schemas )
+            res.put(schema, dbmdsBySchema.get(schema));
+
+        return res;
+    }
+
+    // Multi-schema fetching
+    /////////////////////////////////////////////////////////
+
+
+    /////////////////////////////////////////////////////////
+    // Incremental refresh
+
+    /// Relations re-fetched individually in an incremental refresh, above which the changed relations are
+    /// re-fetched together with schema-wide catalog queries instead.
+    private static final int MAX_INDIVIDUAL_REFETCHES = 100;
+
+    /// Fetch the change marker of each relation in the schema, if change markers are supported by the catalog
+    /// reader.
+    public Optional<Map<RelId,String>> fetchRelationChangeMarkers
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema
+        )
+        throws SQLException
+    {
+        if ( !catalogReader.supportsRelationChangeMarkers() )
+            return Optional.empty();
+
+        Map<RelId,String> markers = new HashMap<>();
+
+        try ( ResultSet rs = catalogQuery(CHANGE_MARKERS, () -> catalogReader.getRelationChangeMarkers(dbmd, schema)) )
+        {
+            while ( rs.next() )
+            {
+                RelId relId = new RelId(optn(rs.getString("TABLE_SCHEM")), rs.getString("TABLE_NAME"));
+                markers.put(relId, rs.getString("CHANGE_MARKER"));
+            }
+        }
+
+        return Optional.of(markers);
+    }
+
+    /// Refresh metadata previously fetched for the schema of the passed DBMD with the same include options and
+    /// exclusion pattern. If the catalog reader supports relation change markers and the change markers read with
+    /// the previous metadata are passed, then only the relations whose change markers differ from those passed are
+    /// re-fetched, along with their foreign keys and those of the previous children of changed or removed relations.
+    /// Otherwise all metadata is fetched again. In either case the relation metadata and foreign key instances of the
+    /// previous DBMD are reused where unchanged. The change markers returned with the result should be retained to be
+    /// passed to the next refresh. Change markers from an initial fetch can be obtained by calling this method with an
+    /// empty previous DBMD and no change markers.
+    public MetadataRefresh refresh
+        (
+            DBMD previous,
+            Optional<Map<RelId,String>> previousChangeMarkers,
+            DatabaseMetaData dbmd,
+            boolean includeTables,
+            boolean includeViews,
+            boolean includeFks,
+            Optional<Pattern> excludeRelsPat
+        )
+        throws SQLException
+    {
+        CaseSensitivity caseSens = getDatabaseCaseSensitivity(dbmd);
+        Optional<String> schema = previous.getSchemaName();
+
+        // Markers are read first so any change made during the refresh will be seen by the next refresh.
+        Optional<Map<RelId,String>> changeMarkers = fetchRelationChangeMarkers(dbmd, schema);
+
+        if ( !changeMarkers.isPresent() || !previousChangeMarkers.isPresent() ||
+             caseSens != previous.getCaseSensitivity() )
+        {
+            DBMD fetched = fetchMetadata(dbmd, schema, includeTables, includeViews, includeFks, excludeRelsPat);
+
+            Set<RelId> changedRelIds = new HashSet<>();
+            DBMD refreshed = reusingUnchanged(fetched, previous, changedRelIds);
+
+            return new MetadataRefresh(refreshed, changeMarkers, false, changedRelIds);
+        }
+
+        Map<RelId,String> markers = changeMarkers.get();
+        Map<RelId,String> prevMarkers = previousChangeMarkers.get();
+
+        Set<RelId> markerChangedRelIds = new HashSet<>();
+        for ( Map.Entry<RelId,String> marker : markers.entrySet() )
+        {
+            if ( !marker.getValue().equals(prevMarkers.get(marker.getKey())) )
+                markerChangedRelIds.add(marker.getKey());
+        }
+
+        Set<RelId> removedRelIds = new HashSet<>();
+        for ( RelId relId : prevMarkers.keySet() )
+        {
+            if ( !markers.containsKey(relId) )
+                removedRelIds.add(relId);
+        }
+
+        // Relation metadatas
+
+        List<RelDescr> relDescrs = fetchRelationDescriptions(dbmd, schema, includeTables, includeViews, excludeRelsPat);
+
+        List<RelMetadata> relMds = new ArrayList<>(relDescrs.size());
+        List<RelDescr> refetchRelDescrs = new ArrayList<>();
+        Set<RelId> changedRelIds = new HashSet<>();
+        Set<RelId> currentRelIds = new HashSet<>(relDescrs.size() * 4 / 3 + 1);
+
+        for ( RelDescr relDescr : relDescrs )
+        {
+            RelId relId = relDescr.getRelationId();
+            currentRelIds.add(relId);
+
+            Optional<RelMetadata> prevRelMd = markerChangedRelIds.contains(relId) ? Optional.empty()
+                : previous.getRelationMetadata(relId).filter(rmd ->
+                    rmd.getRelationType() == relDescr.getRelationType() &&
+                    rmd.getRelationComment().equals(relDescr.getRelationComment())
+                  );
+
+            if ( prevRelMd.isPresent() )
+                relMds.add(prevRelMd.get());
+            else
+            {
+                refetchRelDescrs.add(relDescr);
+                changedRelIds.add(relId);
+            }
+        }
+
+        for ( RelMetadata prevRelMd : previous.getRelationMetadatas() )
+        {
+            if ( !currentRelIds.contains(prevRelMd.getRelationId()) )
+                changedRelIds.add(prevRelMd.getRelationId());
+        }
+
+        if ( refetchRelDescrs.size() <= MAX_INDIVIDUAL_REFETCHES )
+        {
+            for ( RelDescr relDescr : refetchRelDescrs )
+                fetchRelationMetadata(relDescr, dbmd).ifPresent(relMds::add);
+        }
+        else
+            relMds.addAll(fetchRelationMetadatas(refetchRelDescrs, schema, dbmd));
+
+        // Foreign keys
+
+        // Foreign keys are defined with their child tables, but a child's change marker need not change when its
+        // parent is renamed, recreated or has its key columns renamed. So the foreign keys of the previous children
+        // of changed or removed parents are re-fetched along with those of the changed relations themselves.
+        Set<RelId> fkRefetchRelIds = new HashSet<>(markerChangedRelIds);
+        if ( includeFks )
+        {
+            Set<RelId> changedParentRelIds = new HashSet<>(markerChangedRelIds);
+            changedParentRelIds.addAll(removedRelIds);
+
+            for ( RelId parentRelId : changedParentRelIds )
+            {
+                for ( ForeignKey fk : previous.getForeignKeysFromTo(Optional.empty(), Optional.of(parentRelId),
+                                                                    DBMD.ForeignKeyScope.ALL_TABLES) )
+                {
+                    if ( !removedRelIds.contains(fk.getSourceRelationId()) )
+                        fkRefetchRelIds.add(fk.getSourceRelationId());
+                }
+            }
+        }
+
+        List<ForeignKey> fks;
 
-        while ( rs.next() )
+        if ( !includeFks )
+            fks = emptyList();
+        else if ( fkRefetchRelIds.size() <= MAX_INDIVIDUAL_REFETCHES )
         {
-            Optional<String> relSchema = optn(rs.getString("TABLE_SCHEM"));
-            String relName = rs.getString("TABLE_NAME");
+            fks = new ArrayList<>();
 
-            RelId relId = new RelId(relSchema, relName);
-
-            if ( !matches(excludeRelsPattern, relId.getIdString()) )
+            // Retain the foreign keys from children not being re-fetched, which by the above have unchanged parents.
+            for ( ForeignKey fk : previous.getForeignKeys() )
             {
-                RelType relType = rs.getString("TABLE_TYPE").toLowerCase().equals("table") ? Table : View;
+                RelId srcRelId = fk.getSourceRelationId();
+                RelId tgtRelId = fk.getTargetRelationId();
 
-                relDescrs.add(new RelDescr(relId, relType, optn(rs.getString("REMARKS"))));
+                if ( !fkRefetchRelIds.contains(srcRelId) && !removedRelIds.contains(srcRelId) &&
+                     !matches(excludeRelsPat, srcRelId.getIdString()) && !matches(excludeRelsPat, tgtRelId.getIdString()) )
+                    fks.add(fk);
             }
+
+            for ( RelId relId : fkRefetchRelIds )
+                fks.addAll(fetchForeignKeysFrom(relId, dbmd, excludeRelsPat));
         }
+        else
+            fks = reusingUnchangedForeignKeys(fetchForeignKeys(schema, dbmd, excludeRelsPat), previous);
 
-        return relDescrs;
-    }
+        DBMD refreshed = buildDBMD(schema, relMds, fks, caseSens, dbmd);
 
-    public List<RelMetadata> fetchRelationMetadatas
-        (
-            List<RelDescr> relDescrs, // descriptions of relations to include
-            Optional<String> schema,
-            Connection conn
-        )
-        throws SQLException
-    {
-        return fetchRelationMetadatas(relDescrs, schema, conn.getMetaData());
+        return new MetadataRefresh(refreshed, changeMarkers, true, changedRelIds);
     }
 
-    public List<RelMetadata> fetchRelationMetadatas
+    // Return a DBMD like the fetched one but with relation metadatas and foreign keys replaced by their structurally
+    // equal counterparts from the previous DBMD, if any, adding the ids of added, changed and removed relations to
+    // the passed set.
+    private static DBMD reusingUnchanged
         (
-            List<RelDescr> relDescrs, // descriptions of relations to include
-            Optional<String> schema,
-            DatabaseMetaData dbmd
+            DBMD fetched,
+            DBMD previous,
+            Set<RelId> changedRelIds
         )
-        throws SQLException
     {
-        Map<RelId,RelDescr> relDescrsByRelId = relDescrs.stream().collect(toMap(RelDescr::getRelationId, identity()));
+        List<RelMetadata> relMds = new ArrayList<>(fetched.getRelationMetadatas().size());
 
-        try ( ResultSet colsRS = dbmd.getColumns(null, schema.orElse(null), "%", "%") )
+        for ( RelMetadata relMd : fetched.getRelationMetadatas() )
         {
-            List<RelMetadata> relMds = new ArrayList<>();
-            RelMetadataBuilder rmdBldr = null;
+            Optional<RelMetadata> prevRelMd =
+                previous.getRelationMetadata(relMd.getRelationId())
+                .filter(prmd -> MetadataEquality.sameRelationMetadata(prmd, relMd));
 
-            while ( colsRS.next() )
+            if ( prevRelMd.isPresent() )
+                relMds.add(prevRelMd.get());
+            else
             {
-                Optional<String> relSchema = optn(colsRS.getString("TABLE_SCHEM"));
-                String relName = colsRS.getString("TABLE_NAME");
-
-                RelId relId = new RelId(relSchema, relName);
-
-                RelDescr relDescr = relDescrsByRelId.get(relId);
-                if ( relDescr != null ) // Include this relation?
-                {
-                    Field f = makeField(colsRS, dbmd);
-
-                    // Relation changed ?
-                    if ( rmdBldr == null || !relId.equals(rmdBldr.relId) )
-                    {
-                        // finalize previous if any
-                        if ( rmdBldr != null )
-                            relMds.add(rmdBldr.build());
-
-                        rmdBldr = new RelMetadataBuilder(relId, relDescr.getRelationType(), relDescr.getRelationComment());
-                    }
-
-                    rmdBldr.addField(f);
-                }
+                relMds.add(relMd);
+                changedRelIds.add(relMd.getRelationId());
             }
+        }
 
-            if ( rmdBldr != null )
-                relMds.add(rmdBldr.build());
-
-            return relMds;
+        for ( RelMetadata prevRelMd : previous.getRelationMetadatas() )
+        {
+            if ( !fetched.getRelationMetadata(prevRelMd.getRelationId()).isPresent() )
+                changedRelIds.add(prevRelMd.getRelationId());
         }
-    }
 
-    public List<ForeignKey> fetchForeignKeys
-        (
-            Optional<String> schema,
-            Connection conn,
-            Optional<Pattern> excludeRelsPattern
-        )
-        throws SQLException
-    {
-        return fetchForeignKeys(schema, conn.getMetaData(), excludeRelsPattern);
+        return
+            new DBMD(
+                fetched.getSchemaName(),
+                relMds,
+                reusingUnchangedForeignKeys(fetched.getForeignKeys(), previous),
+                fetched.getCaseSensitivity(),
+                fetched.getDbmsName(),
+                fetched.getDbmsVersion(),
+                fetched.getDbmsMajorVersion(),
+                fetched.getDbmsMinorVersion()
+            );
     }
 
-    public List<ForeignKey> fetchForeignKeys
+    private static List<ForeignKey> reusingUnchangedForeignKeys
         (
-            Optional<String> schema,
-            DatabaseMetaData dbmd,
-            Optional<Pattern> excludeRelsPattern
+            List<ForeignKey> fetchedFks,
+            DBMD previous
         )
-        throws SQLException
     {
-        List<ForeignKey> fks = new ArrayList<>();
+        List<ForeignKey> fks = new ArrayList<>(fetchedFks.size());
 
-        try ( ResultSet rs = dbmd.getImportedKeys(null, schema.orElse(null), null) )
+        for ( ForeignKey fk : fetchedFks )
         {
-            FkBuilder fkBldr = null;
+            ForeignKey reusedFk = fk;
 
-            while ( rs.next() )
-            {
-                short compNum = rs.getShort(9);
+            List<ForeignKey> prevFks =
+                previous.getForeignKeysFromTo(
+                    Optional.of(fk.getSourceRelationId()),
+                    Optional.of(fk.getTargetRelationId()),
+                    DBMD.ForeignKeyScope.ALL_TABLES
+                );
 
-                if ( compNum == 1 ) // starting new fk
-                {
-                    // Finalize previous fk if any.
-                    if ( fkBldr != null && fkBldr.neitherRelMatches(excludeRelsPattern) )
-                        fks.add(fkBldr.build());
-
-                    fkBldr = new FkBuilder(
-                        new RelId(optn(rs.getString("FKTABLE_SCHEM")),
-                                  rs.getString("FKTABLE_NAME")),
-                        new RelId(optn(rs.getString("PKTABLE_SCHEM")),
-                                  rs.getString("PKTABLE_NAME"))
-                    );
-                    fkBldr.addComponent(
-                        new ForeignKey.Component(rs.getString("FKCOLUMN_NAME"), rs.getString("PKCOLUMN_NAME"))
-                    );
-                }
-                else // adding another fk component
+            for ( ForeignKey prevFk : prevFks )
+            {
+                if ( MetadataEquality.sameForeignKey(prevFk, fk) )
                 {
-                    requireNonNull(fkBldr); // because we should have seen a component # 1 before entering here
-                    fkBldr.addComponent(
-                        new ForeignKey.Component(rs.getString("FKCOLUMN_NAME"), rs.getString("PKCOLUMN_NAME"))
-                    );
+                    reusedFk = prevFk;
+                    break;
                 }
             }
 
-            if ( fkBldr != null && fkBldr.neitherRelMatches(excludeRelsPattern) )
-                fks.add(fkBldr.build());
+            fks.add(reusedFk);
         }
 
         return fks;
     }
 
+    // Incremental refresh
+    /////////////////////////////////////////////////////////
+
 
     public CaseSensitivity getDatabaseCaseSensitivity(Connection conn) throws SQLException
     {
@@ -329,44 +1496,37 @@ public class DatabaseMetadataFetcher
         return Field.isJdbcTypeChar(jdbcType);
     }
 
-    protected Field makeField(ResultSet colsRS, DatabaseMetaData dbmd) throws SQLException
+    /// Make a field from the current row of a column metadata result set, taking primary key part numbers from the
+    /// passed map of part numbers by field name for the field's relation.
+    protected Field makeField(ResultSet colsRS, Map<String,Integer> pkPartNumsByName) throws SQLException
     {
-        try ( ResultSet pkRS = dbmd.getPrimaryKeys(colsRS.getString(1), colsRS.getString(2), colsRS.getString(3)) )
-        {
-            // Fetch the primary key field names and part numbers for this relation
-            Map<String, Integer> pkSeqNumsByName = new HashMap<>();
-            while (pkRS.next())
-                pkSeqNumsByName.put(pkRS.getString(4), pkRS.getInt(5));
-            pkRS.close();
-
-            String name = colsRS.getString("COLUMN_NAME");
-            int typeCode = colsRS.getInt("DATA_TYPE");
-            String dbType = colsRS.getString("TYPE_NAME");
-
-            // Handle special cases/conversions for the type code.
-            if ( typeCode == Types.DATE || typeCode == Types.TIMESTAMP )
-                typeCode = getTypeCodeForDateOrTimestampColumn(typeCode, dbType);
-            else if ( "XMLTYPE".equals(dbType)  || "SYS.XMLTYPE".equals(dbType) )
-                // Oracle uses proprietary "OPAQUE" code of 2007 as of 11.2, should be Types.SQLXML = 2009.
-                typeCode = Types.SQLXML;
-
-            Optional<Integer> size = getRSInt(colsRS, "COLUMN_SIZE");
-            Optional<Integer> length = isJdbcTypeChar(typeCode) ? size : Optional.empty();
-            Optional<Boolean> nullable = getRSInt(colsRS, "NULLABLE").flatMap(n ->
-                n == ResultSetMetaData.columnNullable ? Optional.of(true) :
-                n == ResultSetMetaData.columnNoNulls ? Optional.of(false) :
-                    Optional.empty()
-            );
-            Optional<Integer> fracDigs =
-                isJdbcTypeNumeric(typeCode) ? getRSInt(colsRS, "DECIMAL_DIGITS") : Optional.empty();
-            Optional<Integer> prec = isJdbcTypeNumeric(typeCode) ? size : Optional.empty();
-            Optional<Integer> rad =
-                isJdbcTypeNumeric(typeCode) ? getRSInt(colsRS, "NUM_PREC_RADIX") : Optional.empty();
-            Optional<Integer> pkPart = optn(pkSeqNumsByName.get(name));
-            Optional<String> comment = optn(colsRS.getString("REMARKS"));
-
-            return new Field(name, typeCode, dbType, length, prec, fracDigs, rad, nullable, pkPart, comment);
-        }
+        String name = strings.pool(colsRS.getString("COLUMN_NAME"));
+        int typeCode = colsRS.getInt("DATA_TYPE");
+        String dbType = strings.pool(colsRS.getString("TYPE_NAME"));
+
+        // Handle special cases/conversions for the type code.
+        if ( typeCode == Types.DATE || typeCode == Types.TIMESTAMP )
+            typeCode = getTypeCodeForDateOrTimestampColumn(typeCode, dbType);
+        else if ( "XMLTYPE".equals(dbType)  || "SYS.XMLTYPE".equals(dbType) )
+            // Oracle uses proprietary "OPAQUE" code of 2007 as of 11.2, should be Types.SQLXML = 2009.
+            typeCode = Types.SQLXML;
+
+        Optional<Integer> size = getRSInt(colsRS, "COLUMN_SIZE");
+        Optional<Integer> length = isJdbcTypeChar(typeCode) ? size : Optional.empty();
+        Optional<Boolean> nullable = getRSInt(colsRS, "NULLABLE").flatMap(n ->
+            n == ResultSetMetaData.columnNullable ? Optional.of(true) :
+            n == ResultSetMetaData.columnNoNulls ? Optional.of(false) :
+                Optional.empty()
+        );
+        Optional<Integer> fracDigs =
+            isJdbcTypeNumeric(typeCode) ? getRSInt(colsRS, "DECIMAL_DIGITS") : Optional.empty();
+        Optional<Integer> prec = isJdbcTypeNumeric(typeCode) ? size : Optional.empty();
+        Optional<Integer> rad =
+            isJdbcTypeNumeric(typeCode) ? getRSInt(colsRS, "NUM_PREC_RADIX") : Optional.empty();
+        Optional<Integer> pkPart = optn(pkPartNumsByName.get(name));
+        Optional<String> comment = optn(colsRS.getString("REMARKS"));
+
+        return new Field(name, typeCode, dbType, length, prec, fracDigs, rad, nullable, pkPart, comment);
     }
 
     private int getTypeCodeForDateOrTimestampColumn
@@ -389,6 +1549,106 @@ public class DatabaseMetadataFetcher
     }
 
 
+    // Construct a DBMD from fetched metadata, reporting the construction time to the fetch listener if any.
+    private DBMD buildDBMD
+        (
+            Optional<String> schema,
+            List<RelMetadata> relMds,
+            List<ForeignKey> fks,
+            CaseSensitivity caseSens,
+            DatabaseMetaData dbmd
+        )
+        throws SQLException
+    {
+        String dbmsName = dbmd.getDatabaseProductName();
+        String dbmsVer = dbmd.getDatabaseProductVersion();
+        int dbmsMajorVer = dbmd.getDatabaseMajorVersion();
+        int dbmsMinorVer = dbmd.getDatabaseMinorVersion();
+
+        long startNanos = System.nanoTime();
+
+        DBMD res = new DBMD(schema, relMds, fks, caseSens, dbmsName, dbmsVer, dbmsMajorVer, dbmsMinorVer);
+
+        FetchListener listener = fetchListener;
+        if ( listener != null )
+            listener.phase(BUILD, System.nanoTime() - startNanos, relMds.size());
+
+        return res;
+    }
+
+    @FunctionalInterface
+    private interface CatalogQuery
+    {
+        ResultSet execute() throws SQLException;
+    }
+
+    // Execute a catalog query of the given phase, counting it. If there is a fetch listener, the returned result set
+    // counts the rows read from it and reports them with the query's elapsed time to the listener when closed.
+    private ResultSet catalogQuery(Phase phase, CatalogQuery query) throws SQLException
+    {
+        catalogCallCount.incrementAndGet();
+
+        FetchListener listener = fetchListener;
+        if ( listener == null )
+            return query.execute();
+
+        long startNanos = System.nanoTime();
+
+        ResultSet rs = query.execute();
+
+        return
+            (ResultSet)Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[]{ ResultSet.class },
+                new ListenedResultSetHandler(rs, phase, startNanos, listener)
+            );
+    }
+
+    // Invocation handler for result sets of catalog queries, counting rows on next() and reporting to the listener
+    // on the first close().
+    private static class ListenedResultSetHandler implements InvocationHandler
+    {
+        private final ResultSet rs;
+        private final Phase phase;
+        private final long startNanos;
+        private final FetchListener listener;
+
+        private long rowCount;
+        private boolean reported;
+
+        ListenedResultSetHandler(ResultSet rs, Phase phase, long startNanos, FetchListener listener)
+        {
+            this.rs = rs;
+            this.phase = phase;
+            this.startNanos = startNanos;
+            this.listener = listener;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            Object res;
+            try
+            {
+                res = method.invoke(rs, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+
+            if ( method.getName().equals("next") && Boolean.TRUE.equals(res) )
+                ++rowCount;
+            else if ( method.getName().equals("close") && !reported )
+            {
+                reported = true;
+                listener.catalogQuery(phase, System.nanoTime() - startNanos, rowCount);
+            }
+
+            return res;
+        }
+    }
+
+
     /////////////////////////////////////////////////////////
     // auxiliary builder classes
 
@@ -405,9 +1665,9 @@ public class DatabaseMetadataFetcher
             this.comps = new ArrayList<>();
         }
 
-        boolean neitherRelMatches(Optional<Pattern> relIdsPattern)
+        boolean isSelectedBy(RelationFilter relFilter)
         {
-            return !(matches(relIdsPattern, srcRel.getIdString()) || matches(relIdsPattern, tgtRel.getIdString()));
+            return relFilter.matches(srcRel) && !relFilter.isExcluded(tgtRel);
         }
 
         ForeignKey build() { return new ForeignKey(srcRel, tgtRel, comps); }
@@ -426,24 +1686,32 @@ public class DatabaseMetadataFetcher
 
         private final List<Field> fields;
 
+        // Canonical database type names if the fields are to be stored compactly, else null.
+        private final Map<String, String> compactDatabaseTypeNames;
+
         public RelMetadataBuilder
                 (
                         RelId relId,
                         RelType relType,
-                        Optional<String> relComment
+                        Optional<String> relComment,
+                        Map<String, String> compactDatabaseTypeNames
                 )
         {
             this.relId = requireNonNull(relId);
             this.relType = requireNonNull(relType);
             this.relComment = requireNonNull(relComment);
             this.fields = new ArrayList<>();
+            this.compactDatabaseTypeNames = compactDatabaseTypeNames;
         }
 
         public void addField(Field f) { fields.add(f); }
 
         public RelMetadata build()
         {
-            return new RelMetadata(relId, relType, relComment, fields);
+            List<Field> relFields =
+                compactDatabaseTypeNames != null ? CompactFields.of(fields, compactDatabaseTypeNames) : fields;
+
+            return new RelMetadata(relId, relType, relComment, relFields);
         }
     }
 
@@ -451,6 +1719,12 @@ public class DatabaseMetadataFetcher
     /////////////////////////////////////////////////////////
 
 
+    // An interner whose canonical ids are those of the given relation descriptions.
+    private static RelIdInterner relIdInterner(List<RelDescr> relDescrs)
+    {
+        return new RelIdInterner(relDescrs.stream().map(RelDescr::getRelationId).collect(toList()));
+    }
+
     private static boolean matches(Optional<Pattern> pat, String s)
     {
         return pat.map(p -> p.matcher(s).matches()).orElse(false);
@@ -472,6 +1746,27 @@ public class DatabaseMetadataFetcher
         return Optional.empty();
     }
 
+    // Split a comma separated list of relation names as written in SQL, and convert each to its form as stored in the
+    // database catalog: unquoted names are case-normalized and quoted names are taken literally.
+    private static List<String> storedRelationNames
+        (
+            String relNamesList,
+            DatabaseMetadataFetcher fetcher,
+            CaseSensitivity caseSens
+        )
+    {
+        List<String> relNames = new ArrayList<>();
+
+        for ( String relName : relNamesList.trim().split("\\s*,\\s*") )
+        {
+            String normdRelName = fetcher.normalizeDatabaseIdentifier(relName, caseSens);
+            boolean quoted = normdRelName.length() >= 2 && normdRelName.startsWith("\"") && normdRelName.endsWith("\"");
+            relNames.add(quoted ? normdRelName.substring(1, normdRelName.length() - 1) : normdRelName);
+        }
+
+        return relNames;
+    }
+
     private static String requireProperty(Properties p, String... keys)
     {
         return getProperty(p, keys).orElseThrow(() ->
@@ -484,12 +1779,35 @@ public class DatabaseMetadataFetcher
         if ( "-".equals(pathOrDash) )
             return System.out;
         else
-            return new FileOutputStream(pathOrDash);
+            return new BufferedOutputStream(Files.newOutputStream(Paths.get(pathOrDash)), 1 << 16);
+    }
+
+    private static ObjectMapper makeObjectMapper(String outputFormat)
+    {
+        switch ( outputFormat )
+        {
+            case "json":
+            {
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.registerModule(new Jdk8Module());
+                mapper.enable(SerializationFeature.INDENT_OUTPUT);
+                return mapper;
+            }
+            case "yaml":
+            {
+                ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+                mapper.registerModule(new Jdk8Module());
+                return mapper;
+            }
+            default:
+                throw new RuntimeException("output format in property must be json, yaml or binary");
+        }
     }
 
     private static void printUsage(PrintStream ps)
     {
-        ps.println("Expected arguments: jdbc-properties-file [dbmd-properties-file] output-file|-");
+        ps.println("Expected arguments: [--stats] jdbc-properties-file [dbmd-properties-file] output-file|-");
+        ps.println("  --stats: print catalog query counts, rows and times per fetch phase to standard error\n");
 
         ps.println(
             "jdbc properties file properties:\n  " +
@@ -503,13 +1821,30 @@ public class DatabaseMetadataFetcher
             "dbmd properties file properties:\n  " +
             "  date-mapping (DATES_AS_DRIVER_REPORTED | DATES_AS_TIMESTAMPS | DATES_AS_DATES)\n" +
             "  relations-owner (schema name | *any-owners*)\n" +
-            "  exclude-relations-fqname-regex\n"
+            "  relations-owners (comma separated schema names, instead of relations-owner)\n" +
+            "  relations-owners-regex (schema name regex, instead of relations-owner)\n" +
+            "  output-per-schema (true | false, with output-file a directory to hold a file per schema)\n" +
+            "  parallelism (number of connections for fetching multiple schemas)\n" +
+            "  exclude-relations-fqname-regex\n" +
+            "  include-relations (comma separated relation names, case-normalized unless quoted as in SQL)\n" +
+            "  include-relations-like (SQL LIKE pattern for relation names as stored in the catalog)\n" +
+            "  include-relations-fqname-regex\n" +
+            "  exclude-relations (comma separated relation names, case-normalized unless quoted as in SQL)\n" +
+            "  exclude-relations-like (SQL LIKE pattern for relation names as stored in the catalog)\n" +
+            "  relation-fetch-strategy (AUTO | SCHEMA_WIDE | RELATION_LISTS | PER_RELATION)\n" +
+            "  catalog-reader (jdbc | dialect)\n" +
+            "  output-format (json | yaml | binary)\n" +
+            "  stream-output (true | false)\n"
         );
     }
 
     public static void main(String[] args) throws Exception
     {
-        if ( args.length == 1 && args[0].equals("-h") || args[0].equals("--help") )
+        List<String> argsList = new ArrayList<>(Arrays.asList(args));
+        boolean printStats = argsList.remove("--stats");
+        args = argsList.toArray(new String[0]);
+
+        if ( args.length == 1 && (args[0].equals("-h") || args[0].equals("--help")) )
         {
             printUsage(System.out);
             System.exit(0);
@@ -528,73 +1863,291 @@ public class DatabaseMetadataFetcher
 
         Properties props = new Properties();
 
-        try ( OutputStream os = outputStream(outputFilePath);
-              InputStream propsIS = new FileInputStream(jdbcPropsFilePath) )
+        try ( InputStream propsIS = new FileInputStream(jdbcPropsFilePath) )
         {
             props.load(propsIS);
+        }
+
+        String driverClassname = requireProperty(props, "jdbc-driver-class", "jdbc.driverClassName");
+        String connStr = requireProperty(props, "jdbc-connect-url", "jdbc.url");
+        String user = requireProperty(props, "user", "jdbc.username");
+        String password = requireProperty(props, "password", "jdbc.password");
+
+        Class.forName(driverClassname);
+
+        try ( Connection conn = DriverManager.getConnection(connStr, user, password) )
+        {
+            if ( dbmdPropsFilePath.isPresent() && !jdbcPropsFilePath.equals(dbmdPropsFilePath.get()) )
+            {
+                try ( InputStream propsIS = new FileInputStream(dbmdPropsFilePath.get()) )
+                {
+                    props.load(propsIS);
+                }
+            }
+
+            Optional<String> dateMappingStr = getProperty(props, "date-mapping");
+            DateMapping dateMapping = dateMappingStr.map(DateMapping::valueOf).orElse(DateMapping.DATES_AS_DRIVER_REPORTED);
+
+            Optional<String> relsOwner = getProperty(props, "relations-owner").flatMap(o ->
+                o.equals("*any-owners*") ? Optional.empty() : Optional.of(o)
+            );
+
+            Optional<Pattern> excludeRelsPat =
+                getProperty(props, "exclude-relations-fqname-regex").map(Pattern::compile);
+
+            String catalogReaderStr = getProperty(props, "catalog-reader").orElse("jdbc");
+            CatalogReader catalogReader;
+            switch ( catalogReaderStr )
+            {
+                case "jdbc": catalogReader = new JdbcCatalogReader(); break;
+                case "dialect": catalogReader = CatalogReader.forDatabase(conn.getMetaData()); break;
+                default: throw new RuntimeException("catalog reader in property must be jdbc or dialect");
+            }
+
+            DatabaseMetadataFetcher fetcher = new DatabaseMetadataFetcher(dateMapping, catalogReader);
+
+            // Relation names are normalized as they would be in SQL, to match the names stored in the catalog.
+            CaseSensitivity caseSens = fetcher.getDatabaseCaseSensitivity(conn);
+
+            Optional<List<String>> includeRels =
+                getProperty(props, "include-relations").map(r -> storedRelationNames(r, fetcher, caseSens));
+            Optional<String> includeRelsLike = getProperty(props, "include-relations-like");
+            Optional<Pattern> includeRelsPat =
+                getProperty(props, "include-relations-fqname-regex").map(Pattern::compile);
+            Optional<List<String>> excludeRels =
+                getProperty(props, "exclude-relations").map(r -> storedRelationNames(r, fetcher, caseSens));
+            Optional<String> excludeRelsLike = getProperty(props, "exclude-relations-like");
 
-            String driverClassname = requireProperty(props, "jdbc-driver-class", "jdbc.driverClassName");
-            String connStr = requireProperty(props, "jdbc-connect-url", "jdbc.url");
-            String user = requireProperty(props, "user", "jdbc.username");
-            String password = requireProperty(props, "password", "jdbc.password");
+            RelationFilter relFilter = RelationFilter.excluding(excludeRelsPat);
+            if ( includeRels.isPresent() )
+                relFilter = relFilter.includingNames(includeRels.get());
+            if ( includeRelsLike.isPresent() )
+                relFilter = relFilter.includingLike(includeRelsLike.get());
+            if ( includeRelsPat.isPresent() )
+                relFilter = relFilter.including(includeRelsPat.get());
+            if ( excludeRels.isPresent() )
+                relFilter = relFilter.excludingNames(excludeRels.get());
+            if ( excludeRelsLike.isPresent() )
+                relFilter = relFilter.excludingLike(excludeRelsLike.get());
 
-            Class.forName(driverClassname);
+            boolean relListFilters = relFilter.hasInclusions() || excludeRels.isPresent() || excludeRelsLike.isPresent();
 
-            try ( Connection conn = DriverManager.getConnection(connStr, user, password) )
+            FetchStats stats = new FetchStats();
+            if ( printStats )
+                fetcher.setFetchListener(stats);
+
+            Optional<String> relFetchStrategyStr = getProperty(props, "relation-fetch-strategy");
+            if ( relFetchStrategyStr.isPresent() )
+                fetcher.setRelationFetchStrategy(RelationFetchStrategy.valueOf(relFetchStrategyStr.get()));
+
+            String outputFormat = optn(props.getProperty("output-format")).orElse("json");
+
+            boolean streamOutput = getProperty(props, "stream-output").map(Boolean::parseBoolean).orElse(false);
+
+            Optional<List<String>> relsOwners =
+                getProperty(props, "relations-owners").map(o -> Arrays.asList(o.trim().split("\\s*,\\s*")));
+
+            Optional<Pattern> relsOwnersPat = getProperty(props, "relations-owners-regex").map(Pattern::compile);
+
+            if ( relsOwners.isPresent() || relsOwnersPat.isPresent() )
             {
-                dbmdPropsFilePath.ifPresent(dbmdPropsPath -> {
-                    try
+                if ( streamOutput )
+                    throw new RuntimeException("stream-output is not supported for multiple schemas");
+                if ( relListFilters )
+                    throw new RuntimeException("only exclude-relations-fqname-regex is supported for multiple schemas");
+
+                List<String> schemas =
+                    relsOwners.isPresent() ? relsOwners.get()
+                    : fetcher.fetchSchemaNames(conn.getMetaData(), relsOwnersPat);
+
+                boolean outputPerSchema =
+                    getProperty(props, "output-per-schema").map(Boolean::parseBoolean).orElse(false);
+
+                int parallelism = getProperty(props, "parallelism").map(Integer::parseInt).orElse(1);
+
+                if ( outputPerSchema || parallelism > 1 )
+                {
+                    DataSource dataSource = new DriverManagerDataSource(connStr, user, password);
+
+                    Map<String, DBMD> dbmds =
+                        fetcher.fetchMetadatas(dataSource, parallelism, schemas, true, true, true, excludeRelsPat);
+
+                    if ( outputPerSchema )
+                    {
+                        Files.createDirectories(Paths.get(outputFilePath));
+
+                        String ext = outputFormat.equals("binary") ? "dbmd" : outputFormat;
+
+                        for ( Map.Entry<String, DBMD> schemaDbmd : dbmds.entrySet() )
+                        {
+                            String schemaOutputPath = Paths.get(outputFilePath, schemaDbmd.getKey() + "." + ext).toString();
+                            try ( OutputStream os = outputStream(schemaOutputPath) )
+                            {
+                                writeDBMD(schemaDbmd.getValue(), outputFormat, os, fetcher.getFetchListener());
+                            }
+                        }
+                    }
+                    else
                     {
-                        if (!jdbcPropsFilePath.equals(dbmdPropsPath))
-                            props.load(new FileInputStream(dbmdPropsPath));
+                        try ( OutputStream os = outputStream(outputFilePath) )
+                        {
+                            writeDBMD(DBMD.merge(new ArrayList<>(dbmds.values())), outputFormat, os, fetcher.getFetchListener());
+                        }
                     }
-                    catch (IOException ioe) { throw new RuntimeException(ioe); }
-                });
+                }
+                else
+                {
+                    DBMD dbmd = fetcher.fetchMetadata(conn.getMetaData(), schemas, true, true, true, excludeRelsPat);
 
-                Optional<String> dateMappingStr = getProperty(props, "date-mapping");
-                DateMapping dateMapping = dateMappingStr.map(DateMapping::valueOf).orElse(DateMapping.DATES_AS_DRIVER_REPORTED);
+                    try ( OutputStream os = outputStream(outputFilePath) )
+                    {
+                        writeDBMD(dbmd, outputFormat, os, fetcher.getFetchListener());
+                    }
+                }
+            }
+            else if ( streamOutput )
+            {
+                if ( outputFormat.equals("binary") )
+                    throw new RuntimeException("stream-output is not supported for binary output");
 
-                Optional<String> relsOwner = getProperty(props, "relations-owner").flatMap(o ->
-                    o.equals("*any-owners*") ? Optional.empty() : Optional.of(o)
-                );
+                CountingOutputStream os = new CountingOutputStream(outputStream(outputFilePath));
 
-                Optional<Pattern> excludeRelsPat =
-                    getProperty(props, "exclude-relations-fqname-regex").map(Pattern::compile);
+                try ( DBMDStreamWriter writer = new DBMDStreamWriter(makeObjectMapper(outputFormat), os) )
+                {
+                    fetcher.fetchMetadata(
+                        conn.getMetaData(),
+                        relsOwner,
+                        true,
+                        true,
+                        true,
+                        relFilter,
+                        writer
+                    );
+                }
+                finally
+                {
+                    os.close();
+                }
 
+                // The writing time of streamed output is included in the catalog query phases which produce it.
+                stats.phase(WRITE, 0, os.getCount());
+            }
+            else
+            {
                 DBMD dbmd =
-                    new DatabaseMetadataFetcher(dateMapping)
-                    .fetchMetadata(
+                    fetcher.fetchMetadata(
                         conn.getMetaData(),
                         relsOwner,
                         true,
                         true,
                         true,
-                        excludeRelsPat
+                        relFilter
                     );
 
-                String outputFormat = optn(props.getProperty("output-format")).orElse("json");
-
-                switch ( outputFormat )
+                try ( OutputStream os = outputStream(outputFilePath) )
                 {
-                    case "json":
-                    {
-                        ObjectMapper mapper = new ObjectMapper();
-                        mapper.registerModule(new Jdk8Module());
-                        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-                        mapper.writeValue(os, dbmd);
-                        break;
-                    }
-                    case "yaml":
-                    {
-                        ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-                        mapper.registerModule(new Jdk8Module());
-                        mapper.writeValue(os, dbmd);
-                        break;
-                    }
-                    default:
-                        throw new RuntimeException("output format in property must be json or yaml");
+                    writeDBMD(dbmd, outputFormat, os, fetcher.getFetchListener());
                 }
             }
+
+            if ( printStats )
+                stats.print(System.err);
+        }
+    }
+
+    private static void writeDBMD
+        (
+            DBMD dbmd,
+            String outputFormat,
+            OutputStream os,
+            Optional<FetchListener> listener
+        )
+        throws IOException
+    {
+        long startNanos = System.nanoTime();
+
+        CountingOutputStream cos = new CountingOutputStream(os);
+
+        if ( outputFormat.equals("binary") )
+            dbmd.writeBinary(cos);
+        else
+            makeObjectMapper(outputFormat).writeValue(cos, dbmd);
+
+        cos.flush();
+
+        listener.ifPresent(l -> l.phase(WRITE, System.nanoTime() - startNanos, cos.getCount()));
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        private long count;
+
+        CountingOutputStream(OutputStream os)
+        {
+            super(os);
+        }
+
+        long getCount() { return count; }
+
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            ++count;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /// Unpooled data source for the command line, making a new connection for each request.
+    private static class DriverManagerDataSource implements DataSource
+    {
+        private final String url;
+        private final String user;
+        private final String password;
+
+        private PrintWriter logWriter;
+
+        DriverManagerDataSource(String url, String user, String password)
+        {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+        }
+
+        public Connection getConnection() throws SQLException
+        {
+            return DriverManager.getConnection(url, user, password);
+        }
+
+        public Connection getConnection(String user, String password) throws SQLException
+        {
+            return DriverManager.getConnection(url, user, password);
+        }
+
+        public PrintWriter getLogWriter() { return logWriter; }
+
+        public void setLogWriter(PrintWriter out) { this.logWriter = out; }
+
+        public void setLoginTimeout(int seconds) { DriverManager.setLoginTimeout(seconds); }
+
+        public int getLoginTimeout() { return DriverManager.getLoginTimeout(); }
+
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException
+        {
+            throw new SQLFeatureNotSupportedException();
         }
+
+        public <T> T unwrap(Class<T> iface) throws SQLException
+        {
+            if ( iface.isInstance(this) )
+                return iface.cast(this);
+            throw new SQLException("Not a wrapper for " + iface.getName());
+        }
+
+        public boolean isWrapperFor(Class<?> iface) { return iface.isInstance(this); }
     }
 }
@@ -0,0 +1,35 @@
+package gov.fda.nctr.dbmd;
+
+
+/// Receiver of timing and volume measurements from DatabaseMetadataFetcher, for finding where the time of a fetch
+/// is spent. Listener methods may be called from several threads at once during a parallel fetch, so implementations
+/// must be thread safe. See FetchStats for a listener which accumulates the measurements per phase.
+public interface FetchListener
+{
+    enum Phase
+    {
+        /// Schema names query.
+        SCHEMAS,
+        /// Relations (tables and views) query.
+        RELATIONS,
+        /// Columns queries, including the building of fields and relation metadatas from their rows.
+        COLUMNS,
+        PRIMARY_KEYS,
+        /// Imported keys queries, including the building of foreign keys from their rows.
+        FOREIGN_KEYS,
+        CHANGE_MARKERS,
+        /// Construction of a DBMD from the fetched metadata, which sorts and indexes it.
+        BUILD,
+        /// Serialization of the metadata to its output. Metadata which is streamed to its output as it is read is
+        /// serialized within the catalog query phases, so only the bytes written are reported for it.
+        WRITE
+    }
+
+    /// Called when the result set of a catalog query has been closed, with the time from issuing the query to
+    /// closing its result set and the number of rows read from it.
+    default void catalogQuery(Phase phase, long elapsedNanos, long rowCount) {}
+
+    /// Called when work other than a catalog query has completed, with its elapsed time and a count of the items
+    /// processed: relations for BUILD, and bytes for WRITE.
+    default void phase(Phase phase, long elapsedNanos, long count) {}
+}
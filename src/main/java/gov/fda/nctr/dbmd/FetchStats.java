@@ -0,0 +1,84 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+
+/// A fetch listener accumulating the number of catalog queries, rows, elapsed time and item counts of each phase,
+/// for printing a summary after a fetch.
+public final class FetchStats implements FetchListener
+{
+    private final Map<Phase, long[]> totalsByPhase = new EnumMap<>(Phase.class);
+
+    // Indexes of the totals held for each phase.
+    private static final int CALLS = 0;
+    private static final int ROWS = 1;
+    private static final int NANOS = 2;
+    private static final int COUNT = 3;
+
+    public synchronized void catalogQuery(Phase phase, long elapsedNanos, long rowCount)
+    {
+        long[] totals = totals(phase);
+        totals[CALLS] += 1;
+        totals[ROWS] += rowCount;
+        totals[NANOS] += elapsedNanos;
+    }
+
+    public synchronized void phase(Phase phase, long elapsedNanos, long count)
+    {
+        long[] totals = totals(phase);
+        totals[NANOS] += elapsedNanos;
+        totals[COUNT] += count;
+    }
+
+    public synchronized long getCatalogCallCount(Phase phase) { return total(phase, CALLS); }
+
+    public synchronized long getRowCount(Phase phase) { return total(phase, ROWS); }
+
+    public synchronized long getElapsedNanos(Phase phase) { return total(phase, NANOS); }
+
+    /// Return the count of items processed outside of catalog queries, as passed to phase().
+    public synchronized long getCount(Phase phase) { return total(phase, COUNT); }
+
+    public synchronized void reset() { totalsByPhase.clear(); }
+
+    /// Print a table of the totals of each phase which has been recorded, followed by the overall totals.
+    public synchronized void print(PrintStream ps)
+    {
+        String format = "%-14s %8s %10s %12s %12s%n";
+        ps.printf(format, "phase", "calls", "rows", "time (ms)", "count");
+
+        long calls = 0, rows = 0, nanos = 0;
+
+        for ( Map.Entry<Phase, long[]> phaseTotals : totalsByPhase.entrySet() )
+        {
+            long[] totals = phaseTotals.getValue();
+
+            ps.printf(format, phaseTotals.getKey().name().toLowerCase(), totals[CALLS], totals[ROWS],
+                      millis(totals[NANOS]), totals[COUNT]);
+
+            calls += totals[CALLS];
+            rows += totals[ROWS];
+            nanos += totals[NANOS];
+        }
+
+        ps.printf(format, "total", calls, rows, millis(nanos), "");
+    }
+
+    private long[] totals(Phase phase)
+    {
+        return totalsByPhase.computeIfAbsent(phase, p -> new long[4]);
+    }
+
+    private long total(Phase phase, int index)
+    {
+        long[] totals = totalsByPhase.get(phase);
+        return totals != null ? totals[index] : 0;
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.format("%.1f", nanos / 1e6);
+    }
+}
@@ -82,10 +82,10 @@ public class Field {
     public Optional<String> getComment() { return comment; }
 
     @JsonIgnore
-    public boolean isNumericType() { return isJdbcTypeNumeric(jdbcTypeCode); }
+    public boolean isNumericType() { return isJdbcTypeNumeric(getJdbcTypeCode()); }
 
     @JsonIgnore
-    public boolean isCharacterType() { return isJdbcTypeChar(jdbcTypeCode); }
+    public boolean isCharacterType() { return isJdbcTypeChar(getJdbcTypeCode()); }
 
     public static boolean isJdbcTypeNumeric(int jdbcType)
     {
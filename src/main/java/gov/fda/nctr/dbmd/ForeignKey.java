@@ -2,7 +2,6 @@ package gov.fda.nctr.dbmd;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import static java.util.Collections.unmodifiableList;
@@ -119,12 +118,14 @@ public class ForeignKey implements Serializable {
         if ( getForeignKeyComponents().size() != normdReqdFkFieldNames.size() )
             return false;
 
-        Set<String> childFkFieldNames = new HashSet<>();
-
+        // The source field names of a foreign key are distinct, so with equal sizes containment implies equality.
         for(ForeignKey.Component fk_comp: getForeignKeyComponents())
-            childFkFieldNames.add(fk_comp.getForeignKeyFieldName());
+        {
+            if ( !normdReqdFkFieldNames.contains(fk_comp.getForeignKeyFieldName()) )
+                return false;
+        }
 
-        return childFkFieldNames.equals(normdReqdFkFieldNames);
+        return true;
     }
 
     public static class Component
@@ -0,0 +1,546 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.*;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+
+
+/// The relations of a set of foreign keys as a graph, with the foreign keys as edges which may be traversed in either
+/// direction, for finding join paths between relations. Relations are numbered, and the edges of each relation are
+/// held in primitive arrays in compressed sparse row form, so searches allocate only for the paths they return.
+/// Instances are immutable and may be shared between threads; obtain them from DBMD.getForeignKeyGraph().
+public final class ForeignKeyGraph
+{
+    private final RelId[] relIds;
+
+    private final Map<RelId, Integer> relNumsByRelId;
+
+    private final ForeignKey[] fks;
+
+    // The edges of relation r are at indexes edgeOffsets[r] until edgeOffsets[r+1] of the arrays below.
+    private final int[] edgeOffsets;
+
+    // The relation at the other end of each edge.
+    private final int[] edgeRels;
+
+    // The foreign key index of each edge shifted left one bit, with the low bit set if the edge goes from the foreign
+    // key's target (parent) to its source (child).
+    private final int[] edgeSteps;
+
+    // Search work arrays for each thread, sized to the number of relations.
+    private final ThreadLocal<Workspace> workspaces;
+
+    ForeignKeyGraph(List<ForeignKey> foreignKeys)
+    {
+        Map<RelId, Integer> relNums = new HashMap<>();
+        List<RelId> rels = new ArrayList<>();
+
+        int[] srcNums = new int[foreignKeys.size()];
+        int[] tgtNums = new int[foreignKeys.size()];
+
+        for ( int i = 0; i < foreignKeys.size(); ++i )
+        {
+            ForeignKey fk = foreignKeys.get(i);
+            srcNums[i] = relNums.computeIfAbsent(fk.getSourceRelationId(), relId -> { rels.add(relId); return rels.size() - 1; });
+            tgtNums[i] = relNums.computeIfAbsent(fk.getTargetRelationId(), relId -> { rels.add(relId); return rels.size() - 1; });
+        }
+
+        int relCount = rels.size();
+
+        int[] offsets = new int[relCount + 1];
+        for ( int i = 0; i < foreignKeys.size(); ++i )
+        {
+            ++offsets[srcNums[i] + 1];
+            ++offsets[tgtNums[i] + 1];
+        }
+        for ( int r = 0; r < relCount; ++r )
+            offsets[r + 1] += offsets[r];
+
+        int[] nextEdge = Arrays.copyOf(offsets, relCount);
+        int[] edgeRels = new int[offsets[relCount]];
+        int[] edgeSteps = new int[offsets[relCount]];
+
+        for ( int i = 0; i < foreignKeys.size(); ++i )
+        {
+            int srcEdge = nextEdge[srcNums[i]]++;
+            edgeRels[srcEdge] = tgtNums[i];
+            edgeSteps[srcEdge] = i << 1;
+
+            int tgtEdge = nextEdge[tgtNums[i]]++;
+            edgeRels[tgtEdge] = srcNums[i];
+            edgeSteps[tgtEdge] = (i << 1) | 1;
+        }
+
+        this.relIds = rels.toArray(new RelId[0]);
+        this.relNumsByRelId = relNums;
+        this.fks = foreignKeys.toArray(new ForeignKey[0]);
+        this.edgeOffsets = offsets;
+        this.edgeRels = edgeRels;
+        this.edgeSteps = edgeSteps;
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(relCount));
+    }
+
+    /// The relations which are the source or target of at least one foreign key of the graph.
+    public List<RelId> getRelationIds() { return unmodifiableList(Arrays.asList(relIds)); }
+
+    public List<ForeignKey> getForeignKeys() { return unmodifiableList(Arrays.asList(fks)); }
+
+    /// Return a join path between the given relations having the fewest foreign key steps, if any.
+    public Optional<JoinPath> getShortestPath(RelId fromRelId, RelId toRelId)
+    {
+        List<JoinPath> paths = shortestPaths(fromRelId, toRelId, 1);
+        return paths.isEmpty() ? Optional.empty() : Optional.of(paths.get(0));
+    }
+
+    /// Return all join paths between the given relations having the fewest foreign key steps.
+    public List<JoinPath> getShortestPaths(RelId fromRelId, RelId toRelId)
+    {
+        return shortestPaths(fromRelId, toRelId, Integer.MAX_VALUE);
+    }
+
+    /// Return all join paths between the given relations of at most the given number of foreign key steps which do
+    /// not pass through any relation more than once, in order of increasing length.
+    public List<JoinPath> getPaths(RelId fromRelId, RelId toRelId, int maxSteps)
+    {
+        if ( fromRelId.equals(toRelId) )
+            return Collections.singletonList(new JoinPath(fromRelId, Collections.emptyList()));
+
+        Integer from = relNumsByRelId.get(fromRelId);
+        Integer to = relNumsByRelId.get(toRelId);
+        if ( from == null || to == null || maxSteps < 1 )
+            return Collections.emptyList();
+
+        Workspace ws = workspaces.get();
+        int gen = ws.nextGeneration();
+        Side toSide = ws.toSide;
+
+        // Distances to the target relation, within the step limit, to prune steps which cannot reach it in time.
+        toSide.start(to, gen);
+        while ( toSide.hasFrontier() && toSide.frontierDist() < maxSteps )
+            toSide.expandLayer(gen, null);
+
+        if ( toSide.marks[from] != gen )
+            return Collections.emptyList();
+
+        // A path visits each relation at most once, so its steps are bounded by the relation count as well.
+        List<JoinStep> steps = new ArrayList<>(Math.min(maxSteps, relIds.length));
+        List<JoinPath> paths = new ArrayList<>();
+        collectPaths(ws, gen, fromRelId, from, to, maxSteps, steps, paths);
+
+        paths.sort(Comparator.comparingInt(path -> path.getSteps().size()));
+
+        return paths;
+    }
+
+    /// Return up to the given number of shortest paths between the relations, found by searching breadth first from
+    /// both relations at once, a layer at a time from whichever side has the smaller frontier, until the searches
+    /// meet. The paths are then enumerated through the edges where the searches met.
+    private List<JoinPath> shortestPaths(RelId fromRelId, RelId toRelId, int maxPaths)
+    {
+        if ( fromRelId.equals(toRelId) )
+            return Collections.singletonList(new JoinPath(fromRelId, Collections.emptyList()));
+
+        Integer from = relNumsByRelId.get(fromRelId);
+        Integer to = relNumsByRelId.get(toRelId);
+        if ( from == null || to == null )
+            return Collections.emptyList();
+
+        Workspace ws = workspaces.get();
+        int gen = ws.nextGeneration();
+        Side fromSide = ws.fromSide, toSide = ws.toSide;
+
+        fromSide.start(from, gen);
+        toSide.start(to, gen);
+        ws.meetingCount = 0;
+
+        while ( ws.meetingCount == 0 && fromSide.hasFrontier() && toSide.hasFrontier() )
+        {
+            if ( fromSide.frontierSize() <= toSide.frontierSize() )
+                fromSide.expandLayer(gen, toSide);
+            else
+                toSide.expandLayer(gen, fromSide);
+        }
+
+        if ( ws.meetingCount == 0 )
+            return Collections.emptyList();
+
+        // The meeting edges were all recorded in the last layer expanded, by one side or the other. They may join
+        // relations at different distances on the other side, so only those on the shortest paths are kept.
+        int pathLength = Integer.MAX_VALUE;
+        for ( int i = 0; i < ws.meetingCount; ++i )
+            pathLength = Math.min(pathLength, ws.meetingLength(i));
+
+        List<JoinPath> paths = new ArrayList<>();
+        JoinStep[] steps = new JoinStep[pathLength];
+
+        for ( int i = 0; i < ws.meetingCount && paths.size() < maxPaths; ++i )
+        {
+            if ( ws.meetingLength(i) != pathLength )
+                continue;
+
+            int e = ws.meetingEdges[i];
+            boolean fromFromSide = ws.meetingSide == 0;
+            int fromSideRel = fromFromSide ? ws.meetingRels[i] : edgeRels[e];
+            int toSideRel = fromFromSide ? edgeRels[e] : ws.meetingRels[i];
+            int meetingStepIx = fromSide.dists[fromSideRel];
+
+            steps[meetingStepIx] = fromFromSide ? stepToward(e) : stepFrom(e);
+
+            collectShortestPaths(fromSide, toSide, gen, fromRelId, fromSideRel, toSideRel, steps, maxPaths, paths);
+        }
+
+        return paths;
+    }
+
+    // Fill in the steps before the given from side relation back to the start relation, along edges to relations one
+    // step nearer the start, then the steps after the given to side relation, adding a path for each combination.
+    private void collectShortestPaths
+        (
+            Side fromSide,
+            Side toSide,
+            int gen,
+            RelId fromRelId,
+            int fromSideRel,
+            int toSideRel,
+            JoinStep[] steps,
+            int maxPaths,
+            List<JoinPath> paths
+        )
+    {
+        int dist = fromSide.dists[fromSideRel];
+
+        if ( dist == 0 )
+        {
+            collectShortestPathEnds(toSide, gen, fromRelId, toSideRel, steps, steps.length - toSide.dists[toSideRel], maxPaths, paths);
+            return;
+        }
+
+        for ( int e = edgeOffsets[fromSideRel]; e < edgeOffsets[fromSideRel + 1] && paths.size() < maxPaths; ++e )
+        {
+            int prev = edgeRels[e];
+            if ( fromSide.marks[prev] == gen && fromSide.dists[prev] == dist - 1 )
+            {
+                steps[dist - 1] = stepFrom(e);
+                collectShortestPaths(fromSide, toSide, gen, fromRelId, prev, toSideRel, steps, maxPaths, paths);
+            }
+        }
+    }
+
+    private void collectShortestPathEnds
+        (
+            Side toSide,
+            int gen,
+            RelId fromRelId,
+            int rel,
+            JoinStep[] steps,
+            int stepIx,
+            int maxPaths,
+            List<JoinPath> paths
+        )
+    {
+        int dist = toSide.dists[rel];
+
+        if ( dist == 0 )
+        {
+            paths.add(new JoinPath(fromRelId, Arrays.asList(steps.clone())));
+            return;
+        }
+
+        for ( int e = edgeOffsets[rel]; e < edgeOffsets[rel + 1] && paths.size() < maxPaths; ++e )
+        {
+            int next = edgeRels[e];
+            if ( toSide.marks[next] == gen && toSide.dists[next] == dist - 1 )
+            {
+                steps[stepIx] = stepToward(e);
+                collectShortestPathEnds(toSide, gen, fromRelId, next, steps, stepIx + 1, maxPaths, paths);
+            }
+        }
+    }
+
+    private void collectPaths
+        (
+            Workspace ws,
+            int gen,
+            RelId fromRelId,
+            int rel,
+            int target,
+            int stepsRemaining,
+            List<JoinStep> steps,
+            List<JoinPath> paths
+        )
+    {
+        ws.onPath[rel] = true;
+
+        Side toSide = ws.toSide;
+
+        for ( int e = edgeOffsets[rel]; e < edgeOffsets[rel + 1]; ++e )
+        {
+            int next = edgeRels[e];
+
+            // The next relation must be off the path and within the remaining steps of the target.
+            if ( ws.onPath[next] || toSide.marks[next] != gen || toSide.dists[next] > stepsRemaining - 1 )
+                continue;
+
+            steps.add(stepToward(e));
+
+            if ( next == target )
+                paths.add(new JoinPath(fromRelId, new ArrayList<>(steps)));
+            else
+                collectPaths(ws, gen, fromRelId, next, target, stepsRemaining - 1, steps, paths);
+
+            steps.remove(steps.size() - 1);
+        }
+
+        ws.onPath[rel] = false;
+    }
+
+    // The step along the given edge, from the relation holding the edge to the relation at its other end.
+    private JoinStep stepToward(int edge)
+    {
+        int step = edgeSteps[edge];
+        return new JoinStep(fks[step >>> 1], (step & 1) == 0);
+    }
+
+    // The step along the given edge in reverse, from the relation at its other end to the relation holding the edge.
+    private JoinStep stepFrom(int edge)
+    {
+        int step = edgeSteps[edge];
+        return new JoinStep(fks[step >>> 1], (step & 1) == 1);
+    }
+
+    /// Search work arrays for one thread.
+    private final class Workspace
+    {
+        private int generation;
+
+        final Side fromSide;
+
+        final Side toSide;
+
+        final boolean[] onPath;
+
+        // Edges joining the two sides of a bidirectional search, each with the relation holding the edge, which was
+        // reached on the meeting side (0 for the from side, 1 for the to side).
+        int meetingCount;
+        int[] meetingRels = new int[16];
+        int[] meetingEdges = new int[16];
+        byte meetingSide;
+
+        Workspace(int relCount)
+        {
+            fromSide = new Side(this, (byte)0, relCount);
+            toSide = new Side(this, (byte)1, relCount);
+            onPath = new boolean[relCount];
+        }
+
+        int nextGeneration()
+        {
+            if ( ++generation == 0 )
+            {
+                Arrays.fill(fromSide.marks, 0);
+                Arrays.fill(toSide.marks, 0);
+                generation = 1;
+            }
+
+            return generation;
+        }
+
+        void addMeeting(int rel, int edge, byte side)
+        {
+            if ( meetingCount == meetingRels.length )
+            {
+                meetingRels = Arrays.copyOf(meetingRels, meetingCount * 2);
+                meetingEdges = Arrays.copyOf(meetingEdges, meetingCount * 2);
+            }
+
+            meetingRels[meetingCount] = rel;
+            meetingEdges[meetingCount] = edge;
+            meetingSide = side;
+            ++meetingCount;
+        }
+
+        // The length of the path through the given meeting edge.
+        int meetingLength(int i)
+        {
+            Side side = meetingSide == 0 ? fromSide : toSide;
+            Side otherSide = meetingSide == 0 ? toSide : fromSide;
+            return side.dists[meetingRels[i]] + 1 + otherSide.dists[edgeRels[meetingEdges[i]]];
+        }
+    }
+
+    /// One side of a breadth first search: the distances from its start relation of the relations it has reached,
+    /// which are marked with the generation of the search, and the queue of reached relations.
+    private final class Side
+    {
+        final Workspace workspace;
+
+        final byte sideNum;
+
+        final int[] marks;
+
+        final int[] dists;
+
+        final int[] queue;
+
+        // The frontier, which is the last layer reached, is at queue indexes head until tail.
+        int head, tail;
+
+        Side(Workspace workspace, byte sideNum, int relCount)
+        {
+            this.workspace = workspace;
+            this.sideNum = sideNum;
+            marks = new int[relCount];
+            dists = new int[relCount];
+            queue = new int[relCount];
+        }
+
+        void start(int rel, int gen)
+        {
+            marks[rel] = gen;
+            dists[rel] = 0;
+            queue[0] = rel;
+            head = 0;
+            tail = 1;
+        }
+
+        boolean hasFrontier() { return head < tail; }
+
+        int frontierSize() { return tail - head; }
+
+        int frontierDist() { return dists[queue[head]]; }
+
+        /// Reach the relations adjacent to the frontier, making them the new frontier. Edges to relations already
+        /// reached by the other side, if given, are recorded as meetings instead.
+        void expandLayer(int gen, Side otherSide)
+        {
+            int layerEnd = tail;
+
+            for ( ; head < layerEnd; ++head )
+            {
+                int r = queue[head];
+                int dist = dists[r];
+
+                for ( int e = edgeOffsets[r]; e < edgeOffsets[r + 1]; ++e )
+                {
+                    int s = edgeRels[e];
+
+                    if ( otherSide != null && otherSide.marks[s] == gen )
+                        workspace.addMeeting(r, e, sideNum);
+                    else if ( marks[s] != gen )
+                    {
+                        marks[s] = gen;
+                        dists[s] = dist + 1;
+                        queue[tail++] = s;
+                    }
+                }
+            }
+        }
+    }
+
+
+    /// A step of a join path, from one relation to another through a foreign key, in the direction of the foreign
+    /// key (from child to parent) or against it.
+    public static final class JoinStep
+    {
+        private final ForeignKey foreignKey;
+
+        private final boolean childToParent;
+
+        JoinStep(ForeignKey foreignKey, boolean childToParent)
+        {
+            this.foreignKey = requireNonNull(foreignKey);
+            this.childToParent = childToParent;
+        }
+
+        public ForeignKey getForeignKey() { return foreignKey; }
+
+        /// Whether the step goes from the foreign key's source (child) relation to its target (parent) relation.
+        public boolean isChildToParent() { return childToParent; }
+
+        public RelId getFromRelationId()
+        {
+            return childToParent ? foreignKey.getSourceRelationId() : foreignKey.getTargetRelationId();
+        }
+
+        public RelId getToRelationId()
+        {
+            return childToParent ? foreignKey.getTargetRelationId() : foreignKey.getSourceRelationId();
+        }
+
+        /// The join condition of the step, with the from relation's fields on the left hand side.
+        public String asEquation(String fromRelAlias, String toRelAlias)
+        {
+            return
+                childToParent ?
+                    foreignKey.asEquation(fromRelAlias, toRelAlias, ForeignKey.EquationStyle.SOURCE_ON_LEFTHAND_SIDE)
+                  : foreignKey.asEquation(toRelAlias, fromRelAlias, ForeignKey.EquationStyle.TARGET_ON_LEFTHAND_SIDE);
+        }
+
+        public String toString()
+        {
+            return getFromRelationId() + (childToParent ? " -> " : " <- ") + getToRelationId();
+        }
+    }
+
+    /// A sequence of foreign key steps joining a start relation to an end relation.
+    public static final class JoinPath
+    {
+        private final RelId fromRelationId;
+
+        private final List<JoinStep> steps;
+
+        JoinPath(RelId fromRelationId, List<JoinStep> steps)
+        {
+            this.fromRelationId = requireNonNull(fromRelationId);
+            this.steps = unmodifiableList(steps);
+        }
+
+        public RelId getFromRelationId() { return fromRelationId; }
+
+        public RelId getToRelationId()
+        {
+            return steps.isEmpty() ? fromRelationId : steps.get(steps.size() - 1).getToRelationId();
+        }
+
+        public List<JoinStep> getSteps() { return steps; }
+
+        /// The relations of the path in order, starting with the from relation.
+        public List<RelId> getRelationIds()
+        {
+            List<RelId> relIds = new ArrayList<>(steps.size() + 1);
+            relIds.add(fromRelationId);
+            for ( JoinStep step : steps )
+                relIds.add(step.getToRelationId());
+            return relIds;
+        }
+
+        /// The join conditions of the steps of the path, given aliases for the relations of the path in order.
+        public List<String> asEquations(List<String> relAliases)
+        {
+            if ( relAliases.size() != steps.size() + 1 )
+                throw new IllegalArgumentException(
+                    "Expected " + (steps.size() + 1) + " relation aliases for join path, got " + relAliases.size() + "."
+                );
+
+            List<String> eqs = new ArrayList<>(steps.size());
+            for ( int i = 0; i < steps.size(); ++i )
+                eqs.add(steps.get(i).asEquation(relAliases.get(i), relAliases.get(i + 1)));
+
+            return eqs;
+        }
+
+        /// The join conditions of the steps of the path conjoined, given aliases for the relations of the path in order.
+        public String asEquation(List<String> relAliases)
+        {
+            return String.join(" and ", asEquations(relAliases));
+        }
+
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder(fromRelationId.toString());
+            for ( JoinStep step : steps )
+                sb.append(step.isChildToParent() ? " -> " : " <- ").append(step.getToRelationId());
+            return sb.toString();
+        }
+    }
+}
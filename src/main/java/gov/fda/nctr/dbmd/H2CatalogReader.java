@@ -0,0 +1,56 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+
+/// Catalog reader for H2 databases of version 2 or later, which extend the information_schema views with comments
+/// and the declared data types of columns. Relation change markers are hashes of the information_schema rows
+/// describing each relation's columns and constraints.
+public class H2CatalogReader extends InformationSchemaCatalogReader
+{
+    public boolean supportsRelationChangeMarkers() { return true; }
+
+    public ResultSet getRelationChangeMarkers
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select t.table_schema as TABLE_SCHEM, t.table_name as TABLE_NAME,\n" +
+            "  rawtohex(hash('SHA-256', concat_ws('|', t.table_type, t.remarks,\n" +
+            "    (select listagg(concat_ws(':', c.column_name, c.declared_data_type, c.character_maximum_length, " +
+                   "c.numeric_precision, c.numeric_scale, c.is_nullable, c.remarks), ',') " +
+                   "within group (order by c.ordinal_position)\n" +
+            "     from information_schema.columns c " +
+                 "where c.table_schema = t.table_schema and c.table_name = t.table_name),\n" +
+            "    (select listagg(concat_ws(':', k.constraint_name, k.column_name, k.ordinal_position), ',') " +
+                   "within group (order by k.constraint_name, k.ordinal_position)\n" +
+            "     from information_schema.key_column_usage k " +
+                 "where k.table_schema = t.table_schema and k.table_name = t.table_name)\n" +
+            "  ))) as CHANGE_MARKER\n" +
+            "from information_schema.tables t\n" +
+            "where t.table_type in ('BASE TABLE', 'VIEW')" +
+                andEquals("t.table_schema", schema, params);
+
+        return query(dbmd, sql, params);
+    }
+
+    protected String relationRemarksExpr() { return "t.remarks"; }
+
+    protected String columnRemarksExpr() { return "c.remarks"; }
+
+    protected String dataTypeCodeExpr()
+    {
+        // FLOAT columns are reported with data type DOUBLE PRECISION but with JDBC type FLOAT by the driver.
+        return "case when upper(c.declared_data_type) like 'FLOAT%' then 6 else " + super.dataTypeCodeExpr() + " end";
+    }
+}
@@ -0,0 +1,229 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+
+/// Catalog reader querying the standard information_schema views, as provided by HSQLDB, H2 (version 2 and later)
+/// and PostgreSQL. Subclasses can adjust the expressions used for values not covered by the standard, such as
+/// comments and JDBC type codes.
+public class InformationSchemaCatalogReader extends SqlCatalogReader
+{
+    public ResultSet getRelations
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            String[] relTypes
+        )
+        throws SQLException
+    {
+        List<String> tableTypes = new ArrayList<>();
+        for ( String relType : relTypes )
+            tableTypes.add("TABLE".equals(relType) ? "BASE TABLE" : relType);
+
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select t.table_schema as TABLE_SCHEM, t.table_name as TABLE_NAME, t.table_type as TABLE_TYPE, " +
+                relationRemarksExpr() + " as REMARKS\n" +
+            "from information_schema.tables t\n" +
+            "where " + inValues("t.table_type", tableTypes, params) +
+                andEquals("t.table_schema", schema, params) + "\n" +
+            "order by t.table_schema, t.table_name";
+
+        return query(dbmd, sql, params);
+    }
+
+    public ResultSet getColumns
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        return columnsQuery(dbmd, schema, relName.map(Collections::singletonList));
+    }
+
+    public ResultSet getColumns
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        return columnsQuery(dbmd, schema, Optional.of(relNames));
+    }
+
+    protected ResultSet columnsQuery
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<List<String>> relNames
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select c.table_schema as TABLE_SCHEM, c.table_name as TABLE_NAME, c.column_name as COLUMN_NAME, " +
+                dataTypeCodeExpr() + " as DATA_TYPE, " +
+                typeNameExpr() + " as TYPE_NAME, " +
+                columnSizeExpr() + " as COLUMN_SIZE, " +
+                decimalDigitsExpr() + " as DECIMAL_DIGITS, " +
+                radixExpr() + " as NUM_PREC_RADIX, " +
+                "case c.is_nullable when 'YES' then 1 when 'NO' then 0 else 2 end as NULLABLE, " +
+                columnRemarksExpr() + " as REMARKS\n" +
+            "from information_schema.columns c\n" +
+            "where 1 = 1" +
+                andEquals("c.table_schema", schema, params) +
+                andIn("c.table_name", relNames, params) + "\n" +
+            "order by c.table_schema, c.table_name, c.ordinal_position";
+
+        return query(dbmd, sql, params);
+    }
+
+    public ResultSet getPrimaryKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        return primaryKeysQuery(dbmd, schema, relName.map(Collections::singletonList));
+    }
+
+    public ResultSet getPrimaryKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        return primaryKeysQuery(dbmd, schema, Optional.of(relNames));
+    }
+
+    protected ResultSet primaryKeysQuery
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<List<String>> relNames
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select kcu.table_schema as TABLE_SCHEM, kcu.table_name as TABLE_NAME, kcu.column_name as COLUMN_NAME, " +
+                "kcu.ordinal_position as KEY_SEQ\n" +
+            "from information_schema.table_constraints tc\n" +
+            "join information_schema.key_column_usage kcu " +
+                "on kcu.constraint_schema = tc.constraint_schema and kcu.constraint_name = tc.constraint_name " +
+                "and kcu.table_schema = tc.table_schema and kcu.table_name = tc.table_name\n" +
+            "where tc.constraint_type = 'PRIMARY KEY'" +
+                andEquals("tc.table_schema", schema, params) +
+                andIn("tc.table_name", relNames, params) + "\n" +
+            "order by kcu.table_schema, kcu.table_name, kcu.ordinal_position";
+
+        return query(dbmd, sql, params);
+    }
+
+    public ResultSet getImportedKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        return importedKeysQuery(dbmd, schema, relName.map(Collections::singletonList));
+    }
+
+    public ResultSet getImportedKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        return importedKeysQuery(dbmd, schema, Optional.of(relNames));
+    }
+
+    protected ResultSet importedKeysQuery
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<List<String>> relNames
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select pk.table_schema as PKTABLE_SCHEM, pk.table_name as PKTABLE_NAME, pk.column_name as PKCOLUMN_NAME, " +
+                "fk.table_schema as FKTABLE_SCHEM, fk.table_name as FKTABLE_NAME, fk.column_name as FKCOLUMN_NAME, " +
+                "fk.ordinal_position as KEY_SEQ\n" +
+            "from information_schema.referential_constraints rc\n" +
+            "join information_schema.key_column_usage fk " +
+                "on fk.constraint_schema = rc.constraint_schema and fk.constraint_name = rc.constraint_name\n" +
+            "join information_schema.key_column_usage pk " +
+                "on pk.constraint_schema = rc.unique_constraint_schema and pk.constraint_name = rc.unique_constraint_name " +
+                "and pk.ordinal_position = fk.position_in_unique_constraint\n" +
+            "where 1 = 1" +
+                andEquals("fk.table_schema", schema, params) +
+                andIn("fk.table_name", relNames, params) + "\n" +
+            "order by fk.table_schema, fk.table_name, rc.constraint_name, fk.ordinal_position";
+
+        return query(dbmd, sql, params);
+    }
+
+    protected String relationRemarksExpr() { return "null"; }
+
+    protected String columnRemarksExpr() { return "null"; }
+
+    protected String typeNameExpr() { return "c.data_type"; }
+
+    /// Column size, limited to the largest int as reported by JDBC drivers for unbounded types such as CLOB, whose
+    /// maximum length may be given as a bigint in information_schema.
+    protected String columnSizeExpr()
+    {
+        return
+            "case when c.character_maximum_length > 2147483647 then 2147483647 " +
+                "else coalesce(c.character_maximum_length, c.numeric_precision) end";
+    }
+
+    protected String decimalDigitsExpr()
+    {
+        return "case when c.numeric_precision is not null then coalesce(c.numeric_scale, 0) end";
+    }
+
+    protected String radixExpr() { return "c.numeric_precision_radix"; }
+
+    /// Expression mapping the standard data type names to JDBC type codes (java.sql.Types).
+    protected String dataTypeCodeExpr()
+    {
+        return
+            "case upper(c.data_type) " +
+                "when 'CHARACTER' then 1 when 'CHAR' then 1 " +
+                "when 'CHARACTER VARYING' then 12 when 'VARCHAR' then 12 when 'VARCHAR_IGNORECASE' then 12 " +
+                "when 'CHARACTER LARGE OBJECT' then 2005 when 'CLOB' then 2005 " +
+                "when 'BINARY' then -2 when 'BINARY VARYING' then -3 when 'VARBINARY' then -3 " +
+                "when 'BINARY LARGE OBJECT' then 2004 when 'BLOB' then 2004 " +
+                "when 'BOOLEAN' then 16 when 'TINYINT' then -6 when 'SMALLINT' then 5 when 'INTEGER' then 4 " +
+                "when 'BIGINT' then -5 when 'NUMERIC' then 2 when 'DECIMAL' then 3 when 'DECFLOAT' then 2 " +
+                "when 'REAL' then 7 when 'FLOAT' then 6 when 'DOUBLE PRECISION' then 8 when 'DOUBLE' then 8 " +
+                "when 'DATE' then 91 when 'TIME' then 92 when 'TIME WITH TIME ZONE' then 2013 " +
+                "when 'TIMESTAMP' then 93 when 'TIMESTAMP WITH TIME ZONE' then 2014 " +
+                "when 'UUID' then -2 when 'ARRAY' then 2003 when 'JAVA_OBJECT' then 2000 " +
+                "else 1111 end";
+    }
+}
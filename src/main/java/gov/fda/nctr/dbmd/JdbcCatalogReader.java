@@ -0,0 +1,91 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Optional;
+
+
+/// Catalog reader which obtains all catalog information via the JDBC driver's DatabaseMetaData implementation.
+public class JdbcCatalogReader implements CatalogReader
+{
+    public ResultSet getRelations
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            String[] relTypes
+        )
+        throws SQLException
+    {
+        return dbmd.getTables(null, schema.orElse(null), null, relTypes);
+    }
+
+    public ResultSet getColumns
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        if ( relName.isPresent() )
+        {
+            String esc = dbmd.getSearchStringEscape();
+
+            return
+                dbmd.getColumns(
+                    null,
+                    schema.map(s -> escapeSearchPattern(s, esc)).orElse(null),
+                    escapeSearchPattern(relName.get(), esc),
+                    "%"
+                );
+        }
+        else
+            return dbmd.getColumns(null, schema.orElse(null), "%", "%");
+    }
+
+    public boolean supportsSchemaPrimaryKeysQuery() { return false; }
+
+    public ResultSet getPrimaryKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        String rel = relName.orElseThrow(() ->
+            new IllegalArgumentException("A relation name is required for JDBC primary keys queries.")
+        );
+
+        return dbmd.getPrimaryKeys(null, schema.orElse(null), rel);
+    }
+
+    /// Drivers such as those for Oracle and PostgreSQL return the imported keys of all tables in the schema for a
+    /// null table name, though the JDBC specification requires a table name. The H2 2.x driver rejects a null table,
+    /// so imported keys are queried per table for H2.
+    public boolean supportsSchemaImportedKeysQuery(DatabaseMetaData dbmd) throws SQLException
+    {
+        return !"H2".equals(dbmd.getDatabaseProductName());
+    }
+
+    public ResultSet getImportedKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        return dbmd.getImportedKeys(null, schema.orElse(null), relName.orElse(null));
+    }
+
+    // Escape the search pattern characters in a name to be passed as a catalog search pattern.
+    private static String escapeSearchPattern(String name, String esc)
+    {
+        if ( esc == null || esc.isEmpty() )
+            return name;
+
+        return name.replace(esc, esc + esc).replace("_", esc + "_").replace("%", esc + "%");
+    }
+}
@@ -0,0 +1,154 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+
+/// Read-only DBMD backed by a memory-mapped file in the binary snapshot format written by DBMD.writeBinary().
+/// Opening reads only the locations of the strings, the header and the relation index, decoding just the strings
+/// these refer to. Each relation's metadata is decoded when first accessed and then retained, and the foreign keys
+/// are decoded together on first access, as are the strings they refer to. Processes mapping the same snapshot file
+/// share its pages via the operating system's page cache. Instances are safe for concurrent use.
+public class MappedDBMD extends DBMD
+{
+    private final DBMDBinaryFormat.Decoder decoder;
+
+    private final List<RelId> relIds;
+
+    private final Map<RelId, Integer> relIndexesByRelId;
+
+    private final int[] relOffsets;
+
+    private final int fksOffset;
+
+    private final AtomicReferenceArray<RelMetadata> decodedRelMds;
+
+    private final List<RelMetadata> relMdsView;
+
+    private volatile List<ForeignKey> fks;
+
+    private MappedDBMD(DBMDBinaryFormat.Contents contents)
+    {
+        super(
+            contents.schemaName,
+            contents.caseSensitivity,
+            contents.dbmsName,
+            contents.dbmsVersion,
+            contents.dbmsMajorVersion,
+            contents.dbmsMinorVersion
+        );
+
+        this.decoder = contents.decoder;
+        this.relIds = Collections.unmodifiableList(contents.relIds);
+
+        int relCount = relIds.size();
+        this.relIndexesByRelId = new HashMap<>(relCount * 4 / 3 + 1);
+        this.relOffsets = new int[relCount];
+
+        int offset = decoder.buf.position();
+        for ( int i = 0; i < relCount; ++i )
+        {
+            relIndexesByRelId.put(relIds.get(i), i);
+            relOffsets[i] = offset;
+            offset += contents.relRecordLengths[i];
+        }
+        this.fksOffset = offset;
+
+        if ( fksOffset > decoder.buf.limit() )
+            throw new IllegalArgumentException("Truncated DBMD binary data.");
+
+        this.decodedRelMds = new AtomicReferenceArray<>(relCount);
+        this.relMdsView = new RelMetadataList();
+    }
+
+    /// Map the given snapshot file, which must not be modified while mapped.
+    public static MappedDBMD open(Path snapshotFile) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ) )
+        {
+            if ( channel.size() > Integer.MAX_VALUE )
+                throw new IOException("DBMD snapshot files larger than 2GB cannot be mapped.");
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            return map(buf);
+        }
+    }
+
+    /// Create a view over snapshot data already in the given buffer, starting at its current position.
+    public static MappedDBMD map(ByteBuffer buf) throws IOException
+    {
+        try
+        {
+            return new MappedDBMD(DBMDBinaryFormat.readContents(buf.duplicate()));
+        }
+        catch (RuntimeException e)
+        {
+            throw new IOException("Invalid or truncated DBMD binary data.", e);
+        }
+    }
+
+    /// Return the ids of all relations, in the sorted order of the relation metadatas, without decoding them.
+    @JsonIgnore
+    public List<RelId> getRelationIds() { return relIds; }
+
+    public List<RelMetadata> getRelationMetadatas() { return relMdsView; }
+
+    public Optional<RelMetadata> getRelationMetadata(RelId relId)
+    {
+        Integer ix = relIndexesByRelId.get(relId);
+        return ix != null ? Optional.of(relationMetadataAt(ix)) : Optional.empty();
+    }
+
+    protected boolean hasRelationMetadata(RelId relId)
+    {
+        return relIndexesByRelId.containsKey(relId);
+    }
+
+    public List<ForeignKey> getForeignKeys()
+    {
+        List<ForeignKey> res = fks;
+
+        if ( res == null )
+        {
+            synchronized (this)
+            {
+                res = fks;
+                if ( res == null )
+                    fks = res = Collections.unmodifiableList(DBMDBinaryFormat.readForeignKeys(decoder.at(fksOffset), relIds));
+            }
+        }
+
+        return res;
+    }
+
+    private RelMetadata relationMetadataAt(int ix)
+    {
+        RelMetadata relMd = decodedRelMds.get(ix);
+
+        if ( relMd == null )
+        {
+            RelMetadata decoded = DBMDBinaryFormat.readRelationRecord(relIds.get(ix), decoder.at(relOffsets[ix]));
+
+            // Keep the first instance published if another thread decoded the relation concurrently.
+            relMd = decodedRelMds.compareAndSet(ix, null, decoded) ? decoded : decodedRelMds.get(ix);
+        }
+
+        return relMd;
+    }
+
+    private class RelMetadataList extends AbstractList<RelMetadata> implements RandomAccess
+    {
+        public RelMetadata get(int ix) { return relationMetadataAt(ix); }
+
+        public int size() { return relIds.size(); }
+    }
+}
@@ -0,0 +1,80 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.List;
+import java.util.Objects;
+
+
+/// Structural comparisons of metadata objects, which do not override equals().
+final class MetadataEquality
+{
+    private MetadataEquality() {}
+
+    static boolean sameRelationMetadata(RelMetadata rmd1, RelMetadata rmd2)
+    {
+        if ( rmd1 == rmd2 )
+            return true;
+
+        if ( !rmd1.getRelationId().equals(rmd2.getRelationId()) ||
+             rmd1.getRelationType() != rmd2.getRelationType() ||
+             !rmd1.getRelationComment().equals(rmd2.getRelationComment()) )
+            return false;
+
+        List<Field> fields1 = rmd1.getFields();
+        List<Field> fields2 = rmd2.getFields();
+
+        if ( fields1.size() != fields2.size() )
+            return false;
+
+        for ( int i = 0; i < fields1.size(); ++i )
+        {
+            if ( !sameField(fields1.get(i), fields2.get(i)) )
+                return false;
+        }
+
+        return true;
+    }
+
+    static boolean sameField(Field f1, Field f2)
+    {
+        return
+            f1 == f2 ||
+            f1.getName().equals(f2.getName()) &&
+            f1.getJdbcTypeCode() == f2.getJdbcTypeCode() &&
+            f1.getDatabaseType().equals(f2.getDatabaseType()) &&
+            f1.getLength().equals(f2.getLength()) &&
+            f1.getPrecision().equals(f2.getPrecision()) &&
+            f1.getFractionalDigits().equals(f2.getFractionalDigits()) &&
+            f1.getRadix().equals(f2.getRadix()) &&
+            f1.getNullable().equals(f2.getNullable()) &&
+            f1.getPrimaryKeyPartNumber().equals(f2.getPrimaryKeyPartNumber()) &&
+            f1.getComment().equals(f2.getComment());
+    }
+
+    static boolean sameForeignKey(ForeignKey fk1, ForeignKey fk2)
+    {
+        if ( fk1 == fk2 )
+            return true;
+
+        if ( !fk1.getSourceRelationId().equals(fk2.getSourceRelationId()) ||
+             !fk1.getTargetRelationId().equals(fk2.getTargetRelationId()) )
+            return false;
+
+        List<ForeignKey.Component> comps1 = fk1.getForeignKeyComponents();
+        List<ForeignKey.Component> comps2 = fk2.getForeignKeyComponents();
+
+        if ( comps1.size() != comps2.size() )
+            return false;
+
+        for ( int i = 0; i < comps1.size(); ++i )
+        {
+            ForeignKey.Component comp1 = comps1.get(i);
+            ForeignKey.Component comp2 = comps2.get(i);
+
+            if ( !Objects.equals(comp1.getForeignKeyFieldName(), comp2.getForeignKeyFieldName()) ||
+                 !Objects.equals(comp1.getPrimaryKeyFieldName(), comp2.getPrimaryKeyFieldName()) )
+                return false;
+        }
+
+        return true;
+    }
+}
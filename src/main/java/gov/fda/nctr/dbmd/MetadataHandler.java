@@ -0,0 +1,28 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.Optional;
+
+
+/// Receiver of database metadata pushed by DatabaseMetadataFetcher as it is read from the catalog. Calls are made in
+/// the order: startMetadata, relationMetadata for each relation, foreignKey for each foreign key, endMetadata.
+/// Relations and foreign keys are passed in the order read from the catalog, which is not necessarily the sorted
+/// order of a DBMD.
+public interface MetadataHandler
+{
+    default void startMetadata
+        (
+            Optional<String> schemaName,
+            CaseSensitivity caseSensitivity,
+            String dbmsName,
+            String dbmsVersion,
+            int dbmsMajorVersion,
+            int dbmsMinorVersion
+        )
+    {}
+
+    void relationMetadata(RelMetadata relMd);
+
+    void foreignKey(ForeignKey fk);
+
+    default void endMetadata() {}
+}
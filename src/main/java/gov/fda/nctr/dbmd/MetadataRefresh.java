@@ -0,0 +1,50 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.Objects.requireNonNull;
+
+
+/// Result of refreshing metadata from a previous DBMD, as returned by DatabaseMetadataFetcher.refresh().
+public class MetadataRefresh
+{
+    private final DBMD metadata;
+
+    private final Optional<Map<RelId,String>> changeMarkers;
+
+    private final boolean incremental;
+
+    private final Set<RelId> changedRelationIds;
+
+    public MetadataRefresh
+        (
+            DBMD metadata,
+            Optional<Map<RelId,String>> changeMarkers,
+            boolean incremental,
+            Set<RelId> changedRelationIds
+        )
+    {
+        this.metadata = requireNonNull(metadata);
+        this.changeMarkers = requireNonNull(changeMarkers).map(m -> unmodifiableMap(m));
+        this.incremental = incremental;
+        this.changedRelationIds = unmodifiableSet(requireNonNull(changedRelationIds));
+    }
+
+    /// The refreshed metadata, sharing the relation metadata and foreign key instances of the previous DBMD which
+    /// are unchanged.
+    public DBMD getMetadata() { return metadata; }
+
+    /// The relation change markers read before the metadata, if supported by the catalog reader, to be passed to the
+    /// next refresh along with the refreshed metadata.
+    public Optional<Map<RelId,String>> getChangeMarkers() { return changeMarkers; }
+
+    /// Whether only changed relations were re-fetched, using change markers, rather than all relations.
+    public boolean isIncremental() { return incremental; }
+
+    /// The ids of the relations which were added or removed, or which were re-fetched because they may have
+    /// changed. For a refresh which is not incremental, these are the relations whose metadata actually changed.
+    public Set<RelId> getChangedRelationIds() { return changedRelationIds; }
+}
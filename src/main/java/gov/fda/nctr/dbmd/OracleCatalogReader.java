@@ -0,0 +1,221 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+
+/// Catalog reader for Oracle, querying the ALL_* dictionary views directly. Type codes and sizes follow the
+/// conventions of the Oracle JDBC driver, with DATE columns reported as timestamps. Unlike the driver, comments are
+/// always read. Relation change markers are the objects' last DDL times, which have a resolution of one second.
+public class OracleCatalogReader extends SqlCatalogReader
+{
+    public ResultSet getRelations
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            String[] relTypes
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select o.owner as TABLE_SCHEM, o.object_name as TABLE_NAME, o.object_type as TABLE_TYPE, " +
+                "c.comments as REMARKS\n" +
+            "from all_objects o\n" +
+            "left join all_tab_comments c on c.owner = o.owner and c.table_name = o.object_name\n" +
+            "where " + inValues("o.object_type", Arrays.asList(relTypes), params) + " and o.object_name not like 'BIN$%'" +
+                andEquals("o.owner", schema, params) + "\n" +
+            "order by o.owner, o.object_name";
+
+        return query(dbmd, sql, params);
+    }
+
+    public ResultSet getColumns
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        return columnsQuery(dbmd, schema, relName.map(Collections::singletonList));
+    }
+
+    public ResultSet getColumns
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        return columnsQuery(dbmd, schema, Optional.of(relNames));
+    }
+
+    protected ResultSet columnsQuery
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<List<String>> relNames
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select t.owner as TABLE_SCHEM, t.table_name as TABLE_NAME, t.column_name as COLUMN_NAME,\n" +
+            "  decode(substr(t.data_type, 1, 9),\n" +
+            "    'TIMESTAMP', decode(substr(t.data_type, 10, 1), '(',\n" +
+            "       decode(substr(t.data_type, 19, 5), 'LOCAL', -102, 'TIME ', -101, 93),\n" +
+            "       decode(substr(t.data_type, 16, 5), 'LOCAL', -102, 'TIME ', -101, 93)),\n" +
+            "    'INTERVAL ', decode(substr(t.data_type, 10, 3), 'DAY', -104, 'YEA', -103),\n" +
+            "    decode(t.data_type, 'BINARY_DOUBLE', 101, 'BINARY_FLOAT', 100, 'BFILE', -13, 'BLOB', 2004,\n" +
+            "      'CHAR', 1, 'CLOB', 2005, 'DATE', 93, 'FLOAT', 6, 'LONG', -1, 'LONG RAW', -4, 'NCHAR', -15,\n" +
+            "      'NCLOB', 2011, 'NUMBER', 2, 'NVARCHAR2', -9, 'RAW', -3, 'ROWID', -8, 'UROWID', -8,\n" +
+            "      'VARCHAR2', 12, 'XMLTYPE', 2009, 1111)) as DATA_TYPE,\n" +
+            "  t.data_type as TYPE_NAME,\n" +
+            "  decode(t.data_precision, null,\n" +
+            "    decode(t.data_type, 'NUMBER', decode(t.data_scale, null, 0, 38),\n" +
+            "      'CHAR', t.char_length, 'VARCHAR2', t.char_length, 'NVARCHAR2', t.char_length, 'NCHAR', t.char_length,\n" +
+            "      t.data_length),\n" +
+            "    t.data_precision) as COLUMN_SIZE,\n" +
+            "  decode(t.data_type, 'NUMBER', decode(t.data_precision, null, decode(t.data_scale, null, -127, t.data_scale),\n" +
+            "    t.data_scale), t.data_scale) as DECIMAL_DIGITS,\n" +
+            "  10 as NUM_PREC_RADIX,\n" +
+            "  decode(t.nullable, 'N', 0, 1) as NULLABLE,\n" +
+            "  c.comments as REMARKS\n" +
+            "from all_tab_columns t\n" +
+            "left join all_col_comments c " +
+                "on c.owner = t.owner and c.table_name = t.table_name and c.column_name = t.column_name\n" +
+            "where 1 = 1" +
+                andEquals("t.owner", schema, params) +
+                andIn("t.table_name", relNames, params) + "\n" +
+            "order by t.owner, t.table_name, t.column_id";
+
+        return query(dbmd, sql, params);
+    }
+
+    public ResultSet getPrimaryKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        return primaryKeysQuery(dbmd, schema, relName.map(Collections::singletonList));
+    }
+
+    public ResultSet getPrimaryKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        return primaryKeysQuery(dbmd, schema, Optional.of(relNames));
+    }
+
+    protected ResultSet primaryKeysQuery
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<List<String>> relNames
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select c.owner as TABLE_SCHEM, c.table_name as TABLE_NAME, cc.column_name as COLUMN_NAME, " +
+                "cc.position as KEY_SEQ\n" +
+            "from all_constraints c\n" +
+            "join all_cons_columns cc " +
+                "on cc.owner = c.owner and cc.constraint_name = c.constraint_name and cc.table_name = c.table_name\n" +
+            "where c.constraint_type = 'P'" +
+                andEquals("c.owner", schema, params) +
+                andIn("c.table_name", relNames, params) + "\n" +
+            "order by c.owner, c.table_name, cc.position";
+
+        return query(dbmd, sql, params);
+    }
+
+    public ResultSet getImportedKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<String> relName
+        )
+        throws SQLException
+    {
+        return importedKeysQuery(dbmd, schema, relName.map(Collections::singletonList));
+    }
+
+    public ResultSet getImportedKeys
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            List<String> relNames
+        )
+        throws SQLException
+    {
+        return importedKeysQuery(dbmd, schema, Optional.of(relNames));
+    }
+
+    protected ResultSet importedKeysQuery
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<List<String>> relNames
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select pc.owner as PKTABLE_SCHEM, pc.table_name as PKTABLE_NAME, pcc.column_name as PKCOLUMN_NAME, " +
+                "fc.owner as FKTABLE_SCHEM, fc.table_name as FKTABLE_NAME, fcc.column_name as FKCOLUMN_NAME, " +
+                "fcc.position as KEY_SEQ\n" +
+            "from all_constraints fc\n" +
+            "join all_cons_columns fcc on fcc.owner = fc.owner and fcc.constraint_name = fc.constraint_name\n" +
+            "join all_constraints pc on pc.owner = fc.r_owner and pc.constraint_name = fc.r_constraint_name\n" +
+            "join all_cons_columns pcc " +
+                "on pcc.owner = pc.owner and pcc.constraint_name = pc.constraint_name and pcc.position = fcc.position\n" +
+            "where fc.constraint_type = 'R'" +
+                andEquals("fc.owner", schema, params) +
+                andIn("fc.table_name", relNames, params) + "\n" +
+            "order by fc.owner, fc.table_name, fc.constraint_name, fcc.position";
+
+        return query(dbmd, sql, params);
+    }
+
+    public boolean supportsRelationChangeMarkers() { return true; }
+
+    public ResultSet getRelationChangeMarkers
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        // The object id distinguishes a relation which was dropped and re-created within the same second.
+        String sql =
+            "select o.owner as TABLE_SCHEM, o.object_name as TABLE_NAME, " +
+                "to_char(o.last_ddl_time, 'YYYY-MM-DD HH24:MI:SS') || '/' || o.object_id as CHANGE_MARKER\n" +
+            "from all_objects o\n" +
+            "where o.object_type in ('TABLE', 'VIEW') and o.object_name not like 'BIN$%'" +
+                andEquals("o.owner", schema, params);
+
+        return query(dbmd, sql, params);
+    }
+}
@@ -0,0 +1,136 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+
+/// Catalog reader for PostgreSQL. Columns are read from information_schema with type names, sizes and type codes
+/// reported in the manner of the PostgreSQL JDBC driver, comments are read from pg_description, and foreign keys are
+/// read from pg_constraint because constraint names are not unique within a schema in PostgreSQL. Relation change
+/// markers are digests of the transaction ids (xmin) which last wrote the catalog rows describing each relation.
+public class PostgresCatalogReader extends InformationSchemaCatalogReader
+{
+    protected ResultSet importedKeysQuery
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema,
+            Optional<List<String>> relNames
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        String sql =
+            "select pn.nspname as PKTABLE_SCHEM, pc.relname as PKTABLE_NAME, pa.attname as PKCOLUMN_NAME, " +
+                "fn.nspname as FKTABLE_SCHEM, fc.relname as FKTABLE_NAME, fa.attname as FKCOLUMN_NAME, " +
+                "k.n as KEY_SEQ\n" +
+            "from pg_catalog.pg_constraint con\n" +
+            "cross join lateral unnest(con.conkey, con.confkey) with ordinality as k(fk_attnum, pk_attnum, n)\n" +
+            "join pg_catalog.pg_class fc on fc.oid = con.conrelid\n" +
+            "join pg_catalog.pg_namespace fn on fn.oid = fc.relnamespace\n" +
+            "join pg_catalog.pg_attribute fa on fa.attrelid = con.conrelid and fa.attnum = k.fk_attnum\n" +
+            "join pg_catalog.pg_class pc on pc.oid = con.confrelid\n" +
+            "join pg_catalog.pg_namespace pn on pn.oid = pc.relnamespace\n" +
+            "join pg_catalog.pg_attribute pa on pa.attrelid = con.confrelid and pa.attnum = k.pk_attnum\n" +
+            "where con.contype = 'f'" +
+                andEquals("fn.nspname", schema, params) +
+                andIn("fc.relname", relNames, params) + "\n" +
+            "order by fn.nspname, fc.relname, con.conname, k.n";
+
+        return query(dbmd, sql, params);
+    }
+
+    public boolean supportsRelationChangeMarkers() { return true; }
+
+    public ResultSet getRelationChangeMarkers
+        (
+            DatabaseMetaData dbmd,
+            Optional<String> schema
+        )
+        throws SQLException
+    {
+        List<String> params = new ArrayList<>();
+
+        // Column, constraint and comment changes do not necessarily rewrite the relation's pg_class row, so the
+        // xmins of its pg_attribute, pg_constraint and pg_description rows are included.
+        String sql =
+            "select n.nspname as TABLE_SCHEM, c.relname as TABLE_NAME,\n" +
+            "  md5(c.oid::text || ':' || c.xmin::text ||\n" +
+            "    ':' || coalesce((select string_agg(a.xmin::text, ',' order by a.attnum) " +
+                "from pg_catalog.pg_attribute a where a.attrelid = c.oid and a.attnum > 0), '') ||\n" +
+            "    ':' || coalesce((select string_agg(k.xmin::text, ',' order by k.oid) " +
+                "from pg_catalog.pg_constraint k where k.conrelid = c.oid), '') ||\n" +
+            "    ':' || coalesce((select string_agg(d.xmin::text, ',' order by d.objsubid) " +
+                "from pg_catalog.pg_description d " +
+                "where d.objoid = c.oid and d.classoid = 'pg_catalog.pg_class'::regclass), '')\n" +
+            "  ) as CHANGE_MARKER\n" +
+            "from pg_catalog.pg_class c\n" +
+            "join pg_catalog.pg_namespace n on n.oid = c.relnamespace\n" +
+            "where c.relkind in ('r', 'p', 'v', 'm', 'f')" +
+                andEquals("n.nspname", schema, params);
+
+        return query(dbmd, sql, params);
+    }
+
+    protected String relationRemarksExpr()
+    {
+        return
+            "(select d.description from pg_catalog.pg_description d " +
+              "join pg_catalog.pg_class cl on cl.oid = d.objoid " +
+              "join pg_catalog.pg_namespace n on n.oid = cl.relnamespace " +
+             "where n.nspname = t.table_schema and cl.relname = t.table_name and d.objsubid = 0 " +
+               "and d.classoid = 'pg_catalog.pg_class'::regclass)";
+    }
+
+    protected String columnRemarksExpr()
+    {
+        return
+            "(select d.description from pg_catalog.pg_description d " +
+              "join pg_catalog.pg_class cl on cl.oid = d.objoid " +
+              "join pg_catalog.pg_namespace n on n.oid = cl.relnamespace " +
+             "where n.nspname = c.table_schema and cl.relname = c.table_name and d.objsubid = c.ordinal_position " +
+               "and d.classoid = 'pg_catalog.pg_class'::regclass)";
+    }
+
+    protected String typeNameExpr() { return "c.udt_name"; }
+
+    protected String columnSizeExpr()
+    {
+        return
+            "case c.udt_name when 'int2' then 5 when 'int4' then 10 when 'int8' then 19 " +
+                "when 'float4' then 8 when 'float8' then 17 when 'bool' then 1 " +
+                "when 'text' then 2147483647 " +
+                "else coalesce(c.character_maximum_length, c.numeric_precision, " +
+                    "case c.udt_name when 'varchar' then 2147483647 when 'numeric' then 131089 end) end";
+    }
+
+    protected String decimalDigitsExpr()
+    {
+        return
+            "case c.udt_name when 'int2' then 0 when 'int4' then 0 when 'int8' then 0 " +
+                "when 'float4' then 8 when 'float8' then 17 when 'numeric' then coalesce(c.numeric_scale, 0) end";
+    }
+
+    protected String radixExpr()
+    {
+        return "case when c.udt_name in ('int2', 'int4', 'int8', 'float4', 'float8', 'numeric') then 10 end";
+    }
+
+    protected String dataTypeCodeExpr()
+    {
+        return
+            "case c.udt_name " +
+                "when 'int2' then 5 when 'int4' then 4 when 'int8' then -5 when 'oid' then -5 " +
+                "when 'numeric' then 2 when 'float4' then 7 when 'float8' then 8 when 'money' then 8 " +
+                "when 'bool' then -7 when 'bit' then -7 " +
+                "when 'varchar' then 12 when 'text' then 12 when 'name' then 12 when 'bpchar' then 1 when 'char' then 1 " +
+                "when 'date' then 91 when 'time' then 92 when 'timetz' then 92 " +
+                "when 'timestamp' then 93 when 'timestamptz' then 93 " +
+                "when 'bytea' then -2 when 'xml' then 2009 " +
+                "else case when c.data_type = 'ARRAY' then 2003 else 1111 end end";
+    }
+}
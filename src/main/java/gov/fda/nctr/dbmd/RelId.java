@@ -13,6 +13,11 @@ public final class RelId {
 
     private String name;
 
+    // Computed on first use. Both are derived only from the fields above, so a race to compute them is benign.
+    private transient int hash;
+
+    private transient String idString;
+
     public RelId(Optional<String> schema, String name)
     {
         this.schema = requireNonNull(schema);
@@ -34,25 +39,38 @@ public final class RelId {
     @JsonIgnore
     public String getIdString()
     {
-        return schema.map(s -> s + ".").orElse("") + name;
+        String res = idString;
+
+        if ( res == null )
+            idString = res = schema.map(s -> s + ".").orElse("") + name;
+
+        return res;
     }
 
 
     public boolean equals(Object other)
     {
-        if ( !(other instanceof RelId) )
+        if ( this == other )
+            return true;
+        else if ( !(other instanceof RelId) )
             return false;
         else
         {
             RelId o = (RelId)other;
             return
-                Objects.equals(schema, o.schema) &&
-                Objects.equals(name, o.name);
+                hashCode() == o.hashCode() &&
+                Objects.equals(name, o.name) &&
+                Objects.equals(schema, o.schema);
         }
     }
 
     public int hashCode()
     {
-        return (schema.hashCode()  + 7 * name.hashCode());
+        int h = hash;
+
+        if ( h == 0 )
+            hash = h = (schema.hashCode()  + 7 * name.hashCode());
+
+        return h;
     }
 }
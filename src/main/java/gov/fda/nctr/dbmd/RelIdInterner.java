@@ -0,0 +1,83 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+
+/// Canonical relation ids for a fetch or deserialization, so each relation is represented by a single RelId instance,
+/// whose hash and id string are then computed once. Ids are looked up by schema and name without allocating. Not
+/// thread safe.
+final class RelIdInterner
+{
+    private final Map<String, RelId> noSchemaRelIds = new HashMap<>();
+
+    private final Map<String, Map<String, RelId>> relIdsBySchema = new HashMap<>();
+
+    // The most recently used schema's relation ids, since consecutive lookups are usually in the same schema.
+    private String lastSchema;
+
+    private Map<String, RelId> lastSchemaRelIds;
+
+    RelIdInterner() {}
+
+    /// Create an interner whose canonical ids include the given ids.
+    RelIdInterner(Collection<RelId> relIds)
+    {
+        for ( RelId relId : relIds )
+            intern(relId);
+    }
+
+    /// Return the canonical id for the given schema, which may be null, and relation name, if there is one.
+    RelId find(String schema, String name)
+    {
+        Map<String, RelId> relIds = relIdsForSchema(schema, false);
+        return relIds != null ? relIds.get(name) : null;
+    }
+
+    /// Return the canonical id for the given schema, which may be null, and relation name, creating it if necessary.
+    RelId intern(String schema, String name)
+    {
+        Map<String, RelId> relIds = relIdsForSchema(schema, true);
+
+        RelId relId = relIds.get(name);
+        if ( relId == null )
+        {
+            relId = new RelId(Optional.ofNullable(schema), name);
+            relIds.put(name, relId);
+        }
+
+        return relId;
+    }
+
+    /// Return the canonical id equal to the given id, which becomes canonical if there is none.
+    RelId intern(RelId relId)
+    {
+        Map<String, RelId> relIds = relIdsForSchema(relId.getSchema().orElse(null), true);
+
+        RelId canonical = relIds.putIfAbsent(relId.getName(), relId);
+
+        return canonical != null ? canonical : relId;
+    }
+
+    private Map<String, RelId> relIdsForSchema(String schema, boolean create)
+    {
+        if ( schema == null )
+            return noSchemaRelIds;
+
+        if ( schema.equals(lastSchema) )
+            return lastSchemaRelIds;
+
+        Map<String, RelId> relIds = create ? relIdsBySchema.computeIfAbsent(schema, s -> new HashMap<>())
+            : relIdsBySchema.get(schema);
+
+        if ( relIds != null )
+        {
+            lastSchema = schema;
+            lastSchemaRelIds = relIds;
+        }
+
+        return relIds;
+    }
+}
@@ -21,6 +21,10 @@ public class RelMetadata
 
     private List<Field> fields;
 
+    // derived data
+    // Built on first access, so that it is also available for deserialized instances. Access it only via fieldIndex().
+    private volatile FieldIndex fieldIndex;
+
     public enum RelType { Table, View, Unknown }
 
 
@@ -35,7 +39,7 @@ public class RelMetadata
         this.relationId = requireNonNull(relationId);
         this.relationType = requireNonNull(relationType);
         this.relationComment = requireNonNull(relationComment);
-        this.fields = unmodifiableList(new ArrayList<>(requireNonNull(fields)));
+        this.fields = requireNonNull(fields) instanceof CompactFields ? fields : unmodifiableList(new ArrayList<>(fields));
     }
 
     protected RelMetadata() {}
@@ -48,32 +52,134 @@ public class RelMetadata
 
     public List<Field> getFields() { return fields; }
 
-    @JsonIgnore()
-    public List<Field> getPrimaryKeyFields()
+    /// Return this relation metadata with its fields stored in compact form, or this metadata if they already are.
+    public RelMetadata withCompactFields()
     {
-        List<Field> pks = new ArrayList<>();
+        return withCompactFields(new HashMap<>());
+    }
 
-        for ( Field f: fields )
-        {
-            f.getPrimaryKeyPartNumber().ifPresent(n -> pks.add(f));
-        }
+    RelMetadata withCompactFields(Map<String, String> databaseTypeNames)
+    {
+        if ( fields instanceof CompactFields )
+            return this;
 
-        pks.sort(Comparator.comparingInt(f -> f.getPrimaryKeyPartNumber().orElse(0)));
+        return new RelMetadata(relationId, relationType, relationComment, CompactFields.of(fields, databaseTypeNames));
+    }
 
-        return pks;
+    /// Return the field having the given name, which should be in the normalized form stored in the metadata. The
+    /// field is found via a hash index, in constant time.
+    public Optional<Field> getField(String fieldName)
+    {
+        int ix = fieldIndex().indexOf(fieldName);
+        return ix != -1 ? Optional.of(fields.get(ix)) : empty();
     }
 
+    /// Return the primary key fields in order of their primary key part numbers, as an immutable list computed once.
+    @JsonIgnore()
+    public List<Field> getPrimaryKeyFields()
+    {
+        return fieldIndex().primaryKeyFields;
+    }
+
+    /// Return the primary key field names in order of their primary key part numbers, as an immutable list computed
+    /// once.
     @JsonIgnore()
     public List<String> getPrimaryKeyFieldNames()
     {
-        return getPrimaryKeyFieldNames(empty());
+        return fieldIndex().primaryKeyFieldNames;
     }
 
     public List<String> getPrimaryKeyFieldNames(Optional<String> alias)
     {
+        if ( !alias.isPresent() )
+            return getPrimaryKeyFieldNames();
+
         return
-            getPrimaryKeyFields().stream()
-            .map(f -> alias.map(a -> a + "." + f.getName()).orElse(f.getName()))
+            getPrimaryKeyFieldNames().stream()
+            .map(name -> alias.get() + "." + name)
             .collect(toList());
     }
+
+    private FieldIndex fieldIndex()
+    {
+        FieldIndex res = fieldIndex;
+
+        if ( res == null )
+        {
+            synchronized (this)
+            {
+                res = fieldIndex;
+                if ( res == null )
+                    fieldIndex = res = new FieldIndex(fields);
+            }
+        }
+
+        return res;
+    }
+
+    /// Immutable index of the fields by name, with the primary key fields.
+    private static final class FieldIndex
+    {
+        private final String[] names;
+
+        // Open addressing table of field positions plus one, with zero marking an empty slot. Its size is a power of
+        // two at least twice the number of fields, so probe sequences stay short.
+        private final int[] slots;
+
+        final List<Field> primaryKeyFields;
+
+        final List<String> primaryKeyFieldNames;
+
+        FieldIndex(List<Field> fields)
+        {
+            int count = fields.size();
+            names = new String[count];
+            slots = new int[Integer.highestOneBit(Math.max(count, 1)) << 2];
+
+            List<Field> pkFields = new ArrayList<>();
+
+            for ( int i = 0; i < count; ++i )
+            {
+                Field f = fields.get(i);
+                names[i] = f.getName();
+
+                int slot = slot(names[i]);
+                while ( slots[slot] != 0 )
+                {
+                    if ( names[slots[slot] - 1].equals(names[i]) )
+                        break; // duplicate name, the first field having it is kept
+                    slot = (slot + 1) & (slots.length - 1);
+                }
+                if ( slots[slot] == 0 )
+                    slots[slot] = i + 1;
+
+                if ( f.getPrimaryKeyPartNumber().isPresent() )
+                    pkFields.add(f);
+            }
+
+            pkFields.sort(Comparator.comparingInt(f -> f.getPrimaryKeyPartNumber().orElse(0)));
+
+            primaryKeyFields = unmodifiableList(pkFields);
+            primaryKeyFieldNames = unmodifiableList(pkFields.stream().map(Field::getName).collect(toList()));
+        }
+
+        /// Return the position of the field having the given name, or -1 if there is none.
+        int indexOf(String name)
+        {
+            for ( int slot = slot(name); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1) )
+            {
+                int ix = slots[slot] - 1;
+                if ( names[ix].equals(name) )
+                    return ix;
+            }
+
+            return -1;
+        }
+
+        private int slot(String name)
+        {
+            int h = name.hashCode();
+            return (h ^ (h >>> 16)) & (slots.length - 1);
+        }
+    }
 }
@@ -0,0 +1,268 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.*;
+import java.util.function.Function;
+import static java.util.Collections.unmodifiableList;
+
+
+/// The dependencies between relations established by foreign keys, where a foreign key's source (child) relation
+/// depends on its target (parent) relation, as an ordering of the relations for loading and unloading data.
+///
+/// Relations which depend on each other through a cycle of foreign keys, or on themselves, cannot be ordered among
+/// themselves and are grouped into strongly connected components. The components are arranged in waves: the first
+/// wave holds the components which depend on no others, and each later wave holds the components whose parents are
+/// all in earlier waves, so the components within a wave are independent of each other and may be loaded
+/// concurrently. The load order lists the relations wave by wave. Within a wave, components and the relations in
+/// them are in the order of the relations given.
+///
+/// Components are found by Tarjan's algorithm over primitive arrays, so the ordering takes time linear in the number
+/// of relations and foreign keys. Instances are immutable; obtain them from DBMD.getRelationDependencies().
+public final class RelationDependencies
+{
+    private final List<RelId> loadOrder;
+
+    private final List<List<RelId>> components;
+
+    private final List<List<RelId>> cyclicComponents;
+
+    private final List<List<RelId>> waves;
+
+    /// Order the given relations and any others referenced by the foreign keys, which are placed after them.
+    RelationDependencies(List<RelId> relationIds, List<ForeignKey> foreignKeys)
+    {
+        // Number the relations.
+
+        List<RelId> relIds = new ArrayList<>(relationIds);
+        Map<RelId, Integer> relNums = new HashMap<>((int)(relIds.size() / 0.75f) + 1);
+        for ( int i = 0; i < relIds.size(); ++i )
+            relNums.put(relIds.get(i), i);
+
+        Function<RelId, Integer> relNum = relId -> relNums.computeIfAbsent(relId, r -> { relIds.add(r); return relIds.size() - 1; });
+
+        int fkCount = foreignKeys.size();
+        int[] childNums = new int[fkCount];
+        int[] parentNums = new int[fkCount];
+        for ( int i = 0; i < fkCount; ++i )
+        {
+            childNums[i] = relNum.apply(foreignKeys.get(i).getSourceRelationId());
+            parentNums[i] = relNum.apply(foreignKeys.get(i).getTargetRelationId());
+        }
+
+        int relCount = relIds.size();
+
+        // The parents of each relation, in compressed sparse row form, without self references.
+
+        boolean[] selfReferencing = new boolean[relCount];
+        int[] parentOffsets = new int[relCount + 1];
+        for ( int i = 0; i < fkCount; ++i )
+        {
+            if ( childNums[i] == parentNums[i] )
+                selfReferencing[childNums[i]] = true;
+            else
+                ++parentOffsets[childNums[i] + 1];
+        }
+        for ( int r = 0; r < relCount; ++r )
+            parentOffsets[r + 1] += parentOffsets[r];
+
+        int[] parents = new int[parentOffsets[relCount]];
+        int[] nextParent = Arrays.copyOf(parentOffsets, relCount);
+        for ( int i = 0; i < fkCount; ++i )
+        {
+            if ( childNums[i] != parentNums[i] )
+                parents[nextParent[childNums[i]]++] = parentNums[i];
+        }
+
+        // Find the strongly connected components. Tarjan's algorithm completes a component only after the components
+        // reachable from it, so components are numbered with parents before children.
+
+        int[] componentNums = new int[relCount];
+        int componentCount = findComponents(relCount, parentOffsets, parents, componentNums);
+
+        // Each component's relations, in relation order.
+
+        int[] componentOffsets = new int[componentCount + 1];
+        for ( int r = 0; r < relCount; ++r )
+            ++componentOffsets[componentNums[r] + 1];
+        for ( int c = 0; c < componentCount; ++c )
+            componentOffsets[c + 1] += componentOffsets[c];
+
+        int[] componentRels = new int[relCount];
+        int[] nextComponentRel = Arrays.copyOf(componentOffsets, componentCount);
+        for ( int r = 0; r < relCount; ++r )
+            componentRels[nextComponentRel[componentNums[r]]++] = r;
+
+        // Wave numbers of the components, taking the components in parent first order.
+
+        int[] componentWaves = new int[componentCount];
+        int waveCount = relCount == 0 ? 0 : 1;
+        for ( int c = 0; c < componentCount; ++c )
+        {
+            int wave = 0;
+            for ( int i = componentOffsets[c]; i < componentOffsets[c + 1]; ++i )
+            {
+                int r = componentRels[i];
+                for ( int p = parentOffsets[r]; p < parentOffsets[r + 1]; ++p )
+                {
+                    int parentComponent = componentNums[parents[p]];
+                    if ( parentComponent != c )
+                        wave = Math.max(wave, componentWaves[parentComponent] + 1);
+                }
+            }
+            componentWaves[c] = wave;
+            waveCount = Math.max(waveCount, wave + 1);
+        }
+
+        // Assemble the waves, placing each component when its first relation is encountered in relation order.
+
+        List<List<RelId>> waves = new ArrayList<>(waveCount);
+        for ( int w = 0; w < waveCount; ++w )
+            waves.add(new ArrayList<>());
+
+        List<List<RelId>> components = new ArrayList<>(componentCount);
+        List<List<RelId>> cyclicComponents = new ArrayList<>();
+        List<List<List<RelId>>> componentsByWave = new ArrayList<>(waveCount);
+        for ( int w = 0; w < waveCount; ++w )
+            componentsByWave.add(new ArrayList<>());
+
+        for ( int r = 0; r < relCount; ++r )
+        {
+            int c = componentNums[r];
+            if ( componentRels[componentOffsets[c]] != r )
+                continue;
+
+            List<RelId> componentRelIds = new ArrayList<>(componentOffsets[c + 1] - componentOffsets[c]);
+            for ( int i = componentOffsets[c]; i < componentOffsets[c + 1]; ++i )
+                componentRelIds.add(relIds.get(componentRels[i]));
+
+            List<RelId> component = unmodifiableList(componentRelIds);
+            componentsByWave.get(componentWaves[c]).add(component);
+            waves.get(componentWaves[c]).addAll(component);
+
+            if ( component.size() > 1 || selfReferencing[r] )
+                cyclicComponents.add(component);
+        }
+
+        List<RelId> loadOrder = new ArrayList<>(relCount);
+        for ( int w = 0; w < waveCount; ++w )
+        {
+            components.addAll(componentsByWave.get(w));
+            loadOrder.addAll(waves.get(w));
+            waves.set(w, unmodifiableList(waves.get(w)));
+        }
+
+        this.loadOrder = unmodifiableList(loadOrder);
+        this.components = unmodifiableList(components);
+        this.cyclicComponents = unmodifiableList(cyclicComponents);
+        this.waves = unmodifiableList(waves);
+    }
+
+    /// Number the strongly connected components of the graph with the given parent edges, setting the component
+    /// number of each relation, and return the number of components. The depth first search is iterative, so deep
+    /// dependency chains do not overflow the stack.
+    private static int findComponents(int relCount, int[] parentOffsets, int[] parents, int[] componentNums)
+    {
+        int[] visitNums = new int[relCount];
+        Arrays.fill(visitNums, -1);
+        int[] lowLinks = new int[relCount];
+        boolean[] onStack = new boolean[relCount];
+
+        // Relations visited but not yet assigned to a component.
+        int[] stack = new int[relCount];
+        int stackSize = 0;
+
+        // The search path, with the position of the next parent edge to follow from each relation on it.
+        int[] path = new int[relCount];
+        int[] pathEdges = new int[relCount];
+        int pathSize = 0;
+
+        int visitCount = 0;
+        int componentCount = 0;
+
+        for ( int root = 0; root < relCount; ++root )
+        {
+            if ( visitNums[root] != -1 )
+                continue;
+
+            visitNums[root] = lowLinks[root] = visitCount++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            path[pathSize] = root;
+            pathEdges[pathSize++] = parentOffsets[root];
+
+            while ( pathSize > 0 )
+            {
+                int r = path[pathSize - 1];
+                int edge = pathEdges[pathSize - 1];
+
+                if ( edge < parentOffsets[r + 1] )
+                {
+                    pathEdges[pathSize - 1] = edge + 1;
+                    int p = parents[edge];
+
+                    if ( visitNums[p] == -1 )
+                    {
+                        visitNums[p] = lowLinks[p] = visitCount++;
+                        stack[stackSize++] = p;
+                        onStack[p] = true;
+                        path[pathSize] = p;
+                        pathEdges[pathSize++] = parentOffsets[p];
+                    }
+                    else if ( onStack[p] )
+                        lowLinks[r] = Math.min(lowLinks[r], visitNums[p]);
+                }
+                else
+                {
+                    --pathSize;
+
+                    if ( lowLinks[r] == visitNums[r] )
+                    {
+                        int member;
+                        do
+                        {
+                            member = stack[--stackSize];
+                            onStack[member] = false;
+                            componentNums[member] = componentCount;
+                        }
+                        while ( member != r );
+
+                        ++componentCount;
+                    }
+
+                    if ( pathSize > 0 )
+                    {
+                        int caller = path[pathSize - 1];
+                        lowLinks[caller] = Math.min(lowLinks[caller], lowLinks[r]);
+                    }
+                }
+            }
+        }
+
+        return componentCount;
+    }
+
+    /// The relations in an order in which data can be loaded, with each relation after the relations it depends on,
+    /// except for dependencies within cyclic components.
+    public List<RelId> getLoadOrder() { return loadOrder; }
+
+    /// The relations in an order in which data can be deleted or truncated, the reverse of the load order.
+    public List<RelId> getUnloadOrder()
+    {
+        List<RelId> unloadOrder = new ArrayList<>(loadOrder);
+        Collections.reverse(unloadOrder);
+        return unloadOrder;
+    }
+
+    /// The strongly connected components of the relations, in load order. Components of a single relation which does
+    /// not reference itself are included.
+    public List<List<RelId>> getComponents() { return components; }
+
+    /// The components whose relations depend on each other through a cycle of foreign keys, including single
+    /// self-referencing relations. Loading these requires deferred or disabled constraints, or multiple passes.
+    public List<List<RelId>> getCyclicComponents() { return cyclicComponents; }
+
+    public boolean hasCycles() { return !cyclicComponents.isEmpty(); }
+
+    /// The relations grouped into waves, in load order. A relation in a wave does not depend on any relation in the
+    /// same or a later wave, except for relations in the same cyclic component, which are always in the same wave.
+    public List<List<RelId>> getWaves() { return waves; }
+}
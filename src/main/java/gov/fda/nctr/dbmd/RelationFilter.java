@@ -0,0 +1,200 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+
+/// Selection of the relations to be fetched, by inclusion and exclusion conditions. A relation is selected if it
+/// satisfies any inclusion condition, or if there are none, and satisfies no exclusion condition. Conditions are
+/// of three kinds:
+///  - exact relation names, as stored in the database catalog (see DatabaseMetadataFetcher
+///    .normalizeDatabaseIdentifier()),
+///  - SQL LIKE patterns for relation names, where '%' matches any sequence of characters and '_' matches any single
+///    character, with no escape character,
+///  - regular expressions, which must match the entire schema-qualified relation name as given by
+///    RelId.getIdString(), as for the exclusion patterns accepted by DatabaseMetadataFetcher.
+///
+/// DatabaseMetadataFetcher pushes the selection down to the catalog queries for columns, primary keys and foreign
+/// keys when few of a schema's relations are selected; see DatabaseMetadataFetcher.RelationFetchStrategy. Instances
+/// are immutable, and are built up from ALL.
+public final class RelationFilter
+{
+    public static final RelationFilter ALL = new RelationFilter(Conditions.NONE, Conditions.NONE);
+
+    private final Conditions inclusions;
+
+    private final Conditions exclusions;
+
+    private RelationFilter(Conditions inclusions, Conditions exclusions)
+    {
+        this.inclusions = inclusions;
+        this.exclusions = exclusions;
+    }
+
+    /// Return a filter for the given optional exclusion pattern, in the form taken by the fetcher's methods.
+    public static RelationFilter excluding(Optional<Pattern> excludeRelsPattern)
+    {
+        return excludeRelsPattern.map(ALL::excluding).orElse(ALL);
+    }
+
+    /// Include the relations with the given names, which must be in the form stored in the database catalog.
+    public RelationFilter includingNames(Collection<String> relNames)
+    {
+        return new RelationFilter(inclusions.withNames(relNames), exclusions);
+    }
+
+    public RelationFilter includingLike(String likePattern)
+    {
+        return new RelationFilter(inclusions.withLikePattern(likePattern), exclusions);
+    }
+
+    public RelationFilter including(Pattern relIdPattern)
+    {
+        return new RelationFilter(inclusions.withPattern(relIdPattern), exclusions);
+    }
+
+    /// Exclude the relations with the given names, which must be in the form stored in the database catalog.
+    public RelationFilter excludingNames(Collection<String> relNames)
+    {
+        return new RelationFilter(inclusions, exclusions.withNames(relNames));
+    }
+
+    public RelationFilter excludingLike(String likePattern)
+    {
+        return new RelationFilter(inclusions, exclusions.withLikePattern(likePattern));
+    }
+
+    public RelationFilter excluding(Pattern relIdPattern)
+    {
+        return new RelationFilter(inclusions, exclusions.withPattern(relIdPattern));
+    }
+
+    public boolean hasInclusions() { return !inclusions.isEmpty(); }
+
+    /// Whether the relation satisfies an inclusion condition, or there are none.
+    public boolean isIncluded(RelId relId)
+    {
+        return inclusions.isEmpty() || inclusions.anyMatch(relId);
+    }
+
+    /// Whether the relation satisfies an exclusion condition.
+    public boolean isExcluded(RelId relId)
+    {
+        return exclusions.anyMatch(relId);
+    }
+
+    public boolean matches(RelId relId)
+    {
+        return isIncluded(relId) && !isExcluded(relId);
+    }
+
+    public String toString()
+    {
+        return "RelationFilter{inclusions=" + inclusions + ", exclusions=" + exclusions + "}";
+    }
+
+    /// Immutable conditions of each kind, any of which may be satisfied.
+    private static final class Conditions
+    {
+        static final Conditions NONE = new Conditions(Collections.emptySet(), Collections.emptyList(),
+                                                      Collections.emptyList());
+
+        final Set<String> names;
+
+        // The LIKE patterns as given, and translated to regular expressions for matching.
+        final List<String> likePatterns;
+
+        final List<Pattern> likeRegexes;
+
+        final List<Pattern> patterns;
+
+        private Conditions(Set<String> names, List<String> likePatterns, List<Pattern> patterns)
+        {
+            this.names = unmodifiableSet(names);
+            this.likePatterns = unmodifiableList(likePatterns);
+            this.patterns = unmodifiableList(patterns);
+
+            List<Pattern> likeRegexes = new ArrayList<>(likePatterns.size());
+            for ( String likePattern : likePatterns )
+                likeRegexes.add(likeRegex(likePattern));
+            this.likeRegexes = unmodifiableList(likeRegexes);
+        }
+
+        Conditions withNames(Collection<String> relNames)
+        {
+            Set<String> newNames = new HashSet<>(names);
+            for ( String relName : relNames )
+                newNames.add(Objects.requireNonNull(relName));
+            return new Conditions(newNames, likePatterns, patterns);
+        }
+
+        Conditions withLikePattern(String likePattern)
+        {
+            List<String> newLikePatterns = new ArrayList<>(likePatterns);
+            newLikePatterns.add(Objects.requireNonNull(likePattern));
+            return new Conditions(names, newLikePatterns, patterns);
+        }
+
+        Conditions withPattern(Pattern pattern)
+        {
+            List<Pattern> newPatterns = new ArrayList<>(patterns);
+            newPatterns.add(Objects.requireNonNull(pattern));
+            return new Conditions(names, likePatterns, newPatterns);
+        }
+
+        boolean isEmpty()
+        {
+            return names.isEmpty() && likePatterns.isEmpty() && patterns.isEmpty();
+        }
+
+        boolean anyMatch(RelId relId)
+        {
+            if ( names.contains(relId.getName()) )
+                return true;
+
+            for ( Pattern likeRegex : likeRegexes )
+                if ( likeRegex.matcher(relId.getName()).matches() )
+                    return true;
+
+            for ( Pattern pattern : patterns )
+                if ( pattern.matcher(relId.getIdString()).matches() )
+                    return true;
+
+            return false;
+        }
+
+        private static Pattern likeRegex(String likePattern)
+        {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+
+            for ( int i = 0; i < likePattern.length(); ++i )
+            {
+                char c = likePattern.charAt(i);
+                if ( c == '%' || c == '_' )
+                {
+                    if ( literal.length() > 0 )
+                    {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '%' ? ".*" : ".");
+                }
+                else
+                    literal.append(c);
+            }
+
+            if ( literal.length() > 0 )
+                regex.append(Pattern.quote(literal.toString()));
+
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        public String toString()
+        {
+            return "{names=" + names + ", likePatterns=" + likePatterns + ", patterns=" + patterns + "}";
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+
+/// Base class for catalog readers which query dictionary views directly with SQL, each catalog request being served
+/// by a single set-based query on the connection of the passed DatabaseMetaData.
+public abstract class SqlCatalogReader implements CatalogReader
+{
+    public boolean supportsSchemaPrimaryKeysQuery() { return true; }
+
+    public boolean supportsRelationListQueries() { return true; }
+
+    /// Execute the query with the given string parameters, returning a result set which closes its statement when
+    /// closed.
+    protected ResultSet query
+        (
+            DatabaseMetaData dbmd,
+            String sql,
+            List<String> params
+        )
+        throws SQLException
+    {
+        PreparedStatement ps = dbmd.getConnection().prepareStatement(sql);
+        try
+        {
+            for ( int i = 0; i < params.size(); ++i )
+                ps.setString(i + 1, params.get(i));
+
+            ps.closeOnCompletion();
+
+            return ps.executeQuery();
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            ps.close();
+            throw e;
+        }
+    }
+
+    /// Return an "and" condition comparing the expression with a parameter for the value if a value is present,
+    /// adding the value to the passed parameters, or else an empty string.
+    protected static String andEquals
+        (
+            String expr,
+            Optional<String> value,
+            List<String> params
+        )
+    {
+        if ( !value.isPresent() )
+            return "";
+
+        params.add(value.get());
+
+        return " and " + expr + " = ?";
+    }
+
+    /// Return an "and" condition restricting the expression to the given values if values are present, adding the
+    /// values to the passed parameters, or else an empty string.
+    protected static String andIn
+        (
+            String expr,
+            Optional<List<String>> values,
+            List<String> params
+        )
+    {
+        if ( !values.isPresent() )
+            return "";
+
+        if ( values.get().size() == 1 )
+            return andEquals(expr, Optional.of(values.get().get(0)), params);
+
+        return " and " + inValues(expr, values.get(), params);
+    }
+
+    /// Return an "in" condition comparing the expression with parameters for the given values, adding the values
+    /// to the passed parameters.
+    protected static String inValues
+        (
+            String expr,
+            List<String> values,
+            List<String> params
+        )
+    {
+        if ( values.isEmpty() )
+            return "1 = 0";
+
+        StringBuilder sb = new StringBuilder(expr).append(" in (");
+
+        for ( int i = 0; i < values.size(); ++i )
+        {
+            if ( i > 0 )
+                sb.append(", ");
+            sb.append('?');
+            params.add(values.get(i));
+        }
+
+        return sb.append(')').toString();
+    }
+}
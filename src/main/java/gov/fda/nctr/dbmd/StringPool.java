@@ -0,0 +1,93 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+
+/// A bounded pool of strings for deduplicating the identifiers and type names read into metadata, so that equal
+/// strings such as type names, schema names and commonly used column names share one instance. Unlike
+/// String.intern(), the pool is private to its owner and holds at most a fixed number of strings.
+///
+/// The pool is a direct-mapped cache: each string hashes to a single slot, and a string that is not found replaces
+/// the slot's previous occupant. Frequently recurring strings therefore stay pooled while one-off strings pass
+/// through. The pool is safe for concurrent use, since a lost update only costs a missed deduplication.
+public final class StringPool
+{
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final String[] slots;
+
+    private final int mask;
+
+    /// Create a pool holding at most the given number of strings, rounded up to a power of two.
+    public StringPool(int capacity)
+    {
+        if ( capacity < 1 || capacity > 1 << 30 )
+            throw new IllegalArgumentException("String pool capacity must be between 1 and 2^30.");
+
+        int size = Integer.highestOneBit(capacity);
+        if ( size < capacity )
+            size <<= 1;
+
+        this.slots = new String[size];
+        this.mask = size - 1;
+    }
+
+    public StringPool()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /// Return the pooled string equal to the given string, pooling the given string if there is none. Null is
+    /// returned for null.
+    public String pool(String s)
+    {
+        if ( s == null )
+            return null;
+
+        int h = s.hashCode();
+        int ix = (h ^ (h >>> 16)) & mask;
+
+        String pooled = slots[ix];
+        if ( pooled != null && pooled.equals(s) )
+            return pooled;
+
+        slots[ix] = s;
+        return s;
+    }
+
+    public int getCapacity() { return slots.length; }
+
+    /// Return a Jackson module which deduplicates all strings deserialized by a mapper via this pool, for reading
+    /// metadata such as DBMD from JSON or YAML. Register it alongside the Jdk8Module, which then pools the contents
+    /// of optional strings as well.
+    public Module jacksonModule()
+    {
+        SimpleModule module = new SimpleModule("StringPool");
+        module.addDeserializer(String.class, new PoolingStringDeserializer(this));
+        return module;
+    }
+
+    private static final class PoolingStringDeserializer extends StringDeserializer
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient StringPool pool;
+
+        PoolingStringDeserializer(StringPool pool)
+        {
+            this.pool = pool;
+        }
+
+        @Override
+        public String deserialize(JsonParser p, DeserializationContext ctxt) throws IOException
+        {
+            return pool.pool(super.deserialize(p, ctxt));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+
+
+public class CatalogReaderTest
+{
+    private static Connection conn;
+
+    private static final ObjectMapper mapper =
+        new ObjectMapper().registerModule(new Jdk8Module()).enable(SerializationFeature.INDENT_OUTPUT);
+
+    @BeforeClass
+    public static void createDatabase() throws SQLException
+    {
+        conn = DriverManager.getConnection("jdbc:h2:mem:catalog_reader_test;DB_CLOSE_DELAY=-1", "sa", "");
+
+        try ( Statement stmt = conn.createStatement() )
+        {
+            stmt.execute("create schema s");
+            stmt.execute("create table s.\"Dept\"(\"deptId\" int primary key, \"deptName\" varchar(50) not null)");
+            stmt.execute("comment on table s.\"Dept\" is 'Departments'");
+            stmt.execute("comment on column s.\"Dept\".\"deptName\" is 'Department name'");
+            stmt.execute("create table s.emp(id int primary key, dept_id int references s.\"Dept\"(\"deptId\"), " +
+                         "salary numeric(10,2), rate double precision, hired date, notes clob, active boolean)");
+            stmt.execute("create table s.proj(code varchar(10), yr int, title varchar(100), primary key(code, yr))");
+            stmt.execute("create table s.assignment(emp_id int references s.emp(id), code varchar(10), yr int, " +
+                         "hours smallint, primary key(emp_id, code, yr), " +
+                         "foreign key(code, yr) references s.proj(code, yr))");
+            stmt.execute("create view s.emp_depts as " +
+                         "select e.id, d.\"deptName\" from s.emp e join s.\"Dept\" d on d.\"deptId\" = e.dept_id");
+            stmt.execute("create view s.\"ProjYears\" as select code, yr from s.proj");
+            stmt.execute("comment on table s.\"ProjYears\" is 'Project years'");
+        }
+    }
+
+    @AfterClass
+    public static void dropDatabase() throws SQLException
+    {
+        try ( Statement stmt = conn.createStatement() )
+        {
+            stmt.execute("drop all objects");
+        }
+        conn.close();
+    }
+
+    @Test
+    public void forDatabaseChoosesH2Reader() throws SQLException
+    {
+        assertTrue(CatalogReader.forDatabase(conn.getMetaData()) instanceof H2CatalogReader);
+    }
+
+    @Test
+    public void h2ReaderMatchesJdbcReaderWithFewerCatalogQueries() throws Exception
+    {
+        DatabaseMetadataFetcher jdbcFetcher =
+            new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new JdbcCatalogReader());
+        DatabaseMetadataFetcher h2Fetcher =
+            new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new H2CatalogReader());
+
+        DBMD jdbcDbmd = jdbcFetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+        DBMD h2Dbmd = h2Fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+
+        assertEquals(mapper.writeValueAsString(jdbcDbmd), mapper.writeValueAsString(h2Dbmd));
+
+        assertEquals(6, h2Dbmd.getRelationMetadatas().size());
+        assertEquals(3, h2Dbmd.getForeignKeys().size());
+        RelId deptRelId = new RelId(Optional.of("S"), "Dept");
+        assertEquals(Optional.of("Departments"), h2Dbmd.getRelationMetadata(deptRelId).get().getRelationComment());
+
+        // JDBC on H2: relations, primary keys per relation (6), columns, imported keys per table (4).
+        assertEquals(12, jdbcFetcher.getCatalogCallCount());
+        // H2: relations, schema primary keys, columns, schema imported keys.
+        assertEquals(4, h2Fetcher.getCatalogCallCount());
+    }
+
+    @Test
+    public void jdbcReaderQueriesImportedKeysSchemaWideWhereSupported() throws Exception
+    {
+        assertFalse(new JdbcCatalogReader().supportsSchemaImportedKeysQuery(conn.getMetaData()));
+
+        // The H2 driver rejects a null table for getImportedKeys(), so stand in for a driver such as Oracle's or
+        // PostgreSQL's by answering the schema-wide query from the information_schema.
+        CatalogReader schemaWideJdbcReader = new JdbcCatalogReader()
+        {
+            public boolean supportsSchemaImportedKeysQuery(DatabaseMetaData dbmd) { return true; }
+
+            public ResultSet getImportedKeys(DatabaseMetaData dbmd, Optional<String> schema, Optional<String> relName)
+                throws SQLException
+            {
+                return relName.isPresent() ? super.getImportedKeys(dbmd, schema, relName)
+                    : new H2CatalogReader().getImportedKeys(dbmd, schema, relName);
+            }
+        };
+
+        DatabaseMetadataFetcher perTableFetcher =
+            new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new JdbcCatalogReader());
+        DatabaseMetadataFetcher schemaWideFetcher =
+            new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, schemaWideJdbcReader);
+
+        DBMD perTableDbmd = perTableFetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+        DBMD schemaWideDbmd =
+            schemaWideFetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+
+        assertEquals(mapper.writeValueAsString(perTableDbmd), mapper.writeValueAsString(schemaWideDbmd));
+
+        // Relations, primary keys per relation (6), columns, and imported keys per table (4) or schema-wide (1).
+        assertEquals(12, perTableFetcher.getCatalogCallCount());
+        assertEquals(9, schemaWideFetcher.getCatalogCallCount());
+    }
+}
@@ -0,0 +1,159 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+import gov.fda.nctr.dbmd.RelMetadata.RelType;
+import static gov.fda.nctr.dbmd.DBMDFixtures.*;
+
+
+public class CompactFieldsTest
+{
+    private static final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+
+    @Test
+    public void compactFieldsMatchOrdinaryFields() throws Exception
+    {
+        DBMD dbmd = variedFieldsDBMD();
+        DBMD compact = dbmd.withCompactFields();
+
+        for ( RelMetadata relMd : compact.getRelationMetadatas() )
+            assertTrue(relMd.getFields() instanceof CompactFields);
+
+        assertFieldsEqual(dbmd, compact);
+        assertEquals(mapper.writeValueAsString(dbmd), mapper.writeValueAsString(compact));
+        assertArrayEquals(binary(dbmd), binary(compact));
+        assertTrue(DBMDDiff.between(dbmd, compact).isEmpty());
+        assertEquals(dbmd.getPrimaryKeyFieldNames(relId("ITEM"), Optional.of("i")),
+                     compact.getPrimaryKeyFieldNames(relId("ITEM"), Optional.of("i")));
+
+        // Deserialized compact metadata has ordinary fields again, equal to the originals.
+        DBMD fromJson = mapper.readValue(mapper.writeValueAsBytes(compact), DBMD.class);
+        assertFieldsEqual(dbmd, fromJson);
+        assertFieldsEqual(dbmd, DBMD.readBinary(new ByteArrayInputStream(binary(compact))));
+        assertFieldsEqual(dbmd, MappedDBMD.map(ByteBuffer.wrap(binary(compact))));
+
+        // Compacting is idempotent, and database type names are shared between relations.
+        RelMetadata compactItem = compact.getRelationMetadata(relId("ITEM")).get();
+        RelMetadata compactPart = compact.getRelationMetadata(relId("PART")).get();
+        assertSame(compactItem.getFields(),
+                   compact.withCompactFields().getRelationMetadata(relId("ITEM")).get().getFields());
+        assertSame(compactItem.getFields().get(0).getDatabaseType(), compactPart.getFields().get(0).getDatabaseType());
+    }
+
+    @Test
+    public void fetcherCompactFieldsMatchOrdinaryFields() throws Exception
+    {
+        try ( Connection conn = DriverManager.getConnection("jdbc:h2:mem:compact_fields_test", "sa", "") )
+        {
+            try ( Statement stmt = conn.createStatement() )
+            {
+                stmt.execute("create schema s");
+                stmt.execute("create table s.item(id int primary key, name varchar(40) not null, " +
+                             "price numeric(10,2), weight double precision, made date, note clob)");
+                stmt.execute("comment on column s.item.note is 'Free text'");
+                stmt.execute("create table s.part(item_id int references s.item(id), part_no smallint, " +
+                             "label char(3), primary key(item_id, part_no))");
+                stmt.execute("create view s.item_names as select id, name from s.item");
+            }
+
+            DatabaseMetadataFetcher fetcher =
+                new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new H2CatalogReader());
+            DBMD ordinary = fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+
+            fetcher.setCompactFields(true);
+            DBMD compact = fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+
+            assertTrue(compact.getRelationMetadatas().get(0).getFields() instanceof CompactFields);
+            assertFieldsEqual(ordinary, compact);
+            assertEquals(mapper.writeValueAsString(ordinary), mapper.writeValueAsString(compact));
+            assertArrayEquals(binary(ordinary), binary(compact));
+            assertTrue(DBMDDiff.between(ordinary, compact).isEmpty());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexOutOfRange()
+    {
+        CompactFields.of(Arrays.asList(intField("ID", Optional.of(1)))).get(1);
+    }
+
+    /// Check that the fields of corresponding relations have equal attributes as seen through their getters.
+    private static void assertFieldsEqual(DBMD expected, DBMD actual)
+    {
+        assertEquals(expected.getRelationMetadatas().size(), actual.getRelationMetadatas().size());
+
+        for ( int r = 0; r < expected.getRelationMetadatas().size(); ++r )
+        {
+            List<Field> expectedFields = expected.getRelationMetadatas().get(r).getFields();
+            List<Field> actualFields = actual.getRelationMetadatas().get(r).getFields();
+            assertEquals(expectedFields.size(), actualFields.size());
+
+            for ( int i = 0; i < expectedFields.size(); ++i )
+            {
+                Field e = expectedFields.get(i), a = actualFields.get(i);
+                String desc = expected.getRelationMetadatas().get(r).getRelationId() + "." + e.getName();
+
+                assertEquals(desc, e.getName(), a.getName());
+                assertEquals(desc, e.getJdbcTypeCode(), a.getJdbcTypeCode());
+                assertEquals(desc, e.getDatabaseType(), a.getDatabaseType());
+                assertEquals(desc, e.getLength(), a.getLength());
+                assertEquals(desc, e.getPrecision(), a.getPrecision());
+                assertEquals(desc, e.getFractionalDigits(), a.getFractionalDigits());
+                assertEquals(desc, e.getRadix(), a.getRadix());
+                assertEquals(desc, e.getNullable(), a.getNullable());
+                assertEquals(desc, e.getPrimaryKeyPartNumber(), a.getPrimaryKeyPartNumber());
+                assertEquals(desc, e.getComment(), a.getComment());
+                assertEquals(desc, e.isNumericType(), a.isNumericType());
+                assertEquals(desc, e.isCharacterType(), a.isCharacterType());
+            }
+        }
+    }
+
+    /// Relations whose fields between them have each optional attribute both present and absent, and nullability
+    /// true, false and unknown.
+    private static DBMD variedFieldsDBMD()
+    {
+        RelMetadata item =
+            new RelMetadata(relId("ITEM"), RelType.Table, Optional.of("Items"), Arrays.asList(
+                intField("ID", Optional.of(1)),
+                new Field("NAME", Types.VARCHAR, "CHARACTER VARYING", Optional.of(40), Optional.empty(),
+                          Optional.empty(), Optional.empty(), Optional.of(false), Optional.empty(),
+                          Optional.of("Item name")),
+                new Field("PRICE", Types.NUMERIC, "NUMERIC", Optional.empty(), Optional.of(10), Optional.of(2),
+                          Optional.of(10), Optional.of(true), Optional.empty(), Optional.empty()),
+                new Field("DATA", Types.OTHER, "JSON", Optional.empty(), Optional.empty(), Optional.empty(),
+                          Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(""))
+            ));
+
+        RelMetadata part =
+            new RelMetadata(relId("PART"), RelType.Table, Optional.empty(), Arrays.asList(
+                intField("ITEM_ID", Optional.of(1)),
+                intField("PART_NO", Optional.of(2)),
+                new Field("LABEL", Types.CHAR, "CHARACTER", Optional.of(3), Optional.empty(), Optional.empty(),
+                          Optional.empty(), Optional.of(true), Optional.empty(), Optional.empty())
+            ));
+
+        RelMetadata empty = new RelMetadata(relId("NO_FIELDS"), RelType.View, Optional.empty(), Arrays.asList());
+
+        return dbmd(Arrays.asList(item, part, empty),
+                    Arrays.asList(foreignKey(relId("PART"), relId("ITEM"), "ITEM_ID", "ID")));
+    }
+}
@@ -0,0 +1,121 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import static gov.fda.nctr.dbmd.DBMDFixtures.binary;
+import static gov.fda.nctr.dbmd.DBMDFixtures.deptEmpDBMD;
+
+
+public class DBMDBinaryFormatTest
+{
+    @Test
+    public void roundTripsThroughBinaryFormat() throws IOException
+    {
+        DBMD dbmd = deptEmpDBMD();
+
+        byte[] bytes = binary(dbmd);
+
+        assertArrayEquals(bytes, binary(DBMD.readBinary(new ByteArrayInputStream(bytes))));
+
+        MappedDBMD mapped = MappedDBMD.map(ByteBuffer.wrap(bytes));
+        assertEquals(dbmd.getRelationMetadatas().size(), mapped.getRelationMetadatas().size());
+        assertEquals(dbmd.getForeignKeys().size(), mapped.getForeignKeys().size());
+        assertArrayEquals(bytes, binary(mapped));
+    }
+
+    @Test
+    public void mappedStringsAreDecodedFromDirectBuffersAndShared() throws IOException
+    {
+        // A direct buffer, as for a mapped file.
+        byte[] bytes = binary(deptEmpDBMD());
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        buf.put(bytes);
+        buf.flip();
+        MappedDBMD mapped = MappedDBMD.map(buf);
+
+        RelId deptId = new RelId(Optional.of("S"), "DEPT");
+        Field name = mapped.getRelationMetadata(deptId).get().getFields().get(1);
+        assertEquals("NAME", name.getName());
+        assertEquals(Optional.of("Department name"), name.getComment());
+
+        // Field names are shared across relations through the string table.
+        RelId empId = new RelId(Optional.of("S"), "EMP");
+        assertSame(mapped.getRelationMetadata(deptId).get().getFields().get(0).getName(),
+                   mapped.getRelationMetadata(empId).get().getFields().get(0).getName());
+    }
+
+    @Test
+    public void negativeStringCountIsReportedAsIOException()
+    {
+        // Varint encoding of -1 as the string table size.
+        assertInvalid(header(0xff, 0xff, 0xff, 0xff, 0x0f));
+    }
+
+    @Test
+    public void oversizedStringCountIsReportedAsIOException()
+    {
+        // Varint encoding of Integer.MAX_VALUE as the string table size.
+        assertInvalid(header(0xff, 0xff, 0xff, 0xff, 0x07));
+    }
+
+    @Test
+    public void oversizedStringLengthIsReportedAsIOException()
+    {
+        // One string, of length Integer.MAX_VALUE.
+        assertInvalid(header(0x01, 0xff, 0xff, 0xff, 0xff, 0x07));
+    }
+
+    @Test
+    public void truncatedDataIsReportedAsIOException() throws IOException
+    {
+        byte[] bytes = binary(deptEmpDBMD());
+
+        for ( int len = DBMDBinaryFormat.MAGIC.length + 1; len < bytes.length; ++len )
+        {
+            try
+            {
+                DBMD.readBinary(new ByteArrayInputStream(Arrays.copyOf(bytes, len)));
+                fail("Expected IOException from readBinary with length " + len + ".");
+            }
+            catch (IOException expected) {}
+        }
+    }
+
+    private static void assertInvalid(byte[] bytes)
+    {
+        try
+        {
+            DBMD.readBinary(new ByteArrayInputStream(bytes));
+            fail("Expected IOException from readBinary.");
+        }
+        catch (IOException expected) {}
+
+        try
+        {
+            MappedDBMD.map(ByteBuffer.wrap(bytes));
+            fail("Expected IOException from map.");
+        }
+        catch (IOException expected) {}
+    }
+
+    private static byte[] header(int... countBytes)
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(DBMDBinaryFormat.MAGIC, 0, DBMDBinaryFormat.MAGIC.length);
+        bos.write(DBMDBinaryFormat.FORMAT_VERSION);
+        for ( int b : countBytes )
+            bos.write(b);
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,298 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+
+
+public class DBMDCacheTest
+{
+    private TestDataSource dataSource;
+
+    // Held open so the in-memory database lives for the duration of each test.
+    private Connection keepAliveConn;
+
+    private final DatabaseMetadataFetcher fetcher =
+        new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new H2CatalogReader());
+
+    private ExecutorService executor;
+
+    private static final String URL = "jdbc:h2:mem:cache_test;DB_CLOSE_DELAY=-1";
+
+    private static final RelId ADDED_REL_ID = new RelId(Optional.of("S"), "ADDED");
+
+    @Before
+    public void createDatabase() throws SQLException
+    {
+        dataSource = new TestDataSource();
+
+        keepAliveConn = DriverManager.getConnection(URL, "sa", "");
+        execute(
+            "create schema s",
+            "create table s.dept(id int primary key)",
+            "create table s.emp(id int primary key, dept_id int references s.dept(id))",
+            "create table s.tmp_log(id int primary key)",
+            "create schema t",
+            "create table t.other(id int primary key)"
+        );
+
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void dropDatabase() throws SQLException
+    {
+        executor.shutdownNow();
+        execute("drop all objects");
+        keepAliveConn.close();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneFetch() throws Exception
+    {
+        DBMDCache cache = new DBMDCache(fetcher, Duration.ofHours(1), 10, executor);
+
+        dataSource.gate = new CountDownLatch(1);
+
+        List<CompletableFuture<DBMD>> requests = new ArrayList<>();
+        for ( int i = 0; i < 16; ++i )
+            requests.add(executor.submit(() -> getAsync(cache, "S", Optional.empty())).get());
+
+        for ( CompletableFuture<DBMD> request : requests )
+            assertFalse(request.isDone());
+
+        dataSource.gate.countDown();
+
+        DBMD first = requests.get(0).get(10, TimeUnit.SECONDS);
+        for ( CompletableFuture<DBMD> request : requests )
+            assertSame(first, request.get(10, TimeUnit.SECONDS));
+
+        assertEquals(1, dataSource.connectionCount.get());
+        assertEquals(3, first.getRelationMetadatas().size());
+
+        // Once cached, requests complete immediately without fetching.
+        CompletableFuture<DBMD> cached = getAsync(cache, "S", Optional.empty());
+        assertTrue(cached.isDone());
+        assertSame(first, cached.get());
+        assertEquals(1, dataSource.connectionCount.get());
+    }
+
+    @Test
+    public void separatesEntriesByFetchOptions() throws Exception
+    {
+        DBMDCache cache = new DBMDCache(fetcher, Duration.ofHours(1), 10, executor);
+
+        DBMD s = get(cache, "S", Optional.empty());
+        DBMD sExcluding = get(cache, "S", Optional.of(Pattern.compile(".*TMP.*")));
+        DBMD t = get(cache, "T", Optional.empty());
+        DBMD sNoFks = cache.getMetadata(dataSource, Optional.of("S"), true, true, false, Optional.empty());
+
+        assertEquals(3, s.getRelationMetadatas().size());
+        assertEquals(2, sExcluding.getRelationMetadatas().size());
+        assertEquals(1, t.getRelationMetadatas().size());
+        assertEquals(0, sNoFks.getForeignKeys().size());
+        assertEquals(1, s.getForeignKeys().size());
+        assertEquals(4, dataSource.connectionCount.get());
+
+        // An equal pattern compiled separately finds the same entry.
+        assertSame(sExcluding, get(cache, "S", Optional.of(Pattern.compile(".*TMP.*"))));
+
+        // Data sources are distinguished by identity.
+        TestDataSource otherDataSource = new TestDataSource();
+        DBMD sOther =
+            cache.getMetadata(otherDataSource, Optional.of("S"), true, true, true, Optional.empty());
+        assertTrue(sOther != s);
+        assertEquals(1, otherDataSource.connectionCount.get());
+        assertEquals(4, dataSource.connectionCount.get());
+    }
+
+    @Test
+    public void failedInitialFetchRemovesEntry() throws Exception
+    {
+        DBMDCache cache = new DBMDCache(fetcher, Duration.ofHours(1), 10, executor);
+
+        dataSource.failing = true;
+
+        try
+        {
+            get(cache, "S", Optional.empty());
+            fail("Expected the fetch to fail.");
+        }
+        catch (SQLException expected) {}
+
+        // The failed entry was removed, so the next request fetches again rather than reporting the old failure.
+        dataSource.failing = false;
+
+        DBMD dbmd = get(cache, "S", Optional.empty());
+
+        assertEquals(3, dbmd.getRelationMetadatas().size());
+        assertEquals(2, dataSource.connectionCount.get());
+    }
+
+    @Test
+    public void failedRefreshKeepsCurrentMetadataAndIsReported() throws Exception
+    {
+        // Refreshing on the requesting thread makes each refresh complete before the request returns.
+        DBMDCache cache = new DBMDCache(fetcher, Duration.ZERO, 10, Runnable::run);
+
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        cache.setRefreshFailureListener((ds, schema, failure) -> {
+            assertSame(dataSource, ds);
+            assertEquals(Optional.of("S"), schema);
+            failures.add(failure);
+        });
+
+        // With a zero refresh age, the first request also starts a refresh, which completes before it returns.
+        get(cache, "S", Optional.empty());
+
+        execute("create table s.added(id int primary key)");
+        dataSource.failing = true;
+
+        // Each request is answered with the current metadata and starts a refresh, which fails.
+        DBMD current = get(cache, "S", Optional.empty());
+        assertSame(current, get(cache, "S", Optional.empty()));
+        assertFalse(current.getRelationMetadata(ADDED_REL_ID).isPresent());
+        assertEquals(2, failures.size());
+        assertTrue(failures.get(0) instanceof SQLException);
+
+        dataSource.failing = false;
+
+        // The next request starts a refresh which succeeds, and the refreshed metadata is returned thereafter.
+        assertSame(current, get(cache, "S", Optional.empty()));
+        DBMD refreshed = get(cache, "S", Optional.empty());
+
+        assertTrue(refreshed.getRelationMetadata(ADDED_REL_ID).isPresent());
+        assertEquals(2, failures.size());
+
+        // Unchanged relation metadata is shared with the previous metadata by the incremental refresh.
+        RelId deptRelId = new RelId(Optional.of("S"), "DEPT");
+        assertSame(current.getRelationMetadata(deptRelId).get(), refreshed.getRelationMetadata(deptRelId).get());
+    }
+
+    @Test
+    public void invalidateAllAndEvictionCauseRefetch() throws Exception
+    {
+        DBMDCache cache = new DBMDCache(fetcher, Duration.ofHours(1), 2, executor);
+
+        DBMD s = get(cache, "S", Optional.empty());
+        get(cache, "T", Optional.empty());
+        assertSame(s, get(cache, "S", Optional.empty()));
+        assertEquals(2, dataSource.connectionCount.get());
+
+        // S was used more recently than T, so adding a third entry evicts T.
+        get(cache, "S", Optional.of(Pattern.compile(".*TMP.*")));
+        assertSame(s, get(cache, "S", Optional.empty()));
+        assertEquals(3, dataSource.connectionCount.get());
+        get(cache, "T", Optional.empty());
+        assertEquals(4, dataSource.connectionCount.get());
+
+        cache.invalidateAll();
+
+        DBMD refetched = get(cache, "S", Optional.empty());
+        assertTrue(refetched != s);
+        assertEquals(5, dataSource.connectionCount.get());
+    }
+
+    private DBMD get(DBMDCache cache, String schema, Optional<Pattern> excludePat) throws SQLException
+    {
+        return cache.getMetadata(dataSource, Optional.of(schema), true, true, true, excludePat);
+    }
+
+    private CompletableFuture<DBMD> getAsync(DBMDCache cache, String schema, Optional<Pattern> excludePat)
+    {
+        return cache.getMetadataAsync(dataSource, Optional.of(schema), true, true, true, excludePat);
+    }
+
+    private void execute(String... sqls) throws SQLException
+    {
+        try ( Statement stmt = keepAliveConn.createStatement() )
+        {
+            for ( String sql : sqls )
+                stmt.execute(sql);
+        }
+    }
+
+    /// Data source counting its connections, which can be made to fail or to wait for a gate to open.
+    private static class TestDataSource implements DataSource
+    {
+        final JdbcDataSource h2DataSource = new JdbcDataSource();
+
+        final AtomicInteger connectionCount = new AtomicInteger();
+
+        volatile boolean failing;
+
+        volatile CountDownLatch gate;
+
+        TestDataSource()
+        {
+            h2DataSource.setURL(URL);
+            h2DataSource.setUser("sa");
+        }
+
+        public Connection getConnection() throws SQLException
+        {
+            connectionCount.incrementAndGet();
+
+            CountDownLatch g = gate;
+            if ( g != null )
+            {
+                try { g.await(); }
+                catch (InterruptedException e) { throw new SQLException(e); }
+            }
+
+            if ( failing )
+                throw new SQLException("Connection refused for test.");
+
+            return h2DataSource.getConnection();
+        }
+
+        public Connection getConnection(String user, String password) throws SQLException
+        {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        public PrintWriter getLogWriter() { return null; }
+
+        public void setLogWriter(PrintWriter out) {}
+
+        public void setLoginTimeout(int seconds) {}
+
+        public int getLoginTimeout() { return 0; }
+
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException
+        {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        public <T> T unwrap(Class<T> iface) throws SQLException
+        {
+            throw new SQLException("Not a wrapper.");
+        }
+
+        public boolean isWrapperFor(Class<?> iface) { return false; }
+    }
+}
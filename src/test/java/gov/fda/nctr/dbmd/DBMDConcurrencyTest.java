@@ -0,0 +1,117 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import static gov.fda.nctr.dbmd.DBMDFixtures.binary;
+import static gov.fda.nctr.dbmd.DBMDFixtures.chainDBMD;
+import static gov.fda.nctr.dbmd.DBMDFixtures.describe;
+
+
+/// Checks that the derived indexes which DBMD builds on first access are safely published, by having many threads
+/// race to make the first lookups against freshly deserialized instances.
+public class DBMDConcurrencyTest
+{
+    private static final int REL_COUNT = 300;
+
+    private static final int THREAD_COUNT = 16;
+
+    private static final int ROUNDS = 25;
+
+    private static final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+
+    @Test
+    public void firstTouchLookupsAgreeAcrossThreads() throws Exception
+    {
+        DBMD original = chainDBMD(REL_COUNT);
+        List<String> expected = lookups(original, 0);
+
+        byte[] json = mapper.writeValueAsBytes(original);
+        byte[] binary = binary(original);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try
+        {
+            for ( int round = 0; round < ROUNDS; ++round )
+            {
+                assertLookupsAgree("JSON round " + round, mapper.readValue(json, DBMD.class), expected, executor);
+                assertLookupsAgree("binary round " + round, DBMD.readBinary(new ByteArrayInputStream(binary)),
+                                   expected, executor);
+                assertLookupsAgree("mapped round " + round, MappedDBMD.map(ByteBuffer.wrap(binary)),
+                                   expected, executor);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertLookupsAgree
+        (
+            String description,
+            DBMD dbmd,
+            List<String> expected,
+            ExecutorService executor
+        )
+        throws Exception
+    {
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<List<String>>> results = new ArrayList<>();
+        for ( int t = 0; t < THREAD_COUNT; ++t )
+        {
+            int startIx = t * REL_COUNT / THREAD_COUNT;
+            results.add(executor.submit(() -> {
+                start.await();
+                return lookups(dbmd, startIx);
+            }));
+        }
+
+        start.countDown();
+
+        for ( Future<List<String>> result : results )
+            assertEquals(description, expected, result.get(30, TimeUnit.SECONDS));
+    }
+
+    /// Make lookups of every kind for each relation, starting at the given relation index so that threads touch
+    /// different parts of the indexes first, and return descriptions of the results in relation order.
+    private static List<String> lookups(DBMD dbmd, int startIx)
+    {
+        String[] res = new String[REL_COUNT];
+
+        for ( int n = 0; n < REL_COUNT; ++n )
+        {
+            int i = (startIx + n) % REL_COUNT;
+            String relName = relName(i);
+            RelId relId = dbmd.getRelationMetadata(relName).get().getRelationId();
+            RelId parentRelId = dbmd.makeRelId(relName((i + 1) % REL_COUNT));
+
+            res[i] =
+                relId + " fields=" + dbmd.getFieldNames(relId, Optional.empty()) +
+                " pk=" + dbmd.getPrimaryKeyFieldNames(relId, Optional.empty()) +
+                " parents=" + describe(dbmd.getForeignKeysToParentsFrom(relId)) +
+                " children=" + describe(dbmd.getForeignKeysFromChildrenTo(relId)) +
+                " fk=" + dbmd.getForeignKeyFromTo(relId, parentRelId, Optional.of(Collections.singleton("next_id")),
+                                                   DBMD.ForeignKeyScope.REGISTERED_TABLES_ONLY)
+                         .map(fk -> describe(Collections.singletonList(fk))) +
+                " path=" + dbmd.getForeignKeyGraph().getShortestPath(relId, parentRelId).isPresent() +
+                " load=" + dbmd.getRelationDependencies().getLoadOrder().indexOf(relId);
+        }
+
+        return Arrays.asList(res);
+    }
+
+    private static String relName(int i)
+    {
+        return "REL_" + i;
+    }
+}
@@ -0,0 +1,212 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.RelMetadata.RelType;
+import static gov.fda.nctr.dbmd.DBMDFixtures.*;
+
+
+public class DBMDDiffTest
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+
+    @Test
+    public void identicalSnapshotsGiveEmptyDiff() throws IOException
+    {
+        DBMD dbmd = deptEmpDBMD();
+        DBMD fromBinary = DBMD.readBinary(new ByteArrayInputStream(binary(dbmd)));
+        DBMD fromJson = mapper.readValue(mapper.writeValueAsBytes(dbmd), DBMD.class);
+
+        assertTrue(DBMDDiff.between(dbmd, dbmd).isEmpty());
+        assertTrue(DBMDDiff.between(dbmd, fromBinary).isEmpty());
+        assertTrue(DBMDDiff.between(fromJson, fromBinary).isEmpty());
+        assertEquals("{}", mapper.writeValueAsString(DBMDDiff.between(fromJson, dbmd)));
+    }
+
+    @Test
+    public void reportsAddedRemovedAndChangedRelations()
+    {
+        DBMD from = dbmd(Arrays.asList(table("A", "ID", "X"), table("B", "ID"), table("C", "ID", "Y", "Z")),
+                         Collections.emptyList());
+        DBMD to = dbmd(Arrays.asList(table("A", "ID", "X"), table("C", "ID", "Z", "Y"), table("D", "ID")),
+                       Collections.emptyList());
+
+        DBMDDiff diff = DBMDDiff.between(from, to);
+
+        assertEquals(Collections.singletonList(relId("D")), relIds(diff.getAddedRelations()));
+        assertEquals(Collections.singletonList(relId("B")), diff.getRemovedRelations());
+        assertEquals(1, diff.getChangedRelations().size());
+
+        DBMDDiff.RelationChange cChange = diff.getChangedRelations().get(0);
+        assertEquals(relId("C"), cChange.getRelationId());
+        assertTrue(cChange.isFieldOrderChanged());
+        assertTrue(cChange.getAddedFields().isEmpty());
+        assertTrue(cChange.getRemovedFields().isEmpty());
+        assertTrue(cChange.getChangedFields().isEmpty());
+        assertFalse(cChange.getRelationType().isPresent());
+    }
+
+    @Test
+    public void reportsAddedRemovedAndChangedFields()
+    {
+        Field fromName = varcharField("NAME", 50);
+        Field toName = varcharField("NAME", 100);
+
+        RelMetadata fromRel =
+            new RelMetadata(relId("T"), RelType.Table, Optional.empty(),
+                            Arrays.asList(intField("ID", Optional.of(1)), fromName, intField("OLD", Optional.empty())));
+        RelMetadata toRel =
+            new RelMetadata(relId("T"), RelType.View, Optional.of("Now a view"),
+                            Arrays.asList(intField("ID", Optional.of(1)), toName, intField("NEW", Optional.empty())));
+
+        DBMDDiff diff = DBMDDiff.between(dbmd(Collections.singletonList(fromRel), Collections.emptyList()),
+                                         dbmd(Collections.singletonList(toRel), Collections.emptyList()));
+
+        assertTrue(diff.getAddedRelations().isEmpty());
+        assertTrue(diff.getRemovedRelations().isEmpty());
+        assertEquals(1, diff.getChangedRelations().size());
+
+        DBMDDiff.RelationChange change = diff.getChangedRelations().get(0);
+        assertEquals(RelType.Table, change.getRelationType().get().getFrom());
+        assertEquals(RelType.View, change.getRelationType().get().getTo());
+        assertEquals(Optional.of("Now a view"), change.getRelationComment().get().getTo());
+        assertEquals(Collections.singletonList("NEW"),
+                     change.getAddedFields().stream().map(Field::getName).collect(toList()));
+        assertEquals(Collections.singletonList("OLD"), change.getRemovedFields());
+        assertEquals(1, change.getChangedFields().size());
+        assertEquals(Optional.of(50), change.getChangedFields().get(0).getFrom().getLength());
+        assertEquals(Optional.of(100), change.getChangedFields().get(0).getTo().getLength());
+        assertFalse(change.isFieldOrderChanged());
+    }
+
+    @Test
+    public void reportsAddedAndRemovedForeignKeys()
+    {
+        List<RelMetadata> relMds = Arrays.asList(table("A", "ID", "B_ID"), table("B", "ID", "C_ID", "C2_ID"),
+                                                 table("C", "ID"));
+
+        ForeignKey aToB = foreignKey(relId("A"), relId("B"), "B_ID", "ID");
+        ForeignKey bToC = foreignKey(relId("B"), relId("C"), "C_ID", "ID");
+        ForeignKey bToCByOtherField = foreignKey(relId("B"), relId("C"), "C2_ID", "ID");
+        ForeignKey cToA = foreignKey(relId("C"), relId("A"), "ID", "ID");
+
+        DBMD from = dbmd(relMds, Arrays.asList(aToB, bToC));
+        // A foreign key with changed fields is reported as one removed and one added.
+        DBMD to = dbmd(relMds, Arrays.asList(foreignKey(relId("A"), relId("B"), "B_ID", "ID"), bToCByOtherField,
+                                             cToA));
+
+        DBMDDiff diff = DBMDDiff.between(from, to);
+
+        assertTrue(diff.getChangedRelations().isEmpty());
+        assertEquals(describe(Arrays.asList(bToCByOtherField, cToA)), describe(diff.getAddedForeignKeys()));
+        assertEquals(describe(Collections.singletonList(bToC)), describe(diff.getRemovedForeignKeys()));
+    }
+
+    @Test
+    public void comparesNamesInStoredForm()
+    {
+        // Names are compared as stored, so relations and fields whose stored names differ only in case differ.
+        DBMD from = dbmd(Arrays.asList(table("Dept", "deptId"), table("EMP", "ID")), Collections.emptyList());
+        DBMD to = dbmd(Arrays.asList(table("Dept", "deptId"), table("Emp", "ID")), Collections.emptyList());
+        DBMD toFieldCase = dbmd(Arrays.asList(table("Dept", "DEPTID"), table("EMP", "ID")), Collections.emptyList());
+
+        assertTrue(DBMDDiff.between(from, dbmd(Arrays.asList(table("EMP", "ID"), table("Dept", "deptId")),
+                                               Collections.emptyList())).isEmpty());
+
+        DBMDDiff relDiff = DBMDDiff.between(from, to);
+        assertEquals(Collections.singletonList(relId("Emp")), relIds(relDiff.getAddedRelations()));
+        assertEquals(Collections.singletonList(relId("EMP")), relDiff.getRemovedRelations());
+
+        DBMDDiff fieldDiff = DBMDDiff.between(from, toFieldCase);
+        assertEquals(1, fieldDiff.getChangedRelations().size());
+        assertEquals(Collections.singletonList("deptId"), fieldDiff.getChangedRelations().get(0).getRemovedFields());
+    }
+
+    @Test
+    public void commandLineWritesCompactJsonWithExitStatus() throws IOException
+    {
+        DBMD from = deptEmpDBMD();
+        DBMD to = dbmd(Collections.singletonList(table("DEPT", "ID")), Collections.emptyList());
+
+        Path fromFile = tempFolder.newFile("from.dbmd").toPath();
+        Files.write(fromFile, binary(from));
+        Path toFile = tempFolder.newFile("to.json").toPath();
+        Files.write(toFile, mapper.writeValueAsBytes(to));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        assertEquals(1, run(out, err, fromFile.toString(), toFile.toString()));
+        String json = new String(out.toByteArray(), UTF_8);
+        assertFalse(json.contains("\n"));
+        assertEquals(mapper.writeValueAsString(DBMDDiff.between(from, to)), json);
+
+        out.reset();
+        assertEquals(0, run(out, err, fromFile.toString(), fromFile.toString()));
+        assertEquals("{}", new String(out.toByteArray(), UTF_8));
+
+        Path outFile = tempFolder.getRoot().toPath().resolve("diff.json");
+        assertEquals(1, run(out, err, toFile.toString(), fromFile.toString(), outFile.toString()));
+        assertTrue(Files.size(outFile) > 2);
+    }
+
+    @Test
+    public void commandLineExitsWithStatus2OnError() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        Path missing = tempFolder.getRoot().toPath().resolve("missing.json");
+        assertEquals(2, run(out, err, missing.toString(), missing.toString()));
+        assertTrue(new String(err.toByteArray(), UTF_8).startsWith("Error: "));
+
+        Path corrupt = tempFolder.newFile("corrupt.dbmd").toPath();
+        Files.write(corrupt, new byte[]{ 'D', 'B', 'M', 'D', 1, (byte)0xff });
+        assertEquals(2, run(out, err, corrupt.toString(), corrupt.toString()));
+
+        assertEquals(2, run(out, err, "only-one-file"));
+        assertEquals(0, out.size());
+    }
+
+    private static int run(ByteArrayOutputStream out, ByteArrayOutputStream err, String... args)
+    {
+        return DBMDDiff.run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+
+    private static List<RelId> relIds(List<RelMetadata> relMds)
+    {
+        return relMds.stream().map(RelMetadata::getRelationId).collect(toList());
+    }
+
+    private static Field varcharField(String name, int length)
+    {
+        return
+            new Field(name, Types.VARCHAR, "CHARACTER VARYING", Optional.of(length), Optional.empty(),
+                      Optional.empty(), Optional.empty(), Optional.of(true), Optional.empty(), Optional.empty());
+    }
+}
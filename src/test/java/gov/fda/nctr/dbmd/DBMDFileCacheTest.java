@@ -0,0 +1,252 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import static java.util.stream.Collectors.toList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+
+
+public class DBMDFileCacheTest
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Connection conn;
+
+    private final DatabaseMetadataFetcher fetcher =
+        new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new H2CatalogReader());
+
+    private static final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+
+    private static final Duration LONG_TTL = Duration.ofHours(1);
+
+    @Before
+    public void createDatabase() throws SQLException
+    {
+        conn = DriverManager.getConnection("jdbc:h2:mem:file_cache_test;DB_CLOSE_DELAY=-1", "sa", "");
+
+        execute(
+            "create schema s",
+            "create table s.dept(id int primary key, name varchar(50))",
+            "create table s.emp(id int primary key, dept_id int references s.dept(id))",
+            "create table s.tmp_log(id int primary key)",
+            "create schema t",
+            "create table t.other(id int primary key)"
+        );
+    }
+
+    @After
+    public void dropDatabase() throws SQLException
+    {
+        execute("drop all objects");
+        conn.close();
+    }
+
+    @Test
+    public void reusesEntryWithinTimeToLive() throws Exception
+    {
+        DBMDFileCache cache = new DBMDFileCache(cacheDir(), LONG_TTL, Long.MAX_VALUE, false);
+
+        DBMD fetched = fetch(cache, "S", Optional.empty());
+        long callsAfterFetch = fetcher.getCatalogCallCount();
+
+        DBMD reused = fetch(cache, "S", Optional.empty());
+
+        assertEquals(callsAfterFetch, fetcher.getCatalogCallCount());
+        assertNotSame(fetched, reused);
+        assertEquals(json(fetched), json(reused));
+        assertEquals(1, entryFiles().size());
+    }
+
+    @Test
+    public void fetchesAgainAfterTimeToLive() throws Exception
+    {
+        DBMDFileCache cache = new DBMDFileCache(cacheDir(), Duration.ofMillis(1), Long.MAX_VALUE, false);
+
+        fetch(cache, "S", Optional.empty());
+        execute("create table s.added(id int primary key)");
+        Thread.sleep(5);
+
+        DBMD refetched = fetch(cache, "S", Optional.empty());
+
+        assertTrue(refetched.getRelationMetadata(new RelId(Optional.of("S"), "ADDED")).isPresent());
+        assertEquals(1, entryFiles().size());
+    }
+
+    @Test
+    public void separatesEntriesByFetchOptions() throws Exception
+    {
+        DBMDFileCache cache = new DBMDFileCache(cacheDir(), LONG_TTL, Long.MAX_VALUE, false);
+
+        DBMD s = fetch(cache, "S", Optional.empty());
+        DBMD sExcluding = fetch(cache, "S", Optional.of(Pattern.compile(".*TMP.*")));
+        DBMD t = fetch(cache, "T", Optional.empty());
+        DBMD sViewsOnly =
+            cache.fetchMetadata(fetcher, conn, Optional.of("S"), false, true, true, Optional.empty());
+
+        assertEquals(3, s.getRelationMetadatas().size());
+        assertEquals(2, sExcluding.getRelationMetadatas().size());
+        assertEquals(1, t.getRelationMetadatas().size());
+        assertEquals(0, sViewsOnly.getRelationMetadatas().size());
+        assertEquals(4, entryFiles().size());
+
+        // An equal pattern compiled separately finds the same entry.
+        long calls = fetcher.getCatalogCallCount();
+        assertEquals(json(sExcluding), json(fetch(cache, "S", Optional.of(Pattern.compile(".*TMP.*")))));
+        assertEquals(calls, fetcher.getCatalogCallCount());
+        assertEquals(4, entryFiles().size());
+
+        // Entries are also separated by the fetcher's date mapping.
+        DatabaseMetadataFetcher timestampsFetcher =
+            new DatabaseMetadataFetcher(DateMapping.DATES_AS_TIMESTAMPS, new H2CatalogReader());
+        cache.fetchMetadata(timestampsFetcher, conn, Optional.of("S"), true, true, true, Optional.empty());
+        assertTrue(timestampsFetcher.getCatalogCallCount() > 0);
+        assertEquals(5, entryFiles().size());
+    }
+
+    @Test
+    public void replacesCorruptAndTruncatedEntries() throws Exception
+    {
+        DBMDFileCache cache = new DBMDFileCache(cacheDir(), LONG_TTL, Long.MAX_VALUE, false);
+
+        DBMD fetched = fetch(cache, "S", Optional.empty());
+        Path entryFile = entryFiles().get(0);
+        byte[] entryBytes = Files.readAllBytes(entryFile);
+
+        List<byte[]> damagedEntries = Arrays.asList(
+            Arrays.copyOf(entryBytes, entryBytes.length / 2),
+            Arrays.copyOf(entryBytes, 3),
+            new byte[0],
+            corrupted(entryBytes, entryBytes.length - 10),
+            corrupted(entryBytes, 0)
+        );
+
+        for ( byte[] damaged : damagedEntries )
+        {
+            Files.write(entryFile, damaged);
+            fetcher.resetCatalogCallCount();
+
+            DBMD refetched = fetch(cache, "S", Optional.empty());
+
+            assertTrue(fetcher.getCatalogCallCount() > 0);
+            assertEquals(json(fetched), json(refetched));
+            assertEquals(Arrays.asList(entryFile), entryFiles());
+        }
+
+        // The replaced entry is complete and is reused.
+        fetcher.resetCatalogCallCount();
+        assertEquals(json(fetched), json(fetch(cache, "S", Optional.empty())));
+        assertEquals(0, fetcher.getCatalogCallCount());
+    }
+
+    @Test
+    public void validationRefreshesChangedEntries() throws Exception
+    {
+        DBMDFileCache cache = new DBMDFileCache(cacheDir(), LONG_TTL, Long.MAX_VALUE, true);
+
+        DBMD fetched = fetch(cache, "S", Optional.empty());
+
+        // An unchanged entry costs the single change markers query.
+        fetcher.resetCatalogCallCount();
+        assertEquals(json(fetched), json(fetch(cache, "S", Optional.empty())));
+        assertEquals(1, fetcher.getCatalogCallCount());
+
+        execute("alter table s.emp add column salary numeric(10,2)");
+
+        DBMD refreshed = fetch(cache, "S", Optional.empty());
+        DBMD full = fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+
+        assertEquals(json(full), json(refreshed));
+        assertEquals(json(full), json(fetch(cache, "S", Optional.empty())));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntriesBeyondMaximumSize() throws Exception
+    {
+        DBMDFileCache unbounded = new DBMDFileCache(cacheDir(), LONG_TTL, Long.MAX_VALUE, false);
+        fetch(unbounded, "S", Optional.empty());
+        long entrySize = Files.size(entryFiles().get(0));
+        unbounded.clear();
+        assertEquals(0, entryFiles().size());
+
+        // Room for the S schema entry and one of the smaller entries excluding relations, but not for all three.
+        DBMDFileCache cache = new DBMDFileCache(cacheDir(), LONG_TTL, entrySize * 2, false);
+
+        fetch(cache, "S", Optional.empty());
+        Path sEntry = entryFiles().get(0);
+        Files.setLastModifiedTime(sEntry, FileTime.fromMillis(1000));
+        fetch(cache, "S", Optional.of(Pattern.compile(".*TMP.*")));
+        fetch(cache, "S", Optional.of(Pattern.compile(".*EMP.*")));
+
+        List<Path> remaining = entryFiles();
+        assertEquals(2, remaining.size());
+        assertFalse(remaining.contains(sEntry));
+    }
+
+    private DBMD fetch(DBMDFileCache cache, String schema, Optional<Pattern> excludePat)
+        throws SQLException, IOException
+    {
+        return cache.fetchMetadata(fetcher, conn, Optional.of(schema), true, true, true, excludePat);
+    }
+
+    private Path cacheDir()
+    {
+        return tempFolder.getRoot().toPath().resolve("cache");
+    }
+
+    private List<Path> entryFiles() throws IOException
+    {
+        try ( Stream<Path> files = Files.list(cacheDir()) )
+        {
+            return files.filter(f -> f.getFileName().toString().endsWith(".dbmd")).collect(toList());
+        }
+    }
+
+    private static byte[] corrupted(byte[] bytes, int at)
+    {
+        byte[] res = bytes.clone();
+        for ( int i = at; i < Math.min(at + 8, res.length); ++i )
+            res[i] = (byte)0xff;
+        return res;
+    }
+
+    private static String json(DBMD dbmd) throws IOException
+    {
+        return mapper.writeValueAsString(dbmd);
+    }
+
+    private void execute(String... sqls) throws SQLException
+    {
+        try ( Statement stmt = conn.createStatement() )
+        {
+            for ( String sql : sqls )
+                stmt.execute(sql);
+        }
+    }
+}
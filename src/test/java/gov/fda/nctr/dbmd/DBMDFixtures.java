@@ -0,0 +1,125 @@
+package gov.fda.nctr.dbmd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import static java.util.stream.Collectors.joining;
+
+import gov.fda.nctr.dbmd.RelMetadata.RelType;
+
+
+/// DBMDs built directly for tests which do not need a database, and helpers for serializing them.
+final class DBMDFixtures
+{
+    private DBMDFixtures() {}
+
+    /// Tables S.DEPT and S.EMP, with a foreign key from EMP to DEPT.
+    static DBMD deptEmpDBMD()
+    {
+        RelId deptId = new RelId(Optional.of("S"), "DEPT");
+        RelId empId = new RelId(Optional.of("S"), "EMP");
+
+        RelMetadata dept =
+            new RelMetadata(deptId, RelType.Table, Optional.of("Departments"), Arrays.asList(
+                intField("ID", Optional.of(1)),
+                new Field("NAME", Types.VARCHAR, "CHARACTER VARYING", Optional.of(50), Optional.empty(),
+                          Optional.empty(), Optional.empty(), Optional.of(true), Optional.empty(),
+                          Optional.of("Department name"))
+            ));
+
+        RelMetadata emp =
+            new RelMetadata(empId, RelType.Table, Optional.empty(), Arrays.asList(
+                intField("ID", Optional.of(1)),
+                intField("DEPT_ID", Optional.empty())
+            ));
+
+        ForeignKey fk = foreignKey(empId, deptId, "DEPT_ID", "ID");
+
+        return dbmd(Arrays.asList(dept, emp), Collections.singletonList(fk));
+    }
+
+    /// Tables S.REL_0 through S.REL_<n-1>, each with a foreign key from NEXT_ID to the next table, and with a foreign
+    /// key from ROOT_ID to REL_0 from every tenth table.
+    static DBMD chainDBMD(int relCount)
+    {
+        List<RelMetadata> relMds = new ArrayList<>();
+        List<ForeignKey> fks = new ArrayList<>();
+
+        for ( int i = 0; i < relCount; ++i )
+        {
+            RelId relId = relId("REL_" + i);
+
+            relMds.add(new RelMetadata(relId, RelType.Table, Optional.empty(), Arrays.asList(
+                intField("ID", Optional.of(1)),
+                intField("NEXT_ID", Optional.empty()),
+                intField("ROOT_ID", Optional.empty())
+            )));
+
+            if ( i + 1 < relCount )
+                fks.add(foreignKey(relId, relId("REL_" + (i + 1)), "NEXT_ID", "ID"));
+            if ( i % 10 == 9 )
+                fks.add(foreignKey(relId, relId("REL_0"), "ROOT_ID", "ID"));
+        }
+
+        return dbmd(relMds, fks);
+    }
+
+    static RelId relId(String name)
+    {
+        return new RelId(Optional.of("S"), name);
+    }
+
+    static DBMD dbmd(List<RelMetadata> relMds, List<ForeignKey> fks)
+    {
+        return new DBMD(Optional.of("S"), relMds, fks, CaseSensitivity.INSENSITIVE_STORED_UPPER, "H2", "2.2.224", 2, 2);
+    }
+
+    /// Make a table with integer fields of the given names, the first of which is the primary key.
+    static RelMetadata table(String name, String... fieldNames)
+    {
+        List<Field> fields = new ArrayList<>();
+        for ( int i = 0; i < fieldNames.length; ++i )
+            fields.add(intField(fieldNames[i], i == 0 ? Optional.of(1) : Optional.empty()));
+
+        return new RelMetadata(relId(name), RelType.Table, Optional.empty(), fields);
+    }
+
+    static Field intField(String name, Optional<Integer> pkPartNum)
+    {
+        return
+            new Field(name, Types.INTEGER, "INTEGER", Optional.empty(), Optional.of(32), Optional.of(0),
+                      Optional.of(2), Optional.of(!pkPartNum.isPresent()), pkPartNum, Optional.empty());
+    }
+
+    /// Make a single-component foreign key.
+    static ForeignKey foreignKey(RelId srcRelId, RelId tgtRelId, String fkFieldName, String pkFieldName)
+    {
+        return
+            new ForeignKey(srcRelId, tgtRelId,
+                           Collections.singletonList(new ForeignKey.Component(fkFieldName, pkFieldName)));
+    }
+
+    /// Describe foreign keys by their relations and fields, for comparing lists of foreign keys.
+    static String describe(List<ForeignKey> fks)
+    {
+        return
+            fks.stream()
+            .map(fk -> fk.getSourceRelationId() + "->" + fk.getTargetRelationId() + "(" +
+                       fk.getForeignKeyComponents().stream()
+                       .map(c -> c.getForeignKeyFieldName() + "=" + c.getPrimaryKeyFieldName())
+                       .collect(joining(",")) + ")")
+            .collect(joining(";", "[", "]"));
+    }
+
+    static byte[] binary(DBMD dbmd) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        dbmd.writeBinary(bos);
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,172 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import gov.fda.nctr.dbmd.ForeignKeyGraph.JoinPath;
+import static gov.fda.nctr.dbmd.DBMDFixtures.foreignKey;
+import static gov.fda.nctr.dbmd.DBMDFixtures.relId;
+
+
+public class ForeignKeyGraphTest
+{
+    private static final RelId A = relId("A"), B = relId("B"), C = relId("C"), D = relId("D");
+    private static final RelId E = relId("E"), F = relId("F"), G = relId("G"), H = relId("H");
+
+    // A square A -> B -> C <- D <- A with a diagonal B -> D, a self-referencing C, two foreign keys from E to F, and
+    // a separate G -> H.
+    private static final ForeignKeyGraph graph =
+        new ForeignKeyGraph(Arrays.asList(
+            foreignKey(A, B, "B_ID", "ID"),
+            foreignKey(B, C, "C_ID", "ID"),
+            foreignKey(A, D, "D_ID", "ID"),
+            foreignKey(D, C, "C_ID", "ID"),
+            foreignKey(B, D, "D_ID", "ID"),
+            foreignKey(C, C, "PARENT_ID", "ID"),
+            foreignKey(E, F, "F1_ID", "ID"),
+            foreignKey(E, F, "F2_ID", "ID"),
+            foreignKey(G, H, "H_ID", "ID")
+        ));
+
+    @Test
+    public void findsShortestPathsInEitherDirection()
+    {
+        assertEquals(set("S.A -> S.B -> S.C", "S.A -> S.D -> S.C"), describe(graph.getShortestPaths(A, C)));
+        assertEquals(set("S.C <- S.B <- S.A", "S.C <- S.D <- S.A"), describe(graph.getShortestPaths(C, A)));
+
+        // Steps may go with or against the foreign keys within one path.
+        assertEquals(set("S.B -> S.D"), describe(graph.getShortestPaths(B, D)));
+        assertEquals(set("S.D <- S.B"), describe(graph.getShortestPaths(D, B)));
+
+        JoinPath path = graph.getShortestPath(A, C).get();
+        assertEquals(2, path.getSteps().size());
+        assertEquals(A, path.getFromRelationId());
+        assertEquals(C, path.getToRelationId());
+        assertTrue(graph.getShortestPaths(A, C).stream().anyMatch(p -> p.toString().equals(path.toString())));
+    }
+
+    @Test
+    public void parallelForeignKeysGiveTiedPaths()
+    {
+        List<JoinPath> paths = graph.getShortestPaths(E, F);
+
+        assertEquals(2, paths.size());
+        assertNotSame(paths.get(0).getSteps().get(0).getForeignKey(), paths.get(1).getSteps().get(0).getForeignKey());
+        assertEquals(set("e.F1_ID = f.ID", "e.F2_ID = f.ID"),
+                     paths.stream().map(p -> p.asEquation(Arrays.asList("e", "f"))).collect(toSet()));
+
+        List<JoinPath> reversePaths = graph.getShortestPaths(F, E);
+        assertEquals(set("f.ID = e.F1_ID", "f.ID = e.F2_ID"),
+                     reversePaths.stream().map(p -> p.asEquation(Arrays.asList("f", "e"))).collect(toSet()));
+
+        assertEquals(2, graph.getPaths(E, F, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void selfReferencingForeignKeysAreNotTraversed()
+    {
+        assertEquals(set("S.C <- S.B"), describe(graph.getShortestPaths(C, B)));
+        assertEquals(set("S.C <- S.D"), describe(graph.getShortestPaths(C, D)));
+
+        List<JoinPath> paths = graph.getPaths(C, A, Integer.MAX_VALUE);
+        assertEquals(4, paths.size());
+        for ( JoinPath path : paths )
+            assertFalse(path.getSteps().stream().anyMatch(step -> step.getFromRelationId().equals(C) &&
+                                                                  step.getToRelationId().equals(C)));
+    }
+
+    @Test
+    public void unconnectedRelationsHaveNoPaths()
+    {
+        assertFalse(graph.getShortestPath(A, G).isPresent());
+        assertTrue(graph.getShortestPaths(H, E).isEmpty());
+        assertTrue(graph.getPaths(A, H, Integer.MAX_VALUE).isEmpty());
+
+        // Relations without foreign keys are not in the graph.
+        RelId other = relId("OTHER");
+        assertFalse(graph.getRelationIds().contains(other));
+        assertFalse(graph.getShortestPath(A, other).isPresent());
+        assertTrue(graph.getPaths(other, A, 3).isEmpty());
+    }
+
+    @Test
+    public void pathFromRelationToItselfHasNoSteps()
+    {
+        for ( RelId relId : Arrays.asList(A, C, relId("OTHER")) )
+        {
+            List<JoinPath> paths = graph.getShortestPaths(relId, relId);
+            assertEquals(1, paths.size());
+            assertTrue(paths.get(0).getSteps().isEmpty());
+            assertEquals(relId, paths.get(0).getToRelationId());
+            assertEquals(Collections.singletonList(relId), paths.get(0).getRelationIds());
+            assertEquals("", paths.get(0).asEquation(Collections.singletonList("x")));
+
+            assertTrue(graph.getShortestPath(relId, relId).get().getSteps().isEmpty());
+            assertEquals(describe(paths), describe(graph.getPaths(relId, relId, 0)));
+        }
+    }
+
+    @Test
+    public void getPathsIsBoundedByStepCount()
+    {
+        assertTrue(graph.getPaths(A, C, 0).isEmpty());
+        assertTrue(graph.getPaths(A, C, 1).isEmpty());
+        assertEquals(set("S.A -> S.B -> S.C", "S.A -> S.D -> S.C"), describe(graph.getPaths(A, C, 2)));
+
+        Set<String> allPaths =
+            set("S.A -> S.B -> S.C", "S.A -> S.D -> S.C", "S.A -> S.B -> S.D -> S.C", "S.A -> S.D <- S.B -> S.C");
+        assertEquals(allPaths, describe(graph.getPaths(A, C, 3)));
+        assertEquals(allPaths, describe(graph.getPaths(A, C, 100)));
+
+        // Paths come in order of increasing length, and an unbounded step count does not size anything by it.
+        List<JoinPath> paths = graph.getPaths(A, C, Integer.MAX_VALUE);
+        assertEquals(allPaths, describe(paths));
+        assertEquals(Arrays.asList(2, 2, 3, 3), paths.stream().map(p -> p.getSteps().size()).collect(toList()));
+    }
+
+    @Test
+    public void pathEquationsPutEachStepsFromRelationOnTheLeft()
+    {
+        JoinPath forward = graph.getPaths(A, C, 3).stream()
+            .filter(p -> p.toString().equals("S.A -> S.D <- S.B -> S.C")).findFirst().get();
+
+        assertEquals(Arrays.asList(A, D, B, C), forward.getRelationIds());
+        assertEquals(Arrays.asList("a.D_ID = d.ID", "d.ID = b.D_ID", "b.C_ID = c.ID"),
+                     forward.asEquations(Arrays.asList("a", "d", "b", "c")));
+        assertEquals("a.D_ID = d.ID and d.ID = b.D_ID and b.C_ID = c.ID",
+                     forward.asEquation(Arrays.asList("a", "d", "b", "c")));
+
+        JoinPath reverse = graph.getShortestPaths(C, A).stream()
+            .filter(p -> p.toString().equals("S.C <- S.B <- S.A")).findFirst().get();
+        assertEquals("c.ID = b.C_ID and b.ID = a.B_ID", reverse.asEquation(Arrays.asList("c", "b", "a")));
+
+        try
+        {
+            reverse.asEquation(Arrays.asList("c", "b"));
+            fail("Expected the alias count to be checked.");
+        }
+        catch (IllegalArgumentException expected) {}
+    }
+
+    private static Set<String> describe(List<JoinPath> paths)
+    {
+        return paths.stream().map(JoinPath::toString).collect(toSet());
+    }
+
+    private static Set<String> set(String... strs)
+    {
+        return new HashSet<>(Arrays.asList(strs));
+    }
+}
@@ -0,0 +1,180 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+import static gov.fda.nctr.dbmd.DBMDFixtures.describe;
+
+
+public class MultiSchemaFetchTest
+{
+    private static JdbcDataSource dataSource;
+
+    // Held open so the in-memory database lives for the duration of the tests.
+    private static Connection conn;
+
+    private final DatabaseMetadataFetcher fetcher =
+        new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new H2CatalogReader());
+
+    private static final ObjectMapper mapper =
+        new ObjectMapper().registerModule(new Jdk8Module()).enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final RelId A_DEPT = new RelId(Optional.of("A"), "DEPT");
+    private static final RelId A_EMP = new RelId(Optional.of("A"), "EMP");
+    private static final RelId B_OFFICE = new RelId(Optional.of("B"), "OFFICE");
+    private static final RelId B_DESK = new RelId(Optional.of("B"), "DESK");
+    private static final RelId C_OTHER = new RelId(Optional.of("C"), "OTHER");
+
+    @BeforeClass
+    public static void createDatabase() throws SQLException
+    {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:multi_schema_test;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+
+        conn = dataSource.getConnection();
+
+        try ( Statement stmt = conn.createStatement() )
+        {
+            for ( String sql : Arrays.asList(
+                "create schema a",
+                "create schema b",
+                "create schema c",
+                "create table b.office(id int primary key, name varchar(30))",
+                "create table a.dept(id int primary key, name varchar(30) not null)",
+                "create table a.emp(id int primary key, dept_id int references a.dept(id), " +
+                    "office_id int references b.office(id))",
+                "create table b.desk(id int primary key, emp_id int references a.emp(id))",
+                "create table b.tmp_desk(id int primary key)",
+                "create view b.desk_view as select id, emp_id from b.desk",
+                "create table c.other(id int primary key, dept_id int references a.dept(id))"
+            ))
+                stmt.execute(sql);
+        }
+    }
+
+    @AfterClass
+    public static void dropDatabase() throws SQLException
+    {
+        try ( Statement stmt = conn.createStatement() )
+        {
+            stmt.execute("drop all objects");
+        }
+        conn.close();
+    }
+
+    @Test
+    public void multiSchemaFetchMatchesMergedSingleSchemaFetches() throws Exception
+    {
+        List<Optional<Pattern>> excludePats = Arrays.asList(Optional.empty(), Optional.of(Pattern.compile(".*TMP.*")));
+
+        for ( Optional<Pattern> excludePat : excludePats )
+        {
+            DBMD multi =
+                fetcher.fetchMetadata(conn.getMetaData(), Arrays.asList("A", "B"), true, true, true, excludePat);
+
+            DBMD merged =
+                DBMD.merge(Arrays.asList(
+                    fetcher.fetchMetadata(conn, Optional.of("A"), true, true, true, excludePat),
+                    fetcher.fetchMetadata(conn, Optional.of("B"), true, true, true, excludePat)
+                ));
+
+            assertEquals(mapper.writeValueAsString(merged), mapper.writeValueAsString(multi));
+            assertEquals(excludePat.isPresent() ? 5 : 6, multi.getRelationMetadatas().size());
+            assertFalse(multi.getSchemaName().isPresent());
+        }
+
+        // Tables only and views only.
+        for ( boolean tables : Arrays.asList(true, false) )
+        {
+            DBMD multi =
+                fetcher.fetchMetadata(conn.getMetaData(), Arrays.asList("A", "B"), tables, !tables, true,
+                                      Optional.empty());
+            DBMD merged =
+                DBMD.merge(Arrays.asList(
+                    fetcher.fetchMetadata(conn, Optional.of("A"), tables, !tables, true, Optional.empty()),
+                    fetcher.fetchMetadata(conn, Optional.of("B"), tables, !tables, true, Optional.empty())
+                ));
+
+            assertEquals(mapper.writeValueAsString(merged), mapper.writeValueAsString(multi));
+        }
+    }
+
+    @Test
+    public void multiSchemaFetchKeepsForeignKeysBetweenSchemas() throws Exception
+    {
+        DBMD multi =
+            fetcher.fetchMetadata(conn.getMetaData(), Arrays.asList("a", "b"), true, true, true, Optional.empty());
+
+        assertEquals("[A.EMP->B.OFFICE(OFFICE_ID=ID)]",
+                     describe(multi.getForeignKeysFromTo(Optional.of(A_EMP), Optional.of(B_OFFICE))));
+        assertEquals("[B.DESK->A.EMP(EMP_ID=ID)]",
+                     describe(multi.getForeignKeysFromTo(Optional.of(B_DESK), Optional.of(A_EMP))));
+        assertEquals(3, multi.getForeignKeys().size());
+
+        // Foreign keys from schemas not fetched are left out.
+        assertTrue(multi.getForeignKeysFromTo(Optional.of(C_OTHER), Optional.empty()).isEmpty());
+
+        // Relations of both schemas are registered, so foreign keys between them are traversed and ordered.
+        assertEquals("B.DESK -> A.EMP -> B.OFFICE",
+                     multi.getForeignKeyGraph().getShortestPath(B_DESK, B_OFFICE).get().toString());
+        List<RelId> loadOrder = multi.getRelationDependencies().getLoadOrder();
+        assertTrue(loadOrder.indexOf(B_OFFICE) < loadOrder.indexOf(A_EMP));
+        assertTrue(loadOrder.indexOf(A_DEPT) < loadOrder.indexOf(A_EMP));
+        assertTrue(loadOrder.indexOf(A_EMP) < loadOrder.indexOf(B_DESK));
+
+        // A single schema given as a list is the schema of the result.
+        DBMD single = fetcher.fetchMetadata(conn.getMetaData(), Arrays.asList("B"), true, true, true, Optional.empty());
+        assertEquals(Optional.of("B"), single.getSchemaName());
+        DBMD schemaB = fetcher.fetchMetadata(conn, Optional.of("B"), true, true, true, Optional.empty());
+        assertEquals(mapper.writeValueAsString(schemaB), mapper.writeValueAsString(single));
+    }
+
+    @Test
+    public void parallelPerSchemaFetchesMatchSeparateFetches() throws Exception
+    {
+        List<String> schemas = Arrays.asList("C", "A", "B");
+
+        Map<String, DBMD> bySchema = fetcher.fetchMetadatas(dataSource, 2, schemas, true, true, true, Optional.empty());
+
+        assertEquals(schemas, new ArrayList<>(bySchema.keySet()));
+        for ( String schema : schemas )
+            assertEquals(mapper.writeValueAsString(fetcher.fetchMetadata(conn, Optional.of(schema), true, true, true,
+                                                                         Optional.empty())),
+                         mapper.writeValueAsString(bySchema.get(schema)));
+
+        DBMD multi = fetcher.fetchMetadata(conn.getMetaData(), schemas, true, true, true, Optional.empty());
+        DBMD merged = DBMD.merge(new ArrayList<>(bySchema.values()));
+
+        assertEquals(describe(sorted(multi.getForeignKeys())), describe(sorted(merged.getForeignKeys())));
+        assertEquals(multi.getRelationIds().size(), merged.getRelationIds().size());
+        assertTrue(merged.getRelationIds().containsAll(multi.getRelationIds()));
+    }
+
+    private static List<ForeignKey> sorted(List<ForeignKey> fks)
+    {
+        List<ForeignKey> res = new ArrayList<>(fks);
+        res.sort((fk1, fk2) -> describe(Arrays.asList(fk1)).compareTo(describe(Arrays.asList(fk2))));
+        return res;
+    }
+}
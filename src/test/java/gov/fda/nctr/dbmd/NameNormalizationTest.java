@@ -0,0 +1,164 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import static gov.fda.nctr.dbmd.CaseSensitivity.*;
+
+
+/// Compares DBMD's name normalization and quoting with the regular expression based implementations they replaced.
+public class NameNormalizationTest
+{
+    private static final List<String> NAMES = Arrays.asList(
+        "", "a", "A", "_", "abc", "ABC", "a_b", "A_B", "_x_", "Abc", "aBC", "abC", "mixed_Case", "MIXED_case",
+        "a1", "A1", "1", "123", "t2_x", "T2_X", "a$", "A$", "$", "sys$tab", "SYS$TAB", "a b", "a.b", "ä", "Ä",
+        "\"", "\"\"", "\"a\"", "\"A\"", "\"Abc\"", "\"a_b\"", "\"A_B\"", "\"a1\"", "\"A1\"", "\"$\"", "\"a\"b\"",
+        "\"a", "a\"", "\"\"\"", "\" \""
+    );
+
+    @Test
+    public void normalizeNameMatchesRegexImplementation()
+    {
+        for ( CaseSensitivity caseSens : CaseSensitivity.values() )
+        {
+            DBMD dbmd = dbmd(caseSens);
+
+            for ( String name : names() )
+            {
+                String desc = caseSens + " [" + name + "]";
+
+                // A lone double quote made the regex implementation fail, and is now left as is.
+                String expected = name.equals("\"") ? name : regexNormalizeName(name, caseSens);
+
+                assertEquals(desc, expected, dbmd.normalizeName(name));
+                // Again, when the result may come from the memo.
+                assertEquals(desc, expected, dbmd.normalizeName(name));
+            }
+        }
+    }
+
+    @Test
+    public void quoteIfNeededMatchesRegexImplementation()
+    {
+        for ( CaseSensitivity caseSens : CaseSensitivity.values() )
+        {
+            DBMD dbmd = dbmd(caseSens);
+
+            for ( String name : names() )
+            {
+                String desc = caseSens + " [" + name + "]";
+                String expected = regexQuoteIfNeeded(name, caseSens);
+
+                assertEquals(desc, expected, dbmd.quoteIfNeeded(name));
+                assertEquals(desc, expected, dbmd.quoteIfNeeded(name));
+            }
+        }
+    }
+
+    @Test
+    public void expectedResultsByCaseSensitivity()
+    {
+        // name, then normalized and quoted forms for stored lower, stored upper, stored mixed and sensitive.
+        String[][] table = {
+            { "abc",     "abc",  "abc",       "ABC",  "\"abc\"",     "abc",     "\"abc\"",     "abc",     "\"abc\"" },
+            { "ABC",     "abc",  "\"ABC\"",   "ABC",  "ABC",         "ABC",     "\"ABC\"",     "ABC",     "\"ABC\"" },
+            { "Ab_1",    "ab_1", "\"Ab_1\"",  "AB_1", "\"Ab_1\"",    "Ab_1",    "\"Ab_1\"",    "Ab_1",    "\"Ab_1\"" },
+            { "A$",      "a$",   "\"A$\"",    "A$",   "\"A$\"",      "A$",      "\"A$\"",      "A$",      "\"A$\"" },
+            { "\"abc\"", "abc",  "\"abc\"",   "\"abc\"", "\"abc\"",  "\"abc\"", "\"abc\"",     "\"abc\"", "\"abc\"" },
+            { "\"ABC\"", "\"ABC\"", "\"ABC\"", "ABC", "\"ABC\"",     "\"ABC\"", "\"ABC\"",     "\"ABC\"", "\"ABC\"" },
+            { "",        "",     "\"\"",      "",     "\"\"",        "",        "\"\"",        "",        "\"\"" },
+        };
+
+        List<CaseSensitivity> caseSensitivities =
+            Arrays.asList(INSENSITIVE_STORED_LOWER, INSENSITIVE_STORED_UPPER, INSENSITIVE_STORED_MIXED, SENSITIVE);
+
+        for ( String[] row : table )
+        {
+            for ( int c = 0; c < caseSensitivities.size(); ++c )
+            {
+                DBMD dbmd = dbmd(caseSensitivities.get(c));
+                String desc = caseSensitivities.get(c) + " [" + row[0] + "]";
+
+                assertEquals(desc, row[1 + 2 * c], dbmd.normalizeName(row[0]));
+                assertEquals(desc, row[2 + 2 * c], dbmd.quoteIfNeeded(row[0]));
+            }
+        }
+    }
+
+    @Test
+    public void namesInStoredFormAreReturnedAsGiven()
+    {
+        String lower = new String("abc_def"), upper = new String("ABC_DEF");
+
+        assertSame(lower, dbmd(INSENSITIVE_STORED_LOWER).normalizeName(lower));
+        assertSame(lower, dbmd(INSENSITIVE_STORED_LOWER).quoteIfNeeded(lower));
+        assertSame(upper, dbmd(INSENSITIVE_STORED_UPPER).normalizeName(upper));
+        assertSame(upper, dbmd(INSENSITIVE_STORED_UPPER).quoteIfNeeded(upper));
+        assertSame(lower, dbmd(SENSITIVE).normalizeName(lower));
+    }
+
+    /// The fixed names, followed by enough generated names to overfill the memos, so that names evict each other.
+    private static List<String> names()
+    {
+        List<String> names = new ArrayList<>(NAMES);
+
+        String chars = "aZ_9$\"";
+        for ( int i = 0; i < 5000; ++i )
+        {
+            StringBuilder sb = new StringBuilder();
+            for ( int n = i; n > 0; n /= chars.length() )
+                sb.append(chars.charAt(n % chars.length()));
+            names.add(sb.toString());
+        }
+
+        return names;
+    }
+
+    private static DBMD dbmd(CaseSensitivity caseSens)
+    {
+        return
+            new DBMD(Optional.of("S"), Collections.emptyList(), Collections.emptyList(), caseSens, "H2", "2.2.224", 2, 2);
+    }
+
+    private static final Predicate<String> lc_ = Pattern.compile("^[a-z_]+$").asPredicate();
+    private static final Predicate<String> uc_ = Pattern.compile("^[A-Z_]+$").asPredicate();
+
+    private static String regexQuoteIfNeeded(String id, CaseSensitivity caseSens)
+    {
+        if ( id.startsWith("\"") && id.endsWith("\"") )
+            return id;
+        if ( caseSens == INSENSITIVE_STORED_LOWER && lc_.test(id) )
+            return id;
+        if ( caseSens == INSENSITIVE_STORED_UPPER && uc_.test(id) )
+            return id;
+        return "\"" + id + "\"";
+    }
+
+    private static String regexNormalizeName(String id, CaseSensitivity caseSens)
+    {
+        if ( id.startsWith("\"") && id.endsWith("\"") )
+        {
+            String unquotedId = id.substring(1, id.length()-1);
+            if ( caseSens == INSENSITIVE_STORED_LOWER && lc_.test(unquotedId) )
+                return unquotedId;
+            if ( caseSens == INSENSITIVE_STORED_UPPER && uc_.test(unquotedId) )
+                return unquotedId;
+            return id;
+        }
+        else if ( caseSens == INSENSITIVE_STORED_LOWER )
+            return id.toLowerCase();
+        else if ( caseSens == INSENSITIVE_STORED_UPPER )
+            return id.toUpperCase();
+        else
+            return id;
+    }
+}
@@ -0,0 +1,113 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+import static gov.fda.nctr.dbmd.DBMDFixtures.binary;
+
+
+public class ParallelFetchTest
+{
+    private static JdbcDataSource dataSource;
+
+    // Held open so the in-memory database lives for the duration of the tests.
+    private static Connection keepAliveConn;
+
+    private static final ObjectMapper mapper =
+        new ObjectMapper().registerModule(new Jdk8Module()).enable(SerializationFeature.INDENT_OUTPUT);
+
+    @BeforeClass
+    public static void createDatabase() throws SQLException
+    {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:parallel_fetch_test;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+
+        keepAliveConn = dataSource.getConnection();
+
+        try ( Statement stmt = keepAliveConn.createStatement() )
+        {
+            stmt.execute("create schema s");
+            stmt.execute("create table s.dept(id int primary key, name varchar(50) not null)");
+            stmt.execute("create table s.emp(id int primary key, dept_id int references s.dept(id), " +
+                         "salary numeric(10,2), hired date)");
+            stmt.execute("create table s.proj(code varchar(10), yr int, title varchar(100), primary key(code, yr))");
+            stmt.execute("create table s.assignment(emp_id int references s.emp(id), code varchar(10), yr int, " +
+                         "primary key(emp_id, code, yr), foreign key(code, yr) references s.proj(code, yr))");
+            stmt.execute("create table s.emp_log(id bigint primary key, emp_id int references s.emp(id), note clob)");
+            stmt.execute("create table s.excluded_tmp(id int primary key, emp_id int references s.emp(id))");
+            for ( int i = 0; i < 20; ++i )
+                stmt.execute("create table s.t" + i + "(id int primary key, dept_id int references s.dept(id), " +
+                             "v varchar(" + (i + 1) + "))");
+            stmt.execute("create view s.emp_names as select e.id, d.name from s.emp e join s.dept d on d.id = e.dept_id");
+        }
+    }
+
+    @AfterClass
+    public static void dropDatabase() throws SQLException
+    {
+        try ( Statement stmt = keepAliveConn.createStatement() )
+        {
+            stmt.execute("drop all objects");
+        }
+        keepAliveConn.close();
+    }
+
+    @Test
+    public void parallelFetchIsByteIdenticalToSerialFetch() throws Exception
+    {
+        DatabaseMetadataFetcher fetcher = new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED,
+                                                                      new H2CatalogReader());
+        Optional<Pattern> excludePat = Optional.of(Pattern.compile(".*EXCLUDED.*"));
+
+        DBMD serial;
+        try ( Connection conn = dataSource.getConnection() )
+        {
+            serial = fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, excludePat);
+        }
+
+        for ( int parallelism : new int[]{ 1, 3, 8 } )
+        {
+            DBMD parallel = fetcher.fetchMetadata(dataSource, parallelism, Optional.of("S"), true, true, true, excludePat);
+
+            assertArrayEquals("JSON with parallelism " + parallelism,
+                              mapper.writeValueAsBytes(serial), mapper.writeValueAsBytes(parallel));
+            assertArrayEquals("binary with parallelism " + parallelism,
+                              binary(serial), binary(parallel));
+        }
+
+        assertEquals(26, serial.getRelationMetadatas().size());
+        assertEquals(24, serial.getForeignKeys().size());
+    }
+
+    @Test
+    public void parallelFetchWithJdbcReaderMatchesSerialFetch() throws Exception
+    {
+        DatabaseMetadataFetcher fetcher = new DatabaseMetadataFetcher();
+
+        DBMD serial;
+        try ( Connection conn = dataSource.getConnection() )
+        {
+            serial = fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+        }
+
+        DBMD parallel = fetcher.fetchMetadata(dataSource, 4, Optional.of("S"), true, true, true, Optional.empty());
+
+        assertArrayEquals(mapper.writeValueAsBytes(serial), mapper.writeValueAsBytes(parallel));
+    }
+}
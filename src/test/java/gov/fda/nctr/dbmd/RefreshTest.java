@@ -0,0 +1,133 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+
+
+public class RefreshTest
+{
+    private Connection conn;
+
+    private final DatabaseMetadataFetcher fetcher =
+        new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, new H2CatalogReader());
+
+    private static final ObjectMapper mapper =
+        new ObjectMapper().registerModule(new Jdk8Module()).enable(SerializationFeature.INDENT_OUTPUT);
+
+    @Before
+    public void createDatabase() throws SQLException
+    {
+        conn = DriverManager.getConnection("jdbc:h2:mem:refresh_test;DB_CLOSE_DELAY=-1", "sa", "");
+
+        execute(
+            "create schema s",
+            "create table s.parent(id int primary key, name varchar(20))",
+            "create table s.child(id int primary key, pid int references s.parent(id))",
+            "create table s.other(id int primary key)"
+        );
+    }
+
+    @After
+    public void dropDatabase() throws SQLException
+    {
+        execute("drop all objects");
+        conn.close();
+    }
+
+    @Test
+    public void refreshKeepsForeignKeyFromUnchangedChildToRenamedParent() throws Exception
+    {
+        assertRefreshMatchesFullFetchAfter("alter table s.parent rename to p2");
+    }
+
+    @Test
+    public void refreshUpdatesForeignKeyFromUnchangedChildToParentWithRenamedKey() throws Exception
+    {
+        assertRefreshMatchesFullFetchAfter("alter table s.parent alter column id rename to parent_id");
+    }
+
+    @Test
+    public void refreshDropsForeignKeyToDroppedParent() throws Exception
+    {
+        assertRefreshMatchesFullFetchAfter("alter table s.child drop constraint " + childFkName(),
+                                           "drop table s.parent");
+    }
+
+    private void assertRefreshMatchesFullFetchAfter(String... ddl) throws Exception
+    {
+        DBMD previous = fetchFull();
+        Map<RelId,String> markers = fetcher.fetchRelationChangeMarkers(conn.getMetaData(), Optional.of("S")).get();
+
+        execute(ddl);
+
+        List<Long> builtRelCounts = new ArrayList<>();
+        fetcher.setFetchListener(new FetchListener() {
+            public void phase(Phase phase, long elapsedNanos, long count)
+            {
+                if ( phase == Phase.BUILD )
+                    builtRelCounts.add(count);
+            }
+        });
+
+        MetadataRefresh refresh =
+            fetcher.refresh(previous, Optional.of(markers), conn.getMetaData(), true, true, true, Optional.empty());
+
+        fetcher.setFetchListener(null);
+
+        assertTrue(refresh.isIncremental());
+        // The construction of the refreshed metadata is reported as for a full fetch.
+        assertEquals(Collections.singletonList((long)refresh.getMetadata().getRelationMetadatas().size()),
+                     builtRelCounts);
+        assertEquals(mapper.writeValueAsString(fetchFull()), mapper.writeValueAsString(refresh.getMetadata()));
+
+        RelId otherRelId = new RelId(Optional.of("S"), "OTHER");
+        assertTrue(refresh.getMetadata().getRelationMetadata(otherRelId).get() ==
+                   previous.getRelationMetadata(otherRelId).get());
+    }
+
+    private DBMD fetchFull() throws SQLException
+    {
+        return fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+    }
+
+    private String childFkName() throws SQLException
+    {
+        try ( Statement stmt = conn.createStatement();
+              ResultSet rs = stmt.executeQuery(
+                  "select constraint_name from information_schema.table_constraints " +
+                  "where table_schema = 'S' and table_name = 'CHILD' and constraint_type = 'FOREIGN KEY'") )
+        {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private void execute(String... sqls) throws SQLException
+    {
+        try ( Statement stmt = conn.createStatement() )
+        {
+            for ( String sql : sqls )
+                stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import gov.fda.nctr.dbmd.RelMetadata.RelType;
+import static gov.fda.nctr.dbmd.DBMDFixtures.*;
+
+
+public class RelMetadataTest
+{
+    @Test
+    public void findsFieldsAndMissesAbsentNames()
+    {
+        RelMetadata relMd = table("T", "ID", "NAME", "DEPT_ID");
+
+        for ( Field f : relMd.getFields() )
+            assertSame(f.getName(), relMd.getField(f.getName()).get().getName());
+
+        assertFalse(relMd.getField("MISSING").isPresent());
+        assertFalse(relMd.getField("").isPresent());
+        assertFalse(relMd.getField("ID ").isPresent());
+    }
+
+    @Test
+    public void findsFieldsWhoseNamesCollide()
+    {
+        // Names built from "Aa" and "BB" all have the same hash code, so they start probing at the same slot.
+        List<String> colliding = Arrays.asList("AaAaAa", "AaAaBB", "AaBBAa", "AaBBBB", "BBAaAa", "BBAaBB", "BBBBAa");
+        assertEquals(1, colliding.stream().map(String::hashCode).distinct().count());
+
+        // Interleave the colliding names with many others, so probe runs meet and wrap around the table's end.
+        List<String> names = new ArrayList<>();
+        for ( int i = 0; i < 1000; ++i )
+        {
+            if ( i % 100 == 50 && i / 100 < colliding.size() )
+                names.add(colliding.get(i / 100));
+            names.add("F" + i);
+        }
+
+        RelMetadata relMd = table("T", names.toArray(new String[0]));
+
+        for ( int i = 0; i < names.size(); ++i )
+            assertEquals(names.get(i), relMd.getField(names.get(i)).get().getName());
+
+        // A miss which shares the colliding names' hash code probes past all of them.
+        assertFalse(relMd.getField("BBBBBB").isPresent());
+        for ( int i = 1000; i < 2000; ++i )
+            assertFalse(relMd.getField("F" + i).isPresent());
+    }
+
+    @Test
+    public void keepsFirstFieldHavingDuplicatedName()
+    {
+        Field first = intField("X", Optional.empty());
+        Field second = intField("X", Optional.of(1));
+        RelMetadata relMd =
+            new RelMetadata(relId("T"), RelType.View, Optional.empty(), Arrays.asList(first, second));
+
+        assertFalse(relMd.getField("X").get().getPrimaryKeyPartNumber().isPresent());
+        assertEquals(Collections.singletonList("X"), relMd.getPrimaryKeyFieldNames());
+    }
+
+    @Test
+    public void relationWithoutFieldsHasEmptyIndex()
+    {
+        RelMetadata relMd = new RelMetadata(relId("T"), RelType.View, Optional.empty(), Collections.emptyList());
+
+        assertFalse(relMd.getField("ID").isPresent());
+        assertFalse(relMd.getField("").isPresent());
+        assertTrue(relMd.getPrimaryKeyFields().isEmpty());
+        assertTrue(relMd.getPrimaryKeyFieldNames(Optional.of("t")).isEmpty());
+
+        assertFalse(relMd.withCompactFields().getField("ID").isPresent());
+    }
+
+    @Test
+    public void relationLookupIsExactWhileDBMDLookupNormalizes()
+    {
+        DBMD dbmd = dbmd(Collections.singletonList(table("T", "ID", "Mixed", "lower_name")), Collections.emptyList());
+        RelMetadata relMd = dbmd.getRelationMetadata(relId("T")).get();
+
+        // Relation metadata lookups take names in their stored form only.
+        assertTrue(relMd.getField("ID").isPresent());
+        assertFalse(relMd.getField("id").isPresent());
+        assertTrue(relMd.getField("Mixed").isPresent());
+        assertFalse(relMd.getField("MIXED").isPresent());
+
+        // DBMD lookups normalize the name first, here for a database storing unquoted names in upper case.
+        assertEquals("ID", dbmd.getField(relId("T"), "id").get().getName());
+        assertEquals("ID", dbmd.getField(relId("T"), "Id").get().getName());
+        assertEquals("ID", dbmd.getField(relId("T"), "\"ID\"").get().getName());
+        assertFalse(dbmd.getField(relId("T"), "\"id\"").isPresent());
+
+        // Unquoted names are folded to upper case, so they do not find fields whose stored names are not upper case.
+        assertFalse(dbmd.getField(relId("T"), "Mixed").isPresent());
+        assertFalse(dbmd.getField(relId("T"), "lower_name").isPresent());
+
+        // The same holds for compact fields.
+        RelMetadata compact = relMd.withCompactFields();
+        assertTrue(compact.getField("Mixed").isPresent());
+        assertFalse(compact.getField("id").isPresent());
+        assertEquals("ID", dbmd.withCompactFields().getField(relId("T"), "id").get().getName());
+    }
+}
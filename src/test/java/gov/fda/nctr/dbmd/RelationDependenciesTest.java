@@ -0,0 +1,133 @@
+package gov.fda.nctr.dbmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static gov.fda.nctr.dbmd.DBMDFixtures.foreignKey;
+import static gov.fda.nctr.dbmd.DBMDFixtures.relId;
+
+
+public class RelationDependenciesTest
+{
+    private static final RelId A = relId("A"), B = relId("B"), C = relId("C"), D = relId("D"), E = relId("E");
+
+    @Test
+    public void chainIsLoadedParentsFirst()
+    {
+        // C -> B -> A, with the relations given children first.
+        RelationDependencies deps = dependencies(Arrays.asList(C, B, A), fk(C, B), fk(B, A));
+
+        assertEquals(Arrays.asList(A, B, C), deps.getLoadOrder());
+        assertEquals(Arrays.asList(C, B, A), deps.getUnloadOrder());
+        assertEquals(Arrays.asList(list(A), list(B), list(C)), deps.getWaves());
+        assertEquals(Arrays.asList(list(A), list(B), list(C)), deps.getComponents());
+        assertEquals(Collections.emptyList(), deps.getCyclicComponents());
+        assertFalse(deps.hasCycles());
+    }
+
+    @Test
+    public void diamondBranchesShareAWave()
+    {
+        // D -> B -> A and D -> C -> A, with an unrelated E.
+        RelationDependencies deps = dependencies(Arrays.asList(D, C, B, A, E), fk(D, B), fk(D, C), fk(B, A), fk(C, A));
+
+        assertEquals(Arrays.asList(A, E, C, B, D), deps.getLoadOrder());
+        assertEquals(Arrays.asList(list(A, E), list(C, B), list(D)), deps.getWaves());
+        assertEquals(Collections.emptyList(), deps.getCyclicComponents());
+    }
+
+    @Test
+    public void twoCycleIsOneComponent()
+    {
+        // A <-> B, with C -> B and A -> D.
+        RelationDependencies deps = dependencies(Arrays.asList(C, B, A, D), fk(A, B), fk(B, A), fk(C, B), fk(A, D));
+
+        assertEquals(Arrays.asList(D, B, A, C), deps.getLoadOrder());
+        assertEquals(Arrays.asList(list(D), list(B, A), list(C)), deps.getWaves());
+        assertEquals(Arrays.asList(list(D), list(B, A), list(C)), deps.getComponents());
+        assertEquals(Collections.singletonList(list(B, A)), deps.getCyclicComponents());
+        assertTrue(deps.hasCycles());
+    }
+
+    @Test
+    public void selfReferenceIsCyclicButDoesNotDelayLoading()
+    {
+        // B references itself and A.
+        RelationDependencies deps = dependencies(Arrays.asList(B, A), fk(B, B), fk(B, A));
+
+        assertEquals(Arrays.asList(A, B), deps.getLoadOrder());
+        assertEquals(Arrays.asList(list(A), list(B)), deps.getWaves());
+        assertEquals(Collections.singletonList(list(B)), deps.getCyclicComponents());
+        assertTrue(deps.hasCycles());
+    }
+
+    @Test
+    public void foreignKeyRelationsNotListedArePlacedAfterListedOnes()
+    {
+        // Only B is listed. It references A, and is referenced by C, which also references D.
+        RelationDependencies deps = dependencies(Collections.singletonList(B), fk(B, A), fk(C, B), fk(C, D));
+
+        assertEquals(Arrays.asList(A, D, B, C), deps.getLoadOrder());
+        assertEquals(Arrays.asList(list(A, D), list(B), list(C)), deps.getWaves());
+        assertEquals(Collections.emptyList(), deps.getCyclicComponents());
+
+        // Unreferenced listed relations are kept, and no relations at all gives no waves.
+        assertEquals(Collections.singletonList(list(E)), dependencies(Collections.singletonList(E)).getWaves());
+        RelationDependencies none = dependencies(Collections.emptyList());
+        assertEquals(Collections.emptyList(), none.getLoadOrder());
+        assertEquals(Collections.emptyList(), none.getWaves());
+        assertEquals(Collections.emptyList(), none.getCyclicComponents());
+    }
+
+    @Test
+    public void deepChainDoesNotOverflowStack()
+    {
+        int relCount = 100_000;
+
+        // REL_i -> REL_i+1 for each i, with a cycle back from the last relation to the one before it.
+        List<RelId> relIds = new ArrayList<>();
+        List<ForeignKey> fks = new ArrayList<>();
+        for ( int i = 0; i < relCount; ++i )
+        {
+            relIds.add(relId("REL_" + i));
+            if ( i > 0 )
+                fks.add(fk(relIds.get(i - 1), relIds.get(i)));
+        }
+        fks.add(fk(relIds.get(relCount - 1), relIds.get(relCount - 2)));
+
+        RelationDependencies deps = new RelationDependencies(relIds, fks);
+
+        List<RelId> expectedLoadOrder = new ArrayList<>(relIds);
+        Collections.reverse(expectedLoadOrder);
+        Collections.swap(expectedLoadOrder, 0, 1);
+
+        assertEquals(expectedLoadOrder, deps.getLoadOrder());
+        assertEquals(relCount - 1, deps.getWaves().size());
+        assertEquals(list(relIds.get(relCount - 2), relIds.get(relCount - 1)), deps.getWaves().get(0));
+        assertEquals(list(relIds.get(0)), deps.getWaves().get(relCount - 2));
+        assertEquals(Collections.singletonList(list(relIds.get(relCount - 2), relIds.get(relCount - 1))),
+                     deps.getCyclicComponents());
+    }
+
+    private static RelationDependencies dependencies(List<RelId> relIds, ForeignKey... fks)
+    {
+        return new RelationDependencies(relIds, Arrays.asList(fks));
+    }
+
+    private static ForeignKey fk(RelId child, RelId parent)
+    {
+        return foreignKey(child, parent, parent.getName() + "_ID", "ID");
+    }
+
+    private static List<RelId> list(RelId... relIds)
+    {
+        return Arrays.asList(relIds);
+    }
+}
@@ -0,0 +1,217 @@
+package gov.fda.nctr.dbmd;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.DateMapping;
+import gov.fda.nctr.dbmd.DatabaseMetadataFetcher.RelationFetchStrategy;
+
+
+/// Checks that each relation fetch strategy, with the H2 and JDBC catalog readers, fetches the same metadata for
+/// relation filters of each kind, including SQL LIKE patterns.
+public class RelationFetchStrategyTest
+{
+    private static Connection conn;
+
+    private static final ObjectMapper mapper =
+        new ObjectMapper().registerModule(new Jdk8Module()).enable(SerializationFeature.INDENT_OUTPUT);
+
+    @BeforeClass
+    public static void createDatabase() throws SQLException
+    {
+        conn = DriverManager.getConnection("jdbc:h2:mem:fetch_strategy_test;DB_CLOSE_DELAY=-1", "sa", "");
+
+        try ( Statement stmt = conn.createStatement() )
+        {
+            for ( String sql : Arrays.asList(
+                "create schema s",
+                "create table s.item_a(id int primary key, name varchar(20))",
+                "create table s.itemxa(id int primary key, item_a_id int references s.item_a(id))",
+                "create table s.item_ab(id int primary key)",
+                "create table s.item_old(id int primary key, itemxa_id int references s.itemxa(id))",
+                "create table s.\"item_a\"(id int primary key)",
+                "create table s.\"A.B\"(id int primary key)",
+                "create table s.axb(id int primary key, ab_id int references s.\"A.B\"(id))",
+                "create table s.\"X$1\"(id int primary key)",
+                "create table s.emp(id int primary key, item_a_id int references s.item_a(id), " +
+                    "x_id int references s.\"X$1\"(id))",
+                "create view s.item_v as select id, name from s.item_a"
+            ))
+                stmt.execute(sql);
+        }
+    }
+
+    @AfterClass
+    public static void dropDatabase() throws SQLException
+    {
+        try ( Statement stmt = conn.createStatement() )
+        {
+            stmt.execute("drop all objects");
+        }
+        conn.close();
+    }
+
+    @Test
+    public void likePatternsSelectRelationsByName() throws Exception
+    {
+        DatabaseMetadataFetcher fetcher = fetcher(new H2CatalogReader(), RelationFetchStrategy.SCHEMA_WIDE);
+
+        assertEquals(names("ITEM_A", "ITEMXA"), fetchedNames(fetcher, RelationFilter.ALL.includingLike("ITEM_A")));
+        assertEquals(names("ITEM_A", "ITEMXA", "ITEM_AB", "ITEM_V"),
+                     fetchedNames(fetcher, RelationFilter.ALL.includingLike("ITEM%").excludingLike("%OLD")));
+        assertEquals(names("A.B"), fetchedNames(fetcher, RelationFilter.ALL.includingLike("A.B")));
+        assertEquals(names("ITEM_AB"), fetchedNames(fetcher, RelationFilter.ALL.includingLike("%A_")));
+        assertEquals(names("item_a"), fetchedNames(fetcher, RelationFilter.ALL.includingLike("item%")));
+        assertEquals(names("EMP", "X$1"),
+                     fetchedNames(fetcher, RelationFilter.ALL.includingNames(Arrays.asList("EMP"))
+                                                             .includingLike("X$_")));
+        assertEquals(names(), fetchedNames(fetcher, RelationFilter.ALL.includingLike("ITEM")));
+
+        RelationFilter filter = RelationFilter.ALL.includingLike("%A%");
+        assertTrue(filter.matches(new RelId(Optional.of("S"), "A\nA")));
+        assertFalse(filter.matches(new RelId(Optional.of("S"), "a")));
+    }
+
+    @Test
+    public void strategiesFetchTheSameMetadata() throws Exception
+    {
+        Map<String, DatabaseMetadataFetcher> fetchers = new LinkedHashMap<>();
+        for ( RelationFetchStrategy strategy : RelationFetchStrategy.values() )
+        {
+            fetchers.put("H2 " + strategy, fetcher(new H2CatalogReader(), strategy));
+            // The JDBC reader has no relation list queries, and no schema-wide imported keys query on H2, so it falls
+            // back to fetching foreign keys per relation.
+            fetchers.put("JDBC " + strategy, fetcher(new JdbcCatalogReader(), strategy));
+        }
+
+        List<RelationFilter> filters = Arrays.asList(
+            RelationFilter.ALL,
+            RelationFilter.ALL.includingLike("ITEM_A"),
+            RelationFilter.ALL.includingLike("ITEM%").excludingLike("%OLD"),
+            RelationFilter.ALL.includingLike("A.B").includingLike("%X%"),
+            RelationFilter.ALL.includingNames(Arrays.asList("EMP")).includingLike("X$_"),
+            RelationFilter.ALL.excludingLike("%X%").excluding(Pattern.compile("S\\.EMP")),
+            RelationFilter.ALL.excludingLike("ITEM_A").excludingNames(Arrays.asList("A.B")),
+            RelationFilter.ALL.including(Pattern.compile(".*_.*")).excludingLike("%_O%")
+        );
+
+        // Tables, views and foreign keys included or not.
+        boolean[][] includeOptions = { {true, true, true}, {true, false, true}, {false, true, false} };
+
+        for ( RelationFilter filter : filters )
+        {
+            for ( boolean[] includes : includeOptions )
+            {
+                String expected = mapper.writeValueAsString(clientFiltered(filter, includes));
+
+                for ( Map.Entry<String, DatabaseMetadataFetcher> fetcher : fetchers.entrySet() )
+                {
+                    DBMD dbmd =
+                        fetcher.getValue().fetchMetadata(conn.getMetaData(), Optional.of("S"), includes[0], includes[1],
+                                                         includes[2], filter);
+
+                    assertEquals(fetcher.getKey() + " " + filter + " " + Arrays.toString(includes),
+                                 expected, mapper.writeValueAsString(dbmd));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void strategiesDifferInCatalogQueries() throws Exception
+    {
+        RelationFilter filter = RelationFilter.ALL.includingLike("ITEM%");
+
+        long schemaWideCalls = catalogCalls(fetcher(new H2CatalogReader(), RelationFetchStrategy.SCHEMA_WIDE), filter);
+        long listCalls = catalogCalls(fetcher(new H2CatalogReader(), RelationFetchStrategy.RELATION_LISTS), filter);
+        long perRelationCalls =
+            catalogCalls(fetcher(new H2CatalogReader(), RelationFetchStrategy.PER_RELATION), filter);
+
+        // Relation lists need one query per kind of catalog data, as schema-wide queries do, while per relation
+        // queries are made for each of the five selected relations.
+        assertEquals(schemaWideCalls, listCalls);
+        assertTrue(perRelationCalls > schemaWideCalls + 5);
+
+        // Without a schema-wide imported keys query, the JDBC reader queries foreign keys of each selected table.
+        long jdbcSchemaWideCalls =
+            catalogCalls(fetcher(new JdbcCatalogReader(), RelationFetchStrategy.SCHEMA_WIDE), filter);
+        long jdbcPerRelationCalls =
+            catalogCalls(fetcher(new JdbcCatalogReader(), RelationFetchStrategy.PER_RELATION), filter);
+        assertTrue(jdbcSchemaWideCalls > schemaWideCalls);
+        assertTrue(jdbcPerRelationCalls > jdbcSchemaWideCalls);
+    }
+
+    /// The metadata fetched for the filter, selected on the client from the metadata of the entire schema: the
+    /// selected relations of the included kinds, and foreign keys from selected tables to relations not excluded.
+    private static DBMD clientFiltered(RelationFilter filter, boolean[] includes) throws SQLException
+    {
+        DatabaseMetadataFetcher fetcher = fetcher(new H2CatalogReader(), RelationFetchStrategy.SCHEMA_WIDE);
+        DBMD all = fetcher.fetchMetadata(conn, Optional.of("S"), true, true, true, Optional.empty());
+
+        List<RelMetadata> relMds =
+            all.getRelationMetadatas().stream()
+            .filter(relMd -> filter.matches(relMd.getRelationId()))
+            .filter(relMd -> relMd.getRelationType() == RelMetadata.RelType.Table ? includes[0] : includes[1])
+            .collect(toList());
+
+        List<ForeignKey> fks =
+            all.getForeignKeys().stream()
+            .filter(fk -> includes[2])
+            .filter(fk -> filter.matches(fk.getSourceRelationId()) && !filter.isExcluded(fk.getTargetRelationId()))
+            .collect(toList());
+
+        return
+            new DBMD(all.getSchemaName(), relMds, fks, all.getCaseSensitivity(), all.getDbmsName(),
+                     all.getDbmsVersion(), all.getDbmsMajorVersion(), all.getDbmsMinorVersion());
+    }
+
+    private static long catalogCalls(DatabaseMetadataFetcher fetcher, RelationFilter filter) throws SQLException
+    {
+        fetcher.resetCatalogCallCount();
+        fetcher.fetchMetadata(conn.getMetaData(), Optional.of("S"), true, true, true, filter);
+        return fetcher.getCatalogCallCount();
+    }
+
+    private static Set<String> fetchedNames(DatabaseMetadataFetcher fetcher, RelationFilter filter)
+        throws SQLException
+    {
+        DBMD dbmd = fetcher.fetchMetadata(conn.getMetaData(), Optional.of("S"), true, true, true, filter);
+        return dbmd.getRelationIds().stream().map(RelId::getName).collect(toSet());
+    }
+
+    private static DatabaseMetadataFetcher fetcher(CatalogReader catalogReader, RelationFetchStrategy strategy)
+    {
+        DatabaseMetadataFetcher fetcher =
+            new DatabaseMetadataFetcher(DateMapping.DATES_AS_DRIVER_REPORTED, catalogReader);
+        fetcher.setRelationFetchStrategy(strategy);
+        return fetcher;
+    }
+
+    private static Set<String> names(String... names)
+    {
+        return new TreeSet<>(Arrays.asList(names));
+    }
+}